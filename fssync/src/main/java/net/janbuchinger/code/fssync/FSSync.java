@@ -16,9 +16,7 @@
 package net.janbuchinger.code.fssync;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.RandomAccessFile;
 import java.io.StringWriter;
@@ -28,7 +26,6 @@ import java.nio.charset.Charset;
 
 import javax.swing.SwingUtilities;
 
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 
 /**
@@ -75,26 +72,6 @@ public final class FSSync {
 		}
 	}
 
-	/**
-	 * Utility function to create a SHA384 file checksum in hex format.
-	 * 
-	 * @param file
-	 *            the file to create the checksum from.
-	 * 
-	 * @return the SHA384 file checksum in hex format or <code>null</code> if an
-	 *         <code>IOException</code> occurs.
-	 * 
-	 * @see DigestUtils#sha384Hex(InputStream) DigestUtils.sha384Hex(InputStream)
-	 *      from apache commons codec
-	 */
-	public static String createSHA384Hex(File file) {
-		try (InputStream data = new FileInputStream(file)) {
-			return DigestUtils.sha384Hex(data);
-		} catch (IOException e) {
-			return null;
-		}
-	}
-
 	/**
 	 * Saves the stack trace of an Exception to a file.
 	 * 
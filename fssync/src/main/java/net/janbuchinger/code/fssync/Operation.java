@@ -18,6 +18,7 @@ package net.janbuchinger.code.fssync;
 import java.io.File;
 import java.util.Vector;
 
+import net.janbuchinger.code.fssync.sync.ChecksumAlgorithm;
 import net.janbuchinger.code.fssync.sync.EditDBsFilenameFilter;
 
 /**
@@ -46,6 +47,23 @@ public class Operation {
 	 */
 	public final static int PRIORITY_OLD = 3;
 
+	/**
+	 * Copy order: as found by the analysis
+	 */
+	public final static int COPY_ORDER_SCAN = 0;
+	/**
+	 * Copy order: smallest files first
+	 */
+	public final static int COPY_ORDER_SMALLEST = 1;
+	/**
+	 * Copy order: newest files first
+	 */
+	public final static int COPY_ORDER_NEWEST = 2;
+	/**
+	 * Copy order: files in the priority paths first
+	 */
+	public final static int COPY_ORDER_PRIORITY = 3;
+
 	/**
 	 * Key for interval value defined as days
 	 */
@@ -76,9 +94,18 @@ public class Operation {
 	 */
 	private File target;
 	/**
-	 * Option manage Versions - currently not used
+	 * Option manage Versions: keep overwritten and deleted target files in the
+	 * version area of the target directory
 	 */
 	private boolean manageVersions;
+	/**
+	 * The maximum number of versions kept per file, 0 for no limit
+	 */
+	private int versionsMaxCount;
+	/**
+	 * The maximum age of versions in days, 0 for no limit
+	 */
+	private int versionsMaxDays;
 	/**
 	 * The list of directories to exclude
 	 */
@@ -105,6 +132,28 @@ public class Operation {
 	 * 
 	 */
 	private int priorityOnConflict;
+	/**
+	 * The name of the checksum algorithm for new checksums, <code>null</code> for
+	 * SHA384
+	 */
+	private String checksumAlgorithm;
+	/**
+	 * Option replace checksums of other algorithms during the integrity check
+	 */
+	private boolean migrateChecksums;
+	/**
+	 * The time budget of the copy phase of a synchronization in minutes, 0 for no
+	 * limit
+	 */
+	private int timeBudget;
+	/**
+	 * The order of the files to copy, one of the COPY_ORDER constants
+	 */
+	private int copyOrder;
+	/**
+	 * The relative paths that are copied first in the order of their priority
+	 */
+	private Vector<String> priorityPaths;
 
 	/**
 	 * Timestamp of last synchronization, set when synchronization process finishes
@@ -314,6 +363,44 @@ public class Operation {
 		this.manageVersions = manageVersions;
 	}
 
+	/**
+	 * Gets the maximum number of versions that are kept per file.
+	 * 
+	 * @return The maximum number of versions per file or 0 for no limit.
+	 */
+	public final int getVersionsMaxCount() {
+		return versionsMaxCount;
+	}
+
+	/**
+	 * Sets the maximum number of versions that are kept per file.
+	 * 
+	 * @param versionsMaxCount
+	 *            The maximum number of versions per file or 0 for no limit.
+	 */
+	public final void setVersionsMaxCount(int versionsMaxCount) {
+		this.versionsMaxCount = versionsMaxCount;
+	}
+
+	/**
+	 * Gets the number of days a version is kept after it was replaced.
+	 * 
+	 * @return The maximum age of versions in days or 0 for no limit.
+	 */
+	public final int getVersionsMaxDays() {
+		return versionsMaxDays;
+	}
+
+	/**
+	 * Sets the number of days a version is kept after it was replaced.
+	 * 
+	 * @param versionsMaxDays
+	 *            The maximum age of versions in days or 0 for no limit.
+	 */
+	public final void setVersionsMaxDays(int versionsMaxDays) {
+		this.versionsMaxDays = versionsMaxDays;
+	}
+
 	/**
 	 * Gets the list of directories to exclude from synchronization.
 	 * 
@@ -434,6 +521,114 @@ public class Operation {
 		this.priorityOnConflict = priorityOnConflict;
 	}
 
+	/**
+	 * Gets the checksum algorithm for new checksums.
+	 * 
+	 * @return The checksum algorithm, SHA384 if none or an unknown algorithm is
+	 *         set.
+	 */
+	public final ChecksumAlgorithm getChecksumAlgorithm() {
+		ChecksumAlgorithm algorithm = ChecksumAlgorithm.forName(checksumAlgorithm);
+		return algorithm != null ? algorithm : ChecksumAlgorithm.SHA384;
+	}
+
+	/**
+	 * Sets the checksum algorithm for new checksums.
+	 * 
+	 * @param checksumAlgorithm
+	 *            The checksum algorithm.
+	 */
+	public final void setChecksumAlgorithm(ChecksumAlgorithm checksumAlgorithm) {
+		this.checksumAlgorithm = checksumAlgorithm.getName();
+	}
+
+	/**
+	 * Gets the <code>Operation</code> option "migrate checksums". If it is turned
+	 * on the integrity check reads each file once to verify its checksum and to
+	 * create the checksum of the current algorithm, which then replaces the old
+	 * one.
+	 * 
+	 * @return <code>true</code> if "migrate checksums" is turned on.
+	 */
+	public final boolean isMigrateChecksums() {
+		return migrateChecksums;
+	}
+
+	/**
+	 * Sets the <code>Operation</code> option "migrate checksums".
+	 * 
+	 * @param migrateChecksums
+	 *            <code>true</code> to turn "migrate checksums" on.
+	 */
+	public final void setMigrateChecksums(boolean migrateChecksums) {
+		this.migrateChecksums = migrateChecksums;
+	}
+
+	/**
+	 * Gets the time the copy phase of a synchronization may take before the
+	 * remaining files are left for the next synchronization. Files that are
+	 * being copied when the time is up are completed.
+	 * 
+	 * @return The time budget in minutes or 0 for no limit.
+	 */
+	public final int getTimeBudget() {
+		return timeBudget;
+	}
+
+	/**
+	 * Sets the time the copy phase of a synchronization may take before the
+	 * remaining files are left for the next synchronization.
+	 * 
+	 * @param timeBudget
+	 *            The time budget in minutes or 0 for no limit.
+	 */
+	public final void setTimeBudget(int timeBudget) {
+		this.timeBudget = timeBudget;
+	}
+
+	/**
+	 * Gets the order of the files to copy.
+	 * 
+	 * @return One of the COPY_ORDER constants.
+	 */
+	public final int getCopyOrder() {
+		return copyOrder;
+	}
+
+	/**
+	 * Sets the order of the files to copy.
+	 * 
+	 * @param copyOrder
+	 *            One of the COPY_ORDER constants.
+	 */
+	public final void setCopyOrder(int copyOrder) {
+		this.copyOrder = copyOrder;
+	}
+
+	/**
+	 * Gets the relative paths that are copied first when the copy order is
+	 * <code>COPY_ORDER_PRIORITY</code>.
+	 * 
+	 * @return The relative paths in the order of their priority.
+	 */
+	public final Vector<String> getPriorityPaths() {
+		if (priorityPaths == null) {
+			priorityPaths = new Vector<String>();
+		}
+		return priorityPaths;
+	}
+
+	/**
+	 * Sets the relative paths that are copied first when the copy order is
+	 * <code>COPY_ORDER_PRIORITY</code>.
+	 * 
+	 * @param priorityPaths
+	 *            The relative paths in the order of their priority.
+	 */
+	public final void setPriorityPaths(Vector<String> priorityPaths) {
+		this.priorityPaths = priorityPaths;
+	}
+
 	/**
 	 * Gets if the <code>Operation</code> is selected.
 	 * 
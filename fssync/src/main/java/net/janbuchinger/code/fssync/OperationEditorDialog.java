@@ -33,6 +33,7 @@ import javax.swing.BorderFactory;
 import javax.swing.ButtonGroup;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JDialog;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -41,9 +42,11 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import javax.swing.JTabbedPane;
+import javax.swing.JTextArea;
 import javax.swing.JTextField;
 
 import bug507401.DangerousPathChecker;
+import net.janbuchinger.code.fssync.sync.ChecksumAlgorithm;
 import net.janbuchinger.code.fssync.sync.OnlineDB;
 import net.janbuchinger.code.fssync.sync.RecoverSystemDialog;
 import net.janbuchinger.code.fssync.sync.RecoverSystemProcess;
@@ -66,6 +69,10 @@ public class OperationEditorDialog extends JDialog implements ActionListener {
 	// private JCheckBox ckIgnoreModifiedWhenEqual;
 	private JCheckBox ckElasticComparison;
 	private JCheckBox ckAlwaysQuickSync;
+	private JComboBox<ChecksumAlgorithm> cbChecksumAlgorithm;
+	private JCheckBox ckMigrateChecksums;
+	private JTextField tfVersionsMaxCount;
+	private JTextField tfVersionsMaxDays;
 
 	private JRadioButton rbPrioSource;
 	private JRadioButton rbPrioTarget;
@@ -75,6 +82,9 @@ public class OperationEditorDialog extends JDialog implements ActionListener {
 	private JTextField tfLastSynced;
 	private JTextField tfInterval;
 	private JCheckBox ckRemind;
+	private JTextField tfTimeBudget;
+	private JComboBox<String> cbCopyOrder;
+	private JTextArea taPriorityPaths;
 
 	private JRadioButton rbIntervalDays;
 	private JRadioButton rbIntervalHours;
@@ -135,6 +145,10 @@ public class OperationEditorDialog extends JDialog implements ActionListener {
 		jlExclude = new JList<String>(lmExclude);
 
 		ckVersionManagement = new JCheckBox("Dateiversionen Speichern");
+		tfVersionsMaxCount = new JTextField();
+		tfVersionsMaxCount.setText("0");
+		tfVersionsMaxDays = new JTextField();
+		tfVersionsMaxDays.setText("0");
 
 		ckBidirectional = new JCheckBox("Bidirektional Synchronisieren");
 
@@ -145,6 +159,15 @@ public class OperationEditorDialog extends JDialog implements ActionListener {
 		// ckElasticComparison.addActionListener(this);
 		ckAlwaysQuickSync = new JCheckBox("Schnell Synchronisieren (Integritätsprüfung überspringen)");
 		// ckAlwaysQuickSync.addActionListener(this);
+		cbChecksumAlgorithm = new JComboBox<ChecksumAlgorithm>(ChecksumAlgorithm.listAll());
+		ckMigrateChecksums = new JCheckBox("Alte Prüfsummen bei der Integritätsprüfung Ersetzen");
+
+		tfTimeBudget = new JTextField();
+		tfTimeBudget.setText("0");
+		// the index is the copy order constant
+		cbCopyOrder = new JComboBox<String>(new String[] { "Reihenfolge der Analyse",
+				"Kleinste Dateien Zuerst", "Neueste Dateien Zuerst", "Vorrangige Pfade Zuerst" });
+		taPriorityPaths = new JTextArea(4, 20);
 
 		ButtonGroup bg = new ButtonGroup();
 
@@ -220,10 +243,23 @@ public class OperationEditorDialog extends JDialog implements ActionListener {
 			tfDestination.setPath(operation.getTarget().getPath());
 			lmExclude.setStrings(operation.getExcludes());
 			ckVersionManagement.setSelected(operation.isManageVersions());
+			tfVersionsMaxCount.setText(operation.getVersionsMaxCount() + "");
+			tfVersionsMaxDays.setText(operation.getVersionsMaxDays() + "");
 			ckBidirectional.setSelected(operation.isSyncBidirectional());
 			// ckIgnoreModifiedWhenEqual.setSelected(operation.isIgnoreModifiedWhenEqual());
 			ckElasticComparison.setSelected(operation.isCompareElastic());
 			ckAlwaysQuickSync.setSelected(operation.isAlwaysQuickSync());
+			cbChecksumAlgorithm.setSelectedItem(operation.getChecksumAlgorithm());
+			ckMigrateChecksums.setSelected(operation.isMigrateChecksums());
+			tfTimeBudget.setText(operation.getTimeBudget() + "");
+			if (operation.getCopyOrder() >= 0 && operation.getCopyOrder() < cbCopyOrder.getItemCount()) {
+				cbCopyOrder.setSelectedIndex(operation.getCopyOrder());
+			}
+			StringBuilder priorityPaths = new StringBuilder();
+			for (String priorityPath : operation.getPriorityPaths()) {
+				priorityPaths.append(priorityPath).append("\n");
+			}
+			taPriorityPaths.setText(priorityPaths.toString());
 			// ckIgnoreModifiedWhenEqual.setEnabled(!ckAlwaysQuickSync.isSelected());
 
 			int priority = operation.getPriorityOnConflict();
@@ -281,8 +317,6 @@ public class OperationEditorDialog extends JDialog implements ActionListener {
 		c.weightx = 1;
 		JPanel pnOptions = new JPanel(new GridBagLayout());
 
-		// pnOptions.add(ckVersionManagement, c);
-		// c.gridy++;
 		pnOptions.add(ckBidirectional, c);
 		c.gridy++;
 		pnOptions.add(new JLabel("Priorität bei Konflikt"), c);
@@ -295,6 +329,22 @@ public class OperationEditorDialog extends JDialog implements ActionListener {
 		c.gridy++;
 		pnOptions.add(ckAlwaysQuickSync, c);
 		c.gridy++;
+		pnOptions.add(new JLabel("Prüfsummenverfahren"), c);
+		c.gridy++;
+		pnOptions.add(cbChecksumAlgorithm, c);
+		c.gridy++;
+		pnOptions.add(ckMigrateChecksums, c);
+		c.gridy++;
+		pnOptions.add(ckVersionManagement, c);
+		c.gridy++;
+		pnOptions.add(new JLabel("Maximal Versionen pro Datei (0 = unbegrenzt)"), c);
+		c.gridy++;
+		pnOptions.add(tfVersionsMaxCount, c);
+		c.gridy++;
+		pnOptions.add(new JLabel("Versionen Aufbewahren (Tage, 0 = unbegrenzt)"), c);
+		c.gridy++;
+		pnOptions.add(tfVersionsMaxDays, c);
+		c.gridy++;
 
 		c = UIFx.initGridBagConstraints();
 		JPanel pnTiming = new JPanel(new GridBagLayout());
@@ -320,6 +370,18 @@ public class OperationEditorDialog extends JDialog implements ActionListener {
 		c.gridx = 0;
 		c.gridwidth = 3;
 		pnTiming.add(ckRemind, c);
+		c.gridy++;
+		pnTiming.add(new JLabel("Zeitbudget (Minuten, 0 = unbegrenzt)"), c);
+		c.gridy++;
+		pnTiming.add(tfTimeBudget, c);
+		c.gridy++;
+		pnTiming.add(new JLabel("Kopierreihenfolge"), c);
+		c.gridy++;
+		pnTiming.add(cbCopyOrder, c);
+		c.gridy++;
+		pnTiming.add(new JLabel("Vorrangige Pfade (ein relativer Pfad pro Zeile)"), c);
+		c.gridy++;
+		pnTiming.add(UIFx.initScrollPane(taPriorityPaths, 15), c);
 
 		JPanel pnStatistics = new JPanel(new GridBagLayout());
 		c = UIFx.initGridBagConstraints();
@@ -575,6 +637,21 @@ public class OperationEditorDialog extends JDialog implements ActionListener {
 				}
 			}
 			boolean manageVersions = ckVersionManagement.isSelected();
+			int versionsMaxCount = 0;
+			int versionsMaxDays = 0;
+			try {
+				versionsMaxCount = Integer.parseInt(tfVersionsMaxCount.getText());
+				versionsMaxDays = Integer.parseInt(tfVersionsMaxDays.getText());
+			} catch (NumberFormatException e2) {
+				JOptionPane.showMessageDialog(this, "Bitte Ganzzahlen für die Versionen eingeben", "Fehler",
+						JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+			if (versionsMaxCount < 0 || versionsMaxDays < 0) {
+				JOptionPane.showMessageDialog(this, "Bitte positive Zahlen für die Versionen eingeben",
+						"Fehler", JOptionPane.ERROR_MESSAGE);
+				return;
+			}
 			Vector<String> exclude = lmExclude.getStrings();
 
 			Iterator<String> iExc = exclude.iterator();
@@ -588,6 +665,8 @@ public class OperationEditorDialog extends JDialog implements ActionListener {
 			// boolean ignoreModifiedWhenEqual = ckIgnoreModifiedWhenEqual.isSelected();
 			boolean elasticComparison = ckElasticComparison.isSelected();
 			boolean alwaysQuickSync = ckAlwaysQuickSync.isSelected();
+			ChecksumAlgorithm checksumAlgorithm = (ChecksumAlgorithm) cbChecksumAlgorithm.getSelectedItem();
+			boolean migrateChecksums = ckMigrateChecksums.isSelected();
 
 			int priorityOnConflict = -1;
 			if (rbPrioNew.isSelected()) {
@@ -610,6 +689,27 @@ public class OperationEditorDialog extends JDialog implements ActionListener {
 			}
 			boolean remind = ckRemind.isSelected() && interval != 0 ? ckRemind.isSelected() : false;
 
+			int timeBudget = 0;
+			try {
+				timeBudget = Integer.parseInt(tfTimeBudget.getText());
+			} catch (NumberFormatException e2) {
+				JOptionPane.showMessageDialog(this, "Bitte Ganzzahl als Zeitbudget eingeben", "Fehler",
+						JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+			if (timeBudget < 0) {
+				JOptionPane.showMessageDialog(this, "Bitte eine positive Zahl als Zeitbudget eingeben",
+						"Fehler", JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+			int copyOrder = cbCopyOrder.getSelectedIndex();
+			Vector<String> priorityPaths = new Vector<String>();
+			for (String priorityPath : taPriorityPaths.getText().split("\n")) {
+				if (priorityPath.trim().length() > 0) {
+					priorityPaths.add(priorityPath.trim());
+				}
+			}
+
 			int intervalMode = Operation.INTERVAL_DAYS;
 			if (rbIntervalHours.isSelected()) {
 				intervalMode = Operation.INTERVAL_HOURS;
@@ -638,6 +738,13 @@ public class OperationEditorDialog extends JDialog implements ActionListener {
 				operation.setIntervalMode(intervalMode);
 				operation.setRemind(remind);
 			}
+			operation.setChecksumAlgorithm(checksumAlgorithm);
+			operation.setMigrateChecksums(migrateChecksums);
+			operation.setVersionsMaxCount(versionsMaxCount);
+			operation.setVersionsMaxDays(versionsMaxDays);
+			operation.setTimeBudget(timeBudget);
+			operation.setCopyOrder(copyOrder);
+			operation.setPriorityPaths(priorityPaths);
 
 			answer = SAVE;
 			setVisible(false);
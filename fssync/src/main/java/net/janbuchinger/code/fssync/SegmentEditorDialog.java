@@ -34,6 +34,7 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 
+import net.janbuchinger.code.fssync.sync.DatabaseManifest;
 import net.janbuchinger.code.fssync.sync.OnlineDB;
 import net.janbuchinger.code.mishmash.ui.UIFx;
 import net.janbuchinger.code.mishmash.ui.dialog.DialogEscapeHook;
@@ -206,6 +207,7 @@ public class SegmentEditorDialog extends JDialog implements ActionListener, Mous
 							if (!dbOriginal.delete()) {
 								System.err.println("Could not delete target database file!");
 							}
+							DatabaseManifest.getTargetManifest(dbOriginal).delete();
 							if (!dbEdit.delete()) {
 								System.err.println("Could not delete target database file!");
 							}
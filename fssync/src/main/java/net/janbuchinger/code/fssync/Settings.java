@@ -55,6 +55,12 @@ public class Settings {
 	private boolean minimizeToTray;
 	private boolean ignoreNewVersion;
 
+	private int scanThreads;
+
+	private int copyThreads;
+
+	private boolean verifyCopies;
+
 	private Settings(File settingsFile) {
 		super();
 		this.settingsFile = settingsFile;
@@ -71,6 +77,9 @@ public class Settings {
 		minimizeToTray = false;
 		
 		ignoreNewVersion = false;
+		scanThreads = 0;
+		copyThreads = 0;
+		verifyCopies = false;
 	}
 
 	public final void write() {
@@ -198,4 +207,28 @@ public class Settings {
 	public void setIgnoreNewVersion(boolean ignoreNewVersion) {
 		this.ignoreNewVersion = ignoreNewVersion;
 	}
+
+	public final int getScanThreads() {
+		return scanThreads;
+	}
+
+	public final void setScanThreads(int scanThreads) {
+		this.scanThreads = scanThreads;
+	}
+
+	public final boolean isVerifyCopies() {
+		return verifyCopies;
+	}
+
+	public final void setVerifyCopies(boolean verifyCopies) {
+		this.verifyCopies = verifyCopies;
+	}
+
+	public final int getCopyThreads() {
+		return copyThreads;
+	}
+
+	public final void setCopyThreads(int copyThreads) {
+		this.copyThreads = copyThreads;
+	}
 }
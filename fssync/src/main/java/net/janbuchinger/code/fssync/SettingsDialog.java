@@ -63,6 +63,12 @@ public class SettingsDialog extends JDialog implements ActionListener, EscapeLis
 	private final JCheckBox ckCloseToTray;
 	private final JCheckBox ckMinimizeToTray;
 
+	private final JComboBox<String> cbScanThreads;
+
+	private final JComboBox<String> cbCopyThreads;
+
+	private final JCheckBox ckVerifyCopies;
+
 	public SettingsDialog(JFrame frm) {
 		super(frm, "Einstellungen", true);
 		this.frm = frm;
@@ -100,6 +106,19 @@ public class SettingsDialog extends JDialog implements ActionListener, EscapeLis
 		ckMinimizeToTray = new JCheckBox("Ins Tray Minimieren");
 		ckMinimizeToTray.setSelected(settings.isMinimizeToTray());
 
+		String[] threads = new String[17];
+		threads[0] = "Automatisch";
+		for (int i = 1; i < threads.length; i++) {
+			threads[i] = Integer.toString(i);
+		}
+		cbScanThreads = new JComboBox<String>(threads);
+		cbScanThreads.setSelectedIndex(Math.min(settings.getScanThreads(), threads.length - 1));
+		cbCopyThreads = new JComboBox<String>(threads);
+		cbCopyThreads.setSelectedIndex(Math.min(settings.getCopyThreads(), threads.length - 1));
+
+		ckVerifyCopies = new JCheckBox("Kopierte Dateien Überprüfen");
+		ckVerifyCopies.setSelected(settings.isVerifyCopies());
+
 		if (!SystemTray.isSupported()) {
 			ckStartToTray.setEnabled(false);
 			ckCloseToTray.setEnabled(false);
@@ -138,6 +157,20 @@ public class SettingsDialog extends JDialog implements ActionListener, EscapeLis
 		pnControls.add(ckCloseToTray, c);
 		c.gridy++;
 		pnControls.add(ckMinimizeToTray, c);
+		c.gridy++;
+		c.gridx = 0;
+		pnControls.add(new JLabel("Gleichzeitig gelesene Verzeichnisse"), c);
+		c.gridx++;
+		pnControls.add(cbScanThreads, c);
+		c.gridy++;
+		c.gridx = 0;
+		pnControls.add(new JLabel("Gleichzeitige Dateizugriffe (SSD)"), c);
+		c.gridx++;
+		pnControls.add(cbCopyThreads, c);
+		c.gridy++;
+		c.gridx = 0;
+		c.gridwidth = 2;
+		pnControls.add(ckVerifyCopies, c);
 
 		btOk = new JButton("Speichern");
 		btOk.addActionListener(this);
@@ -189,6 +222,9 @@ public class SettingsDialog extends JDialog implements ActionListener, EscapeLis
 			settings.setStartToTray(ckStartToTray.isSelected());
 			settings.setCloseToTray(ckCloseToTray.isSelected());
 			settings.setMinimizeToTray(ckMinimizeToTray.isSelected());
+			settings.setScanThreads(cbScanThreads.getSelectedIndex());
+			settings.setCopyThreads(cbCopyThreads.getSelectedIndex());
+			settings.setVerifyCopies(ckVerifyCopies.isSelected());
 			settings.write();
 			setVisible(false);
 		} else if (e.getSource() == btCancel) {
@@ -201,6 +237,9 @@ public class SettingsDialog extends JDialog implements ActionListener, EscapeLis
 			ckStartToTray.setSelected(settings.isStartToTray());
 			ckCloseToTray.setSelected(settings.isCloseToTray());
 			ckMinimizeToTray.setSelected(settings.isMinimizeToTray());
+			cbScanThreads.setSelectedIndex(Math.min(settings.getScanThreads(), 16));
+			cbCopyThreads.setSelectedIndex(Math.min(settings.getCopyThreads(), 16));
+			ckVerifyCopies.setSelected(settings.isVerifyCopies());
 			setVisible(false);
 		}
 	}
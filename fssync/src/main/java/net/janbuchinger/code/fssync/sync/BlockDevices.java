@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Static helpers to find the file store of a file and whether it is located on
+ * a rotational disk.
+ * <p>
+ * Whether a disk is rotational is read from
+ * <code>/sys/block/&lt;device&gt;/queue/rotational</code>. Only a disk whose
+ * flag reads <code>1</code> is treated as rotational. Network shares, FUSE
+ * mounts, the file stores of other operating systems and disks whose flag can
+ * not be read are not, so callers use the configured number of streams for
+ * them.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see CopyScheduler
+ * @see ChecksumVerifier
+ */
+public final class BlockDevices {
+	/**
+	 * The rotational state by file store.
+	 */
+	private final static HashMap<FileStore, Boolean> rotational = new HashMap<FileStore, Boolean>();
+
+	private BlockDevices() {}
+
+	/**
+	 * Gets the file store of a file or of its closest existing parent.
+	 * 
+	 * @param file
+	 *            The file or directory.
+	 * 
+	 * @return The file store or <code>null</code> if it can not be determined.
+	 */
+	public static FileStore getFileStore(File file) {
+		while (file != null && !file.exists()) {
+			file = file.getParentFile();
+		}
+		if (file == null) {
+			return null;
+		}
+		try {
+			return Files.getFileStore(file.toPath());
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Lists the mount points of the system as read from
+	 * <code>/proc/mounts</code>.
+	 * 
+	 * @return The mount points or an empty list if they are not available on
+	 *         this system.
+	 */
+	public static Vector<File> getMountPoints() {
+		Vector<File> mountPoints = new Vector<File>();
+		File mounts = new File("/proc/mounts");
+		if (!mounts.isFile()) {
+			return mountPoints;
+		}
+		List<String> lines;
+		try {
+			lines = Files.readAllLines(mounts.toPath());
+		} catch (IOException e) {
+			e.printStackTrace();
+			return mountPoints;
+		}
+		String[] fields;
+		for (String line : lines) {
+			fields = line.split(" ");
+			if (fields.length > 1) {
+				mountPoints.add(new File(unescapeMountPoint(fields[1])));
+			}
+		}
+		return mountPoints;
+	}
+
+	/**
+	 * Replaces the octal escapes of <code>/proc/mounts</code>, e.g.
+	 * <code>\040</code> for a space.
+	 * 
+	 * @param mountPoint
+	 *            The escaped mount point.
+	 * 
+	 * @return The mount point.
+	 */
+	static String unescapeMountPoint(String mountPoint) {
+		StringBuilder sb = new StringBuilder(mountPoint.length());
+		char c;
+		for (int i = 0; i < mountPoint.length(); i++) {
+			c = mountPoint.charAt(i);
+			if (c == '\\' && isOctal(mountPoint, i + 1)) {
+				sb.append((char) Integer.parseInt(mountPoint.substring(i + 1, i + 4), 8));
+				i += 3;
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Checks if three octal digits start at an index.
+	 * 
+	 * @param s
+	 *            The string.
+	 * @param index
+	 *            The index of the first digit.
+	 * 
+	 * @return <code>true</code> if there are three octal digits.
+	 */
+	private static boolean isOctal(String s, int index) {
+		if (index + 3 > s.length()) {
+			return false;
+		}
+		for (int i = index; i < index + 3; i++) {
+			if (s.charAt(i) < '0' || s.charAt(i) > '7') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if a file store is on a rotational disk.
+	 * 
+	 * @param store
+	 *            The file store or <code>null</code>.
+	 * 
+	 * @return <code>true</code> only if the disk is known to be rotational.
+	 */
+	public static boolean isRotational(FileStore store) {
+		if (store == null) {
+			return false;
+		}
+		synchronized (rotational) {
+			Boolean isRotational = rotational.get(store);
+			if (isRotational == null) {
+				isRotational = readRotational(store.name());
+				rotational.put(store, isRotational);
+			}
+			return isRotational;
+		}
+	}
+
+	/**
+	 * Reads the rotational flag of a block device from the sys file system.
+	 * 
+	 * @param device
+	 *            The device name as reported by the file store, e.g.
+	 *            <code>/dev/sda1</code>.
+	 * 
+	 * @return <code>true</code> only if the device is known to be rotational,
+	 *         <code>false</code> for network shares and other names that are
+	 *         not block devices.
+	 */
+	static boolean readRotational(String device) {
+		if (device == null || !device.startsWith("/dev/")) {
+			return false;
+		}
+		try {
+			// resolve links like /dev/mapper/name or /dev/disk/by-uuid/id
+			String name = new File(device).toPath().toRealPath().getFileName().toString();
+			Path block = new File("/sys/class/block", name).toPath().toRealPath();
+			// partitions have no queue of their own, use the disk's queue
+			Path flag = block.resolve("queue/rotational");
+			if (!Files.exists(flag)) {
+				flag = block.getParent().resolve("queue/rotational");
+			}
+			return Files.readAllLines(flag).get(0).trim().equals("1");
+		} catch (IOException | IndexOutOfBoundsException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Vector;
+import java.util.zip.CRC32;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * A <code>ChecksumAlgorithm</code> creates the checksums that are stored in the
+ * file system table and used to check the integrity of files.
+ * <p>
+ * Every algorithm has a short name that is stored with each checksum, so a
+ * checksum is always verified with the algorithm that created it. The
+ * algorithms are registered by name, further algorithms can be added with
+ * <code>register()</code>.
+ * <p>
+ * Built in algorithms:
+ * <ul>
+ * <li><b>sha384</b>: SHA-384, cryptographic, the default and the algorithm of
+ * all checksums written before the algorithm was recorded.
+ * <li><b>xxh64</b>: xxHash64, not cryptographic but many times faster.
+ * <li><b>crc32</b>: CRC-32, not cryptographic, only 32 bits.
+ * </ul>
+ * 
+ * @author Jan Buchinger
+ *
+ * @see Hasher
+ */
+public abstract class ChecksumAlgorithm {
+	/**
+	 * The size of the read buffer in bytes.
+	 */
+	private final static int BUFFER_SIZE = 1024 * 1024;
+
+	/**
+	 * The registered algorithms by name.
+	 */
+	private final static LinkedHashMap<String, ChecksumAlgorithm> algorithms;
+
+	static {
+		algorithms = new LinkedHashMap<String, ChecksumAlgorithm>();
+	}
+
+	/**
+	 * SHA-384.
+	 */
+	public final static ChecksumAlgorithm SHA384 = register(new ChecksumAlgorithm("sha384", "SHA-384") {
+		@Override
+		public Hasher newHasher() {
+			final MessageDigest digest = DigestUtils.getSha384Digest();
+			return new Hasher() {
+				@Override
+				public void update(byte[] data, int offset, int length) {
+					digest.update(data, offset, length);
+				}
+
+				@Override
+				public byte[] getDigest() {
+					return digest.digest();
+				}
+			};
+		}
+	});
+	/**
+	 * xxHash64 with seed 0.
+	 */
+	public final static ChecksumAlgorithm XXHASH64 = register(new ChecksumAlgorithm("xxh64", "xxHash64") {
+		@Override
+		public Hasher newHasher() {
+			return new XxHash64();
+		}
+	});
+	/**
+	 * CRC-32.
+	 */
+	public final static ChecksumAlgorithm CRC_32 = register(new ChecksumAlgorithm("crc32", "CRC-32") {
+		@Override
+		public Hasher newHasher() {
+			final CRC32 crc = new CRC32();
+			return new Hasher() {
+				@Override
+				public void update(byte[] data, int offset, int length) {
+					crc.update(data, offset, length);
+				}
+
+				@Override
+				public byte[] getDigest() {
+					long value = crc.getValue();
+					return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8),
+							(byte) value };
+				}
+			};
+		}
+	});
+
+	/**
+	 * The name that is stored with the checksums.
+	 */
+	private final String name;
+	/**
+	 * The name to show to the user.
+	 */
+	private final String displayName;
+
+	/**
+	 * Constructs a new <code>ChecksumAlgorithm</code>.
+	 * 
+	 * @param name
+	 *            The name that is stored with the checksums.
+	 * @param displayName
+	 *            The name to show to the user.
+	 */
+	protected ChecksumAlgorithm(String name, String displayName) {
+		this.name = name;
+		this.displayName = displayName;
+	}
+
+	/**
+	 * Creates a new <code>Hasher</code> for one file.
+	 * 
+	 * @return The new <code>Hasher</code>.
+	 */
+	public abstract Hasher newHasher();
+
+	/**
+	 * Gets the name that is stored with the checksums.
+	 * 
+	 * @return The name of the algorithm.
+	 */
+	public final String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return displayName;
+	}
+
+	/**
+	 * Creates the checksum of a file.
+	 * 
+	 * @param file
+	 *            The file to create the checksum from.
+	 * 
+	 * @return The checksum or <code>null</code> if an <code>IOException</code>
+	 *         occurs.
+	 */
+	public final byte[] hashFile(File file) {
+		byte[][] checksums = hashFile(file, new ChecksumAlgorithm[] { this });
+		return checksums == null ? null : checksums[0];
+	}
+
+	/**
+	 * Creates the checksums of a file with several algorithms while reading the
+	 * file once.
+	 * 
+	 * @param file
+	 *            The file to create the checksums from.
+	 * @param algorithms
+	 *            The algorithms to use.
+	 * 
+	 * @return The checksums in the order of the algorithms or <code>null</code>
+	 *         if an <code>IOException</code> occurs.
+	 */
+	public static byte[][] hashFile(File file, ChecksumAlgorithm[] algorithms) {
+		Hasher[] hashers = new Hasher[algorithms.length];
+		for (int i = 0; i < algorithms.length; i++) {
+			hashers[i] = algorithms[i].newHasher();
+		}
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int read;
+		try (InputStream data = new FileInputStream(file)) {
+			while ((read = data.read(buffer)) != -1) {
+				for (Hasher hasher : hashers) {
+					hasher.update(buffer, 0, read);
+				}
+			}
+		} catch (IOException e) {
+			return null;
+		}
+		byte[][] checksums = new byte[hashers.length][];
+		for (int i = 0; i < hashers.length; i++) {
+			checksums[i] = hashers[i].getDigest();
+		}
+		return checksums;
+	}
+
+	/**
+	 * Formats a checksum for the user.
+	 * 
+	 * @param checksum
+	 *            The checksum or <code>null</code>.
+	 * 
+	 * @return The checksum in hex format or an empty String.
+	 */
+	public static String toHex(byte[] checksum) {
+		return checksum == null ? "" : Hex.encodeHexString(checksum);
+	}
+
+	/**
+	 * Registers an algorithm, an algorithm with the same name is replaced.
+	 * 
+	 * @param algorithm
+	 *            The algorithm to register.
+	 * 
+	 * @return The registered algorithm.
+	 */
+	public static ChecksumAlgorithm register(ChecksumAlgorithm algorithm) {
+		synchronized (algorithms) {
+			algorithms.put(algorithm.getName(), algorithm);
+		}
+		return algorithm;
+	}
+
+	/**
+	 * Gets an algorithm by name.
+	 * 
+	 * @param name
+	 *            The name of the algorithm, <code>null</code> for SHA-384.
+	 * 
+	 * @return The algorithm or <code>null</code> if there is no algorithm
+	 *         registered by this name.
+	 */
+	public static ChecksumAlgorithm forName(String name) {
+		if (name == null) {
+			return SHA384;
+		}
+		synchronized (algorithms) {
+			return algorithms.get(name);
+		}
+	}
+
+	/**
+	 * Lists all registered algorithms.
+	 * 
+	 * @return A new list of all registered algorithms.
+	 */
+	public static Vector<ChecksumAlgorithm> listAll() {
+		synchronized (algorithms) {
+			return new Vector<ChecksumAlgorithm>(algorithms.values());
+		}
+	}
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import java.io.File;
+import java.nio.file.FileStore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The <code>ChecksumVerifier</code> creates the checksums of deep analysis
+ * integrity checks concurrently.
+ * <p>
+ * Source and destination files are hashed by separate executors, one per file
+ * store, so both disks are busy at the same time. An executor of a disk that
+ * is known to be rotational has a single thread, otherwise, including network
+ * shares and file stores of other operating systems, it has the configured
+ * number of threads.
+ * If source and destination are on the same file store they share one
+ * executor.
+ * <p>
+ * Each file is hashed with the algorithm of its database record. If the check
+ * migrates to another algorithm the destination file is hashed with both
+ * algorithms while it is read once.
+ * <p>
+ * The number of submitted checks that were not taken yet is bounded.
+ * <code>trySubmit()</code> never blocks, it rejects a check while the disks are
+ * behind the analysis. The caller then takes finished checks until the check
+ * is accepted, so the thread that releases the capacity is never blocked by it.
+ * Checks are returned by <code>poll()</code> and <code>take()</code> as soon as
+ * all their checksums are created, not in the order of their submission.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see IntegrityCheck
+ * @see BlockDevices
+ */
+public final class ChecksumVerifier {
+	/**
+	 * The maximum number of checks that were submitted but not taken.
+	 */
+	private final static int MAX_PENDING = 512;
+
+	/**
+	 * The executor for the source files.
+	 */
+	private final ExecutorService sourceExecutor;
+	/**
+	 * The executor for the destination files.
+	 */
+	private final ExecutorService destinationExecutor;
+	/**
+	 * The checks with all checksums created.
+	 */
+	private final LinkedBlockingQueue<IntegrityCheck> done;
+	/**
+	 * Limits the number of pending checks.
+	 */
+	private final Semaphore capacity;
+	/**
+	 * The number of checks that were submitted but not taken.
+	 */
+	private final AtomicInteger pending;
+
+	/**
+	 * Constructs a new <code>ChecksumVerifier</code>.
+	 * 
+	 * @param source
+	 *            The source directory.
+	 * @param destination
+	 *            The destination directory.
+	 * @param threads
+	 *            The number of threads per disk that is not rotational, 0 for
+	 *            automatic.
+	 */
+	public ChecksumVerifier(File source, File destination, int threads) {
+		threads = threads > 0 ? threads : CopyScheduler.DEFAULT_COPY_THREADS;
+		FileStore sourceStore = BlockDevices.getFileStore(source);
+		FileStore destinationStore = BlockDevices.getFileStore(destination);
+		sourceExecutor = createExecutor(BlockDevices.isRotational(sourceStore) ? 1 : threads);
+		if (sourceStore != null && sourceStore.equals(destinationStore)) {
+			destinationExecutor = sourceExecutor;
+		} else {
+			destinationExecutor = createExecutor(BlockDevices.isRotational(destinationStore) ? 1 : threads);
+		}
+		done = new LinkedBlockingQueue<IntegrityCheck>();
+		capacity = new Semaphore(MAX_PENDING);
+		pending = new AtomicInteger();
+	}
+
+	/**
+	 * Creates an executor with daemon threads.
+	 * 
+	 * @param threads
+	 *            The number of threads.
+	 * 
+	 * @return The new executor.
+	 */
+	private static ExecutorService createExecutor(int threads) {
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "fssync-hash-" + count.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Submits a check unless the maximum number of pending checks is reached.
+	 * 
+	 * @param check
+	 *            The check to create the checksums for.
+	 * 
+	 * @return <code>false</code> if the check was not submitted because too many
+	 *         checks are pending, finished checks must be taken before trying
+	 *         again.
+	 */
+	public boolean trySubmit(final IntegrityCheck check) {
+		if (!capacity.tryAcquire()) {
+			return false;
+		}
+		pending.incrementAndGet();
+		if (check.isCheckSource()) {
+			sourceExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					check.setChecksumSource(check.getAlgorithm().hashFile(check.getSource().getFile()));
+					finish(check);
+				}
+			});
+		}
+		destinationExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (check.getMigrateTo() == null) {
+					check.setChecksumDestination(
+							check.getAlgorithm().hashFile(check.getDestination().getFile()));
+				} else {
+					// verify and create the new checksum while reading the file once
+					byte[][] checksums = ChecksumAlgorithm.hashFile(check.getDestination().getFile(),
+							new ChecksumAlgorithm[] { check.getAlgorithm(), check.getMigrateTo() });
+					if (checksums != null) {
+						check.setChecksumDestination(checksums[0]);
+						check.setChecksumMigrated(checksums[1]);
+					}
+				}
+				finish(check);
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Hands a check on when its last checksum was created.
+	 * 
+	 * @param check
+	 *            The check that got a checksum.
+	 */
+	private void finish(IntegrityCheck check) {
+		if (check.hashDone()) {
+			done.add(check);
+		}
+	}
+
+	/**
+	 * Takes a finished check if there is one.
+	 * 
+	 * @return The finished check or <code>null</code>.
+	 */
+	public IntegrityCheck poll() {
+		return taken(done.poll());
+	}
+
+	/**
+	 * Takes a finished check, waits if there is none yet.
+	 * 
+	 * @param timeout
+	 *            The maximum time to wait in milliseconds.
+	 * 
+	 * @return The finished check or <code>null</code> if the time elapsed.
+	 * 
+	 * @throws InterruptedException
+	 *             if the thread was interrupted while waiting.
+	 */
+	public IntegrityCheck take(long timeout) throws InterruptedException {
+		return taken(done.poll(timeout, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * Releases the capacity of a taken check.
+	 * 
+	 * @param check
+	 *            The taken check or <code>null</code>.
+	 * 
+	 * @return The check.
+	 */
+	private IntegrityCheck taken(IntegrityCheck check) {
+		if (check != null) {
+			pending.decrementAndGet();
+			capacity.release();
+		}
+		return check;
+	}
+
+	/**
+	 * Gets whether there are submitted checks that were not taken yet.
+	 * 
+	 * @return <code>true</code> if there are pending checks.
+	 */
+	public boolean hasPending() {
+		return pending.get() > 0;
+	}
+
+	/**
+	 * Stops all executors, checks that were not started are dropped.
+	 */
+	public void shutdown() {
+		sourceExecutor.shutdownNow();
+		destinationExecutor.shutdownNow();
+	}
+}
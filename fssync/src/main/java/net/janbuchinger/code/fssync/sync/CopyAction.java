@@ -20,7 +20,11 @@ import java.io.File;
 public final class CopyAction {
 
 	private final File source;
+	private final long sourceLength;
+	private final long sourceModified;
 	private final File destination;
+	private final long destinationLength;
+	private final long destinationModified;
 	private final String relativePath;
 	private final boolean isNew;
 	private final int direction;
@@ -31,10 +35,23 @@ public final class CopyAction {
 	public final static int DIR_BACKUP = 0;
 	public final static int DIR_RESTORE = 1;
 
-	public CopyAction(File source, File destination, String relativePath, boolean isNew, int direction) {
+	public CopyAction(ScannedFile source, File destination, ScannedFile existing, boolean isNew,
+			int direction) {
+		this(source.getFile(), source.getLength(), source.getModified(), destination,
+				existing == null ? 0 : existing.getLength(), existing == null ? 0 : existing.getModified(),
+				source.getRelativePath(), isNew, direction);
+	}
+
+	public CopyAction(File source, long sourceLength, long sourceModified, File destination,
+			long destinationLength, long destinationModified, String relativePath, boolean isNew,
+			int direction) {
 		this.direction = direction;
 		this.source = source;
+		this.sourceLength = sourceLength;
+		this.sourceModified = sourceModified;
 		this.destination = destination;
+		this.destinationLength = destinationLength;
+		this.destinationModified = destinationModified;
 		this.relativePath = relativePath;
 		this.isNew = isNew;
 
@@ -58,6 +75,22 @@ public final class CopyAction {
 		return destination;
 	}
 
+	public final long getSourceLength() {
+		return sourceLength;
+	}
+
+	public final long getSourceModified() {
+		return sourceModified;
+	}
+
+	public final long getDestinationLength() {
+		return destinationLength;
+	}
+
+	public final long getDestinationModified() {
+		return destinationModified;
+	}
+
 	public final boolean isNew() {
 		return isNew;
 	}
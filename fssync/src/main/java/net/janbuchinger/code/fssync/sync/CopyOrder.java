@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Vector;
+
+import net.janbuchinger.code.fssync.Operation;
+
+/**
+ * Orders the copy actions of a synchronization by the copy order of the
+ * <code>Operation</code> so that a synchronization with a time budget protects
+ * as many files as possible before the deadline.
+ * <p>
+ * The sort is stable, files of equal rank keep the order of the analysis.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see Operation#getCopyOrder()
+ */
+public final class CopyOrder {
+
+	private CopyOrder() {
+	}
+
+	/**
+	 * Sorts a list of copy actions.
+	 * 
+	 * @param copyActions
+	 *            The list to sort.
+	 * @param copyOrder
+	 *            One of the COPY_ORDER constants of <code>Operation</code>.
+	 * @param priorityPaths
+	 *            The relative paths to copy first in the order of their priority
+	 *            if the copy order is <code>COPY_ORDER_PRIORITY</code>.
+	 */
+	public static void sort(List<CopyAction> copyActions, int copyOrder, Vector<String> priorityPaths) {
+		switch (copyOrder) {
+		case Operation.COPY_ORDER_SMALLEST:
+			Collections.sort(copyActions, new Comparator<CopyAction>() {
+				@Override
+				public int compare(CopyAction c1, CopyAction c2) {
+					return Long.compare(c1.getSourceLength(), c2.getSourceLength());
+				}
+			});
+			break;
+		case Operation.COPY_ORDER_NEWEST:
+			Collections.sort(copyActions, new Comparator<CopyAction>() {
+				@Override
+				public int compare(CopyAction c1, CopyAction c2) {
+					return Long.compare(c2.getSourceModified(), c1.getSourceModified());
+				}
+			});
+			break;
+		case Operation.COPY_ORDER_PRIORITY:
+			final Vector<String> prefixes = new Vector<String>();
+			for (String priorityPath : priorityPaths) {
+				priorityPath = priorityPath.trim().replace('/', File.separatorChar).replace('\\',
+						File.separatorChar);
+				// remove leading and trailing separators
+				while (priorityPath.startsWith(File.separator)) {
+					priorityPath = priorityPath.substring(1);
+				}
+				while (priorityPath.endsWith(File.separator)) {
+					priorityPath = priorityPath.substring(0, priorityPath.length() - 1);
+				}
+				if (priorityPath.length() > 0) {
+					prefixes.add(priorityPath);
+				}
+			}
+			if (prefixes.size() == 0) {
+				return;
+			}
+			Collections.sort(copyActions, new Comparator<CopyAction>() {
+				@Override
+				public int compare(CopyAction c1, CopyAction c2) {
+					return Integer.compare(rank(c1.getRelativePath(), prefixes),
+							rank(c2.getRelativePath(), prefixes));
+				}
+			});
+			break;
+		default:
+			// keep the order of the analysis
+			break;
+		}
+	}
+
+	/**
+	 * Gets the priority of a relative path.
+	 * 
+	 * @param relativePath
+	 *            The relative path of the file.
+	 * @param prefixes
+	 *            The priority paths.
+	 * 
+	 * @return The index of the first priority path that contains the file or
+	 *         the number of priority paths if there is none.
+	 */
+	private static int rank(String relativePath, Vector<String> prefixes) {
+		String prefix;
+		for (int i = 0; i < prefixes.size(); i++) {
+			prefix = prefixes.get(i);
+			if (relativePath.equals(prefix) || (relativePath.startsWith(prefix)
+					&& relativePath.charAt(prefix.length()) == File.separatorChar)) {
+				return i;
+			}
+		}
+		return prefixes.size();
+	}
+}
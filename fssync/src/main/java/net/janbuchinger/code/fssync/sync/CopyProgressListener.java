@@ -1,5 +1,5 @@
 /*
- * Copyright 2018 Jan Buchinger
+ * Copyright 2017-2018 Jan Buchinger
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -13,22 +13,23 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package net.janbuchinger.code.fssync.sync.ui;
-
-import java.util.Vector;
-
-public class RunStatusMessageUpdate implements Runnable {
-	private final SynchronizationProcessDialog spd;
-	private final Vector<StatusMessage> messages;
-	
-	public RunStatusMessageUpdate(SynchronizationProcessDialog spd, Vector<StatusMessage> messages) {
-		this.spd = spd;
-		this.messages = messages;
-	}
-	
-	@Override
-	public void run() {
-		spd.passMessages(messages);
-	}
+package net.janbuchinger.code.fssync.sync;
 
+/**
+ * Receives the progress of a single file copied by a <code>FileCopier</code>.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see FileCopier
+ */
+public interface CopyProgressListener {
+	/**
+	 * Called after each chunk that was copied.
+	 * 
+	 * @param copied
+	 *            The number of bytes of the current file copied so far.
+	 * 
+	 * @return <code>false</code> to cancel the copy.
+	 */
+	public boolean progress(long copied);
 }
@@ -0,0 +1,373 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import java.io.File;
+import java.nio.file.FileStore;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The <code>CopyScheduler</code> executes copy actions with a pool of worker
+ * threads.
+ * <p>
+ * Concurrency is limited per device: every file store gets a number of
+ * permits, one if it is on a rotational disk, so spinning disks are not
+ * slowed down by seeking between concurrent streams, otherwise the configured
+ * number of copy threads. A copy holds one permit of its source and one of its
+ * destination file store, a copy within one file store holds a single permit.
+ * A disk that takes part in several pairs of source and destination is
+ * therefore never accessed by more streams than it permits.
+ * <p>
+ * The copy actions are grouped into lanes by the file stores of their source
+ * and destination files. The file store is resolved once for the source and
+ * the target directory of the operation and once for every mount point below
+ * them, only files outside of these directories are resolved by directory.
+ * A worker takes the next copy action of the first lane whose file stores have
+ * a free permit and waits if there is none.
+ * <p>
+ * Every worker owns a <code>FileCopier</code>. When a <code>CopyTask</code>
+ * reports a cancellation no further copy actions are started and
+ * <code>run()</code> returns after the running copies ended.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see CopyTask
+ * @see BlockDevices
+ */
+public final class CopyScheduler {
+	/**
+	 * The number of copy threads per device if the setting is automatic.
+	 */
+	public final static int DEFAULT_COPY_THREADS = 4;
+
+	/**
+	 * The number of concurrent copies on devices without rotational disks.
+	 */
+	private final int copyThreads;
+	/**
+	 * true if the workers' file copiers verify the copied files.
+	 */
+	private final boolean verify;
+	/**
+	 * The lock the workers wait on while no lane can be started.
+	 */
+	private final Object permitsReleased;
+
+	/**
+	 * Constructs a new <code>CopyScheduler</code>.
+	 * 
+	 * @param copyThreads
+	 *            The number of concurrent copies per device without rotational
+	 *            disks, 0 for automatic.
+	 * @param verify
+	 *            <code>true</code> to read back and check every copied file.
+	 */
+	public CopyScheduler(int copyThreads, boolean verify) {
+		this.copyThreads = copyThreads > 0 ? copyThreads : DEFAULT_COPY_THREADS;
+		this.verify = verify;
+		permitsReleased = new Object();
+	}
+
+	/**
+	 * Executes the copy actions and waits until all workers ended.
+	 * 
+	 * @param copyActions
+	 *            The copy actions to execute in the order they should be started.
+	 * @param source
+	 *            The source directory of the operation.
+	 * @param target
+	 *            The target directory of the operation.
+	 * @param task
+	 *            The task that copies a single file.
+	 */
+	public void run(List<CopyAction> copyActions, File source, File target, CopyTask task) {
+		// the file stores by directory
+		HashMap<String, FileStore> stores = new HashMap<String, FileStore>();
+		// the directories that share one file store with all their content
+		Vector<String> storeRoots = new Vector<String>();
+		storeRoots.add(source.getAbsolutePath());
+		storeRoots.add(target.getAbsolutePath());
+		String mountPoint;
+		for (File mount : BlockDevices.getMountPoints()) {
+			mountPoint = mount.getAbsolutePath();
+			if (isWithin(mountPoint, storeRoots.get(0)) || isWithin(mountPoint, storeRoots.get(1))) {
+				storeRoots.add(mountPoint);
+			}
+		}
+		// the deepest directory first so a file gets the store of its closest mount
+		Collections.sort(storeRoots, new Comparator<String>() {
+			@Override
+			public int compare(String s1, String s2) {
+				return s2.length() - s1.length();
+			}
+		});
+		// the permits by file store, unknown file stores share one set of permits
+		HashMap<FileStore, Semaphore> devices = new HashMap<FileStore, Semaphore>();
+		// group the copy actions by source and destination file store
+		LinkedHashMap<String, Lane> lanes = new LinkedHashMap<String, Lane>();
+		FileStore sourceStore;
+		FileStore destinationStore;
+		String key;
+		Lane lane;
+		for (CopyAction copyAction : copyActions) {
+			sourceStore = getFileStore(stores, storeRoots, copyAction.getSource().getParentFile());
+			destinationStore = getFileStore(stores, storeRoots,
+					copyAction.getDestination().getParentFile());
+			key = String.valueOf(sourceStore) + "\n" + String.valueOf(destinationStore);
+			lane = lanes.get(key);
+			if (lane == null) {
+				lane = new Lane(getDevice(devices, sourceStore), getDevice(devices, destinationStore));
+				lanes.put(key, lane);
+			}
+			lane.queue.add(copyAction);
+		}
+		// no more copies can run at once than there are permits
+		int permits = 0;
+		for (Semaphore device : devices.values()) {
+			permits += device.availablePermits();
+		}
+		Vector<Lane> laneList = new Vector<Lane>(lanes.values());
+		// start the workers
+		AtomicBoolean cancelled = new AtomicBoolean(false);
+		Vector<Thread> workers = new Vector<Thread>();
+		Thread worker;
+		for (int i = 0; i < Math.min(permits, copyActions.size()); i++) {
+			worker = new Thread(new Worker(laneList, task, cancelled), "fssync-copy-" + i);
+			worker.setDaemon(true);
+			worker.start();
+			workers.add(worker);
+		}
+		// wait for all workers
+		boolean interrupted = false;
+		for (Thread w : workers) {
+			while (w.isAlive()) {
+				try {
+					w.join();
+				} catch (InterruptedException e) {
+					// do not start further copies but wait for the running ones
+					cancelled.set(true);
+					synchronized (permitsReleased) {
+						permitsReleased.notifyAll();
+					}
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Gets the permits of a file store and creates them on first use.
+	 * 
+	 * @param devices
+	 *            The permits by file store.
+	 * @param store
+	 *            The file store or <code>null</code> if it is unknown.
+	 * 
+	 * @return The permits of the file store.
+	 */
+	private Semaphore getDevice(HashMap<FileStore, Semaphore> devices, FileStore store) {
+		Semaphore device = devices.get(store);
+		if (device == null) {
+			device = new Semaphore(BlockDevices.isRotational(store) ? 1 : copyThreads);
+			devices.put(store, device);
+		}
+		return device;
+	}
+
+	/**
+	 * Gets the file store of a directory. The file store of a directory within
+	 * one of the store roots is the file store of the deepest such root.
+	 * 
+	 * @param stores
+	 *            The file stores resolved so far by directory.
+	 * @param storeRoots
+	 *            The directories that share one file store with all their
+	 *            content, the deepest first.
+	 * @param dir
+	 *            The directory.
+	 * 
+	 * @return The file store or <code>null</code> if it can not be determined.
+	 */
+	private static FileStore getFileStore(HashMap<String, FileStore> stores, Vector<String> storeRoots,
+			File dir) {
+		String path = dir.getAbsolutePath();
+		for (String storeRoot : storeRoots) {
+			if (path.equals(storeRoot) || isWithin(path, storeRoot)) {
+				path = storeRoot;
+				break;
+			}
+		}
+		if (stores.containsKey(path)) {
+			return stores.get(path);
+		}
+		FileStore store = BlockDevices.getFileStore(new File(path));
+		stores.put(path, store);
+		return store;
+	}
+
+	/**
+	 * Checks if a path is located below a directory.
+	 * 
+	 * @param path
+	 *            The absolute path.
+	 * @param dir
+	 *            The absolute path of the directory.
+	 * 
+	 * @return <code>true</code> if the path is below the directory.
+	 */
+	static boolean isWithin(String path, String dir) {
+		if (!dir.endsWith(File.separator)) {
+			dir += File.separator;
+		}
+		return path.length() > dir.length() && path.startsWith(dir);
+	}
+
+	/**
+	 * The copy actions between one pair of file stores.
+	 */
+	private final static class Lane {
+		/**
+		 * The permits of the source file store.
+		 */
+		private final Semaphore source;
+		/**
+		 * The permits of the destination file store, the same as the source
+		 * permits for copies within one file store.
+		 */
+		private final Semaphore destination;
+		/**
+		 * The copy actions that were not started yet.
+		 */
+		private final ConcurrentLinkedQueue<CopyAction> queue;
+
+		private Lane(Semaphore source, Semaphore destination) {
+			this.source = source;
+			this.destination = destination;
+			queue = new ConcurrentLinkedQueue<CopyAction>();
+		}
+
+		/**
+		 * Takes a permit of both file stores if both have one available.
+		 * 
+		 * @return <code>true</code> if the permits were taken.
+		 */
+		private boolean tryAcquire() {
+			if (!source.tryAcquire()) {
+				return false;
+			}
+			if (destination != source && !destination.tryAcquire()) {
+				source.release();
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Gives back the permits taken by <code>tryAcquire()</code>.
+		 */
+		private void release() {
+			if (destination != source) {
+				destination.release();
+			}
+			source.release();
+		}
+	}
+
+	/**
+	 * Takes copy actions from the lanes until all are empty or the process was
+	 * cancelled.
+	 */
+	private final class Worker implements Runnable {
+		private final Vector<Lane> lanes;
+		private final CopyTask task;
+		private final AtomicBoolean cancelled;
+
+		private Worker(Vector<Lane> lanes, CopyTask task, AtomicBoolean cancelled) {
+			this.lanes = lanes;
+			this.task = task;
+			this.cancelled = cancelled;
+		}
+
+		@Override
+		public void run() {
+			FileCopier fileCopier = new FileCopier(verify);
+			CopyAction copyAction;
+			// true if a lane still has copy actions
+			boolean pending;
+			// true if the permits of a lane were taken in this round
+			boolean acquired;
+			while (!cancelled.get()) {
+				pending = false;
+				acquired = false;
+				for (Lane lane : lanes) {
+					if (cancelled.get()) {
+						break;
+					}
+					if (lane.queue.isEmpty()) {
+						continue;
+					}
+					pending = true;
+					if (!lane.tryAcquire()) {
+						continue;
+					}
+					acquired = true;
+					try {
+						copyAction = lane.queue.poll();
+						if (copyAction != null) {
+							task.copy(copyAction, fileCopier);
+						}
+					} catch (SynchronizationCancelledException e) {
+						cancelled.set(true);
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+					} finally {
+						lane.release();
+						// let waiting workers try the released file stores
+						synchronized (permitsReleased) {
+							permitsReleased.notifyAll();
+						}
+					}
+					// start over with the first lane to keep the planned order
+					break;
+				}
+				if (!pending) {
+					break;
+				}
+				if (!acquired && !cancelled.get()) {
+					// every lane with copy actions is busy, wait for a released permit
+					synchronized (permitsReleased) {
+						try {
+							permitsReleased.wait(100);
+						} catch (InterruptedException e) {
+							cancelled.set(true);
+						}
+					}
+				}
+			}
+		}
+	}
+}
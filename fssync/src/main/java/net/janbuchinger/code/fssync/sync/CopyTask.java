@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+/**
+ * Copies a single file for a <code>CopyScheduler</code>.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see CopyScheduler
+ */
+public interface CopyTask {
+	/**
+	 * Copies the file of a copy action. Errors of single files are handled by the
+	 * task and do not stop the scheduler.
+	 * 
+	 * @param copyAction
+	 *            The copy action to execute.
+	 * @param fileCopier
+	 *            The file copier owned by the calling worker thread.
+	 * 
+	 * @throws SynchronizationCancelledException
+	 *             if the copy process was cancelled, no further files are
+	 *             started.
+	 */
+	public void copy(CopyAction copyAction, FileCopier fileCopier) throws SynchronizationCancelledException;
+}
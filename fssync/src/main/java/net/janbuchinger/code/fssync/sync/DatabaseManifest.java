@@ -0,0 +1,243 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Small property files that make the databases of an <code>Operation</code>
+ * identifiable without opening or copying them.
+ * <p>
+ * The target manifest (".fs.manifest" in the target directory) holds the id of
+ * the target database together with its length and last modified time at the
+ * time of the last publication. It is only trusted while the target database
+ * still has this length and time.
+ * <p>
+ * The source manifest (".fs.edit.manifest" in the source directory) maps
+ * database ids to the names of the editable database files, so that the
+ * editable database of an <code>Operation</code> is found without opening all
+ * editable databases of the source directory.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see OnlineDB#getEditableDBFile(File, File)
+ * @see DatabasePublisher
+ */
+public final class DatabaseManifest {
+	/**
+	 * The name of the target manifest.
+	 */
+	public final static String TARGET_MANIFEST = ".fs.manifest";
+	/**
+	 * The name of the source manifest.
+	 */
+	public final static String SOURCE_MANIFEST = ".fs.edit.manifest";
+	/**
+	 * key for the database id (target manifest).
+	 */
+	private final static String key_dbId = "dbId";
+	/**
+	 * key for the length of the target database (target manifest).
+	 */
+	private final static String key_length = "length";
+	/**
+	 * key for the last modified time of the target database (target manifest).
+	 */
+	private final static String key_modified = "modified";
+
+	private DatabaseManifest() {}
+
+	/**
+	 * Gets the target manifest of a target database.
+	 * 
+	 * @param dbDestination
+	 *            The database in the target directory.
+	 * 
+	 * @return The target manifest file.
+	 */
+	public static File getTargetManifest(File dbDestination) {
+		return new File(dbDestination.getParentFile(), TARGET_MANIFEST);
+	}
+
+	/**
+	 * Gets the id of a target database.
+	 * <p>
+	 * The id is read from the target manifest if it matches the target database,
+	 * otherwise the target database is opened read only.
+	 * 
+	 * @param dbDestination
+	 *            The database in the target directory.
+	 * 
+	 * @return The database id or <code>null</code> if it could not be read.
+	 */
+	public static String readTargetDbId(File dbDestination) {
+		Properties manifest = load(getTargetManifest(dbDestination));
+		// the manifest must describe the current target database
+		if (manifest != null
+				&& String.valueOf(dbDestination.length()).equals(manifest.getProperty(key_length))
+				&& String.valueOf(dbDestination.lastModified()).equals(manifest.getProperty(key_modified))) {
+			String dbId = manifest.getProperty(key_dbId);
+			if (dbId != null) {
+				return dbId;
+			}
+		}
+		return OnlineDB.readDbId(dbDestination);
+	}
+
+	/**
+	 * Writes the target manifest after a publication.
+	 * 
+	 * @param dbDestination
+	 *            The published database in the target directory.
+	 * @param dbId
+	 *            The id of the database.
+	 */
+	public static void writeTarget(File dbDestination, String dbId) {
+		Properties manifest = new Properties();
+		manifest.setProperty(key_dbId, dbId);
+		manifest.setProperty(key_length, String.valueOf(dbDestination.length()));
+		manifest.setProperty(key_modified, String.valueOf(dbDestination.lastModified()));
+		store(manifest, getTargetManifest(dbDestination));
+	}
+
+	/**
+	 * Gets the editable database registered for a database id.
+	 * 
+	 * @param sourceDir
+	 *            The source directory.
+	 * @param dbId
+	 *            The database id.
+	 * 
+	 * @return The registered file or <code>null</code> if no file is registered
+	 *         or if the registered file does not exist.
+	 */
+	public static File getEditableDB(File sourceDir, String dbId) {
+		Properties manifest = load(new File(sourceDir, SOURCE_MANIFEST));
+		if (manifest == null) {
+			return null;
+		}
+		String name = manifest.getProperty(dbId);
+		if (name == null) {
+			return null;
+		}
+		File dbEdit = new File(sourceDir, name);
+		return dbEdit.exists() ? dbEdit : null;
+	}
+
+	/**
+	 * Registers an editable database for a database id in the source manifest.
+	 * 
+	 * @param dbEdit
+	 *            The editable database.
+	 * @param dbId
+	 *            The database id.
+	 */
+	public static void registerEditableDB(File dbEdit, String dbId) {
+		File file = new File(dbEdit.getParentFile(), SOURCE_MANIFEST);
+		Properties manifest = load(file);
+		if (manifest == null) {
+			manifest = new Properties();
+		} else if (dbEdit.getName().equals(manifest.getProperty(dbId))) {
+			return;
+		}
+		// a file name belongs to one database only
+		manifest.values().remove(dbEdit.getName());
+		manifest.setProperty(dbId, dbEdit.getName());
+		store(manifest, file);
+	}
+
+	/**
+	 * Loads a manifest.
+	 * 
+	 * @param file
+	 *            The manifest file.
+	 * 
+	 * @return The manifest or <code>null</code> if it does not exist or could not
+	 *         be read.
+	 */
+	private static Properties load(File file) {
+		if (!file.exists()) {
+			return null;
+		}
+		Properties manifest = new Properties();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			manifest.load(in);
+		} catch (IOException e) {
+			e.printStackTrace();
+			manifest = null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return manifest;
+	}
+
+	/**
+	 * Stores a manifest through a temporary file, so that a manifest is never
+	 * incomplete.
+	 * 
+	 * @param manifest
+	 *            The manifest.
+	 * @param file
+	 *            The manifest file.
+	 */
+	private static void store(Properties manifest, File file) {
+		File tmp = new File(file.getPath() + DatabasePublisher.TMP_SUFFIX);
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(tmp);
+			manifest.store(out, null);
+			out.close();
+			out = null;
+			try {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			// the manifest is only an optimization
+			e.printStackTrace();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			if (tmp.exists() && !tmp.delete()) {
+				System.err.println("Could not delete " + tmp);
+			}
+		}
+	}
+}
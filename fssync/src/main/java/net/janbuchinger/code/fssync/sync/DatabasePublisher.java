@@ -0,0 +1,586 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Publishes the editable database to the target directory by writing only the
+ * database pages that changed since the last publication.
+ * <p>
+ * The digests of all pages of the last published state are kept next to the
+ * editable database in a ".pages" file. A publication compares the pages of
+ * the editable database with these digests, or with the target database itself
+ * if the digests are missing or the target was modified in the meantime, and
+ * writes the changed pages to a journal in the target directory
+ * (".fs.db.journal"). The journal is written to a temporary file first, synced
+ * and renamed, which makes it the commit point. Then the pages are written into
+ * the target database and the journal is deleted.
+ * <p>
+ * If a publication is interrupted, <code>recover()</code> discards an
+ * uncommitted journal or writes a committed journal into the target database
+ * again, so that the target database is either in the old or in the new state
+ * before it is read.
+ * <p>
+ * If most pages changed, the editable database is copied to a temporary file
+ * in the target directory and renamed over the target database instead.
+ * <p>
+ * After each publication the <code>DatabaseManifest</code>s are updated.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see OnlineDB
+ */
+public final class DatabasePublisher {
+	/**
+	 * The suffix of the journal of a target database.
+	 */
+	public final static String JOURNAL_SUFFIX = ".journal";
+	/**
+	 * The suffix of the page digests of an editable database.
+	 */
+	public final static String PAGES_SUFFIX = ".pages";
+	/**
+	 * The suffix of files that are not complete yet.
+	 */
+	public final static String TMP_SUFFIX = ".tmp";
+	/**
+	 * The magic number that starts and ends a journal ("FSDBJRNL").
+	 */
+	private final static long JOURNAL_MAGIC = 0x465344424a524e4cL;
+	/**
+	 * The magic number that starts a page digests file ("FSDBPAGE").
+	 */
+	private final static long PAGES_MAGIC = 0x4653444250414745L;
+	/**
+	 * The page size used if the database header can not be read.
+	 */
+	private final static int DEFAULT_PAGE_SIZE = 4096;
+	/**
+	 * The length of a page digest in bytes.
+	 */
+	private final static int DIGEST_LENGTH = 8;
+	/**
+	 * The share of changed pages from which the whole database is copied.
+	 */
+	private final static double FULL_COPY_RATIO = 0.5;
+
+	private DatabasePublisher() {}
+
+	/**
+	 * Publishes the editable database to the target database.
+	 * <p>
+	 * Afterwards the target database has the same content and the same last
+	 * modified time as the editable database.
+	 * 
+	 * @param dbEdit
+	 *            The editable database in the source directory.
+	 * @param dbDestination
+	 *            The database in the target directory.
+	 * 
+	 * @throws IOException
+	 *             if the target database could not be written. The target
+	 *             database is in the old state unless a journal was committed, in
+	 *             which case <code>recover()</code> completes the publication.
+	 */
+	public static void publish(File dbEdit, File dbDestination) throws IOException {
+		// complete an interrupted publication first
+		recover(dbDestination);
+		int pageSize = readPageSize(dbEdit);
+		long length = dbEdit.length();
+		byte[] digests = digestPages(dbEdit, pageSize);
+		// the digests of the target database
+		byte[] published = null;
+		if (dbDestination.exists()) {
+			published = readPages(dbEdit, dbDestination, pageSize);
+			if (published == null) {
+				// read the target database if the digests are not valid
+				published = digestPages(dbDestination, pageSize);
+			}
+		}
+		int pageCount = digests.length / DIGEST_LENGTH;
+		// collect the changed pages
+		int[] changed = new int[pageCount];
+		int changedCount = 0;
+		for (int i = 0; i < pageCount; i++) {
+			if (published == null || !samePage(digests, published, i)) {
+				changed[changedCount++] = i;
+			}
+		}
+		if (published == null || changedCount > pageCount * FULL_COPY_RATIO) {
+			publishFull(dbEdit, dbDestination);
+		} else if (changedCount > 0 || length != dbDestination.length()) {
+			File journal = getJournal(dbDestination);
+			writeJournal(dbEdit, journal, length, pageSize, changed, changedCount);
+			if (!applyJournal(journal, dbDestination)) {
+				throw new IOException("Journal '" + journal + "' is invalid");
+			}
+			if (!journal.delete()) {
+				System.err.println("Could not delete the journal " + journal);
+			}
+		}
+		dbDestination.setLastModified(dbEdit.lastModified());
+		writePages(dbEdit, dbDestination, pageSize, digests);
+		// make both databases identifiable without opening them
+		String dbId = OnlineDB.readDbId(dbEdit);
+		if (dbId != null) {
+			DatabaseManifest.writeTarget(dbDestination, dbId);
+			DatabaseManifest.registerEditableDB(dbEdit, dbId);
+		}
+	}
+
+	/**
+	 * Completes or discards an interrupted publication of a target database.
+	 * <p>
+	 * This method must be called before the target database is read.
+	 * 
+	 * @param dbDestination
+	 *            The database in the target directory.
+	 * 
+	 * @throws IOException
+	 *             if a committed journal could not be written into the target
+	 *             database.
+	 */
+	public static void recover(File dbDestination) throws IOException {
+		File journal = getJournal(dbDestination);
+		// uncommitted files, the target database is untouched
+		deleteIfExists(new File(journal.getPath() + TMP_SUFFIX));
+		deleteIfExists(new File(dbDestination.getPath() + TMP_SUFFIX));
+		if (journal.exists()) {
+			// a committed journal: write the pages again
+			if (!applyJournal(journal, dbDestination)) {
+				System.err.println("Discarding invalid journal " + journal);
+			}
+			if (!journal.delete()) {
+				throw new IOException("Could not delete the journal " + journal);
+			}
+		}
+	}
+
+	/**
+	 * Gets the journal of a target database.
+	 * 
+	 * @param dbDestination
+	 *            The database in the target directory.
+	 * 
+	 * @return The journal file.
+	 */
+	public static File getJournal(File dbDestination) {
+		return new File(dbDestination.getPath() + JOURNAL_SUFFIX);
+	}
+
+	/**
+	 * Copies the editable database to a temporary file in the target directory
+	 * and renames it over the target database.
+	 * 
+	 * @param dbEdit
+	 *            The editable database.
+	 * @param dbDestination
+	 *            The target database.
+	 * 
+	 * @throws IOException
+	 *             if the copy failed.
+	 */
+	private static void publishFull(File dbEdit, File dbDestination) throws IOException {
+		File tmp = new File(dbDestination.getPath() + TMP_SUFFIX);
+		try {
+			FileUtils.copyFile(dbEdit, tmp);
+			FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE);
+			try {
+				channel.force(true);
+			} finally {
+				channel.close();
+			}
+			move(tmp, dbDestination);
+		} finally {
+			deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Writes the changed pages of the editable database to a committed journal.
+	 * 
+	 * @param dbEdit
+	 *            The editable database.
+	 * @param journal
+	 *            The journal to write.
+	 * @param length
+	 *            The length of the editable database.
+	 * @param pageSize
+	 *            The page size.
+	 * @param changed
+	 *            The indices of the changed pages.
+	 * @param changedCount
+	 *            The number of changed pages.
+	 * 
+	 * @throws IOException
+	 *             if the journal could not be written.
+	 */
+	private static void writeJournal(File dbEdit, File journal, long length, int pageSize, int[] changed,
+			int changedCount) throws IOException {
+		File tmp = new File(journal.getPath() + TMP_SUFFIX);
+		RandomAccessFile in = new RandomAccessFile(dbEdit, "r");
+		FileOutputStream fos = null;
+		try {
+			fos = new FileOutputStream(tmp);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16));
+			byte[] page = new byte[pageSize];
+			int n;
+			out.writeLong(JOURNAL_MAGIC);
+			out.writeLong(length);
+			out.writeInt(changedCount);
+			for (int i = 0; i < changedCount; i++) {
+				// the last page may be incomplete
+				n = (int) Math.min(pageSize, length - (long) changed[i] * pageSize);
+				in.seek((long) changed[i] * pageSize);
+				in.readFully(page, 0, n);
+				out.writeLong((long) changed[i] * pageSize);
+				out.writeInt(n);
+				out.write(page, 0, n);
+			}
+			out.writeLong(JOURNAL_MAGIC);
+			out.flush();
+			// the journal must be on disk before it is committed
+			fos.getFD().sync();
+			fos.close();
+			fos = null;
+			// commit
+			move(tmp, journal);
+		} finally {
+			in.close();
+			if (fos != null) {
+				fos.close();
+			}
+			deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Writes the pages of a journal into the target database.
+	 * <p>
+	 * The journal is read completely before the first page is written, so an
+	 * incomplete journal does not touch the target database.
+	 * 
+	 * @param journal
+	 *            The journal.
+	 * @param dbDestination
+	 *            The target database.
+	 * 
+	 * @return <code>false</code> if the journal is invalid.
+	 * 
+	 * @throws IOException
+	 *             if the target database could not be written.
+	 */
+	private static boolean applyJournal(File journal, File dbDestination) throws IOException {
+		if (!readJournal(journal, null)) {
+			return false;
+		}
+		RandomAccessFile out = new RandomAccessFile(dbDestination, "rw");
+		try {
+			readJournal(journal, out);
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		return true;
+	}
+
+	/**
+	 * Reads a journal and optionally writes its pages.
+	 * 
+	 * @param journal
+	 *            The journal.
+	 * @param out
+	 *            The target database or <code>null</code> to only validate the
+	 *            journal.
+	 * 
+	 * @return <code>true</code> if the journal is valid.
+	 * 
+	 * @throws IOException
+	 *             if the journal could not be read or the target database could
+	 *             not be written.
+	 */
+	private static boolean readJournal(File journal, RandomAccessFile out) throws IOException {
+		DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(journal), 1 << 16));
+		try {
+			if (in.readLong() != JOURNAL_MAGIC) {
+				return false;
+			}
+			long length = in.readLong();
+			int count = in.readInt();
+			byte[] page = new byte[0];
+			long position;
+			int n;
+			for (int i = 0; i < count; i++) {
+				position = in.readLong();
+				n = in.readInt();
+				if (n < 0 || position < 0 || position + n > length) {
+					return false;
+				}
+				if (page.length < n) {
+					page = new byte[n];
+				}
+				in.readFully(page, 0, n);
+				if (out != null) {
+					out.seek(position);
+					out.write(page, 0, n);
+				}
+			}
+			if (in.readLong() != JOURNAL_MAGIC) {
+				return false;
+			}
+			if (out != null) {
+				out.setLength(length);
+			}
+			return true;
+		} catch (EOFException e) {
+			return false;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads the page size from the header of an SQLite database.
+	 * 
+	 * @param db
+	 *            The database file.
+	 * 
+	 * @return The page size in bytes.
+	 * 
+	 * @throws IOException
+	 *             if the database could not be read.
+	 */
+	private static int readPageSize(File db) throws IOException {
+		if (db.length() < 100) {
+			return DEFAULT_PAGE_SIZE;
+		}
+		RandomAccessFile in = new RandomAccessFile(db, "r");
+		try {
+			in.seek(16);
+			int pageSize = in.readUnsignedShort();
+			// 1 stands for 65536
+			if (pageSize == 1) {
+				return 65536;
+			}
+			return pageSize >= 512 ? pageSize : DEFAULT_PAGE_SIZE;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Creates the digests of all pages of a file.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @param pageSize
+	 *            The page size.
+	 * 
+	 * @return The digests of all pages, <code>DIGEST_LENGTH</code> bytes per
+	 *         page.
+	 * 
+	 * @throws IOException
+	 *             if the file could not be read.
+	 */
+	private static byte[] digestPages(File file, int pageSize) throws IOException {
+		long length = file.length();
+		int pageCount = (int) ((length + pageSize - 1) / pageSize);
+		byte[] digests = new byte[pageCount * DIGEST_LENGTH];
+		byte[] page = new byte[pageSize];
+		XxHash64 hasher;
+		int n;
+		InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 20);
+		try {
+			for (int i = 0; i < pageCount; i++) {
+				n = (int) Math.min(pageSize, length - (long) i * pageSize);
+				IOUtils.readFully(in, page, 0, n);
+				hasher = new XxHash64();
+				hasher.update(page, 0, n);
+				System.arraycopy(hasher.getDigest(), 0, digests, i * DIGEST_LENGTH, DIGEST_LENGTH);
+			}
+		} finally {
+			in.close();
+		}
+		return digests;
+	}
+
+	/**
+	 * Checks if a page has the same digest in two digest arrays.
+	 * 
+	 * @param digests
+	 *            The digests of the new state.
+	 * @param published
+	 *            The digests of the published state.
+	 * @param page
+	 *            The page index.
+	 * 
+	 * @return <code>true</code> if the page did not change.
+	 */
+	private static boolean samePage(byte[] digests, byte[] published, int page) {
+		int offset = page * DIGEST_LENGTH;
+		if (offset + DIGEST_LENGTH > published.length) {
+			return false;
+		}
+		for (int i = offset; i < offset + DIGEST_LENGTH; i++) {
+			if (digests[i] != published[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the page digests file of an editable database.
+	 * 
+	 * @param dbEdit
+	 *            The editable database.
+	 * 
+	 * @return The page digests file.
+	 */
+	private static File getPagesFile(File dbEdit) {
+		return new File(dbEdit.getPath() + PAGES_SUFFIX);
+	}
+
+	/**
+	 * Reads the page digests of the last publication.
+	 * 
+	 * @param dbEdit
+	 *            The editable database.
+	 * @param dbDestination
+	 *            The target database.
+	 * @param pageSize
+	 *            The current page size.
+	 * 
+	 * @return The page digests or <code>null</code> if they are missing or if the
+	 *         target database was modified since.
+	 */
+	private static byte[] readPages(File dbEdit, File dbDestination, int pageSize) {
+		File pages = getPagesFile(dbEdit);
+		if (!pages.exists()) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(pages)));
+			if (in.readLong() != PAGES_MAGIC || in.readLong() != dbDestination.length()
+					|| in.readLong() != dbDestination.lastModified() || in.readInt() != pageSize) {
+				return null;
+			}
+			byte[] digests = new byte[in.readInt()];
+			in.readFully(digests);
+			return digests;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the page digests of the current publication.
+	 * 
+	 * @param dbEdit
+	 *            The editable database.
+	 * @param dbDestination
+	 *            The target database as published.
+	 * @param pageSize
+	 *            The page size.
+	 * @param digests
+	 *            The page digests.
+	 */
+	private static void writePages(File dbEdit, File dbDestination, int pageSize, byte[] digests) {
+		File pages = getPagesFile(dbEdit);
+		File tmp = new File(pages.getPath() + TMP_SUFFIX);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.writeLong(PAGES_MAGIC);
+				out.writeLong(dbDestination.length());
+				out.writeLong(dbDestination.lastModified());
+				out.writeInt(pageSize);
+				out.writeInt(digests.length);
+				out.write(digests);
+			} finally {
+				out.close();
+			}
+			move(tmp, pages);
+		} catch (IOException e) {
+			// the next publication reads the target database instead
+			e.printStackTrace();
+			deleteIfExists(pages);
+		} finally {
+			deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Renames a file over another file, atomically if supported.
+	 * 
+	 * @param source
+	 *            The file to rename.
+	 * @param destination
+	 *            The file to replace.
+	 * 
+	 * @throws IOException
+	 *             if the file could not be renamed.
+	 */
+	private static void move(File source, File destination) throws IOException {
+		try {
+			Files.move(source.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Deletes a file if it exists.
+	 * 
+	 * @param file
+	 *            The file to delete.
+	 */
+	private static void deleteIfExists(File file) {
+		if (file.exists() && !file.delete()) {
+			System.err.println("Could not delete " + file);
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+/**
+ * The <code>DatabaseWriterThread</code> class writes the changes recorded in
+ * the index of an <code>OnlineDB</code> in batches while a synchronization is
+ * running.
+ * <p>
+ * The copy and delete loops only record their results in memory. This thread
+ * commits them as one transaction as soon as a number of changes is pending or
+ * a time interval has passed. <code>close()</code> is the durability barrier
+ * that must be passed before the database is published to the target.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see OnlineDB#flushIndex()
+ */
+public final class DatabaseWriterThread implements Runnable {
+	/**
+	 * The default number of pending changes that triggers a commit.
+	 */
+	public final static int DEFAULT_BATCH_SIZE = 1000;
+	/**
+	 * The default maximum time between two commits in milliseconds.
+	 */
+	public final static long DEFAULT_INTERVAL = 2000;
+	/**
+	 * The time between two checks for pending changes in milliseconds.
+	 */
+	private final static long POLL_INTERVAL = 100;
+
+	/**
+	 * The database to write.
+	 */
+	private final OnlineDB db;
+	/**
+	 * The number of pending changes that triggers a commit.
+	 */
+	private final int batchSize;
+	/**
+	 * The maximum time between two commits in milliseconds.
+	 */
+	private final long interval;
+	/**
+	 * The thread running this writer.
+	 */
+	private Thread thread;
+	/**
+	 * false indicates if the process should be terminated
+	 */
+	private volatile boolean running;
+
+	/**
+	 * Constructs a new <code>DatabaseWriterThread</code> using the default batch
+	 * size and interval.
+	 * 
+	 * @param db
+	 *            The database to write, the index must be loaded.
+	 */
+	public DatabaseWriterThread(OnlineDB db) {
+		this(db, DEFAULT_BATCH_SIZE, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * Constructs a new <code>DatabaseWriterThread</code>.
+	 * 
+	 * @param db
+	 *            The database to write, the index must be loaded.
+	 * @param batchSize
+	 *            The number of pending changes that triggers a commit.
+	 * @param interval
+	 *            The maximum time between two commits in milliseconds.
+	 */
+	public DatabaseWriterThread(OnlineDB db, int batchSize, long interval) {
+		this.db = db;
+		this.batchSize = batchSize;
+		this.interval = interval;
+		running = false;
+	}
+
+	/**
+	 * Starts the writer in a new daemon thread.
+	 */
+	public synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		running = true;
+		thread = new Thread(this, "fssync-db-writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * The database writer thread
+	 */
+	@Override
+	public void run() {
+		// time of the last commit
+		long lastFlush = System.currentTimeMillis();
+		// process loop
+		while (running) {
+			try {
+				Thread.sleep(POLL_INTERVAL);
+			} catch (InterruptedException e) {
+				// woken up by close()
+			}
+			if (!running) {
+				break;
+			}
+			// commit if enough changes are pending or the interval has passed
+			int pending = db.getPendingChangeCount();
+			if (pending >= batchSize
+					|| (pending > 0 && System.currentTimeMillis() - lastFlush >= interval)) {
+				db.flushIndex();
+				lastFlush = System.currentTimeMillis();
+			}
+		} // end of process loop
+	}
+
+	/**
+	 * Terminates the writer, waits until a running commit has completed and
+	 * writes all remaining changes.
+	 * <p>
+	 * After this method returns all results are durable in the database file.
+	 */
+	public synchronized void close() {
+		running = false;
+		if (thread != null) {
+			thread.interrupt();
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+			thread = null;
+		}
+		// write the rest
+		db.flushIndex();
+	}
+}
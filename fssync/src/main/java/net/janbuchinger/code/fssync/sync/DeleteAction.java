@@ -22,6 +22,8 @@ public class DeleteAction {
 	public final static int del_source = 1;
 
 	private final File f;
+	private final long length;
+	private final long modified;
 	private final int location;
 
 	private boolean isSelected;
@@ -30,9 +32,16 @@ public class DeleteAction {
 
 	private final boolean modeRestore;
 
-	public DeleteAction(File f, String relativePath, int location, boolean modeRestore) {
+	public DeleteAction(ScannedFile f, int location, boolean modeRestore) {
+		this(f.getFile(), f.getLength(), f.getModified(), f.getRelativePath(), location, modeRestore);
+	}
+
+	public DeleteAction(File f, long length, long modified, String relativePath, int location,
+			boolean modeRestore) {
 		this.location = location;
 		this.f = f;
+		this.length = length;
+		this.modified = modified;
 		this.relativePath = relativePath;
 		this.modeRestore = modeRestore;
 
@@ -43,6 +52,14 @@ public class DeleteAction {
 		return f;
 	}
 
+	public final long getLength() {
+		return length;
+	}
+
+	public final long getModified() {
+		return modified;
+	}
+
 	public final int getLocation() {
 		return location;
 	}
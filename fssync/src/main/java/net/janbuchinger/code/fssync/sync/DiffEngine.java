@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Vector;
+
+/**
+ * The <code>DiffEngine</code> merges the sorted content of the source file
+ * system, the target file system and the database into one sequence of
+ * <code>DiffEntry</code> objects, one for each relative path.
+ * <p>
+ * All three inputs must be ordered by <code>PathComparator</code>. The merge is
+ * a single linear pass that only looks at the current head of each input, so no
+ * lookups against the file systems or the database are necessary.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see ParallelDirectoryScanner
+ * @see PathComparator
+ */
+public final class DiffEngine implements Iterator<DiffEntry> {
+	/**
+	 * The source file system.
+	 */
+	private final Iterator<ScannedFile> source;
+	/**
+	 * The target file system.
+	 */
+	private final Iterator<ScannedFile> target;
+	/**
+	 * The known files from the database.
+	 */
+	private final Iterator<RelativeFile> known;
+	/**
+	 * The current heads of the inputs, <code>null</code> if exhausted.
+	 */
+	private ScannedFile sourceHead, targetHead;
+	private RelativeFile knownHead;
+
+	/**
+	 * Constructs a new <code>DiffEngine</code>.
+	 * 
+	 * @param source
+	 *            The scanner of the source file system.
+	 * @param target
+	 *            The scanner of the target file system.
+	 * @param known
+	 *            The known files ordered by <code>PathComparator</code>.
+	 * 
+	 * @see DiffEngine#sort(Vector)
+	 */
+	public DiffEngine(Iterator<ScannedFile> source, Iterator<ScannedFile> target,
+			Iterator<RelativeFile> known) {
+		this.source = source;
+		this.target = target;
+		this.known = known;
+		sourceHead = source.hasNext() ? source.next() : null;
+		targetHead = target.hasNext() ? target.next() : null;
+		knownHead = known.hasNext() ? known.next() : null;
+	}
+
+	/**
+	 * Sorts a list of known files by their relative paths in the order required
+	 * by the <code>DiffEngine</code>.
+	 * 
+	 * @param files
+	 *            The list to sort.
+	 * 
+	 * @return The sorted list.
+	 */
+	public static Vector<RelativeFile> sort(Vector<RelativeFile> files) {
+		Collections.sort(files, new Comparator<RelativeFile>() {
+			@Override
+			public int compare(RelativeFile o1, RelativeFile o2) {
+				return PathComparator.INSTANCE.compare(o1.getRelativePath(), o2.getRelativePath());
+			}
+		});
+		return files;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return sourceHead != null || targetHead != null || knownHead != null;
+	}
+
+	@Override
+	public DiffEntry next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		// find the lowest relative path of the three heads
+		String relativePath = null;
+		if (sourceHead != null) {
+			relativePath = sourceHead.getRelativePath();
+		}
+		if (targetHead != null && (relativePath == null
+				|| PathComparator.INSTANCE.compare(targetHead.getRelativePath(), relativePath) < 0)) {
+			relativePath = targetHead.getRelativePath();
+		}
+		if (knownHead != null && (relativePath == null
+				|| PathComparator.INSTANCE.compare(knownHead.getRelativePath(), relativePath) < 0)) {
+			relativePath = knownHead.getRelativePath();
+		}
+		// take all heads with this relative path and advance them
+		ScannedFile sourceFile = null;
+		ScannedFile targetFile = null;
+		RelativeFile knownFile = null;
+		if (sourceHead != null && sourceHead.getRelativePath().equals(relativePath)) {
+			sourceFile = sourceHead;
+			sourceHead = source.hasNext() ? source.next() : null;
+		}
+		if (targetHead != null && targetHead.getRelativePath().equals(relativePath)) {
+			targetFile = targetHead;
+			targetHead = target.hasNext() ? target.next() : null;
+		}
+		if (knownHead != null && knownHead.getRelativePath().equals(relativePath)) {
+			knownFile = knownHead;
+			knownHead = known.hasNext() ? known.next() : null;
+		}
+		return new DiffEntry(relativePath, sourceFile, targetFile, knownFile);
+	}
+}
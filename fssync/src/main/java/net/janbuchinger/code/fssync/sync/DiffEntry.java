@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+/**
+ * One relative path as seen in the source file system, the target file system
+ * and the database. Each side is <code>null</code> if the path was not found
+ * there.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see DiffEngine
+ */
+public class DiffEntry {
+	/**
+	 * The path relative to the source and the target directory.
+	 */
+	private final String relativePath;
+	/**
+	 * The file in the source directory, <code>null</code> if the path is missing
+	 * in the source directory.
+	 */
+	private final ScannedFile source;
+	/**
+	 * The file in the target directory, <code>null</code> if the path is missing
+	 * in the target directory.
+	 */
+	private final ScannedFile target;
+	/**
+	 * The current version recorded in the database, <code>null</code> if the
+	 * path is not recorded.
+	 */
+	private final RelativeFile known;
+
+	/**
+	 * Constructs a new <code>DiffEntry</code>.
+	 * 
+	 * @param relativePath
+	 *            The relative path.
+	 * @param source
+	 *            The file in the source directory or <code>null</code> if the
+	 *            path is missing there.
+	 * @param target
+	 *            The file in the target directory or <code>null</code> if the
+	 *            path is missing there.
+	 * @param known
+	 *            The file recorded in the database or <code>null</code> if the
+	 *            path is not recorded.
+	 */
+	public DiffEntry(String relativePath, ScannedFile source, ScannedFile target, RelativeFile known) {
+		this.relativePath = relativePath;
+		this.source = source;
+		this.target = target;
+		this.known = known;
+	}
+
+	/**
+	 * Gets the relative path.
+	 * 
+	 * @return The path relative to the source and the target directory.
+	 */
+	public final String getRelativePath() {
+		return relativePath;
+	}
+
+	/**
+	 * Gets the file in the source directory.
+	 * 
+	 * @return The file or <code>null</code> if the path is missing in the
+	 *         source directory.
+	 */
+	public final ScannedFile getSource() {
+		return source;
+	}
+
+	/**
+	 * Gets the file in the target directory.
+	 * 
+	 * @return The file or <code>null</code> if the path is missing in the
+	 *         target directory.
+	 */
+	public final ScannedFile getTarget() {
+		return target;
+	}
+
+	/**
+	 * Gets the current version recorded in the database.
+	 * 
+	 * @return The recorded file or <code>null</code> if the path is not
+	 *         recorded.
+	 */
+	public final RelativeFile getKnown() {
+		return known;
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import java.io.File;
+import java.util.Vector;
+
+public final class DirectoryMoveAction {
+
+	private final String relativePathFrom;
+	private final String relativePath;
+	private final File from;
+	private final File to;
+	private final Vector<MoveAction> moveActions;
+	private final long length;
+	private boolean isSelected;
+
+	public DirectoryMoveAction(String relativePathFrom, String relativePath, File from, File to,
+			Vector<MoveAction> moveActions) {
+		this.relativePathFrom = relativePathFrom;
+		this.relativePath = relativePath;
+		this.from = from;
+		this.to = to;
+		this.moveActions = moveActions;
+		long length = 0;
+		for (MoveAction moveAction : moveActions) {
+			length += moveAction.getLength();
+		}
+		this.length = length;
+		isSelected = true;
+	}
+
+	public final String getRelativePathFrom() {
+		return relativePathFrom;
+	}
+
+	public final String getRelativePath() {
+		return relativePath;
+	}
+
+	public final File getFrom() {
+		return from;
+	}
+
+	public final File getTo() {
+		return to;
+	}
+
+	public final Vector<MoveAction> getMoveActions() {
+		return moveActions;
+	}
+
+	public final long getLength() {
+		return length;
+	}
+
+	public final boolean isSelected() {
+		return isSelected;
+	}
+
+	public final void setSelected(boolean isSelected) {
+		this.isSelected = isSelected;
+	}
+
+	@Override
+	public String toString() {
+		return "verschieben ".concat(relativePathFrom).concat(File.separator).concat(" >> ")
+				.concat(relativePath).concat(File.separator).concat(" (" + moveActions.size() + " Dateien)");
+	}
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The <code>FileCopier</code> copies files through <code>FileChannel</code>s
+ * in large chunks.
+ * <p>
+ * Files are written to a temporary file next to the destination file that
+ * carries the suffix <code>.fs.part</code>. The temporary file is extended to
+ * the full length first and then replaces the destination file when it is
+ * complete, so a cancelled or failed copy never leaves a truncated destination
+ * file behind.
+ * <p>
+ * <code>copy()</code> creates the checksum from the same buffers that are
+ * written, so the source file is only read once. Blocks that contain only
+ * zeros are not written and stay holes in the destination file, which keeps
+ * sparse files sparse. Optionally the temporary file is read back and
+ * compared to the checksum before it replaces the destination file.
+ * <code>transfer()</code> needs no checksum and lets the operating system move
+ * the data with <code>transferTo()</code>.
+ * <p>
+ * A <code>CopyProgressListener</code> is notified after every chunk and can
+ * cancel the copy in the middle of a large file.
+ * <p>
+ * The source file is examined when the copy starts and again when it is
+ * complete. A source file that changed in the meantime fails the copy. The
+ * length and modification time of the copied state are available from
+ * <code>getSourceLength()</code> and <code>getSourceModified()</code>.
+ * <p>
+ * A <code>FileCopier</code> reuses its buffer and must not be used by more
+ * than one thread at a time.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see ChecksumAlgorithm
+ */
+public final class FileCopier {
+	/**
+	 * The suffix of files that are being written.
+	 */
+	public final static String PART_SUFFIX = ".fs.part";
+
+	/**
+	 * The size of a chunk in bytes.
+	 */
+	private final static int CHUNK_SIZE = 8 * 1024 * 1024;
+	/**
+	 * The size of a block that is checked for zeros in bytes.
+	 */
+	private final static int BLOCK_SIZE = 64 * 1024;
+
+	/**
+	 * The chunk buffer.
+	 */
+	private final ByteBuffer buffer;
+	/**
+	 * true indicates that the destination file is read back and compared to the
+	 * checksum.
+	 */
+	private final boolean verify;
+	/**
+	 * The length of the last copied source file in bytes.
+	 */
+	private long sourceLength;
+	/**
+	 * The modification time of the last copied source file in milliseconds.
+	 */
+	private long sourceModified;
+
+	/**
+	 * Constructs a new <code>FileCopier</code>.
+	 * 
+	 * @param verify
+	 *            <code>true</code> to read back and check every file copied by
+	 *            <code>copy()</code> before it replaces the destination file.
+	 */
+	public FileCopier(boolean verify) {
+		this.verify = verify;
+		buffer = ByteBuffer.allocate(CHUNK_SIZE);
+		sourceLength = -1;
+		sourceModified = -1;
+	}
+
+	/**
+	 * Gets the length of the source file as it was copied by the last
+	 * successful copy.
+	 * 
+	 * @return The length in bytes or -1 if nothing was copied yet.
+	 */
+	public long getSourceLength() {
+		return sourceLength;
+	}
+
+	/**
+	 * Gets the modification time of the source file as it was copied by the
+	 * last successful copy.
+	 * 
+	 * @return The modification time in milliseconds or -1 if nothing was copied
+	 *         yet.
+	 */
+	public long getSourceModified() {
+		return sourceModified;
+	}
+
+	/**
+	 * Checks if a file name belongs to a file that is being written.
+	 * 
+	 * @param filename
+	 *            The file name to check.
+	 * 
+	 * @return <code>true</code> if the file must not be synchronized.
+	 */
+	public static boolean isPartFile(String filename) {
+		return filename.endsWith(PART_SUFFIX);
+	}
+
+	/**
+	 * Gets the temporary file that is written before it replaces the
+	 * destination file.
+	 * 
+	 * @param destination
+	 *            The destination file.
+	 * 
+	 * @return The temporary file in the same directory.
+	 */
+	public static File getPartFile(File destination) {
+		return new File(destination.getParentFile(), destination.getName() + PART_SUFFIX);
+	}
+
+	/**
+	 * Copies a file and creates the checksum of the copied data.
+	 * 
+	 * @param source
+	 *            The file to copy.
+	 * @param destination
+	 *            The file to write, an existing file is replaced.
+	 * @param algorithm
+	 *            The algorithm to create the checksum with.
+	 * @param listener
+	 *            The listener to notify after each chunk or <code>null</code>.
+	 * 
+	 * @return The checksum of the copied data.
+	 * 
+	 * @throws IOException
+	 *             if the file could not be copied completely or if the
+	 *             verification failed.
+	 * @throws SynchronizationCancelledException
+	 *             if the listener cancelled the copy.
+	 */
+	public byte[] copy(File source, File destination, ChecksumAlgorithm algorithm,
+			CopyProgressListener listener) throws IOException, SynchronizationCancelledException {
+		return copyFile(source, destination, algorithm, listener);
+	}
+
+	/**
+	 * Copies a file without creating a checksum.
+	 * 
+	 * @param source
+	 *            The file to copy.
+	 * @param destination
+	 *            The file to write, an existing file is replaced.
+	 * @param listener
+	 *            The listener to notify after each chunk or <code>null</code>.
+	 * 
+	 * @throws IOException
+	 *             if the file could not be copied completely.
+	 * @throws SynchronizationCancelledException
+	 *             if the listener cancelled the copy.
+	 */
+	public void transfer(File source, File destination, CopyProgressListener listener)
+			throws IOException, SynchronizationCancelledException {
+		copyFile(source, destination, null, listener);
+	}
+
+	/**
+	 * Copies a file through the temporary file and keeps the modification time.
+	 * 
+	 * @param source
+	 *            The file to copy.
+	 * @param destination
+	 *            The file to write.
+	 * @param algorithm
+	 *            The algorithm to create the checksum with while copying or
+	 *            <code>null</code> for no checksum.
+	 * @param listener
+	 *            The listener to notify after each chunk or <code>null</code>.
+	 * 
+	 * @return The checksum or <code>null</code> if no checksum was created.
+	 * 
+	 * @throws IOException
+	 *             if the file could not be copied completely, if the source file
+	 *             changed while copying or if the verification failed.
+	 * @throws SynchronizationCancelledException
+	 *             if the listener cancelled the copy.
+	 */
+	private byte[] copyFile(File source, File destination, ChecksumAlgorithm algorithm,
+			CopyProgressListener listener)
+			throws IOException, SynchronizationCancelledException {
+		File parent = destination.getParentFile();
+		if (parent != null && !parent.exists()) {
+			parent.mkdirs();
+		}
+		File part = getPartFile(destination);
+		Hasher hasher = algorithm != null ? algorithm.newHasher() : null;
+		// the modification time to keep
+		long modified = source.lastModified();
+		long length = -1;
+		boolean complete = false;
+		try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(part.toPath(), StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			length = in.size();
+			// extend the file to its full length, the space of skipped blocks stays a hole
+			if (length > 0) {
+				out.write(ByteBuffer.allocate(1), length - 1);
+			}
+			long position = 0;
+			long n;
+			while (position < length) {
+				if (hasher != null) {
+					buffer.clear();
+					buffer.limit((int) Math.min(CHUNK_SIZE, length - position));
+					// fill the chunk
+					while (buffer.hasRemaining() && in.read(buffer, position + buffer.position()) != -1) {
+					}
+					buffer.flip();
+					if (!buffer.hasRemaining()) {
+						break;
+					}
+					hasher.update(buffer.array(), 0, buffer.limit());
+					writeNonZeroBlocks(out, position);
+					n = buffer.limit();
+				} else {
+					n = in.transferTo(position, Math.min(CHUNK_SIZE, length - position), out);
+					if (n <= 0) {
+						break;
+					}
+				}
+				position += n;
+				if (listener != null && !listener.progress(position)) {
+					throw new SynchronizationCancelledException();
+				}
+			}
+			if (position != length || out.size() != length) {
+				throw new IOException("Failed to copy full contents from '" + source + "' to '" + destination + "'");
+			}
+			// the copy does not match the source file if it was written to in the meantime
+			if (in.size() != length || source.lastModified() != modified) {
+				throw new IOException("'" + source + "' was modified while copying");
+			}
+			complete = true;
+		} finally {
+			if (!complete) {
+				part.delete();
+			}
+		}
+		byte[] checksum = hasher != null ? hasher.getDigest() : null;
+		// read the temporary file back if wanted, a failed copy leaves the destination untouched
+		if (checksum != null && verify && !Arrays.equals(checksum, algorithm.hashFile(part))) {
+			part.delete();
+			throw new IOException("Verification of '" + destination + "' failed");
+		}
+		part.setLastModified(modified);
+		// replace the destination file
+		try {
+			Files.move(part.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(part.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		sourceLength = length;
+		sourceModified = modified;
+		return checksum;
+	}
+
+	/**
+	 * Writes the buffer to the channel but skips blocks that only contain zeros.
+	 * 
+	 * @param out
+	 *            The channel to write to.
+	 * @param position
+	 *            The file position of the buffer start.
+	 * 
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	private void writeNonZeroBlocks(FileChannel out, long position) throws IOException {
+		byte[] data = buffer.array();
+		int limit = buffer.limit();
+		// start of the current run of blocks to write, -1 if there is none
+		int runStart = -1;
+		int blockEnd;
+		for (int blockStart = 0; blockStart < limit; blockStart = blockEnd) {
+			blockEnd = Math.min(blockStart + BLOCK_SIZE, limit);
+			if (isZero(data, blockStart, blockEnd)) {
+				if (runStart != -1) {
+					write(out, runStart, blockStart, position);
+					runStart = -1;
+				}
+			} else if (runStart == -1) {
+				runStart = blockStart;
+			}
+		}
+		if (runStart != -1) {
+			write(out, runStart, limit, position);
+		}
+	}
+
+	/**
+	 * Writes a range of the buffer to the channel.
+	 * 
+	 * @param out
+	 *            The channel to write to.
+	 * @param from
+	 *            The start index in the buffer.
+	 * @param to
+	 *            The end index in the buffer, exclusive.
+	 * @param position
+	 *            The file position of the buffer start.
+	 * 
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	private void write(FileChannel out, int from, int to, long position) throws IOException {
+		ByteBuffer range = ByteBuffer.wrap(buffer.array(), from, to - from);
+		while (range.hasRemaining()) {
+			out.write(range, position + range.position());
+		}
+	}
+
+	/**
+	 * Checks if a range of bytes only contains zeros.
+	 * 
+	 * @param data
+	 *            The data to check.
+	 * @param from
+	 *            The start index.
+	 * @param to
+	 *            The end index, exclusive.
+	 * 
+	 * @return <code>true</code> if all bytes are zero.
+	 */
+	private static boolean isZero(byte[] data, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (data[i] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+/**
+ * A <code>FileVersion</code> describes an old version of a file as recorded in
+ * the file system table of the <code>OnlineDB</code>.
+ * <p>
+ * Old versions are kept in the version area of the target directory and are
+ * listed by <code>OnlineDB.listVersions()</code> to apply the retention policy.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see VersionStore
+ * @see OnlineDB#listVersions()
+ */
+public final class FileVersion {
+	/**
+	 * The id of the database record.
+	 */
+	private final long fileId;
+	/**
+	 * The relative path of the file the version belongs to.
+	 */
+	private final String relativePath;
+	/**
+	 * The file length in bytes.
+	 */
+	private final long length;
+	/**
+	 * The version number, 1 for the oldest version.
+	 */
+	private final int version;
+	/**
+	 * The time the version was replaced in milliseconds.
+	 */
+	private final long archived;
+
+	/**
+	 * Constructs a new <code>FileVersion</code>.
+	 * 
+	 * @param fileId
+	 *            The id of the database record.
+	 * @param relativePath
+	 *            The relative path of the file the version belongs to.
+	 * @param length
+	 *            The file length in bytes.
+	 * @param version
+	 *            The version number.
+	 * @param archived
+	 *            The time the version was replaced in milliseconds.
+	 */
+	public FileVersion(long fileId, String relativePath, long length, int version, long archived) {
+		this.fileId = fileId;
+		this.relativePath = relativePath;
+		this.length = length;
+		this.version = version;
+		this.archived = archived;
+	}
+
+	/**
+	 * Gets the id of the database record.
+	 * 
+	 * @return The file id.
+	 */
+	public final long getFileId() {
+		return fileId;
+	}
+
+	/**
+	 * Gets the relative path of the file the version belongs to.
+	 * 
+	 * @return The relative path.
+	 */
+	public final String getRelativePath() {
+		return relativePath;
+	}
+
+	/**
+	 * Gets the length of the version.
+	 * 
+	 * @return The file length in bytes.
+	 */
+	public final long getLength() {
+		return length;
+	}
+
+	/**
+	 * Gets the version number.
+	 * 
+	 * @return The version number, 1 for the oldest version.
+	 */
+	public final int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Gets the time the version was replaced.
+	 * 
+	 * @return The time in milliseconds.
+	 */
+	public final long getArchived() {
+		return archived;
+	}
+}
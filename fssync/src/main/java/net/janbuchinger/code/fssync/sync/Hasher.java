@@ -0,0 +1,47 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+/**
+ * Creates one checksum from data that is passed in one or more parts.
+ * <p>
+ * A <code>Hasher</code> is created by <code>ChecksumAlgorithm.newHasher()</code>
+ * and is used for a single file.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see ChecksumAlgorithm
+ */
+public interface Hasher {
+	/**
+	 * Passes the next part of the data.
+	 * 
+	 * @param data
+	 *            The buffer containing the data.
+	 * @param offset
+	 *            The start of the data in the buffer.
+	 * @param length
+	 *            The number of bytes to pass.
+	 */
+	public void update(byte[] data, int offset, int length);
+
+	/**
+	 * Completes the checksum.
+	 * 
+	 * @return The checksum as bytes, most significant byte first.
+	 */
+	public byte[] getDigest();
+}
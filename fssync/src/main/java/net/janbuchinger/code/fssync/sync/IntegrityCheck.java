@@ -0,0 +1,266 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An <code>IntegrityCheck</code> compares the checksums of a source and a
+ * destination file with the checksum recorded in the database during a deep
+ * analysis.
+ * <p>
+ * The checks are hashed concurrently by a <code>ChecksumVerifier</code>, which
+ * reads the source and the destination file on different threads and stores
+ * the checksums here. The check is complete when all wanted checksums are set,
+ * then <code>getResult()</code> classifies the file.
+ * <p>
+ * While the destination file is read anyway, a checksum of a second algorithm
+ * can be created to migrate the database record to a new algorithm.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see ChecksumVerifier
+ */
+public class IntegrityCheck {
+	/**
+	 * Result: the files are intact or nothing can be concluded.
+	 */
+	public final static int result_none = 0;
+	/**
+	 * Result: the destination file is corrupt, the source file is intact.
+	 */
+	public final static int result_corrupt_destination = 1;
+	/**
+	 * Result: the source file is corrupt, the destination file is intact.
+	 */
+	public final static int result_corrupt_source = 2;
+	/**
+	 * Result: both files are corrupt, the file is lost.
+	 */
+	public final static int result_lost = 3;
+
+	/**
+	 * The source file.
+	 */
+	private final ScannedFile source;
+	/**
+	 * The destination file.
+	 */
+	private final ScannedFile destination;
+	/**
+	 * The database record of the file.
+	 */
+	private final RelativeFile known;
+	/**
+	 * true if the source file is hashed as well, only if it was not modified
+	 * since the last synchronization.
+	 */
+	private final boolean checkSource;
+	/**
+	 * The algorithm of the recorded checksum.
+	 */
+	private final ChecksumAlgorithm algorithm;
+	/**
+	 * The algorithm to migrate the checksum to or <code>null</code>.
+	 */
+	private final ChecksumAlgorithm migrateTo;
+
+	/**
+	 * The checksum of the source file, set by the verifier.
+	 */
+	private volatile byte[] checksumSource;
+	/**
+	 * The checksum of the destination file, set by the verifier.
+	 */
+	private volatile byte[] checksumDestination;
+	/**
+	 * The checksum of the destination file by the migration algorithm, set by
+	 * the verifier.
+	 */
+	private volatile byte[] checksumMigrated;
+
+	/**
+	 * The number of files that were not hashed yet.
+	 */
+	private final AtomicInteger remaining;
+
+	/**
+	 * Constructs a new <code>IntegrityCheck</code>.
+	 * 
+	 * @param source
+	 *            The source file.
+	 * @param destination
+	 *            The destination file.
+	 * @param known
+	 *            The database record of the file.
+	 * @param checkSource
+	 *            <code>true</code> to hash the source file as well.
+	 * @param algorithm
+	 *            The algorithm of the recorded checksum.
+	 * @param migrateTo
+	 *            The algorithm to migrate the checksum to or <code>null</code>.
+	 */
+	public IntegrityCheck(ScannedFile source, ScannedFile destination, RelativeFile known,
+			boolean checkSource, ChecksumAlgorithm algorithm, ChecksumAlgorithm migrateTo) {
+		this.source = source;
+		this.destination = destination;
+		this.known = known;
+		this.checkSource = checkSource;
+		this.algorithm = algorithm;
+		this.migrateTo = migrateTo;
+		remaining = new AtomicInteger(checkSource ? 2 : 1);
+	}
+
+	/**
+	 * Gets the source file.
+	 * 
+	 * @return The source file.
+	 */
+	public final ScannedFile getSource() {
+		return source;
+	}
+
+	/**
+	 * Gets the destination file.
+	 * 
+	 * @return The destination file.
+	 */
+	public final ScannedFile getDestination() {
+		return destination;
+	}
+
+	/**
+	 * Gets the database record of the file.
+	 * 
+	 * @return The database record.
+	 */
+	public final RelativeFile getKnown() {
+		return known;
+	}
+
+	/**
+	 * Gets whether the source file is hashed as well.
+	 * 
+	 * @return <code>true</code> if the source file is checked.
+	 */
+	public final boolean isCheckSource() {
+		return checkSource;
+	}
+
+	/**
+	 * Gets the algorithm of the recorded checksum.
+	 * 
+	 * @return The checksum algorithm.
+	 */
+	public final ChecksumAlgorithm getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * Gets the algorithm to migrate the checksum to.
+	 * 
+	 * @return The algorithm or <code>null</code> if the checksum is not
+	 *         migrated.
+	 */
+	public final ChecksumAlgorithm getMigrateTo() {
+		return migrateTo;
+	}
+
+	/**
+	 * Sets the checksum of the source file.
+	 * 
+	 * @param checksumSource
+	 *            The checksum or <code>null</code> if the file could not be read.
+	 */
+	final void setChecksumSource(byte[] checksumSource) {
+		this.checksumSource = checksumSource;
+	}
+
+	/**
+	 * Sets the checksum of the destination file.
+	 * 
+	 * @param checksumDestination
+	 *            The checksum or <code>null</code> if the file could not be read.
+	 */
+	final void setChecksumDestination(byte[] checksumDestination) {
+		this.checksumDestination = checksumDestination;
+	}
+
+	/**
+	 * Sets the checksum of the destination file by the migration algorithm.
+	 * 
+	 * @param checksumMigrated
+	 *            The checksum or <code>null</code> if the file could not be read.
+	 */
+	final void setChecksumMigrated(byte[] checksumMigrated) {
+		this.checksumMigrated = checksumMigrated;
+	}
+
+	/**
+	 * Counts a hashed file.
+	 * 
+	 * @return <code>true</code> if this was the last file and the check is
+	 *         complete.
+	 */
+	final boolean hashDone() {
+		return remaining.decrementAndGet() == 0;
+	}
+
+	/**
+	 * Classifies the file by comparing the checksums with the database record.
+	 * 
+	 * @return One of the result constants.
+	 */
+	public final int getResult() {
+		byte[] checksum_db = known.getChecksum();
+		long length_db = known.getLength();
+		if (!Arrays.equals(checksum_db, checksumDestination) || length_db != destination.getLength()) {
+			// the destination file differs from the database entry
+			if (!checkSource) {
+				// the source file was modified, nothing to conclude
+				return result_none;
+			} else if (Arrays.equals(checksum_db, checksumSource) && length_db == source.getLength()) {
+				// the file is theoretically recoverable from source
+				return result_corrupt_destination;
+			} else {
+				// the source file is also corrupt, the file is lost
+				return result_lost;
+			}
+		} else if (checkSource
+				&& (!Arrays.equals(checksum_db, checksumSource) || length_db != source.getLength())) {
+			// the destination file is intact, the source file is theoretically recoverable
+			return result_corrupt_source;
+		}
+		return result_none;
+	}
+
+	/**
+	 * Gets the database record with the migrated checksum.
+	 * 
+	 * @return The record with the new checksum or <code>null</code> if there is
+	 *         no migrated checksum or the destination file is not intact.
+	 */
+	public final RelativeFile getMigratedFile() {
+		// only replace the checksum of an intact destination file
+		if (checksumMigrated == null || !Arrays.equals(known.getChecksum(), checksumDestination)
+				|| known.getLength() != destination.getLength()) {
+			return null;
+		}
+		return new RelativeFile(known.getRelativePath(), known.getLength(), known.getModified(),
+				checksumMigrated, migrateTo.getName());
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import java.io.File;
+
+public final class MoveAction {
+
+	private final CopyAction copyAction;
+	private final DeleteAction deleteAction;
+	private final RelativeFile known;
+	private boolean isSelected;
+
+	public MoveAction(CopyAction copyAction, DeleteAction deleteAction, RelativeFile known) {
+		this.copyAction = copyAction;
+		this.deleteAction = deleteAction;
+		this.known = known;
+		isSelected = true;
+	}
+
+	public final CopyAction getCopyAction() {
+		return copyAction;
+	}
+
+	public final DeleteAction getDeleteAction() {
+		return deleteAction;
+	}
+
+	public final RelativeFile getKnown() {
+		return known;
+	}
+
+	public final File getFrom() {
+		return deleteAction.getFile();
+	}
+
+	public final File getTo() {
+		return copyAction.getDestination();
+	}
+
+	public final String getRelativePathFrom() {
+		return deleteAction.getRelativePath();
+	}
+
+	public final String getRelativePath() {
+		return copyAction.getRelativePath();
+	}
+
+	public final long getLength() {
+		return copyAction.getSourceLength();
+	}
+
+	public final boolean isSelected() {
+		return isSelected;
+	}
+
+	public final void setSelected(boolean isSelected) {
+		this.isSelected = isSelected;
+	}
+
+	@Override
+	public String toString() {
+		return "verschieben ".concat(getRelativePathFrom()).concat(" >> ").concat(getRelativePath());
+	}
+}
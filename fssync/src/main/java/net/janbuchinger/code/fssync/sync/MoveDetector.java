@@ -0,0 +1,502 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Vector;
+
+import javax.swing.SwingWorker;
+
+/**
+ * The <code>MoveDetector</code> recognizes files and directories that were
+ * moved or renamed in the source file system.
+ * <p>
+ * A moved file shows up in the analysis twice: as a known file whose source is
+ * missing (the orphan, its target file would be deleted) and as a new source
+ * file (its target file would be copied). Instead of copying the data again,
+ * the target file of the orphan can be moved to the new path. The target file
+ * of an orphan is only used if it is unchanged since the last synchronization.
+ * <p>
+ * Whole directories are recognized first by <code>detectDirectories()</code>.
+ * Orphans and new files with the same name, length and modification time are
+ * paired and each pair votes for the directories they were moved from and to,
+ * as long as the names of the directories are the same on both sides. A
+ * directory is moved as a whole if the pairs cover all files in the target
+ * directory, the new directory does not exist yet and the checksums of all new
+ * files match the checksums of their orphans.
+ * <p>
+ * The remaining files are matched by <code>detect()</code>. Orphans are indexed
+ * by their length. A new source file is only read if there is an orphan of the
+ * same length, then its checksum is compared with the checksums of these
+ * orphans as stored in the database.
+ * <p>
+ * The orphans and the new files are collected during the analysis because a
+ * file can be moved to a path that is sorted before or after its old path.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see MoveAction
+ * @see DirectoryMoveAction
+ */
+public final class MoveDetector {
+	/**
+	 * The orphans that can be compared by checksum by the length of the file.
+	 */
+	private final HashMap<Long, Vector<Orphan>> orphans;
+	/**
+	 * All orphans with an unchanged target file.
+	 */
+	private final Vector<Orphan> allOrphans;
+	/**
+	 * The number of orphans in each directory including its sub directories.
+	 */
+	private final HashMap<String, Integer> orphanCounts;
+	/**
+	 * The new source files.
+	 */
+	private final Vector<CopyAction> candidates;
+	/**
+	 * The orphans and new source files that are moved with their directory.
+	 */
+	private final HashSet<Object> moved;
+
+	/**
+	 * Constructs a new empty <code>MoveDetector</code>.
+	 */
+	public MoveDetector() {
+		orphans = new HashMap<Long, Vector<Orphan>>();
+		allOrphans = new Vector<Orphan>();
+		orphanCounts = new HashMap<String, Integer>();
+		candidates = new Vector<CopyAction>();
+		moved = new HashSet<Object>();
+	}
+
+	/**
+	 * Adds a known file whose source file is missing.
+	 * 
+	 * @param deleteAction
+	 *            The action to delete the target file.
+	 * @param target
+	 *            The target file as found in the analysis.
+	 * @param known
+	 *            The database record of the file.
+	 */
+	public void addOrphan(DeleteAction deleteAction, ScannedFile target, RelativeFile known) {
+		// the target file must be the file the checksum was made of
+		if (target.getLength() != known.getLength() || target.getModified() != known.getModified()) {
+			return;
+		}
+		Orphan orphan = new Orphan(deleteAction, known, ChecksumAlgorithm.forName(known.getAlgorithm()));
+		allOrphans.add(orphan);
+		// count the orphan in all its parent directories
+		String directory = directoryOf(known.getRelativePath());
+		Integer count;
+		while (directory.length() > 0) {
+			count = orphanCounts.get(directory);
+			orphanCounts.put(directory, count == null ? 1 : count + 1);
+			directory = directoryOf(directory);
+		}
+		// empty files are copied at no cost
+		if (known.getLength() == 0 || known.getChecksum() == null || orphan.algorithm == null) {
+			return;
+		}
+		Vector<Orphan> sameLength = orphans.get(known.getLength());
+		if (sameLength == null) {
+			sameLength = new Vector<Orphan>();
+			orphans.put(known.getLength(), sameLength);
+		}
+		sameLength.add(orphan);
+	}
+
+	/**
+	 * Adds a new source file that does not exist in the target file system.
+	 * 
+	 * @param copyAction
+	 *            The action to copy the new file to the target file system.
+	 */
+	public void addCandidate(CopyAction copyAction) {
+		if (copyAction.isNew() && copyAction.getDirection() == CopyAction.DIR_BACKUP) {
+			candidates.add(copyAction);
+		}
+	}
+
+	/**
+	 * Finds the directories that were moved as a whole. The files of these
+	 * directories are not considered by <code>detect()</code> anymore.
+	 * 
+	 * @param target
+	 *            The target directory.
+	 * @param sp
+	 *            The running process to check for cancellation.
+	 * 
+	 * @return The list of moved directories, outermost directories only.
+	 * 
+	 * @throws SynchronizationCancelledException
+	 *             If the process was cancelled.
+	 */
+	public Vector<DirectoryMoveAction> detectDirectories(File target, SwingWorker<Void, Void> sp)
+			throws SynchronizationCancelledException {
+		Vector<DirectoryMoveAction> directoryMoveActions = new Vector<DirectoryMoveAction>();
+		// the new files by name, length and modification time
+		HashMap<String, Vector<CopyAction>> candidatesByKey = new HashMap<String, Vector<CopyAction>>();
+		Vector<CopyAction> sameKey;
+		String key;
+		for (CopyAction candidate : candidates) {
+			key = key(nameOf(candidate.getRelativePath()), candidate.getSourceLength(),
+					candidate.getSourceModified());
+			sameKey = candidatesByKey.get(key);
+			if (sameKey == null) {
+				sameKey = new Vector<CopyAction>();
+				candidatesByKey.put(key, sameKey);
+			}
+			sameKey.add(candidate);
+		}
+		// pair the orphans with the new files and count the votes for the directories
+		HashMap<Orphan, CopyAction> pairs = new HashMap<Orphan, CopyAction>();
+		HashMap<String, Integer> votes = new HashMap<String, Integer>();
+		CopyAction candidate;
+		String from;
+		String to;
+		Integer count;
+		for (Orphan orphan : allOrphans) {
+			if (sp.isCancelled()) {
+				throw new SynchronizationCancelledException();
+			}
+			sameKey = candidatesByKey.get(key(nameOf(orphan.known.getRelativePath()),
+					orphan.known.getLength(), orphan.known.getModified()));
+			if (sameKey == null || sameKey.size() == 0) {
+				continue;
+			}
+			candidate = sameKey.remove(0);
+			pairs.put(orphan, candidate);
+			from = directoryOf(orphan.known.getRelativePath());
+			to = directoryOf(candidate.getRelativePath());
+			// the directories above keep their relation while the names are the same
+			while (from.length() > 0 && to.length() > 0 && !from.equals(to)) {
+				key = from + '\0' + to;
+				count = votes.get(key);
+				votes.put(key, count == null ? 1 : count + 1);
+				if (!nameOf(from).equals(nameOf(to))) {
+					break;
+				}
+				from = directoryOf(from);
+				to = directoryOf(to);
+			}
+		}
+		// check the outermost directories first
+		Vector<String> keys = new Vector<String>(votes.keySet());
+		Collections.sort(keys, new Comparator<String>() {
+			@Override
+			public int compare(String key1, String key2) {
+				return Integer.compare(key1.indexOf('\0'), key2.indexOf('\0'));
+			}
+		});
+		// the accepted directories, moved from and to
+		Vector<String> accepted = new Vector<String>();
+		Vector<MoveAction> moveActions;
+		String prefix;
+		String suffix;
+		int nVotes;
+		for (String directoryKey : keys) {
+			if (sp.isCancelled()) {
+				throw new SynchronizationCancelledException();
+			}
+			from = directoryKey.substring(0, directoryKey.indexOf('\0'));
+			to = directoryKey.substring(directoryKey.indexOf('\0') + 1);
+			if (isRelated(from, accepted) || isRelated(to, accepted) || isRelated(from, to)) {
+				continue;
+			}
+			// all orphans of the directory must have been paired
+			nVotes = votes.get(directoryKey);
+			if (orphanCounts.get(from) != nVotes) {
+				continue;
+			}
+			// the new directory must not exist and the old directory must not contain other files
+			if (new File(target, to).exists() || countFiles(new File(target, from), nVotes) != nVotes) {
+				continue;
+			}
+			moveActions = new Vector<MoveAction>();
+			prefix = from + File.separator;
+			for (Map.Entry<Orphan, CopyAction> pair : pairs.entrySet()) {
+				if (pair.getKey().known.getRelativePath().startsWith(prefix)) {
+					suffix = pair.getKey().known.getRelativePath().substring(prefix.length());
+					if (pair.getValue().getRelativePath().equals(to + File.separator + suffix)) {
+						moveActions.add(new MoveAction(pair.getValue(), pair.getKey().deleteAction,
+								pair.getKey().known));
+					}
+				}
+			}
+			if (moveActions.size() != nVotes) {
+				continue;
+			}
+			// the name, length and modification time only suggest a move
+			if (!hasSameContents(moveActions, sp)) {
+				continue;
+			}
+			for (MoveAction moveAction : moveActions) {
+				moved.add(moveAction.getCopyAction());
+				moved.add(moveAction.getDeleteAction());
+			}
+			directoryMoveActions.add(new DirectoryMoveAction(from, to, new File(target, from),
+					new File(target, to), moveActions));
+			accepted.add(from);
+			accepted.add(to);
+		}
+		return directoryMoveActions;
+	}
+
+	/**
+	 * Matches the new source files with the orphans that are not moved with
+	 * their directory.
+	 * 
+	 * @param sp
+	 *            The running process to check for cancellation.
+	 * 
+	 * @return The list of moved files, each orphan and each new file is used at
+	 *         most once.
+	 * 
+	 * @throws SynchronizationCancelledException
+	 *             If the process was cancelled.
+	 */
+	public Vector<MoveAction> detect(SwingWorker<Void, Void> sp) throws SynchronizationCancelledException {
+		Vector<MoveAction> moveActions = new Vector<MoveAction>();
+		Vector<Orphan> sameLength;
+		Vector<ChecksumAlgorithm> algorithms = new Vector<ChecksumAlgorithm>();
+		byte[][] checksums;
+		Orphan match;
+		for (CopyAction candidate : candidates) {
+			if (sp.isCancelled()) {
+				throw new SynchronizationCancelledException();
+			}
+			if (candidate.getSourceLength() == 0 || moved.contains(candidate)) {
+				continue;
+			}
+			sameLength = orphans.get(candidate.getSourceLength());
+			if (sameLength == null || sameLength.size() == 0) {
+				continue;
+			}
+			// read the new file once for all algorithms of the orphans
+			algorithms.clear();
+			for (Orphan orphan : sameLength) {
+				if (!algorithms.contains(orphan.algorithm) && !moved.contains(orphan.deleteAction)) {
+					algorithms.add(orphan.algorithm);
+				}
+			}
+			if (algorithms.size() == 0) {
+				continue;
+			}
+			checksums = ChecksumAlgorithm.hashFile(candidate.getSource(),
+					algorithms.toArray(new ChecksumAlgorithm[algorithms.size()]));
+			if (checksums == null) {
+				continue;
+			}
+			// prefer the orphan with the same modification time if there are equal files
+			match = null;
+			for (Orphan orphan : sameLength) {
+				if (moved.contains(orphan.deleteAction)) {
+					continue;
+				}
+				if (Arrays.equals(checksums[algorithms.indexOf(orphan.algorithm)],
+						orphan.known.getChecksum())) {
+					if (match == null || orphan.known.getModified() == candidate.getSourceModified()) {
+						match = orphan;
+					}
+					if (match.known.getModified() == candidate.getSourceModified()) {
+						break;
+					}
+				}
+			}
+			if (match != null) {
+				sameLength.remove(match);
+				moveActions.add(new MoveAction(candidate, match.deleteAction, match.known));
+			}
+		}
+		return moveActions;
+	}
+
+	/**
+	 * Checks if the new source files have the checksums the database recorded
+	 * for their orphans.
+	 * 
+	 * @param moveActions
+	 *            The pairs to check.
+	 * @param sp
+	 *            The running process to check for cancellation.
+	 * 
+	 * @return <code>true</code> if all pairs have the same contents.
+	 * 
+	 * @throws SynchronizationCancelledException
+	 *             If the process was cancelled.
+	 */
+	private static boolean hasSameContents(Vector<MoveAction> moveActions, SwingWorker<Void, Void> sp)
+			throws SynchronizationCancelledException {
+		RelativeFile known;
+		ChecksumAlgorithm algorithm;
+		for (MoveAction moveAction : moveActions) {
+			if (sp.isCancelled()) {
+				throw new SynchronizationCancelledException();
+			}
+			known = moveAction.getKnown();
+			// empty files have no contents to compare
+			if (known.getLength() == 0) {
+				continue;
+			}
+			algorithm = ChecksumAlgorithm.forName(known.getAlgorithm());
+			if (algorithm == null || known.getChecksum() == null || !Arrays.equals(known.getChecksum(),
+					algorithm.hashFile(moveAction.getCopyAction().getSource()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates the key to pair orphans and new files.
+	 * 
+	 * @param name
+	 *            The file name.
+	 * @param length
+	 *            The file length.
+	 * @param modified
+	 *            The modification time.
+	 * 
+	 * @return The key.
+	 */
+	private static String key(String name, long length, long modified) {
+		return name + '\0' + length + '\0' + modified;
+	}
+
+	/**
+	 * Checks if a directory is equal to, contains or is contained by one of a
+	 * list of directories.
+	 * 
+	 * @param directory
+	 *            The relative directory path.
+	 * @param directories
+	 *            The relative directory paths to compare with.
+	 * 
+	 * @return <code>true</code> if the directory is related to one of the list.
+	 */
+	private static boolean isRelated(String directory, Vector<String> directories) {
+		for (String other : directories) {
+			if (isRelated(directory, other)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if two directories are equal or one contains the other.
+	 * 
+	 * @param directory1
+	 *            The first relative directory path.
+	 * @param directory2
+	 *            The second relative directory path.
+	 * 
+	 * @return <code>true</code> if the directories are related.
+	 */
+	private static boolean isRelated(String directory1, String directory2) {
+		return directory1.equals(directory2) || directory1.startsWith(directory2 + File.separator)
+				|| directory2.startsWith(directory1 + File.separator);
+	}
+
+	/**
+	 * Counts the files in a directory and its sub directories.
+	 * 
+	 * @param directory
+	 *            The directory.
+	 * @param limit
+	 *            Counting stops after this number of files was exceeded.
+	 * 
+	 * @return The number of files, a number greater than the limit or -1 if the
+	 *         directory could not be read.
+	 */
+	private static int countFiles(File directory, final int limit) {
+		final int[] count = new int[] { 0 };
+		try {
+			Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+					count[0]++;
+					return count[0] > limit ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException exc) {
+					count[0] = -1;
+					return FileVisitResult.TERMINATE;
+				}
+			});
+		} catch (IOException e) {
+			return -1;
+		}
+		return count[0];
+	}
+
+	/**
+	 * Gets the relative path of the directory that contains a file or
+	 * directory.
+	 * 
+	 * @param relativePath
+	 *            The relative path.
+	 * 
+	 * @return The relative directory path or "" for the root directory.
+	 */
+	private static String directoryOf(String relativePath) {
+		int separator = relativePath.lastIndexOf(File.separatorChar);
+		return separator < 0 ? "" : relativePath.substring(0, separator);
+	}
+
+	/**
+	 * Gets the name of a file or directory.
+	 * 
+	 * @param relativePath
+	 *            The relative path.
+	 * 
+	 * @return The last name of the path.
+	 */
+	private static String nameOf(String relativePath) {
+		return relativePath.substring(relativePath.lastIndexOf(File.separatorChar) + 1);
+	}
+
+	/**
+	 * A known file whose source file is missing.
+	 */
+	private final static class Orphan {
+		private final DeleteAction deleteAction;
+		private final RelativeFile known;
+		private final ChecksumAlgorithm algorithm;
+
+		private Orphan(DeleteAction deleteAction, RelativeFile known, ChecksumAlgorithm algorithm) {
+			this.deleteAction = deleteAction;
+			this.known = known;
+			this.algorithm = algorithm;
+		}
+	}
+}
@@ -17,16 +17,21 @@ package net.janbuchinger.code.fssync.sync;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Vector;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.sqlite.SQLiteConfig;
 
 import net.janbuchinger.code.fssync.Operation;
 import net.janbuchinger.code.mishmash.ChaosFx;
@@ -34,18 +39,33 @@ import net.janbuchinger.code.mishmash.ChaosFx;
 /**
  * This class is the core database class of FSSync.
  * <p>
- * It manages two tables: "filesystem" and "dbInfo"
+ * It manages three tables: "directories", "filesystem" and "dbInfo"
+ * <p>
+ * The "directories" table contains every directory that holds a file once,
+ * nested by the id of its parent directory. The root directory of the
+ * <code>Operation</code> has the id 0 and no record.
+ * <ul>
+ * <li><b>dirid</b>: The unique id of the directory inside the database.
+ * <li><b>parentdirid</b>: The id of the parent directory.
+ * <li><b>name</b>: The name of the directory.
+ * </ul>
  * <p>
  * The "filsystem" table contains the list of files in the state of the last
  * synchronization.
  * <ul>
  * <li><b>fileid</b>: The unique id of the file inside the database.
- * <li><b>filepath</b>: The relative file path.
+ * <li><b>dirid</b>: The id of the directory that contains the file.
+ * <li><b>name</b>: The file name.
  * <li><b>length</b>: The file length.
  * <li><b>modified</b>: The last modified time of the file.
- * <li><b>checksum</b>: The SHA384 checksum of the file.
- * <li><b>version</b>: The file version, <b>not used yet</b>.
- * <li><b>parentid</b>: The current version file id, <b>not used yet</b>.
+ * <li><b>checksum</b>: The checksum of the file as BLOB.
+ * <li><b>algorithm</b>: The name of the <code>ChecksumAlgorithm</code> that
+ * created the checksum.
+ * <li><b>version</b>: The file version, 0 for the current version and
+ * increasing numbers for the old versions kept in the <code>VersionStore</code>.
+ * <li><b>parentid</b>: The file id of the next older version of an old version,
+ * 0 if there is none.
+ * <li><b>archived</b>: The time an old version was replaced in milliseconds.
  * </ul>
  * <p>
  * The "dbInfo" table always contains one record.
@@ -53,7 +73,7 @@ import net.janbuchinger.code.mishmash.ChaosFx;
  * <li><b>dbId</b>: a random base 36 number to uniquely identify this database.
  * <li><b>dbVersion</b>: a counter that is incremented after each
  * synchronization process.
- * <li><b>dbBuild</b>: The structural version of the database, currently 1.
+ * <li><b>dbBuild</b>: The structural version of the database, currently 5.
  * </ul>
  * 
  * 
@@ -64,7 +84,37 @@ public final class OnlineDB {
 	/**
 	 * The structural database version
 	 */
-	private final static int DB_BUILD = 1;
+	private final static int DB_BUILD = 5;
+
+	/**
+	 * key for table "directories".
+	 * 
+	 * This table saves the directory tree of the file system table, added in
+	 * build 4.
+	 */
+	private final static String tab_directories = "directories";
+	/**
+	 * key for field "dirid" (directories).
+	 * 
+	 * The unique id of the directory in the database.
+	 */
+	private final static String dir_dirId = "dirid";
+	/**
+	 * key for field "parentdirid" (directories).
+	 * 
+	 * The id of the parent directory, 0 for the root directory.
+	 */
+	private final static String dir_parentId = "parentdirid";
+	/**
+	 * key for field "name" (directories).
+	 * 
+	 * The name of the directory.
+	 */
+	private final static String dir_name = "name";
+	/**
+	 * The id of the root directory, which has no record.
+	 */
+	private final static long root_dirId = 0;
 
 	/**
 	 * key for table "filesystem".
@@ -81,9 +131,21 @@ public final class OnlineDB {
 	/**
 	 * key for field "filepath" (filesystem).
 	 * 
-	 * The relative path of the file.
+	 * The relative path of the file, replaced by "dirid" and "name" in build 4.
 	 */
 	private final static String fs_filepath = "filepath";
+	/**
+	 * key for field "dirid" (filesystem).
+	 * 
+	 * The id of the directory that contains the file, added in build 4.
+	 */
+	private final static String fs_dirId = "dirid";
+	/**
+	 * key for field "name" (filesystem).
+	 * 
+	 * The file name, added in build 4.
+	 */
+	private final static String fs_name = "name";
 	/**
 	 * key for field "length" (filesystem).
 	 * 
@@ -99,21 +161,33 @@ public final class OnlineDB {
 	/**
 	 * key for field "checksum" (filesystem).
 	 * 
-	 * The SHA384 checksum of the file
+	 * The checksum of the file, a BLOB since build 3
 	 */
 	private final static String fs_checksum = "checksum";
+	/**
+	 * key for field "algorithm" (filesystem).
+	 * 
+	 * The name of the algorithm that created the checksum, added in build 2.
+	 */
+	private final static String fs_algorithm = "algorithm";
 	/**
 	 * key for field "version" (filesystem).
 	 * 
-	 * The file version. 0 for current version. <b>Not uset yet.</b>
+	 * The file version. 0 for current version, 1 and up for old versions.
 	 */
 	private final static String fs_version = "version";
 	/**
 	 * key for field "parentid" (filesystem).
 	 * 
-	 * The parent file id. <b>Not uset yet.</b>
+	 * The file id of the next older version.
 	 */
 	private final static String fs_parentId = "parentid";
+	/**
+	 * key for field "archived" (filesystem).
+	 * 
+	 * The time an old version was replaced, added in build 5.
+	 */
+	private final static String fs_archived = "archived";
 
 	/**
 	 * key for table "dbInfo".
@@ -160,6 +234,37 @@ public final class OnlineDB {
 	 * The current structural database version.
 	 */
 	private int dbBuild;
+	/**
+	 * The connection shared by all methods while a session is open or
+	 * <code>null</code> if there is no open session.
+	 */
+	private Connection session;
+	/**
+	 * The <code>PreparedStatement</code>s of the open session by SQL.
+	 */
+	private final HashMap<String, PreparedStatement> statements;
+	/**
+	 * The in memory index of the "filesystem" table or <code>null</code> if the
+	 * index was not loaded.
+	 */
+	private volatile PathIndex index;
+	/**
+	 * true if changes of the index were committed to the database.
+	 */
+	private boolean indexWritten;
+	/**
+	 * The directory ids by relative directory path, "" for the root directory.
+	 * Loaded on first use by <code>loadDirectories()</code>.
+	 */
+	private final HashMap<String, Long> directoryIds;
+	/**
+	 * The relative directory paths by directory id.
+	 */
+	private final HashMap<Long, String> directoryPaths;
+	/**
+	 * true if the directory tree was loaded into memory.
+	 */
+	private boolean directoriesLoaded;
 
 	/**
 	 * Initializes a new database.
@@ -194,11 +299,9 @@ public final class OnlineDB {
 			if (parallelDbs.length > 0) {
 				// initialize the parallel databases ids array
 				String[] ids = new String[parallelDbs.length];
-				OnlineDB db;
 				// load the parallel databases ids
 				for (int i = 0; i < parallelDbs.length; i++) {
-					db = new OnlineDB(parallelDbs[i]);
-					ids[i] = db.getDbId();
+					ids[i] = readDbId(parallelDbs[i]);
 				}
 				// indicator for conflicting id
 				boolean found;
@@ -210,7 +313,7 @@ public final class OnlineDB {
 					// loop through the parallel ids
 					for (int i = 0; i < ids.length; i++) {
 						// if the newly generated id was found
-						if (ids[i].equals(newId)) {
+						if (newId.equals(ids[i])) {
 							// then indicate that a new id should be generated
 							found = true;
 							break;
@@ -231,7 +334,7 @@ public final class OnlineDB {
 		new OnlineDB(dbEditFile, newId);
 		// synchronize the new database file to original
 		if (dbEditFile.exists()) {
-			FileUtils.copyFile(dbEditFile, dbOriginalFile);
+			DatabasePublisher.publish(dbEditFile, dbOriginalFile);
 		}
 	}
 
@@ -250,6 +353,12 @@ public final class OnlineDB {
 
 	/**
 	 * Gets the editable database file corresponding to the target database file.
+	 * <p>
+	 * The id of the target database is taken from the target manifest or read
+	 * from the target database opened read only. The editable database is looked
+	 * up in the source manifest first. Only if it is not registered there, all
+	 * editable databases of the source directory are opened and the found file is
+	 * registered.
 	 * 
 	 * @param sourceDir
 	 *            the current <code>Operation</code>s source directory.
@@ -261,60 +370,84 @@ public final class OnlineDB {
 	 *         corresponding file yet.
 	 */
 	public final static File getEditableDBFile(File sourceDir, File originalDB) {
+		// the original databases id to be searched
+		String searchId = DatabaseManifest.readTargetDbId(originalDB);
+		if (searchId == null) {
+			return null;
+		}
+		// try the registered file first
+		File correctFile = DatabaseManifest.getEditableDB(sourceDir, searchId);
+		if (correctFile != null && searchId.equals(readDbId(correctFile))) {
+			return correctFile;
+		}
+		// assume that there is no corresponding file yet
+		correctFile = null;
 		// load the parallel database files
 		File[] editFiles = sourceDir.listFiles(new EditDBsFilenameFilter());
-		// assume that there is no corresponding file yet
-		File correctFile = null;
-		// the temporary database file to get the original database id
-		File tmpOriginalDB = new File(sourceDir, ".fs.tmp.db");
-		try {
-			// copy the temporary file back into the source directory to not open it in the
-			// target directory
-			FileUtils.copyFile(originalDB, tmpOriginalDB);
-			// the original databases id to be searched
-			String searchId = "";
-
-			try {
-				// get the original databases id
-				searchId = new OnlineDB(tmpOriginalDB).getDbId();
-			} catch (Exception e) {
-				e.printStackTrace();
-				return null;
-			}
-			// the current database to be checked
-			OnlineDB db;
-			// loop through the parallel database files
-			for (File f : editFiles) {
-				try {
-					// try initializing the current database to be checked
-					db = new OnlineDB(f);
-					// if the current databases id equals the searched databases id
-					if (db.getDbId().equals(searchId)) {
-						// then remember the correct file
-						correctFile = f;
-						// and break
-						break;
-					}
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
+		if (editFiles == null) {
+			return null;
+		}
+		// loop through the parallel database files
+		for (File f : editFiles) {
+			// if the current databases id equals the searched databases id
+			if (searchId.equals(readDbId(f))) {
+				// then remember the correct file
+				correctFile = f;
+				// register it for the next lookup
+				DatabaseManifest.registerEditableDB(f, searchId);
+				// and break
+				break;
 			}
+		}
+		// return the correct file or null if it wasn't set
+		return correctFile;
+	}
 
-		} catch (IOException e1) {
-			e1.printStackTrace();
+	/**
+	 * Reads the id of a database without modifying the database file.
+	 * <p>
+	 * The database is opened read only and is neither upgraded nor copied.
+	 * 
+	 * @param database
+	 *            The database file.
+	 * 
+	 * @return The database id or <code>null</code> if the file could not be read.
+	 */
+	public final static String readDbId(File database) {
+		if (!database.exists()) {
+			return null;
+		}
+		SQLiteConfig config = new SQLiteConfig();
+		config.setReadOnly(true);
+		Connection c = null;
+		Statement st = null;
+		ResultSet rs = null;
+		String dbId = null;
+		try {
+			c = DriverManager.getConnection("jdbc:sqlite:" + database.getPath(), config.toProperties());
+			st = c.createStatement();
+			rs = st.executeQuery("SELECT " + info_dbId + " FROM " + tab_dbInfo + ";");
+			if (rs.next()) {
+				dbId = rs.getString(1);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
 		} finally {
-			// finally delete the temporary database file
-			if (tmpOriginalDB != null) {
-				if (tmpOriginalDB.exists()) {
-					if (!tmpOriginalDB.delete()) {
-						System.err.println("Could not delete the temporary file");
-					}
+			try {
+				if (rs != null) {
+					rs.close();
+				}
+				if (st != null) {
+					st.close();
 				}
+				if (c != null) {
+					c.close();
+				}
+			} catch (SQLException e) {
+				e.printStackTrace();
 			}
 		}
-		// return the correct file or null if it wasn't set
-		return correctFile;
-
+		return dbId;
 	}
 
 	/**
@@ -334,6 +467,36 @@ public final class OnlineDB {
 		return dbEditFile;
 	}
 
+	/**
+	 * Checks if a file name in the root directory of an <code>Operation</code>
+	 * belongs to a database file.
+	 * <p>
+	 * This includes the database files (.fs.db, .fs.edit.db, ...), the temporary
+	 * SQLite files that exist while a database is open (.fs.edit.db-wal,
+	 * .fs.edit.db-shm, .fs.edit.db-journal) and the files of the
+	 * <code>DatabasePublisher</code> (.fs.db.journal, .fs.edit.db.pages, *.tmp)
+	 * and the manifests (.fs.manifest, .fs.edit.manifest).
+	 * 
+	 * @param filename
+	 *            The file name to check.
+	 * 
+	 * @return <code>true</code> if the file must not be synchronized.
+	 */
+	public final static boolean isDatabaseFile(String filename) {
+		if (filename.endsWith(DatabasePublisher.TMP_SUFFIX)) {
+			filename = filename.substring(0, filename.length() - DatabasePublisher.TMP_SUFFIX.length());
+		}
+		if (filename.equals(DatabaseManifest.TARGET_MANIFEST)
+				|| filename.equals(DatabaseManifest.SOURCE_MANIFEST)) {
+			return true;
+		}
+		return filename.startsWith(".fs.") && (filename.endsWith(".db") || filename.endsWith(".db-wal")
+				|| filename.endsWith(".db-shm") || filename.endsWith(".db-journal")
+				|| filename.endsWith(".db" + DatabasePublisher.JOURNAL_SUFFIX)
+				|| filename.endsWith(".db" + DatabasePublisher.PAGES_SUFFIX)
+				|| filename.endsWith(".db" + SyncJournal.PLAN_SUFFIX));
+	}
+
 	/**
 	 * Gets this databases unique id.
 	 * 
@@ -383,6 +546,11 @@ public final class OnlineDB {
 	private OnlineDB(File database, String dbId) throws Exception {
 		// the database path String
 		dbPath = database.getPath();
+		// the statement cache of the session
+		statements = new HashMap<String, PreparedStatement>();
+		// the directory cache
+		directoryIds = new HashMap<String, Long>();
+		directoryPaths = new HashMap<Long, String>();
 		// if the database id is null
 		if (dbId == null) {
 			// then open existing database
@@ -492,205 +660,1113 @@ public final class OnlineDB {
 	 */
 	private void upgrade() {
 		if (dbBuild != DB_BUILD) {
-			// // for future build version 2
-			// if (dbBuild == 1) {
-			// // upgrade to build version 2
-			// }
+			// true if the file system table was rebuilt
+			boolean rebuilt = false;
+			if (dbBuild == 1) {
+				// upgrade to build version 2: record the checksum algorithm, all existing
+				// checksums were created by SHA384
+				if (execute("ALTER TABLE " + tab_filesystem + " ADD COLUMN " + fs_algorithm
+						+ " STRING NOT NULL DEFAULT '" + ChecksumAlgorithm.SHA384.getName() + "';")) {
+					setBuild(2);
+				}
+			}
+			if (dbBuild == 2) {
+				// upgrade to build version 3: store the checksums as BLOBs
+				rebuilt |= upgradeBinaryChecksums();
+			}
+			if (dbBuild == 3) {
+				// upgrade to build version 4: store the paths as directory and name
+				rebuilt |= upgradeDirectories();
+			}
+			if (dbBuild == 4) {
+				// upgrade to build version 5: record when old versions were replaced, the
+				// table rebuilt by the upgrade to build 4 already has the column
+				if (hasColumn(tab_filesystem, fs_archived) || execute("ALTER TABLE " + tab_filesystem
+						+ " ADD COLUMN " + fs_archived + " INTEGER DEFAULT 0;")) {
+					setBuild(5);
+				}
+			}
+			if (rebuilt) {
+				// give the space of the replaced table back
+				execute("VACUUM;");
+			}
 		}
 	}
 
 	/**
-	 * creates the new database.
+	 * Upgrades the database to build version 3.
+	 * <p>
+	 * The file system table is rebuilt with a BLOB checksum column and the hex
+	 * checksums are converted in a single transaction. Checksums that are not
+	 * valid hex are stored as an empty BLOB so that the file is reported as
+	 * corrupt by the next integrity check.
+	 * 
+	 * @return <code>true</code> if the upgrade was committed.
 	 */
-	private void createDatabase() {
+	private boolean upgradeBinaryChecksums() {
+		String tab_upgrade = tab_filesystem + "_upgrade";
 		// connect
 		Connection c = connect();
 		Statement st = null;
+		ResultSet rs = null;
+		PreparedStatement stInsert = null;
+		boolean upgraded = false;
+		// the current checksum
+		byte[] checksum;
+
 		try {
-			// create table tab_filesystem
-			String sql = "CREATE TABLE IF NOT EXISTS " + tab_filesystem + " (" + fs_fileId
-					+ " INTEGER PRIMARY KEY AUTOINCREMENT, " + fs_parentId + " INTEGER DEFAULT 0, "
-					+ fs_filepath + " STRING NOT NULL, " + fs_length + " INTEGER NOT NULL, " + fs_modified
-					+ " INTEGER NOT NULL, " + fs_checksum + " STRING NOT NULL, " + fs_version
-					+ " INTEGER DEFAULT 0, CONSTRAINT name_unique UNIQUE (" + fs_filepath + ", " + fs_version
-					+ "));";
+			c.setAutoCommit(false);
 			st = c.createStatement();
-			st.execute(sql);
-			// create table tab_dbInfo
-			sql = "CREATE TABLE IF NOT EXISTS " + tab_dbInfo + " (" + info_dbId + " STRING PRIMARY KEY, "
-					+ info_dbVersion + " INTEGER, " + info_dbBuild + " INTEGER);";
-			st.execute(sql);
-			// initialize table meta data
-			sql = "INSERT INTO " + tab_dbInfo + "(" + info_dbId + ", " + info_dbVersion + ", " + info_dbBuild
-					+ ") VALUES('" + dbId + "', 0, " + DB_BUILD + ");";
-			st.execute(sql);
+			st.execute("DROP TABLE IF EXISTS " + tab_upgrade + ";");
+			st.execute(createLegacyFilesystemTableSQL(tab_upgrade));
+			stInsert = c.prepareStatement("INSERT INTO " + tab_upgrade + "(" + fs_fileId + ", " + fs_parentId
+					+ ", " + fs_filepath + ", " + fs_length + ", " + fs_modified + ", " + fs_checksum + ", "
+					+ fs_algorithm + ", " + fs_version + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?);");
+			rs = st.executeQuery("SELECT " + fs_fileId + ", " + fs_parentId + ", " + fs_filepath + ", "
+					+ fs_length + ", " + fs_modified + ", " + fs_checksum + ", " + fs_algorithm + ", "
+					+ fs_version + " FROM " + tab_filesystem + ";");
+			while (rs.next()) {
+				try {
+					checksum = Hex.decodeHex(rs.getString(6).toCharArray());
+				} catch (DecoderException | NullPointerException e) {
+					checksum = new byte[0];
+				}
+				stInsert.setLong(1, rs.getLong(1));
+				stInsert.setLong(2, rs.getLong(2));
+				stInsert.setString(3, rs.getString(3));
+				stInsert.setLong(4, rs.getLong(4));
+				stInsert.setLong(5, rs.getLong(5));
+				stInsert.setBytes(6, checksum);
+				stInsert.setString(7, rs.getString(7));
+				stInsert.setLong(8, rs.getLong(8));
+				stInsert.executeUpdate();
+			}
+			rs.close();
+			rs = null;
+			st.execute("DROP TABLE " + tab_filesystem + ";");
+			st.execute("ALTER TABLE " + tab_upgrade + " RENAME TO " + tab_filesystem + ";");
+			st.execute("UPDATE " + tab_dbInfo + " SET " + info_dbBuild + " = 3;");
+			c.commit();
+			upgraded = true;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			try {
+				c.rollback();
+			} catch (SQLException e1) {
+				e1.printStackTrace();
+			}
+		}
+		try {
+			c.setAutoCommit(true);
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
 		// release resources
-		disconnect(c, st);
+		disconnect(null, stInsert);
+		disconnect(c, st, rs);
+		if (upgraded) {
+			dbBuild = 3;
+		}
+		return upgraded;
 	}
 
 	/**
-	 * Initializes a new SQL <code>Connection</code> to the database.
+	 * Upgrades the database to build version 4.
+	 * <p>
+	 * The directories of all relative paths are stored once in the directory
+	 * table and the file system table is rebuilt with the directory id and the
+	 * file name instead of the relative path in a single transaction.
 	 * 
-	 * @return a new SQL <code>Connection</code> to the database or
-	 *         <code>null</code> if an SQLException occurred.
+	 * @return <code>true</code> if the upgrade was committed.
 	 */
-	private Connection connect() {
-		String url = "jdbc:sqlite:" + dbPath;
-		Connection conn = null;
+	private boolean upgradeDirectories() {
+		String tab_upgrade = tab_filesystem + "_upgrade";
+		// connect
+		Connection c = connect();
+		Statement st = null;
+		ResultSet rs = null;
+		PreparedStatement stInsert = null;
+		boolean upgraded = false;
+		// the current relative path
+		String filepath;
+
 		try {
-			conn = DriverManager.getConnection(url);
+			c.setAutoCommit(false);
+			st = c.createStatement();
+			st.execute("DROP TABLE IF EXISTS " + tab_upgrade + ";");
+			st.execute("DROP TABLE IF EXISTS " + tab_directories + ";");
+			st.execute(createDirectoriesTableSQL());
+			st.execute(createFilesystemTableSQL(tab_upgrade));
+			stInsert = c.prepareStatement("INSERT INTO " + tab_upgrade + "(" + fs_fileId + ", " + fs_parentId
+					+ ", " + fs_dirId + ", " + fs_name + ", " + fs_length + ", " + fs_modified + ", "
+					+ fs_checksum + ", " + fs_algorithm + ", " + fs_version
+					+ ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?);");
+			// the legacy paths have numeric affinity, read them back as text
+			rs = st.executeQuery("SELECT " + fs_fileId + ", " + fs_parentId + ", CAST(" + fs_filepath
+					+ " AS TEXT), " + fs_length + ", " + fs_modified + ", " + fs_checksum + ", "
+					+ fs_algorithm + ", " + fs_version + " FROM " + tab_filesystem + ";");
+			while (rs.next()) {
+				filepath = rs.getString(3);
+				stInsert.setLong(1, rs.getLong(1));
+				stInsert.setLong(2, rs.getLong(2));
+				stInsert.setLong(3, getDirectoryId(c, directoryOf(filepath), true));
+				stInsert.setString(4, nameOf(filepath));
+				stInsert.setLong(5, rs.getLong(4));
+				stInsert.setLong(6, rs.getLong(5));
+				stInsert.setBytes(7, checksum(rs.getBytes(6)));
+				stInsert.setString(8, rs.getString(7));
+				stInsert.setLong(9, rs.getLong(8));
+				stInsert.executeUpdate();
+			}
+			rs.close();
+			rs = null;
+			st.execute("DROP TABLE " + tab_filesystem + ";");
+			st.execute("ALTER TABLE " + tab_upgrade + " RENAME TO " + tab_filesystem + ";");
+			st.execute("UPDATE " + tab_dbInfo + " SET " + info_dbBuild + " = 4;");
+			c.commit();
+			upgraded = true;
 		} catch (SQLException e) {
 			e.printStackTrace();
+			try {
+				c.rollback();
+			} catch (SQLException e1) {
+				e1.printStackTrace();
+			}
+			// the cached directories were rolled back
+			clearDirectories();
 		}
-		return conn;
+		try {
+			c.setAutoCommit(true);
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		// release resources
+		disconnect(null, stInsert);
+		disconnect(c, st, rs);
+		if (upgraded) {
+			dbBuild = 4;
+		}
+		return upgraded;
 	}
 
 	/**
-	 * Closes the specified resources.
+	 * Creates the SQL statement that creates a file system table.
+	 * <p>
+	 * The unique constraint on directory id, name and version also serves the
+	 * lookup of the files of a directory.
 	 * 
-	 * @param c
-	 *            The <code>Connection</code> to close.
-	 * @param st
-	 *            The <code>Statement</code> to close.
+	 * @param table
+	 *            The name of the table.
+	 * 
+	 * @return The SQL statement.
 	 */
-	private final void disconnect(Connection c, Statement st) {
-		disconnect(c, st, null);
+	private String createFilesystemTableSQL(String table) {
+		return "CREATE TABLE IF NOT EXISTS " + table + " (" + fs_fileId
+				+ " INTEGER PRIMARY KEY AUTOINCREMENT, " + fs_parentId + " INTEGER DEFAULT 0, " + fs_dirId
+				+ " INTEGER NOT NULL, " + fs_name + " TEXT NOT NULL, " + fs_length + " INTEGER NOT NULL, "
+				+ fs_modified + " INTEGER NOT NULL, " + fs_checksum + " BLOB NOT NULL, " + fs_algorithm
+				+ " TEXT NOT NULL DEFAULT '" + ChecksumAlgorithm.SHA384.getName() + "', " + fs_version
+				+ " INTEGER DEFAULT 0, " + fs_archived + " INTEGER DEFAULT 0, CONSTRAINT name_unique UNIQUE ("
+				+ fs_dirId + ", " + fs_name + ", " + fs_version + "));";
 	}
 
 	/**
-	 * Closes the specified resources.
+	 * Creates the SQL statement that creates a file system table in the layout
+	 * of build 3, used by the upgrade to build 3.
 	 * 
-	 * @param c
-	 *            The <code>Connection</code> to close.
-	 * @param st
-	 *            The <code>Statement</code> to close.
-	 * @param rs
-	 *            The <code>ResultSet</code> to close.
+	 * @param table
+	 *            The name of the table.
+	 * 
+	 * @return The SQL statement.
 	 */
-	private final void disconnect(Connection c, Statement st, ResultSet rs) {
-		disconnect(c, st, rs, null);
+	private String createLegacyFilesystemTableSQL(String table) {
+		return "CREATE TABLE IF NOT EXISTS " + table + " (" + fs_fileId
+				+ " INTEGER PRIMARY KEY AUTOINCREMENT, " + fs_parentId + " INTEGER DEFAULT 0, " + fs_filepath
+				+ " STRING NOT NULL, " + fs_length + " INTEGER NOT NULL, " + fs_modified
+				+ " INTEGER NOT NULL, " + fs_checksum + " BLOB NOT NULL, " + fs_algorithm
+				+ " STRING NOT NULL DEFAULT '" + ChecksumAlgorithm.SHA384.getName() + "', " + fs_version
+				+ " INTEGER DEFAULT 0, CONSTRAINT name_unique UNIQUE (" + fs_filepath + ", " + fs_version
+				+ "));";
 	}
 
 	/**
-	 * Closes the specified resources.
+	 * Creates the SQL statement that creates the directory table.
 	 * 
-	 * @param c
-	 *            The <code>Connection</code> to close.
-	 * @param st
-	 *            The <code>Statement</code> to close.
-	 * @param rs
-	 *            The <code>ResultSet</code> to close.
-	 * @param st2
-	 *            The second <code>Statement</code> to close.
+	 * @return The SQL statement.
 	 */
-	private void disconnect(Connection c, Statement st1, ResultSet rs, Statement st2) {
-		if (rs != null) {
-			try {
-				rs.close();
-			} catch (SQLException e) {
-				e.printStackTrace();
-			}
-		}
-		if (st1 != null) {
-			try {
-				st1.close();
-			} catch (SQLException e) {
-				e.printStackTrace();
-			}
-		}
-		if (st2 != null) {
-			try {
-				st2.close();
-			} catch (SQLException e) {
-				e.printStackTrace();
-			}
-		}
-		if (c != null) {
-			try {
-				c.close();
-			} catch (SQLException e) {
-				e.printStackTrace();
-			}
-		}
+	private String createDirectoriesTableSQL() {
+		return "CREATE TABLE IF NOT EXISTS " + tab_directories + " (" + dir_dirId
+				+ " INTEGER PRIMARY KEY AUTOINCREMENT, " + dir_parentId + " INTEGER NOT NULL, " + dir_name
+				+ " TEXT NOT NULL, CONSTRAINT directory_unique UNIQUE (" + dir_parentId + ", " + dir_name
+				+ "));";
 	}
 
 	/**
-	 * Lists all current versions contained in the file system table.
+	 * Gets the relative path of the directory that contains a file.
 	 * 
-	 * @return all current versions contained in the file system table.
+	 * @param relativePath
+	 *            The relative path of the file.
+	 * 
+	 * @return The relative directory path or "" for the root directory.
 	 */
-	public Vector<RelativeFile> listAll() {
-		// select all current versions from file system
-		String sql = "SELECT " + fs_filepath + ", " + fs_length + ", " + fs_modified + ", " + fs_checksum
-				+ " FROM " + tab_filesystem + " WHERE " + fs_version + " = 0;";
-		// connect and prepare
-		Connection c = connect();
-		Statement st = null;
-		ResultSet rs = null;
-		// temporary values
-		String filepath, checksum;
-		long modified;
-		long length;
-		// initialize the list of files to return
-		Vector<RelativeFile> data = new Vector<RelativeFile>();
-
-		try {
-			st = c.createStatement();
-			rs = st.executeQuery(sql);
-			// fill the list of files to return
-			while (rs.next()) {
-				filepath = rs.getString(1);
-				length = rs.getLong(2);
-				modified = rs.getLong(3);
-				checksum = rs.getString(4);
-				data.add(new RelativeFile(filepath, length, modified, checksum));
-			}
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
-		// release resources
-		disconnect(c, st, rs);
-		// return the list of files
-		return data;
+	private static String directoryOf(String relativePath) {
+		int separator = relativePath.lastIndexOf(File.separatorChar);
+		return separator < 0 ? "" : relativePath.substring(0, separator);
 	}
 
 	/**
-	 * Introduces a file to the file system table.
+	 * Gets the name of a file or directory.
 	 * 
 	 * @param relativePath
-	 *            The relative path to the file
-	 * @param length
-	 *            The file length in bytes.
-	 * @param modified
-	 *            The current modification time in milliseconds.
-	 * @param checksum
-	 *            The SHA384 checksum of the file.
+	 *            The relative path of the file or directory.
+	 * 
+	 * @return The last name of the path.
 	 */
-	public synchronized void add(String relativePath, long length, long modified, String checksum) {
-		String sql = "INSERT INTO " + tab_filesystem + "(" + fs_filepath + ", " + fs_length + ", "
-				+ fs_modified + ", " + fs_checksum + ") VALUES (?, ?, ?, ?);";
-		// connect
-		Connection c = connect();
-		PreparedStatement st = null;
+	private static String nameOf(String relativePath) {
+		return relativePath.substring(relativePath.lastIndexOf(File.separatorChar) + 1);
+	}
 
-		try {
-			// prepare
-			st = c.prepareStatement(sql);
-			// set prepared data
-			st.setString(1, relativePath);
-			st.setLong(2, length);
-			st.setLong(3, modified);
-			st.setString(4, checksum);
-			// execute prepared statement
+	/**
+	 * Joins a directory path and a name to a relative path.
+	 * 
+	 * @param directory
+	 *            The relative directory path or "" for the root directory.
+	 * @param name
+	 *            The name of the file or directory.
+	 * 
+	 * @return The relative path.
+	 */
+	private static String join(String directory, String name) {
+		return directory.length() == 0 ? name : directory + File.separator + name;
+	}
+
+	/**
+	 * Loads the directory tree into memory if it was not loaded yet.
+	 * 
+	 * @param c
+	 *            The current <code>Connection</code>.
+	 * 
+	 * @throws SQLException
+	 *             if the directory table could not be read.
+	 */
+	private void loadDirectories(Connection c) throws SQLException {
+		if (directoriesLoaded) {
+			return;
+		}
+		// the parent directory id and the name by directory id
+		HashMap<Long, Long> parents = new HashMap<Long, Long>();
+		HashMap<Long, String> names = new HashMap<Long, String>();
+		Statement st = null;
+		ResultSet rs = null;
+		try {
+			st = c.createStatement();
+			rs = st.executeQuery("SELECT " + dir_dirId + ", " + dir_parentId + ", " + dir_name + " FROM "
+					+ tab_directories + ";");
+			while (rs.next()) {
+				parents.put(rs.getLong(1), rs.getLong(2));
+				names.put(rs.getLong(1), rs.getString(3));
+			}
+		} finally {
+			disconnect(null, st, rs);
+		}
+		directoryIds.clear();
+		directoryPaths.clear();
+		directoryIds.put("", root_dirId);
+		directoryPaths.put(root_dirId, "");
+		// resolve the paths, parents may have a higher id than their children
+		for (Long dirId : names.keySet()) {
+			resolveDirectory(dirId, parents, names);
+		}
+		directoriesLoaded = true;
+	}
+
+	/**
+	 * Resolves the path of a directory and its parents into the directory cache.
+	 * 
+	 * @param dirId
+	 *            The id of the directory to resolve.
+	 * @param parents
+	 *            The parent directory ids by directory id.
+	 * @param names
+	 *            The directory names by directory id.
+	 * 
+	 * @return The relative directory path or <code>null</code> if the directory
+	 *         is not connected to the root directory.
+	 */
+	private String resolveDirectory(Long dirId, HashMap<Long, Long> parents, HashMap<Long, String> names) {
+		String path = directoryPaths.get(dirId);
+		if (path != null) {
+			return path;
+		}
+		Long parentId = parents.remove(dirId);
+		// unknown or cyclic
+		if (parentId == null) {
+			return null;
+		}
+		String parentPath = resolveDirectory(parentId, parents, names);
+		if (parentPath == null) {
+			return null;
+		}
+		path = join(parentPath, names.get(dirId));
+		directoryIds.put(path, dirId);
+		directoryPaths.put(dirId, path);
+		return path;
+	}
+
+	/**
+	 * Discards the directory cache, used after a rollback.
+	 */
+	private void clearDirectories() {
+		directoryIds.clear();
+		directoryPaths.clear();
+		directoriesLoaded = false;
+	}
+
+	/**
+	 * Gets the id of a directory.
+	 * 
+	 * @param c
+	 *            The current <code>Connection</code>.
+	 * @param directory
+	 *            The relative directory path or "" for the root directory.
+	 * @param create
+	 *            <code>true</code> to create the directory and its parents if
+	 *            they are not in the database yet.
+	 * 
+	 * @return The directory id or -1 if the directory is not in the database and
+	 *         <code>create</code> is <code>false</code>.
+	 * 
+	 * @throws SQLException
+	 *             if the directory could not be read or created.
+	 */
+	private long getDirectoryId(Connection c, String directory, boolean create) throws SQLException {
+		loadDirectories(c);
+		Long dirId = directoryIds.get(directory);
+		if (dirId != null) {
+			return dirId;
+		}
+		if (!create) {
+			return -1;
+		}
+		// create the parent first
+		long parentId = getDirectoryId(c, directoryOf(directory), true);
+		PreparedStatement st = null;
+		Statement stId = null;
+		ResultSet rs = null;
+		try {
+			st = prepare(c, "INSERT INTO " + tab_directories + "(" + dir_parentId + ", " + dir_name
+					+ ") VALUES (?, ?);");
+			st.setLong(1, parentId);
+			st.setString(2, nameOf(directory));
 			st.executeUpdate();
+			stId = c.createStatement();
+			rs = stId.executeQuery("SELECT last_insert_rowid();");
+			rs.next();
+			dirId = rs.getLong(1);
+		} finally {
+			disconnect(null, st, rs, stId);
+		}
+		directoryIds.put(directory, dirId);
+		directoryPaths.put(dirId, directory);
+		return dirId;
+	}
+
+	/**
+	 * Deletes a directory and its parents from the directory table as long as
+	 * they contain neither files nor directories.
+	 * 
+	 * @param c
+	 *            The current <code>Connection</code>.
+	 * @param dirId
+	 *            The id of the directory that lost a file.
+	 * 
+	 * @throws SQLException
+	 *             if the directory table could not be modified.
+	 */
+	private void pruneDirectory(Connection c, long dirId) throws SQLException {
+		String directory;
+		Long parentId;
+		PreparedStatement st;
+		while (dirId != root_dirId) {
+			if (exists(c, "SELECT 1 FROM " + tab_filesystem + " WHERE " + fs_dirId + " = ? LIMIT 1;", dirId)
+					|| exists(c, "SELECT 1 FROM " + tab_directories + " WHERE " + dir_parentId
+							+ " = ? LIMIT 1;", dirId)) {
+				return;
+			}
+			st = prepare(c, "DELETE FROM " + tab_directories + " WHERE " + dir_dirId + " = ?;");
+			try {
+				st.setLong(1, dirId);
+				st.executeUpdate();
+			} finally {
+				disconnect(null, st);
+			}
+			directory = directoryPaths.remove(dirId);
+			if (directory == null) {
+				return;
+			}
+			directoryIds.remove(directory);
+			// continue with the parent directory
+			parentId = directoryIds.get(directoryOf(directory));
+			if (parentId == null) {
+				return;
+			}
+			dirId = parentId;
+		}
+	}
+
+	/**
+	 * Checks if a query for an id has a result.
+	 * 
+	 * @param c
+	 *            The current <code>Connection</code>.
+	 * @param sql
+	 *            The SQL query with one parameter.
+	 * @param id
+	 *            The id to query.
+	 * 
+	 * @return <code>true</code> if the query has at least one result.
+	 * 
+	 * @throws SQLException
+	 *             if the query failed.
+	 */
+	private boolean exists(Connection c, String sql, long id) throws SQLException {
+		PreparedStatement st = prepare(c, sql);
+		ResultSet rs = null;
+		try {
+			st.setLong(1, id);
+			rs = st.executeQuery();
+			return rs.next();
+		} finally {
+			disconnect(null, st, rs);
+		}
+	}
+
+	/**
+	 * Gets the shared name of a registered checksum algorithm so that the index
+	 * does not hold a copy of the name for every file.
+	 * 
+	 * @param algorithm
+	 *            The algorithm name as read from the database.
+	 * 
+	 * @return The name of the registered algorithm or <code>algorithm</code> if it
+	 *         is not registered.
+	 */
+	private static String algorithmName(String algorithm) {
+		ChecksumAlgorithm registered = ChecksumAlgorithm.forName(algorithm);
+		return registered != null ? registered.getName() : algorithm;
+	}
+
+	/**
+	 * Replaces a missing checksum by an empty checksum, the driver returns
+	 * <code>null</code> for empty BLOBs.
+	 * 
+	 * @param checksum
+	 *            The checksum as read from the database.
+	 * 
+	 * @return The checksum, never <code>null</code>.
+	 */
+	private static byte[] checksum(byte[] checksum) {
+		return checksum != null ? checksum : new byte[0];
+	}
+
+	/**
+	 * Executes an SQL statement on a new connection.
+	 * 
+	 * @param sql
+	 *            The SQL statement.
+	 * 
+	 * @return <code>true</code> if the statement was executed without error.
+	 */
+	private boolean execute(String sql) {
+		// connect
+		Connection c = connect();
+		Statement st = null;
+		boolean executed = false;
+		try {
+			st = c.createStatement();
+			st.execute(sql);
+			executed = true;
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		// release resources
+		disconnect(c, st);
+		return executed;
+	}
+
+	/**
+	 * Checks if a table has a column.
+	 * 
+	 * @param table
+	 *            The table name.
+	 * @param column
+	 *            The column name.
+	 * 
+	 * @return <code>true</code> if the column exists.
+	 */
+	private boolean hasColumn(String table, String column) {
+		// connect
+		Connection c = connect();
+		Statement st = null;
+		ResultSet rs = null;
+		boolean found = false;
+		try {
+			st = c.createStatement();
+			rs = st.executeQuery("PRAGMA table_info(" + table + ");");
+			while (rs.next()) {
+				if (rs.getString(2).equals(column)) {
+					found = true;
+					break;
+				}
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		// release resources
+		disconnect(c, st, rs);
+		return found;
+	}
+
+	/**
+	 * Sets the structural database version after an upgrade step.
+	 * 
+	 * @param build
+	 *            The new structural version.
+	 */
+	private void setBuild(int build) {
+		if (execute("UPDATE " + tab_dbInfo + " SET " + info_dbBuild + " = " + build + ";")) {
+			dbBuild = build;
+		}
+	}
+
+	/**
+	 * creates the new database.
+	 */
+	private void createDatabase() {
+		// connect
+		Connection c = connect();
+		Statement st = null;
+		try {
+			// create table tab_filesystem
+			String sql = createFilesystemTableSQL(tab_filesystem);
+			st = c.createStatement();
+			st.execute(sql);
+			// create table tab_directories
+			st.execute(createDirectoriesTableSQL());
+			// create table tab_dbInfo
+			sql = "CREATE TABLE IF NOT EXISTS " + tab_dbInfo + " (" + info_dbId + " STRING PRIMARY KEY, "
+					+ info_dbVersion + " INTEGER, " + info_dbBuild + " INTEGER);";
+			st.execute(sql);
+			// initialize table meta data
+			sql = "INSERT INTO " + tab_dbInfo + "(" + info_dbId + ", " + info_dbVersion + ", " + info_dbBuild
+					+ ") VALUES('" + dbId + "', 0, " + DB_BUILD + ");";
+			st.execute(sql);
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		// release resources
+		disconnect(c, st);
+	}
+
+	/**
+	 * Opens a session that keeps one <code>Connection</code> and its
+	 * <code>PreparedStatement</code>s open until <code>closeSession()</code> is
+	 * called.
+	 * <p>
+	 * The session uses a write ahead log, <code>synchronous=NORMAL</code>, a 64
+	 * MiB page cache and memory mapped I/O. Durability of the last transactions
+	 * is established when the session is closed.
+	 * 
+	 * @see OnlineDB#closeSession()
+	 */
+	public synchronized void openSession() {
+		if (session != null) {
+			return;
+		}
+		Connection c = connect();
+		if (c == null) {
+			return;
+		}
+		Statement st = null;
+		try {
+			st = c.createStatement();
+			st.execute("PRAGMA journal_mode = WAL;");
+			st.execute("PRAGMA synchronous = NORMAL;");
+			st.execute("PRAGMA cache_size = -65536;");
+			st.execute("PRAGMA mmap_size = 268435456;");
+			st.execute("PRAGMA temp_store = MEMORY;");
+			session = c;
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		// release the statement, keep the connection if the session was opened
+		disconnect(session == c ? null : c, st);
+	}
+
+	/**
+	 * Closes the current session.
+	 * <p>
+	 * The write ahead log is checkpointed and the database is switched back to a
+	 * rollback journal so that the database file is complete and can be copied.
+	 * 
+	 * @see OnlineDB#openSession()
+	 */
+	public synchronized void closeSession() {
+		if (session == null) {
+			return;
+		}
+		Connection c = session;
+		// release the cached statements
+		for (PreparedStatement ps : statements.values()) {
+			try {
+				ps.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+		statements.clear();
+		Statement st = null;
+		try {
+			st = c.createStatement();
+			st.execute("PRAGMA synchronous = FULL;");
+			st.execute("PRAGMA wal_checkpoint(TRUNCATE);");
+			st.execute("PRAGMA journal_mode = DELETE;");
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		session = null;
+		// release resources
+		disconnect(c, st);
+	}
+
+	/**
+	 * Gets a <code>PreparedStatement</code> for the specified
+	 * <code>Connection</code>.
+	 * 
+	 * @param c
+	 *            The <code>Connection</code> obtained by <code>connect()</code>.
+	 * @param sql
+	 *            The SQL to prepare.
+	 * 
+	 * @return The cached <code>PreparedStatement</code> if <code>c</code> is the
+	 *         session <code>Connection</code>, a new one otherwise.
+	 * 
+	 * @throws SQLException
+	 *             if the statement could not be prepared.
+	 */
+	private PreparedStatement prepare(Connection c, String sql) throws SQLException {
+		if (c != session) {
+			return c.prepareStatement(sql);
+		}
+		PreparedStatement ps = statements.get(sql);
+		if (ps == null) {
+			ps = c.prepareStatement(sql);
+			statements.put(sql, ps);
+		}
+		return ps;
+	}
+
+	/**
+	 * Initializes a new SQL <code>Connection</code> to the database.
+	 * 
+	 * @return the session <code>Connection</code> if a session is open, otherwise
+	 *         a new SQL <code>Connection</code> to the database or
+	 *         <code>null</code> if an SQLException occurred.
+	 */
+	private Connection connect() {
+		if (session != null) {
+			return session;
+		}
+		String url = "jdbc:sqlite:" + dbPath;
+		Connection conn = null;
+		try {
+			conn = DriverManager.getConnection(url);
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return conn;
+	}
+
+	/**
+	 * Closes the specified resources.
+	 * 
+	 * @param c
+	 *            The <code>Connection</code> to close.
+	 * @param st
+	 *            The <code>Statement</code> to close.
+	 */
+	private final void disconnect(Connection c, Statement st) {
+		disconnect(c, st, null);
+	}
+
+	/**
+	 * Closes the specified resources.
+	 * 
+	 * @param c
+	 *            The <code>Connection</code> to close.
+	 * @param st
+	 *            The <code>Statement</code> to close.
+	 * @param rs
+	 *            The <code>ResultSet</code> to close.
+	 */
+	private final void disconnect(Connection c, Statement st, ResultSet rs) {
+		disconnect(c, st, rs, null);
+	}
+
+	/**
+	 * Closes the specified resources.
+	 * <p>
+	 * The session <code>Connection</code> and its cached
+	 * <code>PreparedStatement</code>s stay open.
+	 * 
+	 * @param c
+	 *            The <code>Connection</code> to close.
+	 * @param st
+	 *            The <code>Statement</code> to close.
+	 * @param rs
+	 *            The <code>ResultSet</code> to close.
+	 * @param st2
+	 *            The second <code>Statement</code> to close.
+	 */
+	private void disconnect(Connection c, Statement st1, ResultSet rs, Statement st2) {
+		if (rs != null) {
+			try {
+				rs.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+		if (st1 != null && !statements.containsValue(st1)) {
+			try {
+				st1.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+		if (st2 != null && !statements.containsValue(st2)) {
+			try {
+				st2.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+		if (c != null && c != session) {
+			try {
+				c.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Loads all current versions of the file system table into memory.
+	 * <p>
+	 * After loading, <code>getFileByPath</code>, <code>listAll</code> and the
+	 * file statistics are served from memory and <code>add</code>,
+	 * <code>updateFile</code> and <code>removeFileByPath</code> are only recorded
+	 * in memory until <code>flushIndex()</code> is called.
+	 * 
+	 * @see OnlineDB#flushIndex()
+	 */
+	public synchronized void loadIndex() {
+		if (index != null) {
+			return;
+		}
+		// select all current versions from file system
+		String sql = "SELECT " + fs_dirId + ", " + fs_name + ", " + fs_length + ", " + fs_modified + ", "
+				+ fs_checksum + ", " + fs_algorithm + " FROM " + tab_filesystem + " WHERE " + fs_version
+				+ " = 0;";
+		// initialize the index with the known size
+		PathIndex pathIndex = new PathIndex(getFileCount());
+		// connect and prepare
+		Connection c = connect();
+		Statement st = null;
+		ResultSet rs = null;
+		// the directory of the current file
+		String directory;
+
+		try {
+			loadDirectories(c);
+			st = c.createStatement();
+			rs = st.executeQuery(sql);
+			// fill the index
+			while (rs.next()) {
+				directory = directoryPaths.get(rs.getLong(1));
+				if (directory == null) {
+					System.err.println("Unknown directory id " + rs.getLong(1));
+					continue;
+				}
+				pathIndex.load(new RelativeFile(join(directory, rs.getString(2)), rs.getLong(3),
+						rs.getLong(4), checksum(rs.getBytes(5)), algorithmName(rs.getString(6))));
+			}
+			index = pathIndex;
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		// release resources
+		disconnect(c, st, rs);
+	}
+
+	/**
+	 * Gets whether changes recorded in the index were committed to the database
+	 * by <code>flushIndex()</code>.
+	 * 
+	 * @return <code>true</code> if the database file was modified through the
+	 *         index.
+	 */
+	public synchronized boolean isIndexWritten() {
+		return indexWritten;
+	}
+
+	/**
+	 * Gets the number of changes recorded in the index that were not written to
+	 * the database yet.
+	 * 
+	 * @return The number of pending changes or 0 if the index is not loaded.
+	 */
+	public int getPendingChangeCount() {
+		PathIndex pathIndex = index;
+		return pathIndex == null ? 0 : pathIndex.getChangeCount();
+	}
+
+	/**
+	 * Writes all changes recorded in the index to the file system table in a
+	 * single transaction.
+	 * <p>
+	 * This method does nothing if the index is not loaded or if there are no
+	 * pending changes.
+	 * <p>
+	 * A change that is rejected by the database is reported and dropped, the
+	 * remaining changes are still committed. Only if the transaction itself
+	 * fails all changes are kept for the next attempt.
+	 * 
+	 * @see OnlineDB#loadIndex()
+	 */
+	public synchronized void flushIndex() {
+		if (index == null || !index.hasChanges()) {
+			return;
+		}
+		// the changes to write
+		LinkedHashMap<String, Integer> changes = index.takeChanges();
+		// the current state of the changed file
+		RelativeFile file;
+		// the directory id of the changed file
+		long dirId;
+		// the directories that lost files
+		HashSet<Long> pruneIds = new HashSet<Long>();
+		// connect
+		Connection c = connect();
+		PreparedStatement stAdd = null;
+		PreparedStatement stUpdate = null;
+		PreparedStatement stRemove = null;
+
+		try {
+			c.setAutoCommit(false);
+			// prepare
+			stAdd = prepare(c, insertFileSQL());
+			stUpdate = prepare(c, updateFileSQL());
+			stRemove = prepare(c, removeFileSQL());
+			for (Map.Entry<String, Integer> change : changes.entrySet()) {
+				try {
+					if (change.getValue() == PathIndex.change_remove) {
+						dirId = getDirectoryId(c, directoryOf(change.getKey()), false);
+						if (dirId != -1) {
+							stRemove.setLong(1, dirId);
+							stRemove.setString(2, nameOf(change.getKey()));
+							stRemove.executeUpdate();
+							pruneIds.add(dirId);
+						}
+						continue;
+					}
+					file = index.get(change.getKey());
+					// the file was removed in the meantime, the removal is recorded separately
+					if (file == null) {
+						continue;
+					}
+					dirId = getDirectoryId(c, directoryOf(file.getRelativePath()), true);
+					// update the record first, an added file might have been written before
+					stUpdate.setLong(1, file.getLength());
+					stUpdate.setLong(2, file.getModified());
+					stUpdate.setBytes(3, file.getChecksum());
+					stUpdate.setString(4, file.getAlgorithm());
+					stUpdate.setLong(5, dirId);
+					stUpdate.setString(6, nameOf(file.getRelativePath()));
+					// insert the record if it does not exist yet
+					if (stUpdate.executeUpdate() == 0) {
+						stAdd.setLong(1, dirId);
+						stAdd.setString(2, nameOf(file.getRelativePath()));
+						stAdd.setLong(3, file.getLength());
+						stAdd.setLong(4, file.getModified());
+						stAdd.setBytes(5, file.getChecksum());
+						stAdd.setString(6, file.getAlgorithm());
+						stAdd.executeUpdate();
+					}
+				} catch (SQLException e) {
+					// a single rejected change must not fail the whole group
+					System.err.println("change rejected: " + change.getKey());
+					e.printStackTrace();
+				}
+			}
+			// remove the directories that became empty
+			for (Long pruneId : pruneIds) {
+				pruneDirectory(c, pruneId);
+			}
+			c.commit();
+			indexWritten = true;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			try {
+				c.rollback();
+			} catch (SQLException e1) {
+				e1.printStackTrace();
+			}
+			// keep the changes for the next attempt
+			index.restoreChanges(changes);
+			// the cached directories were rolled back
+			clearDirectories();
+		}
+		try {
+			c.setAutoCommit(true);
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		// release resources
+		disconnect(null, stAdd, null, stUpdate);
+		disconnect(c, stRemove);
+	}
+
+	/**
+	 * Creates the SQL statement that inserts a file by directory id and name.
+	 * 
+	 * @return The SQL statement.
+	 */
+	private String insertFileSQL() {
+		return "INSERT INTO " + tab_filesystem + "(" + fs_dirId + ", " + fs_name + ", " + fs_length + ", "
+				+ fs_modified + ", " + fs_checksum + ", " + fs_algorithm + ") VALUES (?, ?, ?, ?, ?, ?);";
+	}
+
+	/**
+	 * Creates the SQL statement that updates a file by directory id and name.
+	 * 
+	 * @return The SQL statement.
+	 */
+	private String updateFileSQL() {
+		return "UPDATE " + tab_filesystem + " SET " + fs_length + " = ?, " + fs_modified + " = ?, "
+				+ fs_checksum + " = ?, " + fs_algorithm + " = ? WHERE " + fs_dirId + " = ? AND " + fs_name
+				+ " = ? AND " + fs_version + " = 0;";
+	}
+
+	/**
+	 * Creates the SQL statement that deletes a file by directory id and name.
+	 * 
+	 * @return The SQL statement.
+	 */
+	private String removeFileSQL() {
+		return "DELETE FROM " + tab_filesystem + " WHERE " + fs_dirId + " = ? AND " + fs_name + " = ? AND "
+				+ fs_version + " = 0;";
+	}
+
+	/**
+	 * Lists all current versions contained in the file system table.
+	 * 
+	 * @return all current versions contained in the file system table.
+	 */
+	public synchronized Vector<RelativeFile> listAll() {
+		// serve from memory if the index is loaded
+		if (index != null) {
+			return index.listAll();
+		}
+		// select all current versions from file system
+		String sql = "SELECT " + fs_dirId + ", " + fs_name + ", " + fs_length + ", " + fs_modified + ", "
+				+ fs_checksum + ", " + fs_algorithm + " FROM " + tab_filesystem + " WHERE " + fs_version
+				+ " = 0;";
+		// connect and prepare
+		Connection c = connect();
+		Statement st = null;
+		ResultSet rs = null;
+		// temporary values
+		String directory, filepath, algorithm;
+		byte[] checksum;
+		long modified;
+		long length;
+		// initialize the list of files to return
+		Vector<RelativeFile> data = new Vector<RelativeFile>();
+
+		try {
+			loadDirectories(c);
+			st = c.createStatement();
+			rs = st.executeQuery(sql);
+			// fill the list of files to return
+			while (rs.next()) {
+				directory = directoryPaths.get(rs.getLong(1));
+				if (directory == null) {
+					System.err.println("Unknown directory id " + rs.getLong(1));
+					continue;
+				}
+				filepath = join(directory, rs.getString(2));
+				length = rs.getLong(3);
+				modified = rs.getLong(4);
+				checksum = checksum(rs.getBytes(5));
+				algorithm = algorithmName(rs.getString(6));
+				data.add(new RelativeFile(filepath, length, modified, checksum, algorithm));
+			}
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
 		// release resources
-		disconnect(c, st);
+		disconnect(c, st, rs);
+		// return the list of files
+		return data;
+	}
+
+	/**
+	 * Introduces a file to the file system table.
+	 * 
+	 * @param relativePath
+	 *            The relative path to the file
+	 * @param length
+	 *            The file length in bytes.
+	 * @param modified
+	 *            The current modification time in milliseconds.
+	 * @param checksum
+	 *            The checksum of the file.
+	 * @param algorithm
+	 *            The name of the algorithm that created the checksum.
+	 */
+	public void add(String relativePath, long length, long modified, byte[] checksum, String algorithm) {
+		// record the change in memory if the index is loaded
+		PathIndex pathIndex = index;
+		if (pathIndex != null) {
+			pathIndex.add(new RelativeFile(relativePath, length, modified, checksum, algorithm));
+			return;
+		}
+		synchronized (this) {
+			String sql = insertFileSQL();
+			// connect
+			Connection c = connect();
+			PreparedStatement st = null;
+
+			try {
+				// the directory must exist before the statement is prepared
+				long dirId = getDirectoryId(c, directoryOf(relativePath), true);
+				// prepare
+				st = prepare(c, sql);
+				// set prepared data
+				st.setLong(1, dirId);
+				st.setString(2, nameOf(relativePath));
+				st.setLong(3, length);
+				st.setLong(4, modified);
+				st.setBytes(5, checksum);
+				st.setString(6, algorithm);
+				// execute prepared statement
+				st.executeUpdate();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+			// release resources
+			disconnect(c, st);
+		}
 	}
 
 	/**
@@ -704,29 +1780,42 @@ public final class OnlineDB {
 	 *            The new modification time in milliseconds.
 	 * @param checksum
 	 *            The new checksum.
+	 * @param algorithm
+	 *            The name of the algorithm that created the checksum.
 	 */
-	public void updateFile(String relativePath, long length, long modified, String checksum) {
-		// update the file of relativePath
-		String sql = "UPDATE " + tab_filesystem + " SET " + fs_length + " = ?, " + fs_modified + " = ?, "
-				+ fs_checksum + " = ? WHERE " + fs_filepath + " = ?;";
-		// connect
-		Connection c = connect();
-		PreparedStatement st = null;
-		try {
-			// prepare
-			st = c.prepareStatement(sql);
-			// set prepared data
-			st.setLong(1, length);
-			st.setLong(2, modified);
-			st.setString(3, checksum);
-			st.setString(4, relativePath);
-			// execute prepared statement
-			st.executeUpdate();
-		} catch (SQLException e) {
-			e.printStackTrace();
+	public void updateFile(String relativePath, long length, long modified, byte[] checksum,
+			String algorithm) {
+		// record the change in memory if the index is loaded
+		PathIndex pathIndex = index;
+		if (pathIndex != null) {
+			pathIndex.update(new RelativeFile(relativePath, length, modified, checksum, algorithm));
+			return;
+		}
+		synchronized (this) {
+			// update the file of relativePath
+			String sql = updateFileSQL();
+			// connect
+			Connection c = connect();
+			PreparedStatement st = null;
+			try {
+				long dirId = getDirectoryId(c, directoryOf(relativePath), false);
+				// prepare
+				st = prepare(c, sql);
+				// set prepared data
+				st.setLong(1, length);
+				st.setLong(2, modified);
+				st.setBytes(3, checksum);
+				st.setString(4, algorithm);
+				st.setLong(5, dirId);
+				st.setString(6, nameOf(relativePath));
+				// execute prepared statement
+				st.executeUpdate();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+			// release resources
+			disconnect(c, st);
 		}
-		// release resources
-		disconnect(c, st);
 	}
 
 	/**
@@ -736,24 +1825,38 @@ public final class OnlineDB {
 	 *            The relative path to the file to be removed.
 	 */
 	public void removeFileByPath(String relativePath) {
-		// delete file
-		String sql = "DELETE FROM " + tab_filesystem + " WHERE " + fs_filepath + " = ?;";
-		// connect
-		Connection c = connect();
-		PreparedStatement st = null;
+		// record the change in memory if the index is loaded
+		PathIndex pathIndex = index;
+		if (pathIndex != null) {
+			pathIndex.remove(relativePath);
+			return;
+		}
+		synchronized (this) {
+			// delete file
+			String sql = removeFileSQL();
+			// connect
+			Connection c = connect();
+			PreparedStatement st = null;
 
-		try {
-			// prepare
-			st = c.prepareStatement(sql);
-			// set prepared data
-			st.setString(1, relativePath);
-			// execute delete command
-			st.executeUpdate();
-		} catch (SQLException e) {
-			e.printStackTrace();
+			try {
+				long dirId = getDirectoryId(c, directoryOf(relativePath), false);
+				if (dirId != -1) {
+					// prepare
+					st = prepare(c, sql);
+					// set prepared data
+					st.setLong(1, dirId);
+					st.setString(2, nameOf(relativePath));
+					// execute delete command
+					st.executeUpdate();
+					// remove the directory if it became empty
+					pruneDirectory(c, dirId);
+				}
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+			// release resources
+			disconnect(c, st);
 		}
-		// release resources
-		disconnect(c, st);
 	}
 
 	/**
@@ -765,42 +1868,57 @@ public final class OnlineDB {
 	 * @return The requested file or <code>null</code> if the file was not found.
 	 */
 	public RelativeFile getFileByPath(String filePath) {
-		// Select the file by path
-		String sql = "SELECT " + fs_length + ", " + fs_modified + ", " + fs_checksum + " FROM "
-				+ tab_filesystem + " WHERE " + fs_filepath + " = ?;";
-		// assume file not found
-		RelativeFile df = null;
-		// temporary variables
-		String checksum;
-		long length, modified;
-		// connect
-		Connection c = connect();
-		PreparedStatement st = null;
-		ResultSet rs = null;
+		// serve from memory if the index is loaded
+		PathIndex pathIndex = index;
+		if (pathIndex != null) {
+			return pathIndex.get(filePath);
+		}
+		synchronized (this) {
+			// Select the file by path
+			String sql = "SELECT " + fs_length + ", " + fs_modified + ", " + fs_checksum + ", " + fs_algorithm
+					+ " FROM " + tab_filesystem + " WHERE " + fs_dirId + " = ? AND " + fs_name + " = ? AND "
+					+ fs_version + " = 0;";
+			// assume file not found
+			RelativeFile df = null;
+			// temporary variables
+			String algorithm;
+			byte[] checksum;
+			long length, modified;
+			// connect
+			Connection c = connect();
+			PreparedStatement st = null;
+			ResultSet rs = null;
 
-		try {
-			// prepare
-			st = c.prepareStatement(sql);
-			// set prepared data
-			st.setString(1, filePath);
-			// execute query
-			rs = st.executeQuery();
-			// if the file was found
-			if (rs.next()) {
-				// initialize the file
-				length = rs.getLong(1);
-				modified = rs.getLong(2);
-				checksum = rs.getString(3);
-				df = new RelativeFile(filePath, length, modified, checksum);
-			}
+			try {
+				long dirId = getDirectoryId(c, directoryOf(filePath), false);
+				// a file in an unknown directory is unknown
+				if (dirId != -1) {
+					// prepare
+					st = prepare(c, sql);
+					// set prepared data
+					st.setLong(1, dirId);
+					st.setString(2, nameOf(filePath));
+					// execute query
+					rs = st.executeQuery();
+				}
+				// if the file was found
+				if (rs != null && rs.next()) {
+					// initialize the file
+					length = rs.getLong(1);
+					modified = rs.getLong(2);
+					checksum = checksum(rs.getBytes(3));
+					algorithm = algorithmName(rs.getString(4));
+					df = new RelativeFile(filePath, length, modified, checksum, algorithm);
+				}
 
-		} catch (SQLException e) {
-			e.printStackTrace();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+			// release resources
+			disconnect(c, st, rs);
+			// return the file if found
+			return df;
 		}
-		// release resources
-		disconnect(c, st, rs);
-		// return the file if found
-		return df;
 	}
 
 	/**
@@ -808,9 +1926,14 @@ public final class OnlineDB {
 	 * 
 	 * @return the total file length of all indexed files in bytes.
 	 */
-	public final long getTotalFileLength() {
+	public synchronized final long getTotalFileLength() {
+		// serve from memory if the index is loaded
+		if (index != null) {
+			return index.getTotalLength();
+		}
 		// select the sum of all file lengths
-		String sql = "SELECT SUM(" + fs_length + ") FROM " + tab_filesystem + ";";
+		String sql = "SELECT SUM(" + fs_length + ") FROM " + tab_filesystem + " WHERE " + fs_version
+				+ " = 0;";
 		// assume empty
 		long totalLength = 0;
 		// connect
@@ -840,9 +1963,13 @@ public final class OnlineDB {
 	 * 
 	 * @return the total number of files indexed in the database.
 	 */
-	public final int getFileCount() {
+	public synchronized final int getFileCount() {
+		// serve from memory if the index is loaded
+		if (index != null) {
+			return index.size();
+		}
 		// select count all files
-		String sql = "SELECT COUNT(" + fs_filepath + ") FROM " + tab_filesystem + ";";
+		String sql = "SELECT COUNT(*) FROM " + tab_filesystem + " WHERE " + fs_version + " = 0;";
 		// assume empty
 		int totalFilesCount = 0;
 		// connect
@@ -871,18 +1998,22 @@ public final class OnlineDB {
 	 * 
 	 * @return <code>true</code> if there are no files in the file system table.
 	 */
-	public final boolean isEmpty() {
+	public synchronized final boolean isEmpty() {
+		// serve from memory if the index is loaded
+		if (index != null) {
+			return index.size() == 0;
+		}
 		// select everything, limit 1
-		String sql = "SELECT * FROM " + tab_filesystem + " LIMIT 1;";
+		String sql = "SELECT * FROM " + tab_filesystem + " WHERE " + fs_version + " = 0 LIMIT 1;";
 		// connect
 		Connection c = connect();
-		Statement st = null;
+		PreparedStatement st = null;
 		ResultSet rs = null;
 		// assume empty
 		boolean isEmpty = true;
 		try {
-			st = c.createStatement();
-			rs = st.executeQuery(sql);
+			st = prepare(c, sql);
+			rs = st.executeQuery();
 			// if there is a record
 			if (rs.next()) {
 				// then empty is false
@@ -897,22 +2028,364 @@ public final class OnlineDB {
 		return isEmpty;
 	}
 
+	/**
+	 * Records an old version of a file.
+	 * <p>
+	 * The version gets the next number of the file and is chained to the next
+	 * older version through its parent id. Old versions are written directly to
+	 * the database, they are never part of the index.
+	 * 
+	 * @param file
+	 *            The state of the file when it was replaced.
+	 * @param archived
+	 *            The time the file was replaced in milliseconds.
+	 * 
+	 * @return The version number or -1 if the version could not be recorded.
+	 */
+	public synchronized int addVersion(RelativeFile file, long archived) {
+		// the newest old version
+		String sqlNewest = "SELECT " + fs_fileId + ", " + fs_version + " FROM " + tab_filesystem + " WHERE "
+				+ fs_dirId + " = ? AND " + fs_name + " = ? AND " + fs_version + " > 0 ORDER BY " + fs_version
+				+ " DESC LIMIT 1;";
+		String sqlInsert = "INSERT INTO " + tab_filesystem + "(" + fs_parentId + ", " + fs_dirId + ", "
+				+ fs_name + ", " + fs_length + ", " + fs_modified + ", " + fs_checksum + ", " + fs_algorithm
+				+ ", " + fs_version + ", " + fs_archived + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?);";
+		// connect
+		Connection c = connect();
+		PreparedStatement stNewest = null;
+		PreparedStatement stInsert = null;
+		ResultSet rs = null;
+		// the new version number
+		int version = -1;
+		try {
+			long dirId = getDirectoryId(c, directoryOf(file.getRelativePath()), true);
+			String name = nameOf(file.getRelativePath());
+			long parentId = 0;
+			stNewest = prepare(c, sqlNewest);
+			stNewest.setLong(1, dirId);
+			stNewest.setString(2, name);
+			rs = stNewest.executeQuery();
+			if (rs.next()) {
+				parentId = rs.getLong(1);
+				version = rs.getInt(2) + 1;
+			} else {
+				version = 1;
+			}
+			rs.close();
+			rs = null;
+			stInsert = prepare(c, sqlInsert);
+			stInsert.setLong(1, parentId);
+			stInsert.setLong(2, dirId);
+			stInsert.setString(3, name);
+			stInsert.setLong(4, file.getLength());
+			stInsert.setLong(5, file.getModified());
+			stInsert.setBytes(6, file.getChecksum());
+			stInsert.setString(7, file.getAlgorithm());
+			stInsert.setInt(8, version);
+			stInsert.setLong(9, archived);
+			stInsert.executeUpdate();
+		} catch (SQLException e) {
+			e.printStackTrace();
+			version = -1;
+		}
+		// release resources
+		disconnect(null, stNewest, rs, stInsert);
+		disconnect(c, null);
+		return version;
+	}
+
+	/**
+	 * Deletes an old version that was recorded but could not be stored.
+	 * 
+	 * @param relativePath
+	 *            The relative path of the file.
+	 * @param version
+	 *            The version number returned by <code>addVersion()</code>.
+	 */
+	public synchronized void removeVersion(String relativePath, int version) {
+		String sql = "DELETE FROM " + tab_filesystem + " WHERE " + fs_dirId + " = ? AND " + fs_name
+				+ " = ? AND " + fs_version + " = ?;";
+		// connect
+		Connection c = connect();
+		PreparedStatement st = null;
+		try {
+			long dirId = getDirectoryId(c, directoryOf(relativePath), false);
+			if (dirId != -1) {
+				st = prepare(c, sql);
+				st.setLong(1, dirId);
+				st.setString(2, nameOf(relativePath));
+				st.setInt(3, version);
+				st.executeUpdate();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		// release resources
+		disconnect(c, st);
+	}
+
+	/**
+	 * Lists all old versions ordered by file and from the newest to the oldest
+	 * version of each file.
+	 * 
+	 * @return All old versions.
+	 */
+	public synchronized Vector<FileVersion> listVersions() {
+		String sql = "SELECT " + fs_fileId + ", " + fs_dirId + ", " + fs_name + ", " + fs_length + ", "
+				+ fs_version + ", " + fs_archived + " FROM " + tab_filesystem + " WHERE " + fs_version
+				+ " > 0 ORDER BY " + fs_dirId + ", " + fs_name + ", " + fs_version + " DESC;";
+		// connect
+		Connection c = connect();
+		Statement st = null;
+		ResultSet rs = null;
+		// the directory of the current version
+		String directory;
+		Vector<FileVersion> versions = new Vector<FileVersion>();
+		try {
+			loadDirectories(c);
+			st = c.createStatement();
+			rs = st.executeQuery(sql);
+			while (rs.next()) {
+				directory = directoryPaths.get(rs.getLong(2));
+				if (directory == null) {
+					System.err.println("Unknown directory id " + rs.getLong(2));
+					continue;
+				}
+				versions.add(new FileVersion(rs.getLong(1), join(directory, rs.getString(3)), rs.getLong(4),
+						rs.getInt(5), rs.getLong(6)));
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		// release resources
+		disconnect(c, st, rs);
+		return versions;
+	}
+
+	/**
+	 * Deletes old versions in a single transaction.
+	 * <p>
+	 * The newer version of a deleted version is linked to the next older
+	 * version, so the chain of parent ids stays intact.
+	 * 
+	 * @param versions
+	 *            The versions to delete.
+	 */
+	public synchronized void removeVersions(Vector<FileVersion> versions) {
+		if (versions.size() == 0) {
+			return;
+		}
+		String sql = "DELETE FROM " + tab_filesystem + " WHERE " + fs_fileId + " = ? AND " + fs_version
+				+ " > 0;";
+		String sqlRelink = "UPDATE " + tab_filesystem + " SET " + fs_parentId + " = (SELECT " + fs_parentId
+				+ " FROM " + tab_filesystem + " WHERE " + fs_fileId + " = ?) WHERE " + fs_parentId + " = ?;";
+		// the directories that lost versions
+		HashSet<Long> pruneIds = new HashSet<Long>();
+		long dirId;
+		// connect
+		Connection c = connect();
+		PreparedStatement st = null;
+		PreparedStatement stRelink = null;
+		try {
+			c.setAutoCommit(false);
+			st = prepare(c, sql);
+			stRelink = prepare(c, sqlRelink);
+			for (FileVersion version : versions) {
+				// the newer version takes over the parent of the deleted version
+				stRelink.setLong(1, version.getFileId());
+				stRelink.setLong(2, version.getFileId());
+				stRelink.executeUpdate();
+				st.setLong(1, version.getFileId());
+				st.executeUpdate();
+				dirId = getDirectoryId(c, directoryOf(version.getRelativePath()), false);
+				if (dirId != -1) {
+					pruneIds.add(dirId);
+				}
+			}
+			// remove the directories that became empty
+			for (Long pruneId : pruneIds) {
+				pruneDirectory(c, pruneId);
+			}
+			c.commit();
+		} catch (SQLException e) {
+			e.printStackTrace();
+			try {
+				c.rollback();
+			} catch (SQLException e1) {
+				e1.printStackTrace();
+			}
+			// the cached directories were rolled back
+			clearDirectories();
+		}
+		try {
+			c.setAutoCommit(true);
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		// release resources
+		disconnect(null, stRelink);
+		disconnect(c, st);
+	}
+
+	/**
+	 * Moves the old versions of a file to a new path, used when the file was
+	 * moved. The versions keep their numbers and their chain of parent ids.
+	 * 
+	 * @param from
+	 *            The relative path of the file.
+	 * @param to
+	 *            The new relative path of the file.
+	 * 
+	 * @return <code>true</code> if the file has no old versions or if they were
+	 *         moved, <code>false</code> if the new path has old versions of its
+	 *         own or if an error occurred.
+	 */
+	public synchronized boolean moveVersions(String from, String to) {
+		String sqlExists = "SELECT 1 FROM " + tab_filesystem + " WHERE " + fs_dirId + " = ? AND " + fs_name
+				+ " = ? AND " + fs_version + " > 0 LIMIT 1;";
+		String sqlMove = "UPDATE " + tab_filesystem + " SET " + fs_dirId + " = ?, " + fs_name + " = ? WHERE "
+				+ fs_dirId + " = ? AND " + fs_name + " = ? AND " + fs_version + " > 0;";
+		boolean moved = false;
+		// connect
+		Connection c = connect();
+		PreparedStatement stExists = null;
+		PreparedStatement stMove = null;
+		ResultSet rs = null;
+		try {
+			c.setAutoCommit(false);
+			long fromId = getDirectoryId(c, directoryOf(from), false);
+			if (fromId == -1) {
+				// there are no records in the old directory
+				moved = true;
+			} else {
+				long toId = getDirectoryId(c, directoryOf(to), true);
+				stExists = prepare(c, sqlExists);
+				stExists.setLong(1, toId);
+				stExists.setString(2, nameOf(to));
+				rs = stExists.executeQuery();
+				// the version numbers of two files can not be merged
+				if (!rs.next()) {
+					stMove = prepare(c, sqlMove);
+					stMove.setLong(1, toId);
+					stMove.setString(2, nameOf(to));
+					stMove.setLong(3, fromId);
+					stMove.setString(4, nameOf(from));
+					stMove.executeUpdate();
+					moved = true;
+				}
+			}
+			c.commit();
+		} catch (SQLException e) {
+			e.printStackTrace();
+			moved = false;
+			try {
+				c.rollback();
+			} catch (SQLException e1) {
+				e1.printStackTrace();
+			}
+			// the cached directories were rolled back
+			clearDirectories();
+		}
+		try {
+			c.setAutoCommit(true);
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		// release resources
+		disconnect(null, stExists, rs, stMove);
+		disconnect(c, null);
+		return moved;
+	}
+
+	/**
+	 * Moves a directory with all its files, sub directories and old versions to
+	 * a new path.
+	 * <p>
+	 * The files refer to their directory by id, so only the row of the moved
+	 * directory is changed. Pending changes of the index are written first and
+	 * the index follows the new paths.
+	 * 
+	 * @param from
+	 *            The relative path of the directory.
+	 * @param to
+	 *            The new relative path of the directory, it must not exist in
+	 *            the database.
+	 * 
+	 * @return <code>true</code> if the directory was moved.
+	 */
+	public synchronized boolean moveDirectory(String from, String to) {
+		if (from.length() == 0 || to.length() == 0 || to.startsWith(from + File.separator)) {
+			return false;
+		}
+		// the stored paths must be complete before they are moved
+		flushIndex();
+		if (index != null && index.hasChanges()) {
+			return false;
+		}
+		String sql = "UPDATE " + tab_directories + " SET " + dir_parentId + " = ?, " + dir_name
+				+ " = ? WHERE " + dir_dirId + " = ?;";
+		boolean moved = false;
+		// connect
+		Connection c = connect();
+		PreparedStatement st = null;
+		try {
+			c.setAutoCommit(false);
+			long dirId = getDirectoryId(c, from, false);
+			if (dirId != -1 && getDirectoryId(c, to, false) == -1) {
+				long oldParentId = getDirectoryId(c, directoryOf(from), false);
+				st = prepare(c, sql);
+				st.setLong(1, getDirectoryId(c, directoryOf(to), true));
+				st.setString(2, nameOf(to));
+				st.setLong(3, dirId);
+				st.executeUpdate();
+				// remove the old parent directories if they became empty
+				if (oldParentId != -1) {
+					pruneDirectory(c, oldParentId);
+				}
+				c.commit();
+				moved = true;
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			try {
+				c.rollback();
+			} catch (SQLException e1) {
+				e1.printStackTrace();
+			}
+		}
+		try {
+			c.setAutoCommit(true);
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		// release resources
+		disconnect(c, st);
+		// the cached paths of the sub directories changed
+		clearDirectories();
+		if (moved && index != null) {
+			index.moveDirectory(from, to);
+		}
+		return moved;
+	}
+
 	/**
 	 * Increments the database version counter by 1
 	 */
-	public void incrementVersion() {
+	public synchronized void incrementVersion() {
 		// increment current version
 		dbVersion++;
 		// update the meta data
-		String sql = "UPDATE " + tab_dbInfo + " SET " + info_dbVersion + "=" + dbVersion + ";";
+		String sql = "UPDATE " + tab_dbInfo + " SET " + info_dbVersion + " = ?;";
 		// connect
 		Connection c = connect();
-		Statement st = null;
+		PreparedStatement st = null;
 
 		try {
-			st = c.createStatement();
+			st = prepare(c, sql);
+			// set prepared data
+			st.setInt(1, dbVersion);
 			// execute update
-			st.execute(sql);
+			st.executeUpdate();
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
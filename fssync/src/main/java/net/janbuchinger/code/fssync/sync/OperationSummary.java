@@ -16,6 +16,7 @@
 package net.janbuchinger.code.fssync.sync;
 
 import java.io.File;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Vector;
 
@@ -57,6 +58,8 @@ public final class OperationSummary {
 	private final Vector<CopyAction> copyActions;
 	private final Vector<Vector<CopyAction>> copyActionsDuplicates;
 	private final Vector<DeleteAction> deleteActions;
+	private final Vector<DirectoryMoveAction> directoryMoveActions;
+	private final Vector<MoveAction> moveActions;
 
 	private final SwingWorker<Void, Void> sp;
 
@@ -69,6 +72,16 @@ public final class OperationSummary {
 			Vector<File> corruptFilesDestination, Vector<File> lostFiles, Vector<CopyAction> copyActions,
 			Vector<DeleteAction> deleteActions, SwingWorker<Void, Void> sp, boolean isRestore,
 			boolean isBiDirectional) throws SynchronizationCancelledException {
+		this(source, destination, corruptFilesSource, corruptFilesDestination, lostFiles, copyActions,
+				deleteActions, new Vector<DirectoryMoveAction>(), new Vector<MoveAction>(), sp, isRestore,
+				isBiDirectional);
+	}
+
+	public OperationSummary(File source, File destination, Vector<File> corruptFilesSource,
+			Vector<File> corruptFilesDestination, Vector<File> lostFiles, Vector<CopyAction> copyActions,
+			Vector<DeleteAction> deleteActions, Vector<DirectoryMoveAction> directoryMoveActions,
+			Vector<MoveAction> moveActions, SwingWorker<Void, Void> sp, boolean isRestore,
+			boolean isBiDirectional) throws SynchronizationCancelledException {
 		this.sp = sp;
 
 		this.corruptFilesSource = corruptFilesSource;
@@ -78,6 +91,8 @@ public final class OperationSummary {
 		this.copyActions = copyActions;
 		this.copyActionsDuplicates = new Vector<Vector<CopyAction>>();
 		this.deleteActions = deleteActions;
+		this.directoryMoveActions = directoryMoveActions;
+		this.moveActions = moveActions;
 
 		this.isRestore = isRestore;
 
@@ -98,48 +113,39 @@ public final class OperationSummary {
 
 		// if bidirectional then check for conflicts
 		if (isBiDirectional) {
-			int i1 = 0;
-			int i2;
-			String relativePath;
-			Iterator<CopyAction> iCopyActions;
+			// the first unpaired copy action by relative path, paired in a single pass
+			HashMap<String, CopyAction> unpaired = new HashMap<String, CopyAction>(
+					Math.max(16, (int) (copyActions.size() / 0.75f) + 1));
+			Iterator<CopyAction> iCopyActions = copyActions.iterator();
 			CopyAction copyAction1;
 			CopyAction copyAction2;
 			Vector<CopyAction> duplicate;
 
-			while (i1 < copyActions.size()) {
-				copyAction1 = copyActions.get(i1);
-				if (copyAction1.getConflict() != null) {
-					i1++;
+			while (iCopyActions.hasNext()) {
+				copyAction2 = iCopyActions.next();
+				if (copyAction2.getConflict() != null) {
 					continue;
 				}
-				relativePath = copyAction1.getRelativePath();
-				iCopyActions = copyActions.iterator();
-				i2 = 0;
-				while (iCopyActions.hasNext()) {
-					copyAction2 = iCopyActions.next();
-					if (i2 <= i1) {
-						i2++;
-					} else if (copyAction2.getConflict() != null) {
-						// do nothing
-					} else if (copyAction2.getRelativePath().equals(relativePath)) {
-						copyAction2.setConflict(copyAction1);
-						copyAction1.setConflict(copyAction2);
-						duplicate = new Vector<>();
-						duplicate.add(copyAction1);
-						duplicate.add(copyAction2);
-						copyActionsDuplicates.add(duplicate);
-						if (copyAction2.getDirection() == CopyAction.DIR_BACKUP) {
-							copyAction1.setSelected(false);
-						} else {
-							copyAction2.setSelected(false);
-						}
-						break;
+				// the earlier copy action with the same relative path if there is one
+				copyAction1 = unpaired.remove(copyAction2.getRelativePath());
+				if (copyAction1 == null) {
+					unpaired.put(copyAction2.getRelativePath(), copyAction2);
+				} else {
+					copyAction2.setConflict(copyAction1);
+					copyAction1.setConflict(copyAction2);
+					duplicate = new Vector<>();
+					duplicate.add(copyAction1);
+					duplicate.add(copyAction2);
+					copyActionsDuplicates.add(duplicate);
+					if (copyAction2.getDirection() == CopyAction.DIR_BACKUP) {
+						copyAction1.setSelected(false);
+					} else {
+						copyAction2.setSelected(false);
 					}
-					if (sp.isCancelled()) {
-						throw new SynchronizationCancelledException();
-					} 
 				}
-				i1++;
+				if (sp.isCancelled()) {
+					throw new SynchronizationCancelledException();
+				}
 			}
 		}
 
@@ -174,17 +180,17 @@ public final class OperationSummary {
 			nCopyActionsSelected++;
 			if (copyAction.getDirection() == CopyAction.DIR_RESTORE) {
 				if (copyAction.isNew()) {
-					updateSizeSourceNew += copyAction.getSource().length();
+					updateSizeSourceNew += copyAction.getSourceLength();
 				} else {
-					updateSizeSourceModified += copyAction.getSource().length();
-					updateSizeSourceModifiedOld += copyAction.getDestination().length();
+					updateSizeSourceModified += copyAction.getSourceLength();
+					updateSizeSourceModifiedOld += copyAction.getDestinationLength();
 				}
 			} else {
 				if (copyAction.isNew()) {
-					updateSizeDestinationNew += copyAction.getSource().length();
+					updateSizeDestinationNew += copyAction.getSourceLength();
 				} else {
-					updateSizeDestinationModified += copyAction.getSource().length();
-					updateSizeDestinationModifiedOld += copyAction.getDestination().length();
+					updateSizeDestinationModified += copyAction.getSourceLength();
+					updateSizeDestinationModifiedOld += copyAction.getDestinationLength();
 				}
 			}
 			if (sp.isCancelled()) {
@@ -199,16 +205,16 @@ public final class OperationSummary {
 			if (deleteAction.isSelected()) {
 				nDeleteActionsSelected++;
 				if (deleteAction.getLocation() == DeleteAction.del_source) {
-					rmSizeSource += deleteAction.getFile().length();
+					rmSizeSource += deleteAction.getLength();
 				} else {
-					rmSizeDestination += deleteAction.getFile().length();
+					rmSizeDestination += deleteAction.getLength();
 				}
 			} else {
 				nCopyActionsSelected++;
 				if (deleteAction.getLocation() == DeleteAction.del_source) {
-					updateSizeDestinationNew += deleteAction.getFile().length();
+					updateSizeDestinationNew += deleteAction.getLength();
 				} else {
-					updateSizeSourceNew += deleteAction.getFile().length();
+					updateSizeSourceNew += deleteAction.getLength();
 				}
 			}
 			if (sp.isCancelled()) {
@@ -216,6 +222,18 @@ public final class OperationSummary {
 			}
 		}
 
+		// moves that are not selected are copied and deleted instead
+		for (DirectoryMoveAction directoryMoveAction : directoryMoveActions) {
+			if (!directoryMoveAction.isSelected()) {
+				addMoveFallback(directoryMoveAction.getLength(), directoryMoveAction.getMoveActions().size());
+			}
+		}
+		for (MoveAction moveAction : moveActions) {
+			if (!moveAction.isSelected()) {
+				addMoveFallback(moveAction.getLength(), 1);
+			}
+		}
+
 		reCalc();
 	}
 
@@ -260,6 +278,14 @@ public final class OperationSummary {
 		return deleteActions;
 	}
 
+	public final Vector<DirectoryMoveAction> getDirectoryMoveActions() {
+		return directoryMoveActions;
+	}
+
+	public final Vector<MoveAction> getMoveActions() {
+		return moveActions;
+	}
+
 	public final long getFreeSpaceSource() {
 		return freeSpaceSource;
 	}
@@ -372,6 +398,39 @@ public final class OperationSummary {
 		nCopyActionsSelected--;
 	}
 
+	/**
+	 * Counts files that are copied to the destination and deleted at their old
+	 * path instead of being moved, either because the move was not selected or
+	 * because it failed.
+	 * 
+	 * @param length
+	 *            The total length of the files.
+	 * @param files
+	 *            The number of files.
+	 */
+	public void addMoveFallback(long length, int files) {
+		updateSizeDestinationNew += length;
+		rmSizeDestination += length;
+		nCopyActionsSelected += files;
+		nDeleteActionsSelected += files;
+	}
+
+	/**
+	 * Stops counting files as copied and deleted because their move was
+	 * selected again.
+	 * 
+	 * @param length
+	 *            The total length of the files.
+	 * @param files
+	 *            The number of files.
+	 */
+	public void removeMoveFallback(long length, int files) {
+		updateSizeDestinationNew -= length;
+		rmSizeDestination -= length;
+		nCopyActionsSelected -= files;
+		nDeleteActionsSelected -= files;
+	}
+
 	public void addRmDestination(long length) {
 		rmSizeDestination += length;
 		if (!isRestore) {
@@ -418,7 +477,8 @@ public final class OperationSummary {
 
 	public final boolean shouldDisplayDialog() {
 		return corruptFilesSource.size() + corruptFilesDestination.size() + lostFiles.size()
-				+ copyActions.size() + deleteActions.size() > 0;
+				+ copyActions.size() + deleteActions.size() + directoryMoveActions.size()
+				+ moveActions.size() > 0;
 	}
 
 	public boolean hasCorruptFiles() {
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import javax.swing.SwingWorker;
+
+/**
+ * The <code>ParallelDirectoryScanner</code> reads a file tree with a
+ * <code>ForkJoinPool</code> and returns the regular files in the order defined
+ * by <code>PathComparator</code>.
+ * <p>
+ * Every directory is read by its own task. As soon as a directory is listed the
+ * tasks for its subdirectories are forked, so idle threads steal whole subtrees
+ * while the caller is still consuming the files of the directories before. The
+ * caller only waits if it reaches a directory that was not read yet.
+ * <p>
+ * The attributes of every file are read once while its directory is listed and
+ * are handed on with the <code>ScannedFile</code>.
+ * <p>
+ * Excluded directories and directories that are symbolic links are not
+ * entered. The file system database files in the root directory and unfinished
+ * copies (<code>*.fs.part</code>) are skipped.
+ * The scan ends early if the <code>SwingWorker</code> is cancelled.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see PathComparator
+ * @see DiffEngine
+ */
+public final class ParallelDirectoryScanner implements Iterator<ScannedFile> {
+	/**
+	 * An entry of a directory listing.
+	 */
+	private final static class Entry {
+		/**
+		 * The file name.
+		 */
+		private final String name;
+		/**
+		 * The attributes read while listing the directory.
+		 */
+		private final BasicFileAttributes attrs;
+		/**
+		 * The task reading the directory or <code>null</code> if the entry is a file.
+		 */
+		private final DirectoryTask directory;
+
+		private Entry(String name, BasicFileAttributes attrs, DirectoryTask directory) {
+			this.name = name;
+			this.attrs = attrs;
+			this.directory = directory;
+		}
+	}
+
+	/**
+	 * The task reading one directory.
+	 */
+	@SuppressWarnings("serial")
+	private final class DirectoryTask extends RecursiveTask<Entry[]> {
+		/**
+		 * The directory to read.
+		 */
+		private final File dir;
+		/**
+		 * The relative path of the directory including a trailing separator or an
+		 * empty String for the root directory.
+		 */
+		private final String prefix;
+
+		private DirectoryTask(File dir, String prefix) {
+			this.dir = dir;
+			this.prefix = prefix;
+		}
+
+		@Override
+		protected Entry[] compute() {
+			if (spd != null && spd.isCancelled()) {
+				return new Entry[0];
+			}
+			String[] names = dir.list();
+			// the directory could not be read
+			if (names == null) {
+				return new Entry[0];
+			}
+			if (names.length == 0) {
+				if (emptyDirs != null) {
+					emptyDirs.add(dir);
+				}
+				return new Entry[0];
+			}
+			Arrays.sort(names);
+			Vector<Entry> entries = new Vector<Entry>(names.length);
+			String relativePath;
+			File file;
+			BasicFileAttributes attrs;
+			DirectoryTask task;
+			for (String name : names) {
+				relativePath = prefix + name;
+				file = new File(dir, name);
+				try {
+					attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class,
+							LinkOption.NOFOLLOW_LINKS);
+				} catch (IOException e) {
+					// the entry vanished or can not be read
+					continue;
+				}
+				if (attrs.isDirectory()) {
+					// the version area of a target directory is never synchronized
+					if (!excludes.contains(relativePath)
+							&& (prefix.length() > 0 || !name.equals(VersionStore.VERSIONS_DIR))) {
+						// read the subdirectory concurrently
+						task = new DirectoryTask(file, relativePath + File.separator);
+						task.fork();
+						entries.add(new Entry(name, attrs, task));
+					}
+				} else if (!FileCopier.isPartFile(name)
+						&& (prefix.length() > 0 || !OnlineDB.isDatabaseFile(name))) {
+					entries.add(new Entry(name, attrs, null));
+				}
+			}
+			return entries.toArray(new Entry[entries.size()]);
+		}
+	}
+
+	/**
+	 * A directory listing that is currently consumed.
+	 */
+	private final static class Level {
+		private final DirectoryTask task;
+		private final Entry[] entries;
+		private int position;
+
+		private Level(DirectoryTask task, Entry[] entries) {
+			this.task = task;
+			this.entries = entries;
+			position = 0;
+		}
+	}
+
+	/**
+	 * The relative paths of directories to skip.
+	 */
+	private final HashSet<String> excludes;
+	/**
+	 * Empty directories are added to this list if it is not <code>null</code>.
+	 */
+	private final Vector<File> emptyDirs;
+	/**
+	 * The synchronization process to check for cancellation.
+	 */
+	private final SwingWorker<Void, Void> spd;
+	/**
+	 * The directories on the current path.
+	 */
+	private final ArrayDeque<Level> levels;
+	/**
+	 * The next file or <code>null</code> if it was not looked up yet.
+	 */
+	private ScannedFile next;
+
+	/**
+	 * Constructs a new <code>ParallelDirectoryScanner</code> and starts reading the
+	 * file tree.
+	 * 
+	 * @param root
+	 *            The directory to scan.
+	 * @param excludes
+	 *            The relative paths of directories to skip or <code>null</code>.
+	 * @param emptyDirs
+	 *            The list to add empty directories to or <code>null</code>.
+	 * @param spd
+	 *            The synchronization process to check for cancellation.
+	 * @param pool
+	 *            The pool to read the directories with.
+	 * 
+	 * @see ParallelDirectoryScanner#createPool(int)
+	 */
+	public ParallelDirectoryScanner(File root, Collection<String> excludes, Vector<File> emptyDirs,
+			SwingWorker<Void, Void> spd, ForkJoinPool pool) {
+		this.excludes = new HashSet<String>();
+		if (excludes != null) {
+			this.excludes.addAll(excludes);
+		}
+		this.emptyDirs = emptyDirs;
+		this.spd = spd;
+		levels = new ArrayDeque<Level>();
+		DirectoryTask task = new DirectoryTask(root, "");
+		pool.execute(task);
+		levels.push(new Level(task, null));
+	}
+
+	/**
+	 * Creates a pool to read directories with.
+	 * 
+	 * @param parallelism
+	 *            The number of directories to read at the same time, 0 for the
+	 *            number of available processors.
+	 * 
+	 * @return The new pool, it must be shut down after scanning.
+	 */
+	public static ForkJoinPool createPool(int parallelism) {
+		if (parallelism < 1) {
+			parallelism = Math.max(2, Runtime.getRuntime().availableProcessors());
+		}
+		return new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Checks if a relative path lies within an excluded directory.
+	 * 
+	 * @param relativePath
+	 *            The relative path to check.
+	 * 
+	 * @return <code>true</code> if the path is excluded from the scan.
+	 */
+	public boolean isExcluded(String relativePath) {
+		int i = relativePath.indexOf(File.separatorChar);
+		while (i != -1) {
+			if (excludes.contains(relativePath.substring(0, i))) {
+				return true;
+			}
+			i = relativePath.indexOf(File.separatorChar, i + 1);
+		}
+		return false;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next != null) {
+			return true;
+		}
+		Level level;
+		Entry entry;
+		while (!levels.isEmpty()) {
+			if (spd != null && spd.isCancelled()) {
+				levels.clear();
+				break;
+			}
+			level = levels.peek();
+			if (level.entries == null) {
+				// wait until the directory was read
+				levels.pop();
+				levels.push(new Level(level.task, level.task.join()));
+				continue;
+			}
+			if (level.position == level.entries.length) {
+				levels.pop();
+				continue;
+			}
+			entry = level.entries[level.position++];
+			if (entry.directory != null) {
+				levels.push(new Level(entry.directory, null));
+			} else {
+				next = new ScannedFile(level.task.prefix + entry.name, new File(level.task.dir, entry.name),
+						entry.attrs);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public ScannedFile next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		ScannedFile file = next;
+		next = null;
+		return file;
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import java.io.File;
+import java.util.Comparator;
+
+/**
+ * The <code>PathComparator</code> orders relative paths component by component
+ * so that every directory is immediately followed by its content.
+ * <p>
+ * The paths are compared character by character where the separator character
+ * sorts lower than any other character. This is the order in which
+ * <code>ParallelDirectoryScanner</code> returns a file tree when the entries of
+ * each directory are sorted by name.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see ParallelDirectoryScanner
+ * @see DiffEngine
+ */
+public final class PathComparator implements Comparator<String> {
+	/**
+	 * The shared instance.
+	 */
+	public final static PathComparator INSTANCE = new PathComparator();
+
+	/**
+	 * Use <code>INSTANCE</code>.
+	 */
+	private PathComparator() {}
+
+	@Override
+	public int compare(String path1, String path2) {
+		int n = Math.min(path1.length(), path2.length());
+		char c1, c2;
+		for (int i = 0; i < n; i++) {
+			c1 = path1.charAt(i);
+			c2 = path2.charAt(i);
+			if (c1 != c2) {
+				// the separator sorts lower than any other character
+				if (c1 == File.separatorChar) {
+					return -1;
+				} else if (c2 == File.separatorChar) {
+					return 1;
+				}
+				return c1 - c2;
+			}
+		}
+		return path1.length() - path2.length();
+	}
+}
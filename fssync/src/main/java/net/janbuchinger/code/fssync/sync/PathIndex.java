@@ -0,0 +1,314 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * The <code>PathIndex</code> class holds the current versions of the
+ * "filesystem" table in memory, keyed by the relative file path.
+ * <p>
+ * The index is loaded once per synchronization process by
+ * <code>OnlineDB.loadIndex()</code>. From then on all lookups are served from
+ * memory and all modifications are recorded as pending changes until they are
+ * written back by <code>OnlineDB.flushIndex()</code>.
+ * <p>
+ * Pending changes are coalesced per path so that the database receives at most
+ * one statement per file:
+ * <ul>
+ * <li>add after remove becomes update (the record still exists in the
+ * database).
+ * <li>add of an indexed path becomes update (the record was written before).
+ * <li>update after add stays add.
+ * <li>remove after add cancels the change.
+ * </ul>
+ *
+ * @author Jan Buchinger
+ *
+ * @see OnlineDB#loadIndex()
+ * @see OnlineDB#flushIndex()
+ */
+public final class PathIndex {
+	/**
+	 * Change: the record must be inserted into the database.
+	 */
+	final static int change_add = 0;
+	/**
+	 * Change: the record must be updated in the database.
+	 */
+	final static int change_update = 1;
+	/**
+	 * Change: the record must be deleted from the database.
+	 */
+	final static int change_remove = 2;
+
+	/**
+	 * The current file versions by relative path.
+	 */
+	private final HashMap<String, RelativeFile> files;
+	/**
+	 * The pending changes by relative path in the order of their occurrence.
+	 */
+	private LinkedHashMap<String, Integer> changes;
+	/**
+	 * The total length of all indexed files in bytes.
+	 */
+	private long totalLength;
+
+	/**
+	 * Constructs a new empty <code>PathIndex</code>.
+	 *
+	 * @param expectedSize
+	 *            The expected number of files to avoid rehashing while loading.
+	 */
+	public PathIndex(int expectedSize) {
+		files = new HashMap<String, RelativeFile>(Math.max(16, (int) (expectedSize / 0.75f) + 1));
+		changes = new LinkedHashMap<String, Integer>();
+		totalLength = 0;
+	}
+
+	/**
+	 * Puts a file that is already stored in the database into the index without
+	 * recording a change.
+	 *
+	 * @param file
+	 *            The file as read from the database.
+	 */
+	synchronized void load(RelativeFile file) {
+		put(file);
+	}
+
+	/**
+	 * Gets a file by its relative path.
+	 *
+	 * @param relativePath
+	 *            The relative path of the file.
+	 *
+	 * @return The file or <code>null</code> if the file is not indexed.
+	 */
+	public synchronized RelativeFile get(String relativePath) {
+		return files.get(relativePath);
+	}
+
+	/**
+	 * Introduces a new file to the index.
+	 *
+	 * @param file
+	 *            The new file.
+	 */
+	public synchronized void add(RelativeFile file) {
+		RelativeFile previous = put(file);
+		Integer change = changes.get(file.getRelativePath());
+		if (change != null && change == change_remove) {
+			// the database record still exists
+			changes.put(file.getRelativePath(), change_update);
+		} else if (change == null) {
+			// an indexed file without pending change is already in the database
+			changes.put(file.getRelativePath(), previous != null ? change_update : change_add);
+		}
+	}
+
+	/**
+	 * Updates a file in the index.
+	 *
+	 * @param file
+	 *            The updated file.
+	 */
+	public synchronized void update(RelativeFile file) {
+		put(file);
+		Integer change = changes.get(file.getRelativePath());
+		if (change == null || change != change_add) {
+			changes.put(file.getRelativePath(), change_update);
+		}
+	}
+
+	/**
+	 * Removes a file from the index.
+	 *
+	 * @param relativePath
+	 *            The relative path of the file to remove.
+	 */
+	public synchronized void remove(String relativePath) {
+		RelativeFile removed = files.remove(relativePath);
+		if (removed != null) {
+			totalLength -= removed.getLength();
+		}
+		Integer change = changes.get(relativePath);
+		if (change != null && change == change_add) {
+			// the record never reached the database
+			changes.remove(relativePath);
+		} else {
+			changes.put(relativePath, change_remove);
+		}
+	}
+
+	/**
+	 * Moves all files of a directory to a new directory without recording a
+	 * change, the database moved the directory already. Pending changes of the
+	 * moved files follow them.
+	 * 
+	 * @param from
+	 *            The relative path of the directory.
+	 * @param to
+	 *            The new relative path of the directory.
+	 * 
+	 * @see OnlineDB#moveDirectory(String, String)
+	 */
+	synchronized void moveDirectory(String from, String to) {
+		String prefix = from + File.separator;
+		// collect the moved files first, the map can not be modified while iterating
+		Vector<RelativeFile> moved = new Vector<RelativeFile>();
+		Iterator<RelativeFile> iFiles = files.values().iterator();
+		RelativeFile file;
+		while (iFiles.hasNext()) {
+			file = iFiles.next();
+			if (file.getRelativePath().startsWith(prefix)) {
+				moved.add(file);
+				iFiles.remove();
+			}
+		}
+		String relativePath;
+		for (RelativeFile movedFile : moved) {
+			relativePath = to + movedFile.getRelativePath().substring(from.length());
+			files.put(relativePath, new RelativeFile(relativePath, movedFile.getLength(),
+					movedFile.getModified(), movedFile.getChecksum(), movedFile.getAlgorithm()));
+		}
+		if (changes.size() > 0) {
+			LinkedHashMap<String, Integer> movedChanges = new LinkedHashMap<String, Integer>();
+			for (Map.Entry<String, Integer> change : changes.entrySet()) {
+				relativePath = change.getKey();
+				if (relativePath.startsWith(prefix)) {
+					relativePath = to + relativePath.substring(from.length());
+				}
+				movedChanges.put(relativePath, change.getValue());
+			}
+			changes = movedChanges;
+		}
+	}
+
+	/**
+	 * Puts a file into the map and keeps the total length up to date.
+	 *
+	 * @param file
+	 *            The file to put.
+	 * 
+	 * @return The file previously indexed under the same path or
+	 *         <code>null</code>.
+	 */
+	private RelativeFile put(RelativeFile file) {
+		RelativeFile previous = files.put(file.getRelativePath(), file);
+		if (previous != null) {
+			totalLength -= previous.getLength();
+		}
+		totalLength += file.getLength();
+		return previous;
+	}
+
+	/**
+	 * Lists all indexed files.
+	 *
+	 * @return A new list containing all indexed files.
+	 */
+	public synchronized Vector<RelativeFile> listAll() {
+		return new Vector<RelativeFile>(files.values());
+	}
+
+	/**
+	 * Gets the number of indexed files.
+	 *
+	 * @return The number of indexed files.
+	 */
+	public synchronized int size() {
+		return files.size();
+	}
+
+	/**
+	 * Gets the total length of all indexed files.
+	 *
+	 * @return The total length of all indexed files in bytes.
+	 */
+	public synchronized long getTotalLength() {
+		return totalLength;
+	}
+
+	/**
+	 * Gets whether there are changes that were not written to the database yet.
+	 *
+	 * @return <code>true</code> if there are pending changes.
+	 */
+	public synchronized boolean hasChanges() {
+		return changes.size() > 0;
+	}
+
+	/**
+	 * Gets the number of pending changes.
+	 *
+	 * @return The number of paths with pending changes.
+	 */
+	public synchronized int getChangeCount() {
+		return changes.size();
+	}
+
+	/**
+	 * Takes the pending changes and starts a new empty change set.
+	 *
+	 * @return The pending changes by relative path.
+	 */
+	synchronized LinkedHashMap<String, Integer> takeChanges() {
+		LinkedHashMap<String, Integer> taken = changes;
+		changes = new LinkedHashMap<String, Integer>();
+		return taken;
+	}
+
+	/**
+	 * Puts changes that could not be written back in front of the changes that
+	 * were recorded in the meantime and coalesces them.
+	 *
+	 * @param failed
+	 *            The changes previously obtained by <code>takeChanges()</code>.
+	 */
+	synchronized void restoreChanges(LinkedHashMap<String, Integer> failed) {
+		LinkedHashMap<String, Integer> recent = changes;
+		changes = failed;
+		Integer before;
+		for (String relativePath : recent.keySet()) {
+			before = changes.get(relativePath);
+			switch (recent.get(relativePath)) {
+			case change_add:
+				changes.put(relativePath,
+						before != null && before == change_remove ? change_update : change_add);
+				break;
+			case change_update:
+				if (before == null || before != change_add) {
+					changes.put(relativePath, change_update);
+				}
+				break;
+			default:
+				if (before != null && before == change_add) {
+					changes.remove(relativePath);
+				} else {
+					changes.put(relativePath, change_remove);
+				}
+				break;
+			}
+		}
+	}
+}
@@ -49,6 +49,7 @@ public class RecoverSystemProcess extends SwingWorker<Void, Void> {
 		if(!fsdb.exists()) {
 			throw new FileNotFoundException("Database file not found.");
 		}
+		DatabasePublisher.recover(fsdb);
 		
 		File dbEditFile = OnlineDB.getEditableDBFile(source, fsdb);
 		if(dbEditFile == null) {
@@ -65,7 +66,7 @@ public class RecoverSystemProcess extends SwingWorker<Void, Void> {
 			e.printStackTrace();
 		}
 
-		FileUtils.copyFile(dbEditFile, fsdb);
+		DatabasePublisher.publish(dbEditFile, fsdb);
 		return null;
 	}
 
@@ -23,8 +23,6 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
 
-import net.janbuchinger.code.fssync.FSSync;
-
 public class RecoverSystemVisitor implements FileVisitor<Path> {
 
 	private final File source;
@@ -43,13 +41,18 @@ public class RecoverSystemVisitor implements FileVisitor<Path> {
 
 	@Override
 	public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+		// skip the version area
+		if (dir.getParent() != null && dir.getParent().toString().equals(target.getPath())
+				&& dir.getFileName().toString().equals(VersionStore.VERSIONS_DIR)) {
+			return FileVisitResult.SKIP_SUBTREE;
+		}
 		return FileVisitResult.CONTINUE;
 	}
 
 	private File fileInSource;
 	private File fileInDestination;
 	private Path relativePath;
-	private String checksum;
+	private byte[] checksum;
 
 	private String filename;
 
@@ -57,17 +60,17 @@ public class RecoverSystemVisitor implements FileVisitor<Path> {
 	public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
 		if (file.getParent().toString().equals(target.getPath())) {
 			filename = file.getFileName().toString();
-			if (filename.startsWith(".fs.") && filename.endsWith(".db"))
+			if (OnlineDB.isDatabaseFile(filename))
 				return FileVisitResult.CONTINUE;
 		}
 		relativePath = file.subpath(targetBaseNameCount, file.getNameCount());
 		fileInSource = new File(source, relativePath.toString());
 		if (fileInSource.exists()) {
 			fileInDestination = file.toFile();
-			checksum = FSSync.createSHA384Hex(fileInDestination);
+			checksum = ChecksumAlgorithm.SHA384.hashFile(fileInDestination);
 			if (checksum != null) {
 				db.add(relativePath.toString(), fileInDestination.length(),
-						attrs.lastModifiedTime().toMillis(), checksum);
+						attrs.lastModifiedTime().toMillis(), checksum, ChecksumAlgorithm.SHA384.getName());
 			}
 		}
 		return FileVisitResult.CONTINUE;
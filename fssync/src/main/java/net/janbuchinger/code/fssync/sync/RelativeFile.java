@@ -17,24 +17,38 @@ package net.janbuchinger.code.fssync.sync;
 
 public class RelativeFile {
 
-	private final String relativePath, checksum;
+	private final String relativePath, algorithm;
+	private final byte[] checksum;
 	private final long length, modified;
 
-	public RelativeFile(String relativePath, long length, long modified, String checksum) {
+	public RelativeFile(String relativePath, long length, long modified, byte[] checksum) {
+		this(relativePath, length, modified, checksum, ChecksumAlgorithm.SHA384.getName());
+	}
+
+	public RelativeFile(String relativePath, long length, long modified, byte[] checksum, String algorithm) {
 		this.relativePath = relativePath;
 		this.length = length;
 		this.modified = modified;
 		this.checksum = checksum;
+		this.algorithm = algorithm;
 	}
 
 	public final String getRelativePath() {
 		return relativePath;
 	}
 
-	public final String getChecksum() {
+	public final byte[] getChecksum() {
 		return checksum;
 	}
 
+	public final String getChecksumHex() {
+		return ChecksumAlgorithm.toHex(checksum);
+	}
+
+	public final String getAlgorithm() {
+		return algorithm;
+	}
+
 	public final long getLength() {
 		return length;
 	}
@@ -18,11 +18,9 @@ package net.janbuchinger.code.fssync.sync;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.Iterator;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
@@ -32,6 +30,7 @@ import org.apache.commons.io.FileUtils;
 
 import net.janbuchinger.code.fssync.FSSync;
 import net.janbuchinger.code.fssync.Operation;
+import net.janbuchinger.code.fssync.Settings;
 import net.janbuchinger.code.fssync.sync.ui.GetRestorationMode;
 import net.janbuchinger.code.fssync.sync.ui.GetRestoreSourceChoice;
 import net.janbuchinger.code.fssync.sync.ui.GetRetryOnOutOfMemory;
@@ -40,9 +39,7 @@ import net.janbuchinger.code.fssync.sync.ui.RestorationModePanel;
 import net.janbuchinger.code.fssync.sync.ui.RunCancelled;
 import net.janbuchinger.code.fssync.sync.ui.RunFinished;
 import net.janbuchinger.code.fssync.sync.ui.RunSetDeterminate;
-import net.janbuchinger.code.fssync.sync.ui.RunStatusMessageUpdate;
-import net.janbuchinger.code.fssync.sync.ui.RunStatusTextUpdate;
-import net.janbuchinger.code.fssync.sync.ui.StatusMessage;
+import net.janbuchinger.code.fssync.sync.ui.StatusChannel;
 import net.janbuchinger.code.fssync.sync.ui.SynchronizationProcessDialog;
 import net.janbuchinger.code.mishmash.FSFx;
 import net.janbuchinger.code.mishmash.ui.UIFx;
@@ -68,20 +65,15 @@ public class RestorationProcess extends SwingWorker<Void, Void> implements Prope
 	private final Vector<Operation> operations;
 
 	/**
-	 * last status text update to avoid flooding the EDT during copying files, 0 by
-	 * default
+	 * The channel passing status messages, the status text and control events to
+	 * the <code>SynchronizationProcessDialog</code>
 	 */
-	private long lastStatusUpdate;
-	/**
-	 * last status message update to avoid flooding the EDT during copying files, 0
-	 * by default
-	 */
-	private long lastStatusMessageUpdate;
+	private StatusChannel statusChannel;
 
 	/**
-	 * The temporary list of messages to be passed to the EDT, null by default
+	 * The file copier used to copy the files back.
 	 */
-	private Vector<StatusMessage> messages;
+	private final FileCopier fileCopier;
 
 	/**
 	 * Constructs a new <code>RestorationProcess</code> to run the given operations.
@@ -91,6 +83,8 @@ public class RestorationProcess extends SwingWorker<Void, Void> implements Prope
 	 */
 	public RestorationProcess(Vector<Operation> operations) {
 		this.operations = operations;
+		// restored files are not hashed, so there is nothing to verify
+		fileCopier = new FileCopier(false);
 		addPropertyChangeListener(this);
 	}
 
@@ -104,6 +98,7 @@ public class RestorationProcess extends SwingWorker<Void, Void> implements Prope
 	 */
 	public void setSpd(SynchronizationProcessDialog spd) {
 		this.spd = spd;
+		this.statusChannel = spd.getStatusChannel();
 	}
 
 	/**
@@ -129,6 +124,10 @@ public class RestorationProcess extends SwingWorker<Void, Void> implements Prope
 			File dbEdit = null;
 			// the file system database
 			OnlineDB db = null;
+			// indicates that the editable database differed from the target database
+			boolean outOfDate = false;
+			// commits the database changes in batches
+			DatabaseWriterThread dbWriter = null;
 
 			// temporary list of conflicting operations
 			Vector<Operation> opsDuplicates;
@@ -154,34 +153,32 @@ public class RestorationProcess extends SwingWorker<Void, Void> implements Prope
 			// the list of files to be copied
 			Vector<CopyAction> copyActions;
 
-			// all files from database to determine files to be copied
-			Vector<RelativeFile> allFiles;
 			// the counter of bytes to be copied
 			long updateSize;
 			// the counter of bytes to be overwritten
 			long updateSizeOverwrite;
+			// the database entry
+			RelativeFile file_db;
 			// the destination file, in restoration the file in the source directory
-			File file_destination;
+			ScannedFile file_destination;
 			// the source file is the file from the target directory
-			File file_source;
+			ScannedFile file_source;
 			// true indicates that the source file exists
 			boolean sourceExists;
 			// true indicates that the destination file exists
 			boolean destinationExists;
 
-			// the starting path for the local file visitor
-			Path start;
-			// the source files found by the local file visitor
-			Vector<File> sourceFiles;
-			// the local file visitor for finding new files if delete new files is selected
-			LocalFileVisitor localFileVisitor;
+			// the pool reading the file systems
+			ForkJoinPool scanPool = null;
+			// the scanner of the source file system, also finds new files if delete new
+			// files is selected
+			ParallelDirectoryScanner sourceScanner;
+			// merges source, target and database ordered by relative path
+			DiffEngine diffEngine;
+			// the current relative path as found in source, target and database
+			DiffEntry diffEntry;
 			// the new files to delete
 			Vector<DeleteAction> deleteActions;
-			// the index of the path string to the file to delete to String.substring() the
-			// relative path for querying the database and for building the delete action
-			int sourceBasePathLengthPlusOne;
-			// the temporary file to query the database for
-			RelativeFile rf;
 
 			// the operation summary
 			OperationSummary operationSummary;
@@ -245,6 +242,9 @@ public class RestorationProcess extends SwingWorker<Void, Void> implements Prope
 			// loop through the batch of operations to restore
 			for (Operation operation : operations) {
 				try {
+					db = null;
+					dbWriter = null;
+					scanPool = null;
 					// fail save... continue if the operation state is not adequate
 					if ((!operation.getTarget().exists() || !operation.getSource().exists())
 							|| !operation.isTargetOnline()) {
@@ -259,6 +259,8 @@ public class RestorationProcess extends SwingWorker<Void, Void> implements Prope
 
 					// initialize the target database file
 					dbDestination = operation.getDbOriginal();
+					// complete an interrupted publication of the target database
+					DatabasePublisher.recover(dbDestination);
 
 					// try initialize the .fs.edit.db file
 					dbEdit = OnlineDB.getEditableDBFile(operation);
@@ -270,8 +272,17 @@ public class RestorationProcess extends SwingWorker<Void, Void> implements Prope
 						// copy the file
 						FileUtils.copyFile(dbDestination, dbEdit);
 					}
+					// remember if the editable database differs from the target database
+					outOfDate = dbEdit.lastModified() != dbDestination.lastModified();
 					// initialize the data base
 					db = new OnlineDB(dbEdit);
+					// keep one connection open for the whole operation
+					db.openSession();
+					// serve all lookups from memory
+					db.loadIndex();
+					// commit the changes in the background
+					dbWriter = new DatabaseWriterThread(db);
+					dbWriter.start();
 
 					// initialize the list of copy actions
 					copyActions = new Vector<CopyAction>();
@@ -279,22 +290,52 @@ public class RestorationProcess extends SwingWorker<Void, Void> implements Prope
 					// set unchanged
 					changed = false;
 
-					// list all files from data base
-					allFiles = db.listAll();
-
 					// initialize the update size
 					updateSize = 0;
 					updateSizeOverwrite = 0;
-					// loop through all files from database
-					for (RelativeFile file_db : allFiles) {
+					// initialize the list of files to delete
+					deleteActions = new Vector<DeleteAction>();
+					// read both file systems and merge them with the database ordered by relative
+					// path
+					message("# Quell- und Zieldateisystem Einlesen");
+					scanPool = ParallelDirectoryScanner.createPool(Settings.getSettings().getScanThreads());
+					sourceScanner = new ParallelDirectoryScanner(operation.getSource(), operation.getExcludes(),
+							null, this, scanPool);
+					diffEngine = new DiffEngine(sourceScanner,
+							new ParallelDirectoryScanner(operation.getTarget(), null, null, this, scanPool),
+							DiffEngine.sort(db.listAll()).iterator());
+					// loop through all relative paths found in any of the three
+					while (diffEngine.hasNext()) {
+						diffEntry = diffEngine.next();
+						file_db = diffEntry.getKnown();
 						// initialize the file in the source directory as target file
-						file_destination = new File(operation.getSource(), file_db.getRelativePath());
-						// does the target file exist?
-						destinationExists = file_destination.exists();
+						file_destination = diffEntry.getSource();
+						// excluded files are not scanned but they exist anyway
+						if (file_destination == null && sourceScanner.isExcluded(diffEntry.getRelativePath())) {
+							file_destination = ScannedFile.scan(diffEntry.getRelativePath(),
+									new File(operation.getSource(), diffEntry.getRelativePath()));
+						}
 						// initialize the file in the target directory as source file
-						file_source = new File(operation.getTarget(), file_db.getRelativePath());
+						file_source = diffEntry.getTarget();
+						// cancel if the user pressed the cancel button
+						if (isCancelled()) {
+							message("# Wiederherstellung Abgebrochen");
+							breakk = true;
+							break;
+						}
+						// the file is not in the database yet
+						if (file_db == null) {
+							// then it is a new file to delete if the "delete new" option was selected
+							if (deleteNew && diffEntry.getSource() != null) {
+								deleteActions.add(
+										new DeleteAction(diffEntry.getSource(), DeleteAction.del_source, true));
+							}
+							continue;
+						}
+						// does the target file exist?
+						destinationExists = file_destination != null;
 						// does the source file exist?
-						sourceExists = file_source.exists();
+						sourceExists = file_source != null;
 						// add according to the restoration mode chosen by the user
 						switch (mode) {
 						// case "soft restoration"
@@ -302,20 +343,21 @@ public class RestorationProcess extends SwingWorker<Void, Void> implements Prope
 							// only add files that exist in the target directory and are missing in the
 							// source directory
 							if (!destinationExists && sourceExists) {
-								copyActions.add(new CopyAction(file_source, file_destination,
-										file_db.getRelativePath(), false, CopyAction.DIR_RESTORE));
-								updateSize += file_source.length();
+								copyActions.add(new CopyAction(file_source,
+										new File(operation.getSource(), file_db.getRelativePath()), null, false,
+										CopyAction.DIR_RESTORE));
+								updateSize += file_source.getLength();
 							}
 							break;
 						// case "restore all"
 						case RestorationModePanel.MODE_ALL:
 							// all files that exist in the target directory are fetched
 							if (sourceExists) {
-								copyActions.add(new CopyAction(file_source, file_destination,
-										file_db.getRelativePath(), !destinationExists,
-										CopyAction.DIR_RESTORE));
-								updateSize += file_source.length();
-								updateSizeOverwrite += destinationExists ? file_destination.length() : 0;
+								copyActions.add(new CopyAction(file_source,
+										new File(operation.getSource(), file_db.getRelativePath()),
+										file_destination, !destinationExists, CopyAction.DIR_RESTORE));
+								updateSize += file_source.getLength();
+								updateSizeOverwrite += destinationExists ? file_destination.getLength() : 0;
 							}
 							break;
 						// case "undo changes"
@@ -323,18 +365,19 @@ public class RestorationProcess extends SwingWorker<Void, Void> implements Prope
 							// if both files exist
 							if (destinationExists && sourceExists) {
 								// and their modification date differs
-								if (file_destination.lastModified() != file_db.getModified()) {
+								if (file_destination.getModified() != file_db.getModified()) {
 									// then restore the changed file
-									copyActions.add(new CopyAction(file_source, file_destination,
-											file_db.getRelativePath(), false, CopyAction.DIR_RESTORE));
-									updateSize += file_source.length();
-									updateSizeOverwrite += file_destination.length();
+									copyActions.add(new CopyAction(file_source, file_destination.getFile(),
+											file_destination, false, CopyAction.DIR_RESTORE));
+									updateSize += file_source.getLength();
+									updateSizeOverwrite += file_destination.getLength();
 								}
 								// if only the file in the target directory exists
 							} else if (sourceExists) {
 								// then restore the file as new file
-								copyActions.add(new CopyAction(file_source, file_destination,
-										file_db.getRelativePath(), true, CopyAction.DIR_RESTORE));
+								copyActions.add(new CopyAction(file_source,
+										new File(operation.getSource(), file_db.getRelativePath()), null, true,
+										CopyAction.DIR_RESTORE));
 								updateSize += file_db.getLength();
 							}
 							break;
@@ -349,52 +392,14 @@ public class RestorationProcess extends SwingWorker<Void, Void> implements Prope
 							// and remove the record from the database
 							db.removeFileByPath(file_db.getRelativePath());
 						}
-					} // end of database files loop
-
-					// initialize the list of files to delete
-					deleteActions = new Vector<DeleteAction>();
-					// if the "delete new" option was selected
-					if (deleteNew) {
-						// then list the source file system
-						message("# Quelldateisystem Einlesen");
-						// initialize the source file system list
-						sourceFiles = new Vector<File>();
-						// initialize the start path for the file visitor
-						start = Paths.get(operation.getSourcePath());
-						// initialize the local file visitor
-						localFileVisitor = new LocalFileVisitor(operation.getSource(), sourceFiles,
-								operation.getExcludes(), this);
-						// spider file system
-						Files.walkFileTree(start, localFileVisitor);
-						// cancel if the user pressed the cancel button
-						if (isCancelled()) {
-							message("# Wiederherstellung Abgebrochen");
-							breakk = true;
-							break;
-						}
-						// the file path index to substring the relative path
-						sourceBasePathLengthPlusOne = operation.getSourcePath().length() + 1;
-						// loop through all files in the source file system
-						for (File f : sourceFiles) {
-							// get the corresponding file from the database
-							rf = db.getFileByPath(f.getPath().substring(sourceBasePathLengthPlusOne));
-							// if the file is not in the database yet
-							if (rf == null) {
-								// then it is a new file to delete
-								deleteActions.add(
-										new DeleteAction(f, f.getPath().substring(sourceBasePathLengthPlusOne),
-												DeleteAction.del_source, true));
-							}
-							// cancel if the user pressed the cancel button
-							if (isCancelled()) {
-								message("# Wiederherstellung Abgebrochen");
-								breakk = true;
-								break;
-							}
-						}
-						if (breakk) {
-							break;
-						}
+					} // end of merged files loop
+					// cancel if the user pressed the cancel button while the scanners were waiting
+					if (!breakk && isCancelled()) {
+						message("# Wiederherstellung Abgebrochen");
+						breakk = true;
+					}
+					if (breakk) {
+						break;
 					}
 
 					// try initializing the OperationSummary for the restoration
@@ -488,18 +493,32 @@ public class RestorationProcess extends SwingWorker<Void, Void> implements Prope
 							// then continue
 							continue;
 						}
-						// copy the file
-						FileUtils.copyFile(ca.getSource(), ca.getDestination());
-						// indicate that changes were made
-						if (!changed) {
-							changed = true;
+						// the total copied length before this file
+						final long copiedBefore = copied;
+						final long totalSize = updateSize;
+						try {
+							// copy the file, update the progress bar after each chunk
+							fileCopier.transfer(ca.getSource(), ca.getDestination(), new CopyProgressListener() {
+								@Override
+								public boolean progress(long copiedFile) {
+									setProgress((int) ((100.0 / totalSize) * (copiedBefore + copiedFile)));
+									// continue unless the user pressed cancel
+									return !isCancelled();
+								}
+							});
+							// indicate that changes were made
+							if (!changed) {
+								changed = true;
+							}
+							// increment file counter
+							counter++;
+							// message verbose
+							message(ca.toString(), true);
+							// increment total bytes copied counter
+							copied += ca.getSourceLength();
+						} catch (SynchronizationCancelledException e) {
+							// the partial file was removed, cancellation is handled below
 						}
-						// increment file counter
-						counter++;
-						// message verbose
-						message(ca.toString(), true);
-						// increment total bytes copied counter
-						copied += ca.getSource().length();
 						// update progress bar
 						setProgress((int) ((100.0 / updateSize) * copied));
 						// set split time in seconds
@@ -507,13 +526,12 @@ public class RestorationProcess extends SwingWorker<Void, Void> implements Prope
 						// if the split time is longer than 0 seconds
 						if (tSplit > 0) {
 							// then update the status text
-							status("Dateien Zurückkopieren " + FSFx.formatTransferSpeed(tStart, copied),
-									false);
+							status("Dateien Zurückkopieren " + FSFx.formatTransferSpeed(tStart, copied));
 						}
 						// abort if the user pressed cancel
 						if (isCancelled()) {
 							removePropertyChangeListener(this);
-							SwingUtilities.invokeLater(
+							statusChannel.finish(
 									new RunCancelled("Während des Datenabgleichs Abgebrochen!", spd));
 							breakk = true;
 							break;
@@ -534,23 +552,33 @@ public class RestorationProcess extends SwingWorker<Void, Void> implements Prope
 						message("## Alle Änderungen Angewandt");
 					}
 				} finally {
-					// finally synchronize the databases if necessary
-					if (dbEdit != null && dbDestination != null) {
-						if (dbEdit.lastModified() != dbDestination.lastModified())
-							FileUtils.copyFile(dbEdit, dbDestination);
+					// stop reading the source file system
+					if (scanPool != null) {
+						scanPool.shutdownNow();
+					}
+					// wait for pending commits and write the rest
+					if (dbWriter != null) {
+						dbWriter.close();
+					}
+					if (db != null) {
+						// close the session to complete the database file
+						db.closeSession();
+						// finally synchronize the databases if necessary
+						if (dbEdit != null && dbDestination != null && (outOfDate || db.isIndexWritten())) {
+							// write the changed pages to the target database
+							DatabasePublisher.publish(dbEdit, dbDestination);
+						}
 					}
 				}
 			} // end of batch loop
 
 			removePropertyChangeListener(this);
-			flushMessages();
 			if (breakk) {
 				finish("Abgebrochen", null);
 			} else {
 				finish("Alles Erledigt", null);
 			}
 		} catch (Exception e) {
-			flushMessages();
 			finish("Fehler: " + e.getMessage(), e);
 			e.printStackTrace();
 		}
@@ -558,11 +586,11 @@ public class RestorationProcess extends SwingWorker<Void, Void> implements Prope
 	}
 
 	private void setIndeterminate() {
-		SwingUtilities.invokeLater(new RunSetDeterminate(false, spd));
+		statusChannel.post(new RunSetDeterminate(false, spd));
 	}
 
 	private void setDeterminate() {
-		SwingUtilities.invokeLater(new RunSetDeterminate(true, spd));
+		statusChannel.post(new RunSetDeterminate(true, spd));
 	}
 
 	/**
@@ -574,7 +602,7 @@ public class RestorationProcess extends SwingWorker<Void, Void> implements Prope
 	 *            The Exception or null
 	 */
 	private void finish(String message, Exception e) {
-		SwingUtilities.invokeLater(new RunFinished(message, e, spd));
+		statusChannel.finish(new RunFinished(message, e, spd));
 	}
 
 	/**
@@ -637,26 +665,13 @@ public class RestorationProcess extends SwingWorker<Void, Void> implements Prope
 	}
 
 	/**
-	 * status label update, limited to 1 update per half second
+	 * status label update, only the latest status is shown by the status channel
 	 * 
 	 * @param status
 	 *            The status <code>String</code> to be shown.
-	 * @param force
-	 *            <code>true</code> to ignore delay.
-	 */
-	private void status(String status, boolean force) {
-		if (force || System.currentTimeMillis() - lastStatusUpdate > 500) {
-			SwingUtilities.invokeLater(new RunStatusTextUpdate(status, spd));
-			lastStatusUpdate = System.currentTimeMillis();
-		}
-	}
-
-	/**
-	 * used at the end of the synchronization process to ensure all messages are
-	 * being posted to the user interface
 	 */
-	private void flushMessages() {
-		message("");
+	private void status(String status) {
+		statusChannel.setStatus(status);
 	}
 
 	/**
@@ -670,38 +685,19 @@ public class RestorationProcess extends SwingWorker<Void, Void> implements Prope
 	}
 
 	/**
-	 * Posts a message to the current list of messages and posts messages to the
-	 * synchronization process dialog
+	 * Posts a message to the status channel of the synchronization process dialog.
+	 * The messages are delivered in order, all messages posted within one tick of
+	 * the channel are passed to the dialog at once.
 	 * 
 	 * @param message
 	 *            The message to be shown, not null
 	 * 
 	 * @param verbose
-	 *            if true the message is posted to the current list of messages. if
-	 *            the time since the last message is longer than 750 milliseconds
-	 *            then the current list of messages is posted to the synchronization
-	 *            process dialog.
-	 *            <p>
-	 *            if false then the message is not delayed and the list of current
-	 *            messages is posted.
+	 *            if true the message is only displayed in verbose mode.
 	 */
 	private void message(String message, boolean verbose) {
-		if (message != null) {
-			// add message to list
-			if (message.length() > 0) {
-				if (messages == null) {
-					messages = new Vector<>();
-				}
-				messages.add(new StatusMessage(message, verbose));
-			}
-			// send messages to the EDT
-			if (System.currentTimeMillis() - lastStatusMessageUpdate > 750 || !verbose) {
-				if (messages != null) {
-					SwingUtilities.invokeLater(new RunStatusMessageUpdate(spd, messages));
-					messages = null;
-					lastStatusMessageUpdate = System.currentTimeMillis();
-				}
-			}
+		if (message.length() > 0) {
+			statusChannel.message(message, verbose);
 		}
 	}
 
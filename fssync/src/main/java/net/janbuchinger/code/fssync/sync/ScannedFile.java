@@ -0,0 +1,164 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A file found by a <code>ParallelDirectoryScanner</code> together with its
+ * path relative to the scanned root directory and the attributes read during
+ * the scan.
+ * <p>
+ * The later phases of a synchronization use the attributes captured here
+ * instead of asking the file system again.
+ * 
+ * @author Jan Buchinger
+ *
+ */
+public class ScannedFile {
+	/**
+	 * The path relative to the scanned root directory.
+	 */
+	private final String relativePath;
+	/**
+	 * The file.
+	 */
+	private final File file;
+	/**
+	 * The file length in bytes at the time of the scan.
+	 */
+	private final long length;
+	/**
+	 * The modification time in milliseconds at the time of the scan.
+	 */
+	private final long modified;
+	/**
+	 * The object that identifies the file on its file system or
+	 * <code>null</code>.
+	 */
+	private final Object fileKey;
+
+	/**
+	 * Constructs a new <code>ScannedFile</code> from known attributes.
+	 * 
+	 * @param relativePath
+	 *            The path relative to the scanned root directory.
+	 * @param file
+	 *            The file.
+	 * @param length
+	 *            The file length in bytes.
+	 * @param modified
+	 *            The modification time in milliseconds.
+	 * @param fileKey
+	 *            The object that identifies the file on its file system or
+	 *            <code>null</code>.
+	 */
+	public ScannedFile(String relativePath, File file, long length, long modified, Object fileKey) {
+		this.relativePath = relativePath;
+		this.file = file;
+		this.length = length;
+		this.modified = modified;
+		this.fileKey = fileKey;
+	}
+
+	/**
+	 * Constructs a new <code>ScannedFile</code> from the attributes read by the
+	 * scanner.
+	 * 
+	 * @param relativePath
+	 *            The path relative to the scanned root directory.
+	 * @param file
+	 *            The file.
+	 * @param attrs
+	 *            The attributes of the file.
+	 */
+	public ScannedFile(String relativePath, File file, BasicFileAttributes attrs) {
+		this(relativePath, file, attrs.size(), attrs.lastModifiedTime().toMillis(), attrs.fileKey());
+	}
+
+	/**
+	 * Reads the attributes of a single file.
+	 * 
+	 * @param relativePath
+	 *            The relative path of the file.
+	 * @param file
+	 *            The file to read.
+	 * 
+	 * @return The scanned file or <code>null</code> if the file does not exist or
+	 *         is a directory.
+	 */
+	public static ScannedFile scan(String relativePath, File file) {
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		} catch (IOException e) {
+			return null;
+		}
+		return attrs.isDirectory() ? null : new ScannedFile(relativePath, file, attrs);
+	}
+
+	/**
+	 * Gets the path relative to the scanned root directory.
+	 * 
+	 * @return The relative path.
+	 */
+	public final String getRelativePath() {
+		return relativePath;
+	}
+
+	/**
+	 * Gets the file.
+	 * 
+	 * @return The file.
+	 */
+	public final File getFile() {
+		return file;
+	}
+
+	/**
+	 * Gets the file length at the time of the scan.
+	 * 
+	 * @return The file length in bytes.
+	 */
+	public final long getLength() {
+		return length;
+	}
+
+	/**
+	 * Gets the modification time at the time of the scan.
+	 * 
+	 * @return The modification time in milliseconds.
+	 */
+	public final long getModified() {
+		return modified;
+	}
+
+	/**
+	 * Gets the object that uniquely identifies the file on its file system.
+	 * 
+	 * @return The file key or <code>null</code> if the file system does not
+	 *         provide one.
+	 * 
+	 * @see BasicFileAttributes#fileKey()
+	 */
+	public final Object getFileKey() {
+		return fileKey;
+	}
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Vector;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+
+import net.janbuchinger.code.fssync.Operation;
+
+/**
+ * The <code>SyncJournal</code> persists the approved copy actions of a
+ * synchronization and the completion of each action next to the editable
+ * database, e.g. ".fs.edit1.db.plan".
+ * <p>
+ * The plan is written once before the copy phase starts and is only valid if
+ * it is complete. Each finished copy appends a line with the index of the
+ * action and the checksum of the copied data. The completions are forced to
+ * disk at most once per second and when the journal is closed, a completion
+ * lost by a crash only causes the copy to be repeated. If the synchronization is
+ * cancelled or interrupted, the next run of the same <code>Operation</code>
+ * records the finished copies that did not reach the database, removes the
+ * partially written files of the other actions and copies them again without
+ * analysing the file systems. The journal is deleted after the copy phase was
+ * completed.
+ * <p>
+ * The plan is a text file with one entry per line, each copy entry is written
+ * on one line:
+ * 
+ * <pre>
+ * fssync plan 1
+ * db &lt;database id&gt;
+ * source &lt;source path&gt;
+ * target &lt;target path&gt;
+ * algorithm &lt;checksum algorithm&gt;
+ * copy &lt;direction&gt; &lt;new&gt; &lt;source length&gt; &lt;source modified&gt;
+ *      &lt;destination length&gt; &lt;destination modified&gt; &lt;relative path&gt;
+ * end
+ * done &lt;index&gt; &lt;checksum&gt;
+ * </pre>
+ * 
+ * @author Jan Buchinger
+ *
+ * @see OnlineDB#isDatabaseFile(String)
+ */
+public final class SyncJournal {
+	/**
+	 * The suffix of the journal appended to the editable database file name.
+	 */
+	public final static String PLAN_SUFFIX = ".plan";
+	/**
+	 * The first line of the plan.
+	 */
+	private final static String HEADER = "fssync plan 1";
+	/**
+	 * The minimum time between two forced writes of the completions in
+	 * milliseconds.
+	 */
+	private final static long FORCE_INTERVAL = 1000;
+
+	/**
+	 * The journal file.
+	 */
+	private final File planFile;
+	/**
+	 * The algorithm the checksums were created with.
+	 */
+	private final ChecksumAlgorithm algorithm;
+	/**
+	 * The planned copy actions.
+	 */
+	private final Vector<CopyAction> copyActions;
+	/**
+	 * The index of each planned copy action.
+	 */
+	private final HashMap<CopyAction, Integer> indexes;
+	/**
+	 * The checksums of the finished copy actions, <code>null</code> if not
+	 * finished.
+	 */
+	private final byte[][] checksums;
+	/**
+	 * The journal file stream, used to force the completions to disk.
+	 */
+	private FileOutputStream out;
+	/**
+	 * Appends the completions to the journal file.
+	 */
+	private Writer writer;
+	/**
+	 * The time the completions were last forced to disk.
+	 */
+	private long forced;
+
+	private SyncJournal(File planFile, ChecksumAlgorithm algorithm, Vector<CopyAction> copyActions,
+			byte[][] checksums) throws IOException {
+		this.planFile = planFile;
+		this.algorithm = algorithm;
+		this.copyActions = copyActions;
+		this.checksums = checksums;
+		indexes = new HashMap<CopyAction, Integer>();
+		for (int i = 0; i < copyActions.size(); i++) {
+			indexes.put(copyActions.get(i), i);
+		}
+		out = new FileOutputStream(planFile, true);
+		writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		forced = System.currentTimeMillis();
+	}
+
+	/**
+	 * Gets the journal file of an editable database.
+	 * 
+	 * @param dbEdit
+	 *            The editable database.
+	 * 
+	 * @return The journal file.
+	 */
+	public static File getPlanFile(File dbEdit) {
+		return new File(dbEdit.getPath() + PLAN_SUFFIX);
+	}
+
+	/**
+	 * Writes the plan of a copy phase, an existing journal is replaced.
+	 * 
+	 * @param dbEdit
+	 *            The editable database of the <code>Operation</code>.
+	 * @param dbId
+	 *            The id of the database.
+	 * @param operation
+	 *            The <code>Operation</code>.
+	 * @param algorithm
+	 *            The algorithm the checksums are created with.
+	 * @param copyActions
+	 *            The copy actions in the order they are started.
+	 * 
+	 * @return The journal to record the finished copy actions.
+	 * 
+	 * @throws IOException
+	 *             if the plan could not be written.
+	 */
+	public static SyncJournal create(File dbEdit, String dbId, Operation operation,
+			ChecksumAlgorithm algorithm, Vector<CopyAction> copyActions) throws IOException {
+		File planFile = getPlanFile(dbEdit);
+		File tmp = new File(planFile.getPath() + DatabasePublisher.TMP_SUFFIX);
+		// paths with line breaks can not be written, they are left to the next analysis
+		Vector<CopyAction> planned = new Vector<CopyAction>();
+		FileOutputStream out = new FileOutputStream(tmp);
+		try {
+			Writer planWriter = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			planWriter.write(HEADER + "\n");
+			planWriter.write("db " + dbId + "\n");
+			planWriter.write("source " + operation.getSourcePath() + "\n");
+			planWriter.write("target " + operation.getTargetPath() + "\n");
+			planWriter.write("algorithm " + algorithm.getName() + "\n");
+			for (CopyAction copyAction : copyActions) {
+				if (copyAction.getRelativePath().indexOf('\n') != -1
+						|| copyAction.getRelativePath().indexOf('\r') != -1) {
+					continue;
+				}
+				planWriter.write("copy " + copyAction.getDirection() + " " + (copyAction.isNew() ? 1 : 0)
+						+ " " + copyAction.getSourceLength() + " " + copyAction.getSourceModified() + " "
+						+ copyAction.getDestinationLength() + " " + copyAction.getDestinationModified() + " "
+						+ copyAction.getRelativePath() + "\n");
+				planned.add(copyAction);
+			}
+			planWriter.write("end\n");
+			planWriter.flush();
+			// the plan must be on disk before it replaces an old journal
+			out.getChannel().force(true);
+		} finally {
+			out.close();
+		}
+		try {
+			Files.move(tmp.toPath(), planFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp.toPath(), planFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return new SyncJournal(planFile, algorithm, planned, new byte[planned.size()][]);
+	}
+
+	/**
+	 * Reads the journal of an interrupted copy phase. A journal that is
+	 * incomplete or belongs to another database or other directories is
+	 * deleted.
+	 * 
+	 * @param dbEdit
+	 *            The editable database of the <code>Operation</code>.
+	 * @param dbId
+	 *            The id of the database.
+	 * @param operation
+	 *            The <code>Operation</code>.
+	 * 
+	 * @return The journal or <code>null</code> if there is no valid journal.
+	 */
+	public static SyncJournal load(File dbEdit, String dbId, Operation operation) {
+		File planFile = getPlanFile(dbEdit);
+		if (!planFile.exists()) {
+			return null;
+		}
+		ChecksumAlgorithm algorithm = null;
+		Vector<CopyAction> copyActions = new Vector<CopyAction>();
+		Vector<String> completions = new Vector<String>();
+		boolean complete = false;
+		String[] fields;
+		String line;
+		int direction;
+		File sourceFile;
+		File destinationFile;
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(planFile), StandardCharsets.UTF_8))) {
+			if (!HEADER.equals(reader.readLine()) || !("db " + dbId).equals(reader.readLine())
+					|| !("source " + operation.getSourcePath()).equals(reader.readLine())
+					|| !("target " + operation.getTargetPath()).equals(reader.readLine())) {
+				throw new IOException("Plan does not belong to " + dbEdit);
+			}
+			line = reader.readLine();
+			if (line == null || !line.startsWith("algorithm ")
+					|| (algorithm = ChecksumAlgorithm.forName(line.substring(10))) == null) {
+				throw new IOException("Unknown checksum algorithm in " + planFile);
+			}
+			while ((line = reader.readLine()) != null) {
+				if (!complete && line.startsWith("copy ")) {
+					fields = line.split(" ", 8);
+					direction = Integer.parseInt(fields[1]);
+					if (direction == CopyAction.DIR_BACKUP) {
+						sourceFile = new File(operation.getSourcePath(), fields[7]);
+						destinationFile = new File(operation.getTargetPath(), fields[7]);
+					} else {
+						sourceFile = new File(operation.getTargetPath(), fields[7]);
+						destinationFile = new File(operation.getSourcePath(), fields[7]);
+					}
+					copyActions.add(new CopyAction(sourceFile, Long.parseLong(fields[3]),
+							Long.parseLong(fields[4]), destinationFile, Long.parseLong(fields[5]),
+							Long.parseLong(fields[6]), fields[7], fields[2].equals("1"), direction));
+				} else if (!complete && line.equals("end")) {
+					complete = true;
+				} else if (complete && line.startsWith("done ")) {
+					completions.add(line);
+				}
+			}
+			if (!complete) {
+				throw new IOException("Incomplete plan " + planFile);
+			}
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace();
+			delete(planFile);
+			return null;
+		}
+		// the last line may have been cut off
+		byte[][] checksums = new byte[copyActions.size()][];
+		int index;
+		for (String completion : completions) {
+			fields = completion.split(" ");
+			try {
+				index = Integer.parseInt(fields[1]);
+				if (fields.length == 3 && index >= 0 && index < checksums.length) {
+					checksums[index] = Hex.decodeHex(fields[2].toCharArray());
+				}
+			} catch (NumberFormatException | DecoderException e) {
+				e.printStackTrace();
+			}
+		}
+		try {
+			return new SyncJournal(planFile, algorithm, copyActions, checksums);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Records the finished copy actions in the database if their destination
+	 * files are still as they were copied.
+	 * 
+	 * @param db
+	 *            The database of the <code>Operation</code>.
+	 * 
+	 * @return The number of finished copy actions.
+	 */
+	public int recordCompleted(OnlineDB db) {
+		int completed = 0;
+		CopyAction copyAction;
+		for (int i = 0; i < copyActions.size(); i++) {
+			copyAction = copyActions.get(i);
+			if (checksums[i] == null) {
+				continue;
+			}
+			// the copy keeps the modification time of the source file
+			if (copyAction.getDestination().length() != copyAction.getSourceLength()
+					|| copyAction.getDestination().lastModified() != copyAction.getSourceModified()) {
+				checksums[i] = null;
+				continue;
+			}
+			if (db.getFileByPath(copyAction.getRelativePath()) == null) {
+				db.add(copyAction.getRelativePath(), copyAction.getSourceLength(),
+						copyAction.getSourceModified(), checksums[i], algorithm.getName());
+			} else {
+				db.updateFile(copyAction.getRelativePath(), copyAction.getSourceLength(),
+						copyAction.getSourceModified(), checksums[i], algorithm.getName());
+			}
+			completed++;
+		}
+		return completed;
+	}
+
+	/**
+	 * Lists the copy actions that were not finished. Partially written
+	 * destination files are removed, actions whose source file changed since
+	 * the plan was written are left to the next analysis.
+	 * 
+	 * @return The copy actions to resume in their planned order.
+	 */
+	public Vector<CopyAction> getRemaining() {
+		Vector<CopyAction> remaining = new Vector<CopyAction>();
+		CopyAction copyAction;
+		File part;
+		for (int i = 0; i < copyActions.size(); i++) {
+			if (checksums[i] != null) {
+				continue;
+			}
+			copyAction = copyActions.get(i);
+			part = FileCopier.getPartFile(copyAction.getDestination());
+			if (part.exists() && !part.delete()) {
+				System.err.println("Could not delete " + part);
+			}
+			if (copyAction.getSource().length() == copyAction.getSourceLength()
+					&& copyAction.getSource().lastModified() == copyAction.getSourceModified()) {
+				remaining.add(copyAction);
+			}
+		}
+		return remaining;
+	}
+
+	/**
+	 * Gets the algorithm the checksums of the plan are created with.
+	 * 
+	 * @return The checksum algorithm.
+	 */
+	public ChecksumAlgorithm getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * Records a finished copy action.
+	 * 
+	 * @param copyAction
+	 *            The copy action as passed to <code>create()</code> or returned
+	 *            by <code>getRemaining()</code>.
+	 * @param checksum
+	 *            The checksum of the copied data.
+	 */
+	public synchronized void complete(CopyAction copyAction, byte[] checksum) {
+		Integer index = indexes.get(copyAction);
+		if (index == null || writer == null) {
+			return;
+		}
+		checksums[index] = checksum;
+		try {
+			writer.write("done " + index + " " + ChecksumAlgorithm.toHex(checksum) + "\n");
+			writer.flush();
+			// force the completions to disk in batches
+			if (System.currentTimeMillis() - forced >= FORCE_INTERVAL) {
+				out.getChannel().force(false);
+				forced = System.currentTimeMillis();
+			}
+		} catch (IOException e) {
+			// the file is copied again when resuming
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Closes the journal file, the journal stays valid for resuming.
+	 */
+	public synchronized void close() {
+		if (writer == null) {
+			return;
+		}
+		try {
+			// the last completions must be on disk before the database is published
+			writer.flush();
+			out.getChannel().force(false);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		try {
+			writer.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		writer = null;
+		out = null;
+	}
+
+	/**
+	 * Closes and deletes the journal after the copy phase was completed.
+	 */
+	public synchronized void delete() {
+		close();
+		delete(planFile);
+	}
+
+	/**
+	 * Deletes a journal file.
+	 * 
+	 * @param planFile
+	 *            The journal file.
+	 */
+	private static void delete(File planFile) {
+		if (planFile.exists() && !planFile.delete()) {
+			System.err.println("Could not delete " + planFile);
+		}
+	}
+}
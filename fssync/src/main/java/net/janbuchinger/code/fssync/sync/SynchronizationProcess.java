@@ -18,17 +18,18 @@ package net.janbuchinger.code.fssync.sync;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
 
 import org.apache.commons.io.FileUtils;
 
-import net.janbuchinger.code.fssync.FSSync;
 import net.janbuchinger.code.fssync.Operation;
 import net.janbuchinger.code.fssync.OperationArgument;
 import net.janbuchinger.code.fssync.Settings;
@@ -40,9 +41,7 @@ import net.janbuchinger.code.fssync.sync.ui.RunCancelled;
 import net.janbuchinger.code.fssync.sync.ui.RunFinished;
 import net.janbuchinger.code.fssync.sync.ui.RunPauseCountDown;
 import net.janbuchinger.code.fssync.sync.ui.RunStartCountDown;
-import net.janbuchinger.code.fssync.sync.ui.RunStatusMessageUpdate;
-import net.janbuchinger.code.fssync.sync.ui.RunStatusTextUpdate;
-import net.janbuchinger.code.fssync.sync.ui.StatusMessage;
+import net.janbuchinger.code.fssync.sync.ui.StatusChannel;
 import net.janbuchinger.code.fssync.sync.ui.SynchronizationProcessDialog;
 import net.janbuchinger.code.mishmash.FSFx;
 import net.janbuchinger.code.mishmash.ui.UIFx;
@@ -51,7 +50,8 @@ import net.janbuchinger.code.mishmash.ui.UIFx;
  * The SynchronizationProcess class is a process that works through a batch of
  * synchronization operations.
  * 
- * The first step is to read the contents of the remote file system and create
+ * The first step is to read the contents of the source file system, the remote
+ * file system and the database in one pass ordered by relative path and create
  * checksums of all files that are in the database and unchanged. This should
  * find defective files.
  * 
@@ -76,27 +76,59 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 	private final boolean showSummary;
 
 	/**
-	 * the batch title
+	 * the number of directories read at the same time, 0 for automatic
 	 */
-	private final String syncTitle;
+	private final int scanThreads;
+
+	/**
+	 * the number of files hashed at the same time per non rotational disk, 0 for
+	 * automatic
+	 */
+	private final int copyThreads;
 
 	/**
-	 * last Status label update to avoid flooding the EDT with unnecessary updates
-	 * during copying files
+	 * copies the files concurrently, grouped by file store
 	 */
-	private long lastStatusTextUpdate;
+	private final CopyScheduler copyScheduler;
 
 	/**
-	 * last Status message update to avoid flooding the EDT with unnecessary updates
-	 * during copying files
+	 * the total length of the files copied in the current operation
 	 */
-	private long lastStatusMessageUpdate;
+	private final AtomicLong copiedLength;
 
 	/**
-	 * the current list of status messages to post to the synchronization process
-	 * dialog
+	 * the number of files copied in the current operation
 	 */
-	private Vector<StatusMessage> messages;
+	private final AtomicInteger copiedCount;
+
+	/**
+	 * the number of bytes transferred in the current copy phase including the
+	 * files that are still being copied, for the transfer speed
+	 */
+	private final AtomicLong transferredLength;
+
+	/**
+	 * the time the current operation must stop starting copies, 0 for no time
+	 * budget
+	 */
+	private volatile long deadline;
+
+	/**
+	 * true if the copy phase of the current operation was stopped by the time
+	 * budget
+	 */
+	private volatile boolean deadlineReached;
+
+	/**
+	 * the batch title
+	 */
+	private final String syncTitle;
+
+	/**
+	 * the channel passing status messages, the status label and control events to
+	 * the synchronization process dialog
+	 */
+	private StatusChannel statusChannel;
 
 	/**
 	 * Construct a SynchronizationProcess.
@@ -112,6 +144,12 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 		// get the Settings
 		Settings settings = Settings.getSettings();
 		this.showSummary = settings.isShowSummary();
+		this.scanThreads = settings.getScanThreads();
+		this.copyThreads = settings.getCopyThreads();
+		this.copyScheduler = new CopyScheduler(copyThreads, settings.isVerifyCopies());
+		this.copiedLength = new AtomicLong();
+		this.copiedCount = new AtomicInteger();
+		this.transferredLength = new AtomicLong();
 	}
 
 	/**
@@ -126,6 +164,7 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 	 */
 	public final void setSynchronisationProcessDialog(SynchronizationProcessDialog spd) {
 		this.spd = spd;
+		this.statusChannel = spd.getStatusChannel();
 	}
 
 	/**
@@ -161,25 +200,53 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 			// indicates elastic time comparison (file1.lastModified() ==
 			// file2.lastModified() +/-1sec)
 			boolean compareElastic;
+			// the algorithm for new checksums
+			ChecksumAlgorithm checksumAlgorithm;
+			// the algorithm of a database record
+			ChecksumAlgorithm knownAlgorithm;
+			// the algorithm to replace the checksum of a database record with
+			ChecksumAlgorithm migrateTo;
 			// indicates bidirectional synchronization
 			boolean isBiDirectional;
 			// the database loaded for editing
 			OnlineDB db = null;
+			// commits the database changes in batches
+			DatabaseWriterThread dbWriter = null;
 			// the list of files to copy
 			Vector<CopyAction> copyActions;
 
 			// list of files to delete
 			Vector<DeleteAction> deleteActions;
 
-			// content of remote file system
-			Vector<File> remoteFiles;
+			// copy actions found by comparing the source file system with the database
+			Vector<CopyAction> sourceCopyActions;
+			// delete actions for target files that are missing in the source file system
+			Vector<DeleteAction> sourceDeleteActions;
+			// known files that exist in the source file system but are missing in the target
+			Vector<DiffEntry> missingInTarget;
 			// list of empty directories in remote file system
 			Vector<File> emptyDirs;
+			// matches new source files with known files whose source file is missing
+			MoveDetector moveDetector;
+			// directories and files that were moved in the source file system
+			Vector<DirectoryMoveAction> directoryMoveActions;
+			Vector<MoveAction> moveActions;
+			// iterators to remove the moves that were not approved
+			Iterator<DirectoryMoveAction> iDirectoryMoveActions;
+			Iterator<MoveAction> iMoveActions;
+			DirectoryMoveAction unapprovedDirectoryMove;
+			MoveAction unapprovedMove;
+			// the copy and delete actions replaced by move actions
+			HashSet<CopyAction> movedCopyActions;
+			HashSet<DeleteAction> movedDeleteActions;
+			// a new copy or delete action
+			CopyAction newCopyAction;
+			DeleteAction newDeleteAction;
 
 			// files that appeared newly in the target file system
-			Vector<File> newForeignFiles;
+			Vector<DiffEntry> newForeignFiles;
 			// files in the target file system that were changed
-			Vector<File> changedForeignFiles;
+			Vector<DiffEntry> changedForeignFiles;
 
 			// corrupted files in source file system
 			Vector<File> corruptedFilesSource;
@@ -192,10 +259,36 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 			int destinationBasePathLengthPlusOne;
 			int sourceBasePathLengthPlusOne;
 
-			// file visitor for remote file system
-			RemoteFileVisitor remoteFileVisitor;
-			// starting path for file visitor
-			Path start;
+			// indicates that the target file system is checked for changes and integrity
+			boolean checkTarget;
+			// the pool reading the file systems
+			ForkJoinPool scanPool = null;
+			// creates the checksums of the integrity checks in deep mode
+			ChecksumVerifier checksumVerifier = null;
+			// keeps overwritten and deleted target files if the operation manages versions
+			VersionStore versionStore = null;
+			// the number of expired versions
+			int pruned;
+			// the plan of the copy phase to resume it after an interruption
+			SyncJournal syncJournal = null;
+			// the planned copy actions in the order they are started
+			Vector<CopyAction> plannedCopyActions;
+			// the total length of the files to copy
+			long plannedLength;
+			// true if the file of a delete action was removed
+			boolean deleted;
+			// a finished integrity check
+			IntegrityCheck integrityCheck;
+			// the integrity check to submit
+			IntegrityCheck newIntegrityCheck;
+			// scanner for the source file system
+			ParallelDirectoryScanner sourceScanner;
+			// scanner for the target file system, empty if the target is not walked
+			Iterator<ScannedFile> targetScanner;
+			// merges source, target and database ordered by relative path
+			DiffEngine diffEngine;
+			// the current relative path as found in source, target and database
+			DiffEntry diffEntry;
 			// counter for copied files
 			int counter;
 
@@ -203,20 +296,18 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 			// file data as remembered in database
 			RelativeFile file_db;
 			// source file
-			File file_source;
+			ScannedFile file_source;
+			// target file
+			ScannedFile file_destination;
 
 			// file length
-			long length_source;
 			long length_destination;
-			long length_db;
 			// last modified time
 			long modified_source;
 			long modified_destination;
 			long modified_db;
 			// checksum
-			String checksum_source;
-			String checksum_destination;
-			String checksum_db;
+			byte[] checksum_destination;
 			// conclusion was modified
 			boolean sourceFileWasModified;
 			boolean destinationFileWasModified;
@@ -225,9 +316,6 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 			// operation.isIgnoreModifiedWhenEqual() and settings.isVerbose() to ui
 			// SimpleDateFormat df = UIFx.initPreciseDisplayDateTimeFormat();
 
-			// indicator that the destination file is intact
-			boolean destinationFileIsGood;
-
 			// multi purpose files
 			File file1;
 			File file2;
@@ -253,31 +341,24 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 			// answer of out of memory error
 			boolean retry;
 
-			// content of source file system
-			Vector<File> sourceFiles;
-			// file visitor for source file system
-			LocalFileVisitor localFileVisitor;
-
-			// iterator to loop through the source files
-			Iterator<File> iSourceFiles;
-			// current file
-			File sourceFile;
-
-			// list of all known files from database for finding files to delete
-			Vector<RelativeFile> allFiles;
-			// indicates whether the known file exists in the source directory
-			boolean sourceFileExists;
-			// indicates whether the known file exists in the remote directory
-			boolean remoteFileExists;
+			// the source file as found by the source scanner
+			ScannedFile sourceFile;
 
 			// operation summary data for dialog
 			OperationSummary operationSummary;
 
 			// checking if there is enough free space before copying
 			boolean enoughSpace;
+			// the destination space freed by overwritten files
+			long freedDestination;
 			// overwrite first if that frees up space...
 			boolean overwriteFirst;
 
+			// the selected copy actions in the order they are started
+			Vector<Vector<CopyAction>> copyPhases;
+			// the copy task for the workers of the copy scheduler
+			CopyTask copyTask;
+
 			// currently copied for progress bar
 			long copied;
 
@@ -286,8 +367,6 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 			long tCopyStart;
 			long tSplit;
 
-			// loop counter for overwriteFirst
-			int ix;
 
 			if (syncTitle != null) {
 				if (!syncTitle.equals("")) {
@@ -300,10 +379,18 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 			 */
 			for (OperationArgument operationArgument : operationArgs) {
 				try {
+					db = null;
+					dbWriter = null;
+					scanPool = null;
+					checksumVerifier = null;
+					versionStore = null;
+					syncJournal = null;
 					dbEdit = null;
 					dbDestination = null;
 					changed = false;
 					opStart = System.currentTimeMillis();
+					deadlineReached = false;
+					deadline = 0;
 
 					/*
 					 * set the current operation, continue if operation is offline
@@ -320,14 +407,15 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 					 */
 					quickSync = operationArgument.isQuickSync();
 					compareElastic = operation.isCompareElastic();
+					checksumAlgorithm = operation.getChecksumAlgorithm();
 					isBiDirectional = operation.isSyncBidirectional();
 
 					if (quickSync) {
-						status("1/2 - Analysieren (Schnell)...", true);
+						status("1/2 - Analysieren (Schnell)...");
 						message("# Analysieren (Schnell)...");
 						setCountDown(operation.getAverageAnalyseTimeQuick());
 					} else {
-						status("1/2 - Analysieren (Genau)...", true);
+						status("1/2 - Analysieren (Genau)...");
 						message("# Analysieren (Genau)...");
 						setCountDown(operation.getAverageAnalyseTimeDeep());
 					}
@@ -340,13 +428,93 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 					/*
 					 * identify database file to edit, initialize db
 					 */
-					dbEdit = OnlineDB.getEditableDBFile(operation);
 					dbDestination = operation.getDbOriginal();
+					// complete an interrupted publication of the target database
+					DatabasePublisher.recover(dbDestination);
+					dbEdit = OnlineDB.getEditableDBFile(operation);
 					if (dbEdit == null) {
 						dbEdit = OnlineDB.nextEditableDBFile(operation.getSource());
 						FileUtils.copyFile(dbDestination, dbEdit);
 					}
 					db = new OnlineDB(dbEdit);
+					// keep one connection open for the whole operation
+					db.openSession();
+					// serve all lookups during analysis from memory
+					db.loadIndex();
+					// commit the changes in the background
+					dbWriter = new DatabaseWriterThread(db);
+					// the version area of the target directory
+					if (operation.isManageVersions()) {
+						versionStore = new VersionStore(operation, db);
+					}
+					dbWriter.start();
+
+					/*
+					 * Resume an interrupted copy phase without analysing the file systems again
+					 */
+					syncJournal = SyncJournal.load(dbEdit, db.getDbId(), operation);
+					if (syncJournal != null) {
+						message("# Unterbrochene Synchronisation Fortsetzen");
+						abortCountDown();
+						// record the files that were copied but did not reach the database
+						counter = syncJournal.recordCompleted(db);
+						if (counter > 0) {
+							message("# " + counter + " Kopierte Dateien Nachgetragen");
+							changed = true;
+						}
+						// remove the partially written files and copy them again
+						plannedCopyActions = syncJournal.getRemaining();
+						plannedLength = 0;
+						for (CopyAction copyAction : plannedCopyActions) {
+							plannedLength += copyAction.getSourceLength();
+						}
+						if (plannedCopyActions.size() > 0) {
+							message("# " + plannedCopyActions.size() + " Dateien kopieren");
+						}
+						copiedLength.set(0);
+						copiedCount.set(0);
+						tCopyStart = System.currentTimeMillis();
+						startTimeBudget(operation, tCopyStart);
+						if (plannedCopyActions.size() > 0) {
+							copyStatus(tCopyStart);
+						}
+						setCountDown(operation.getAverageSyncTime(plannedLength));
+						copyScheduler.run(plannedCopyActions, operation.getSource(),
+								operation.getTarget(), new SynchronizationCopyTask(db,
+								syncJournal.getAlgorithm(), versionStore, syncJournal));
+						abortCountDown();
+						counter = copiedCount.get();
+						copied = copiedLength.get();
+						if (counter > 0) {
+							changed = true;
+							tSplit = System.currentTimeMillis() - tCopyStart;
+							message("# " + counter + " Dateien Kopiert, " + FSFx.formatFileLength(copied)
+									+ " in " + UIFx.formatMillisAsHoursMinutesSeconds(tSplit) + ", "
+									+ FSFx.formatTransferSpeed(tCopyStart, copied));
+						}
+						// the journal is kept if the copy phase was interrupted again
+						if (isCancelled()) {
+							cancelSync("# Während des Kopierens Abgebrochen!");
+							return null;
+						}
+						if (deadlineReached) {
+							message("# Zeitbudget Erschöpft, die übrigen Dateien werden "
+									+ "beim nächsten Mal Kopiert");
+						} else {
+							syncJournal.delete();
+						}
+						tSplit = System.currentTimeMillis() - opStart;
+						message("# # Operation fertig nach "
+								+ UIFx.formatMillisAsHoursMinutesSeconds(tSplit));
+						// save the synchronization time and the data copied statistics
+						operation.setLastSynced(System.currentTimeMillis());
+						operation.setReminded(false);
+						if (counter > 0) {
+							tSplit = operation.getLastSynced() - tCopyStart;
+							operation.registerSynchronisation(tSplit, copied, counter);
+						}
+						continue;
+					}
 
 					firstRun = db.isEmpty();
 
@@ -356,11 +524,14 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 					copyActions = new Vector<CopyAction>();
 					deleteActions = new Vector<DeleteAction>();
 
-					remoteFiles = new Vector<File>();
+					sourceCopyActions = new Vector<CopyAction>();
+					sourceDeleteActions = new Vector<DeleteAction>();
+					missingInTarget = new Vector<DiffEntry>();
 					emptyDirs = new Vector<File>();
+					moveDetector = new MoveDetector();
 
-					newForeignFiles = new Vector<File>();
-					changedForeignFiles = new Vector<File>();
+					newForeignFiles = new Vector<DiffEntry>();
+					changedForeignFiles = new Vector<DiffEntry>();
 
 					corruptedFilesSource = new Vector<File>();
 					corruptedFilesDestination = new Vector<File>();
@@ -373,55 +544,66 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 					sourceBasePathLengthPlusOne = operation.getSourcePath().length() + 1;
 
 					/*
-					 * Check TARGET FILE SYSTEM for bidirectional synchronization and integrity
-					 * check
+					 * Read SOURCE FILE SYSTEM, TARGET FILE SYSTEM and database in one pass
 					 */
-					if (!quickSync || isBiDirectional) {
-						message("# Zieldateisystem Einlesen");
-						// initialize the remote file visitor
-						remoteFileVisitor = new RemoteFileVisitor(operation.getTarget(), remoteFiles,
-								emptyDirs, this);
-						// file visitor start is operation remote path
-						start = Paths.get(operation.getTargetPath());
-						// walk file tree...
-						Files.walkFileTree(start, remoteFileVisitor);
-						// Abort process if cancel was pressed during walking the remote file system
-						if (isCancelled()) {
-							cancelSync("# Während des Einlesens des Zieldateisystems Abgebrochen!");
-							return null;
+					// the target file system is checked for bidirectional synchronization and
+					// integrity check
+					checkTarget = !quickSync || isBiDirectional;
+					message("# Quell- und Zieldateisystem Analysieren");
+					// read both file systems concurrently and merge them with the database ordered
+					// by relative path
+					scanPool = ParallelDirectoryScanner.createPool(scanThreads);
+					// hash source and target files concurrently in deep mode
+					if (checkTarget && !quickSync) {
+						checksumVerifier = new ChecksumVerifier(operation.getSource(), operation.getTarget(),
+								copyThreads);
+					}
+					sourceScanner = new ParallelDirectoryScanner(operation.getSource(),
+							operation.getExcludes(), null, this, scanPool);
+					if (checkTarget) {
+						targetScanner = new ParallelDirectoryScanner(operation.getTarget(), null, emptyDirs,
+								this, scanPool);
+					} else {
+						// a quick unidirectional synchronization does not walk the target, the files
+						// that need the target state are read one by one
+						targetScanner = new Vector<ScannedFile>().iterator();
+					}
+					diffEngine = new DiffEngine(sourceScanner, targetScanner,
+							DiffEngine.sort(db.listAll()).iterator());
+					// loop through all relative paths found in any of the three
+					while (diffEngine.hasNext()) {
+						diffEntry = diffEngine.next();
+						relativePath = diffEntry.getRelativePath();
+						// the database entry
+						file_db = diffEntry.getKnown();
+						// the source file if it is not excluded
+						sourceFile = diffEntry.getSource();
+						// the target file
+						file_destination = diffEntry.getTarget();
+						if (!checkTarget && (sourceFile != null || file_db != null)) {
+							// read the target file for new, changed and known files
+							file_destination = ScannedFile.scan(relativePath,
+									new File(operation.getTargetPath(), relativePath));
 						}
-						message("# Fehlersuche und Erkennung von Änderungen im Zieldateisystem");
-
-						// loop through all files found in remote file system
-						for (File file_destination : remoteFiles) {
-							// the current file
-							// the current file relative path
-							relativePath = file_destination.getPath()
-									.substring(destinationBasePathLengthPlusOne);
-							// skip if file is a file system database file in the operation root directory
-							if (relativePath.startsWith(".fs.") && relativePath.endsWith(".db")) {
-								continue;
-							}
-							// get the corresponding database file entry
-							file_db = db.getFileByPath(relativePath);
-							// create the theoretical counterpart (when synchronizing unidirectional) file
-							// in the source file system
-							file_source = new File(operation.getSourcePath(), relativePath);
-							// if the file was found in the database and the source file exists
-							// (if the source file doesn't exist, the file will be deleted later so there is
-							// no need for checking it)
-							if (file_db != null && file_source.exists()) {
+						// the source file, excluded files are not walked but they exist anyway
+						file_source = sourceFile;
+						if (file_source == null && sourceScanner.isExcluded(relativePath)) {
+							file_source = ScannedFile.scan(relativePath,
+									new File(operation.getSourcePath(), relativePath));
+						}
+
+						/*
+						 * Check TARGET FILE for bidirectional synchronization and integrity check
+						 */
+						if (checkTarget && file_destination != null) {
+							if (file_db != null && file_source != null) {
 								// then check for changes for
 								// 1. - bidirectional synchronization
 								// 2. - file integrity if not quickSync
 
-								// initialize file lengths for comparison
-								length_source = file_source.length();
-								length_destination = file_destination.length();
-								length_db = file_db.getLength();
 								// initialize file modification times for comparison
-								modified_source = file_source.lastModified();
-								modified_destination = file_destination.lastModified();
+								modified_source = file_source.getModified();
+								modified_destination = file_destination.getModified();
 								modified_db = file_db.getModified();
 								// conclude if files were modified
 								sourceFileWasModified = modified_source != modified_db;
@@ -429,35 +611,6 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 										|| (compareElastic && ((modified_db / 1000) - 1 == modified_destination
 												/ 1000
 												|| (modified_db / 1000) + 1 == modified_destination / 1000)));
-								// get checksums if not quickSync
-								checksum_db = file_db.getChecksum();
-								if (quickSync) {
-									checksum_source = null;
-									checksum_destination = null;
-								} else {
-									if (!sourceFileWasModified) {
-										checksum_source = FSSync.createSHA384Hex(file_source);
-									} else {
-										checksum_source = null;
-									}
-									if (isCancelled()) {
-										cancelSync("# Während dem Prüfen des Zieldateisystems Abgebrochen!");
-										return null;
-									}
-									if (!destinationFileWasModified) {
-										checksum_destination = FSSync.createSHA384Hex(file_destination);
-									} else {
-										checksum_destination = null;
-									}
-									if (isCancelled()) {
-										cancelSync("# Während dem Prüfen des Zieldateisystems Abgebrochen!");
-										return null;
-									}
-								}
-
-								// assume file corrupt
-								destinationFileIsGood = false;
-
 								if (destinationFileWasModified) { // destination file was modified
 
 									// workarounds for bug#1
@@ -499,75 +652,149 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 									// }
 									// }
 									// add the changed file to the list
-									changedForeignFiles.add(file_destination);
+									changedForeignFiles.add(
+											new DiffEntry(relativePath, file_source, file_destination, file_db));
 									if (!isBiDirectional) {
 										// warn if the change is not expected
-										message("Fremd Geändert " + file_destination.getPath());
+										message("Fremd Geändert " + file_destination.getFile().getPath());
 									}
-								} else { // file in destination was not modified, integrity check is possible
-									if (!quickSync) {
-										// if destination file differs from database entry
-										if (!checksum_db.equals(checksum_destination)
-												|| length_db != length_destination) {
-											// if source file is unmodified
-											if (!sourceFileWasModified) {
-												// if the source file is intact
-												if (checksum_db.equals(checksum_source)
-														&& length_db == length_source) {
-													// the file is theoretically recoverable from source
-													corruptedFilesDestination.add(file_destination);
-												} else {
-													// the source file is also corrupt, the file is lost
-													lostFiles.add(file_destination);
-												}
+								} else if (!quickSync) {
+									// file in destination was not modified, integrity check is possible
+									// the checksums are created concurrently and the results are
+									// classified as soon as they are ready, the source file is only
+									// checked if it is unmodified
+									knownAlgorithm = ChecksumAlgorithm.forName(file_db.getAlgorithm());
+									if (knownAlgorithm == null) {
+										message("Unbekanntes Prüfsummenverfahren " + file_db.getAlgorithm()
+												+ ", Integritätsprüfung Übersprungen: " + relativePath,
+												true);
+									} else {
+										// replace old checksums in the same read if wanted
+										migrateTo = null;
+										if (operation.isMigrateChecksums()
+												&& knownAlgorithm != checksumAlgorithm) {
+											migrateTo = checksumAlgorithm;
+										}
+										newIntegrityCheck = new IntegrityCheck(file_source, file_destination,
+												file_db, !sourceFileWasModified, knownAlgorithm, migrateTo);
+										// while the verifier is full take finished checks to free it
+										while (!checksumVerifier.trySubmit(newIntegrityCheck)
+												&& !isCancelled()) {
+											integrityCheck = checksumVerifier.take(100);
+											if (integrityCheck != null && classifyIntegrity(
+													integrityCheck, db, corruptedFilesSource,
+													corruptedFilesDestination, lostFiles)) {
+												changed = true;
 											}
-										} else {
-											// checksum and length are identical to database entry
-											destinationFileIsGood = true;
 										}
 									}
-								}
-								// check source file
-								// if the source file is unmodified and not quickSync
-								if (!quickSync && !sourceFileWasModified) {
-									// then check file integrity
-									if (!checksum_db.equals(checksum_source) || length_db != length_source) {
-										// source file is corrupt,
-										// if destination file is intact
-										if (destinationFileIsGood) {
-											// the file is theoretically recoverable
-											corruptedFilesSource.add(file_source);
+									while ((integrityCheck = checksumVerifier.poll()) != null) {
+										if (classifyIntegrity(integrityCheck, db, corruptedFilesSource,
+												corruptedFilesDestination, lostFiles)) {
+											changed = true;
 										}
 									}
 								}
-							} else if (file_source.exists()) {
+							} else if (file_source != null) {
 								// should normally not happen..
 								// file is not found in database but the file pair already exists
 								// sanity check for out dated database: restore lost record
-								length_destination = file_destination.length();
-								modified_destination = file_destination.lastModified();
-								checksum_destination = FSSync.createSHA384Hex(file_destination);
-								relativePath = file_destination.getPath()
-										.substring(destinationBasePathLengthPlusOne);
+								length_destination = file_destination.getLength();
+								modified_destination = file_destination.getModified();
+								checksum_destination = checksumAlgorithm.hashFile(file_destination.getFile());
 								if (checksum_destination != null) {
 									db.add(relativePath, length_destination, modified_destination,
-											checksum_destination);
+											checksum_destination, checksumAlgorithm.getName());
+									// continue with the restored record
+									file_db = new RelativeFile(relativePath, length_destination,
+											modified_destination, checksum_destination,
+											checksumAlgorithm.getName());
 									changed = true;
 									message("Datenbankeintrag Wiederhergestellt: ".concat(relativePath));
 								}
 							} else { // new file in target directory
-								newForeignFiles.add(file_destination);
+								newForeignFiles
+										.add(new DiffEntry(relativePath, null, file_destination, file_db));
 								if (!isBiDirectional) {
-									message("Fremd Neu " + file_destination.getPath());
+									message("Fremd Neu " + file_destination.getFile().getPath());
 								}
 							}
-							// abort synchronization if cancel button was pressed
-							if (isCancelled()) {
-								cancelSync("# Während der Suche nach Fehlern Abgebrochen!");
-								return null;
+						}
+
+						/*
+						 * Check SOURCE FILE for new and changed files
+						 */
+						if (sourceFile != null) {
+							file2 = new File(operation.getTargetPath(), relativePath);
+							if (file_db != null) {
+								// if the file was found in the database check if it was changed
+								if (file_db.getModified() != sourceFile.getModified()) {
+									// if the file was changed the add it to the list of files to be copied
+									sourceCopyActions.add(new CopyAction(sourceFile, file2, file_destination,
+											false, CopyAction.DIR_BACKUP));
+								}
+							} else {
+								// the file is not found in the database, it is considered new and added to
+								// the list of files to be copied
+								newCopyAction = new CopyAction(sourceFile, file2, file_destination, true,
+										CopyAction.DIR_BACKUP);
+								sourceCopyActions.add(newCopyAction);
+								if (file_destination == null) {
+									// the file might have been moved
+									moveDetector.addCandidate(newCopyAction);
+								}
 							}
 						}
 
+						/*
+						 * Check KNOWN FILE for files to delete (or copy if existing file in source is
+						 * missing in target in unidirectional mode)
+						 */
+						if (file_db != null) {
+							if (file_source == null && file_destination != null) {
+								// source file is missing, file should be deleted
+								newDeleteAction = new DeleteAction(file_destination,
+										DeleteAction.del_destination, false);
+								sourceDeleteActions.add(newDeleteAction);
+								// unless it was moved
+								moveDetector.addOrphan(newDeleteAction, file_destination, file_db);
+							} else if (file_destination == null && file_source != null) {
+								// remote file is missing, decide after the user chose how to handle foreign
+								// changes
+								missingInTarget.add(new DiffEntry(relativePath, file_source, null, file_db));
+							} else if (file_source == null && file_destination == null) {
+								// both files are missing, delete database entry
+								message("Datei verschwunden! Lösche Eintrag: " + relativePath);
+								changed = true;
+								db.removeFileByPath(relativePath);
+							}
+						}
+
+						// abort synchronization if cancel button was pressed
+						if (isCancelled()) {
+							break;
+						}
+					}
+					// the file systems are read
+					scanPool.shutdownNow();
+					// wait for the remaining integrity checks
+					if (checksumVerifier != null) {
+						while (checksumVerifier.hasPending() && !isCancelled()) {
+							integrityCheck = checksumVerifier.take(100);
+							if (integrityCheck != null && classifyIntegrity(integrityCheck, db,
+									corruptedFilesSource, corruptedFilesDestination, lostFiles)) {
+								changed = true;
+							}
+						}
+						checksumVerifier.shutdown();
+					}
+					// abort synchronization if cancel button was pressed during the analysis
+					if (isCancelled()) {
+						cancelSync("# Während des Analysierens Abgebrochen!");
+						return null;
+					}
+
+					if (checkTarget) {
 						/*
 						 * If There are corrupt files then inform user and abort synchronization
 						 */
@@ -671,32 +898,26 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 							} else if (answer == SynchronizationProcessDialog.foreign_restore) {
 								// revert to previous state, delete changes
 								// add new files to the list of files to delete
-								for (File file : newForeignFiles) {
+								for (DiffEntry entry : newForeignFiles) {
 									if (isCancelled()) {
 										break;
 									}
-									deleteActions.add(new DeleteAction(file,
-											file.getPath().substring(destinationBasePathLengthPlusOne),
+									deleteActions.add(new DeleteAction(entry.getTarget(),
 											DeleteAction.del_destination, false));
 								}
 								// add the changed (destination) files that are unchanged in the source
 								// directory to the list of files to be copied
-								for (File file : changedForeignFiles) {
+								for (DiffEntry entry : changedForeignFiles) {
 									if (isCancelled()) {
 										break;
 									}
-									relativePath = file.getPath().substring(destinationBasePathLengthPlusOne);
-									file2 = new File(operation.getSourcePath(), relativePath);
-									file_db = db.getFileByPath(relativePath);
-									// file_db should never be null because it was recently queried
-									if (file_db != null) {
-										// avoid duplicates
-										if (file_db.getModified() == file2.lastModified()) {
-											// overwrite file
-											copyActions.add(new CopyAction(file2, file, relativePath, false,
-													CopyAction.DIR_BACKUP));
-										} // else the file will be copied anyway, do nothing
-									}
+									// avoid duplicates
+									if (entry.getKnown().getModified() == entry.getSource().getModified()) {
+										// overwrite file
+										copyActions.add(new CopyAction(entry.getSource(),
+												entry.getTarget().getFile(), entry.getTarget(), false,
+												CopyAction.DIR_BACKUP));
+									} // else the file will be copied anyway, do nothing
 								}
 							} // else answer is ignore changes, do nothing
 						}
@@ -704,24 +925,21 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 						if (newForeignFiles.size() + changedForeignFiles.size() > 0 && isBiDirectional) {
 							// add new files from target file system to copy to the source file system to
 							// list of files to copy
-							for (File file : newForeignFiles) {
+							for (DiffEntry entry : newForeignFiles) {
 								if (isCancelled()) {
 									break;
 								}
-								relativePath = file.getPath().substring(destinationBasePathLengthPlusOne);
-								copyActions.add(
-										new CopyAction(file, new File(operation.getSourcePath(), relativePath),
-												relativePath, true, CopyAction.DIR_RESTORE));
+								copyActions.add(new CopyAction(entry.getTarget(),
+										new File(operation.getSourcePath(), entry.getRelativePath()), null,
+										true, CopyAction.DIR_RESTORE));
 							}
 							// add changed remote files to copy back to source to list of files to copy
-							for (File file : changedForeignFiles) {
+							for (DiffEntry entry : changedForeignFiles) {
 								if (isCancelled()) {
 									break;
 								}
-								relativePath = file.getPath().substring(destinationBasePathLengthPlusOne);
-								copyActions.add(
-										new CopyAction(file, new File(operation.getSourcePath(), relativePath),
-												relativePath, false, CopyAction.DIR_RESTORE));
+								copyActions.add(new CopyAction(entry.getTarget(), entry.getSource().getFile(),
+										entry.getSource(), false, CopyAction.DIR_RESTORE));
 							}
 						}
 					}
@@ -731,97 +949,52 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 						return null;
 					}
 
-					/*
-					 * Check SOURCE FILE SYSTEM for new and changed files
-					 */
-					message("# Quelldateisystem Einlesen");
-					// start for local file visitor
-					start = Paths.get(operation.getSourcePath());
-					// initialize list for files of local file system
-					sourceFiles = new Vector<File>();
-					// initialize local file visitor
-					localFileVisitor = new LocalFileVisitor(operation.getSource(), sourceFiles,
-							operation.getExcludes(), this);
-					// walk file tree...
-					Files.walkFileTree(start, localFileVisitor);
-					// abort synchronization if cancel button was pressed during listing the local
-					// file system
-					if (isCancelled()) {
-						cancelSync("# Während des Einlesens des Quelldateisystems Abgebrochen!");
+					// recognize moved directories and files, their target files are moved instead of
+					// copied again
+					try {
+						directoryMoveActions = moveDetector.detectDirectories(operation.getTarget(), this);
+						moveActions = moveDetector.detect(this);
+					} catch (SynchronizationCancelledException e) {
+						cancelSync("# Während dem Erkennen Verschobener Dateien Abgebrochen!");
 						return null;
 					}
-					message("# Quelldateisystem Analysieren");
-					// iterate through local file system
-					iSourceFiles = sourceFiles.iterator();
-					while (iSourceFiles.hasNext()) {
-						sourceFile = iSourceFiles.next();
-						file_db = db
-								.getFileByPath(sourceFile.getPath().substring(sourceBasePathLengthPlusOne));
-						if (file_db != null) {
-							// if the file was found in the database check if it was changed
-							modified_source = sourceFile.lastModified();
-							modified_db = file_db.getModified();
-							if (modified_db != modified_source) {
-								// if the file was changed the add it to the list of files to be copied
-								relativePath = sourceFile.getPath().substring(sourceBasePathLengthPlusOne);
-								file2 = new File(operation.getTargetPath(), relativePath);
-								copyActions.add(new CopyAction(sourceFile, file2, relativePath, false,
-										CopyAction.DIR_BACKUP));
+					if (directoryMoveActions.size() > 0) {
+						message("# " + directoryMoveActions.size() + " Verschobene Verzeichnisse Erkannt");
+					}
+					if (moveActions.size() > 0) {
+						message("# " + moveActions.size() + " Verschobene Dateien Erkannt");
+					}
+					if (directoryMoveActions.size() + moveActions.size() > 0) {
+						movedCopyActions = new HashSet<CopyAction>();
+						movedDeleteActions = new HashSet<DeleteAction>();
+						for (DirectoryMoveAction directoryMoveAction : directoryMoveActions) {
+							for (MoveAction moveAction : directoryMoveAction.getMoveActions()) {
+								movedCopyActions.add(moveAction.getCopyAction());
+								movedDeleteActions.add(moveAction.getDeleteAction());
 							}
-						} else {
-							// the file is not found in the database, it is considered new and added to the
-							// list of files to be copied
-							relativePath = sourceFile.getPath().substring(sourceBasePathLengthPlusOne);
-							file2 = new File(operation.getTargetPath(), relativePath);
-							copyActions.add(new CopyAction(sourceFile, file2, relativePath, true,
-									CopyAction.DIR_BACKUP));
 						}
-						// abort the operation if the cancel button was pressed during local file system
-						// analysis
-						if (isCancelled()) {
-							cancelSync("# Während des Analysierens des Quelldateisystems Abgebrochen!");
-							return null;
+						for (MoveAction moveAction : moveActions) {
+							movedCopyActions.add(moveAction.getCopyAction());
+							movedDeleteActions.add(moveAction.getDeleteAction());
 						}
+						sourceCopyActions.removeAll(movedCopyActions);
+						sourceDeleteActions.removeAll(movedDeleteActions);
 					}
 
-					/*
-					 * list files to delete (or copy if existing file in source is missing in target
-					 * in unidirectional mode)
-					 */
-
-					// query all files currently in database
-					allFiles = db.listAll();
-					// iterate through complete database
-					for (RelativeFile file_db_del : allFiles) {
-						// the file in the source file system
-						file1 = new File(operation.getSourcePath(), file_db_del.getRelativePath());
-						// does the source file exist?
-						sourceFileExists = file1.exists();
-						// the file in the remote/target file system
-						file2 = new File(operation.getTargetPath(), file_db_del.getRelativePath());
-						// does the remote file exist?
-						remoteFileExists = file2.exists();
-						if (!sourceFileExists && remoteFileExists) {
-							// source file is missing, file should be deleted
-							deleteActions.add(new DeleteAction(
-									new File(operation.getTargetPath(), file_db_del.getRelativePath()),
-									file_db_del.getRelativePath(), DeleteAction.del_destination, false));
-						} else if (!remoteFileExists && sourceFileExists) {
+					// add the changes of the source file system after the foreign changes
+					copyActions.addAll(sourceCopyActions);
+					deleteActions.addAll(sourceDeleteActions);
+					// loop through the known files that are missing in the target file system
+					for (DiffEntry entry : missingInTarget) {
+						if (isBiDirectional) {
 							// remote file is missing, file should be deleted in source if bidirectional
-							if (isBiDirectional) {
-								deleteActions.add(new DeleteAction(
-										new File(operation.getSourcePath(), file_db_del.getRelativePath()),
-										file_db_del.getRelativePath(), DeleteAction.del_source, false));
-							} else if (file_db_del.getModified() == file1.lastModified()) {
-								// if not bidirectional the file is copied again
-								copyActions.add(new CopyAction(file1, file2, file_db_del.getRelativePath(),
-										false, CopyAction.DIR_BACKUP));
-							}
-						} else if (!sourceFileExists && !remoteFileExists) {
-							// both files are missing, delete database entry
-							message("Datei verschwunden! Lösche Eintrag: " + file_db_del.getRelativePath());
-							changed = true;
-							db.removeFileByPath(file_db_del.getRelativePath());
+							deleteActions
+									.add(new DeleteAction(entry.getSource(), DeleteAction.del_source, false));
+						} else if (entry.getKnown().getModified() == entry.getSource().getModified()) {
+							// if not bidirectional the file is copied again
+							copyActions.add(new CopyAction(entry.getSource(),
+									new File(operation.getTargetPath(), entry.getRelativePath()), null, false,
+									CopyAction.DIR_BACKUP));
 						}
 						// if the cancel button is pressed during entering files to delete in the list
 						// of files to delete then abort the synchronization
@@ -836,7 +1009,8 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 					try {
 						operationSummary = new OperationSummary(operation.getSource(), operation.getTarget(),
 								corruptedFilesSource, corruptedFilesDestination, lostFiles, copyActions,
-								deleteActions, this, false, isBiDirectional);
+								deleteActions, directoryMoveActions, moveActions, this, false,
+								isBiDirectional);
 					} catch (SynchronizationCancelledException e) {
 						cancelSync("# Während dem Summieren abgebrochen");
 						return null;
@@ -860,22 +1034,102 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 						}
 					}
 
+					// the moves that were not approved are copied and deleted instead
+					iDirectoryMoveActions = directoryMoveActions.iterator();
+					while (iDirectoryMoveActions.hasNext()) {
+						unapprovedDirectoryMove = iDirectoryMoveActions.next();
+						if (!unapprovedDirectoryMove.isSelected()) {
+							for (MoveAction moveAction : unapprovedDirectoryMove.getMoveActions()) {
+								copyActions.add(moveAction.getCopyAction());
+								deleteActions.add(moveAction.getDeleteAction());
+							}
+							iDirectoryMoveActions.remove();
+						}
+					}
+					iMoveActions = moveActions.iterator();
+					while (iMoveActions.hasNext()) {
+						unapprovedMove = iMoveActions.next();
+						if (!unapprovedMove.isSelected()) {
+							copyActions.add(unapprovedMove.getCopyAction());
+							deleteActions.add(unapprovedMove.getDeleteAction());
+							iMoveActions.remove();
+						}
+					}
+
 					/*
 					 * Synchronization begins with deleting files and empty directories
 					 */
 
 					// message to user if there are delete actions selected
 					if (operationSummary.getnDeleteActionsSelected() > 0) {
-						status("2/2 - Löschen...", true);
+						status("2/2 - Löschen...");
 						message("# " + operationSummary.getnDeleteActionsSelected() + " Dateien Löschen");
 					}
 					// initialize again for an empty list
 					emptyDirs = new Vector<>();
+					// move the target directories of moved source directories first
+					if (directoryMoveActions.size() > 0) {
+						message("# " + directoryMoveActions.size() + " Verzeichnisse Verschieben");
+					}
+					for (DirectoryMoveAction directoryMoveAction : directoryMoveActions) {
+						if (moveDirectory(directoryMoveAction, operation.getTarget(), db)) {
+							message(directoryMoveAction.toString(), true);
+							changed = true;
+							file1 = directoryMoveAction.getFrom().getParentFile();
+							if (!FSFx.hasDirEntries(file1.toPath())) {
+								// the moved directory was the last entry in its parent directory
+								emptyDirs.add(file1);
+							}
+						} else {
+							// move the files one by one instead
+							message("Fehler beim Verschieben: " + directoryMoveAction.getFrom().getPath());
+							moveActions.addAll(directoryMoveAction.getMoveActions());
+						}
+						// abort if the cancel button was pressed during moving directories
+						if (isCancelled()) {
+							cancelSync("# Während des Verschiebens Abgebrochen!");
+							return null;
+						}
+					}
+					// then the target files of moved source files
+					if (moveActions.size() > 0) {
+						message("# " + moveActions.size() + " Dateien Verschieben");
+					}
+					for (MoveAction moveAction : moveActions) {
+						if (moveFile(moveAction, operation.getTarget(), db)) {
+							message(moveAction.toString(), true);
+							changed = true;
+							file1 = moveAction.getFrom().getParentFile();
+							if (!FSFx.hasDirEntries(file1.toPath())) {
+								// the moved file was the last file in the directory
+								emptyDirs.add(file1);
+							}
+						} else {
+							// copy and delete the file instead
+							message("Fehler beim Verschieben: " + moveAction.getFrom().getPath());
+							copyActions.add(moveAction.getCopyAction());
+							deleteActions.add(moveAction.getDeleteAction());
+							operationSummary.addMoveFallback(moveAction.getLength(), 1);
+							operationSummary.reCalc();
+						}
+						// abort if the cancel button was pressed during moving files
+						if (isCancelled()) {
+							cancelSync("# Während des Verschiebens Abgebrochen!");
+							return null;
+						}
+					}
 					// iterate through delete actions
 					for (DeleteAction deleteAction : deleteActions) {
 						if (deleteAction.isSelected()) {
-							// delete if selected
-							if (deleteAction.getFile().delete()) {
+							// delete if selected, keep deleted target files as versions
+							if (versionStore != null
+									&& deleteAction.getLocation() == DeleteAction.del_destination) {
+								deleted = versionStore.archive(deleteAction.getFile(),
+										deleteAction.getRelativePath()) != -1;
+							} else {
+								deleted = deleteAction.getFile().delete();
+							}
+							if (deleted) {
 								// confirm if wanted
 								message(deleteAction.toString(), true);
 								// remove file from database
@@ -897,8 +1151,9 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 							file2 = new File(deleteAction.getLocation() == DeleteAction.del_destination
 									? operation.getSource()
 									: operation.getTarget(), deleteAction.getRelativePath());
-							copyActions.add(new CopyAction(file1, file2, deleteAction.getRelativePath(), false,
-									deleteAction.getLocation() == DeleteAction.del_destination
+							copyActions.add(new CopyAction(file1, deleteAction.getLength(),
+									deleteAction.getModified(), file2, 0, 0, deleteAction.getRelativePath(),
+									false, deleteAction.getLocation() == DeleteAction.del_destination
 											? CopyAction.DIR_RESTORE
 											: CopyAction.DIR_BACKUP));
 						}
@@ -924,13 +1179,15 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 					// assume enough space
 					enoughSpace = true;
 
+					// overwritten files are kept as versions and do not free up space
+					freedDestination = versionStore != null ? 0
+							: operationSummary.getUpdateSizeDestinationModifiedOld();
 					// as long as there is not enough space in the target file system
 					// ask the user if he wants to retry (after freeing up space otherwise)
 					while (operation.getTarget().getFreeSpace() < operationSummary.getUpdateSizeDestination()
-							- operationSummary.getUpdateSizeDestinationModifiedOld()) {
+							- freedDestination) {
 						getRetryOnOutOfMemory = new GetRetryOnOutOfMemory(spd, "Zieldatenträger",
-								operationSummary.getUpdateSizeDestination()
-										- operationSummary.getUpdateSizeDestinationModifiedOld());
+								operationSummary.getUpdateSizeDestination() - freedDestination);
 						// // remember passed time
 						// tSyncSplit = System.currentTimeMillis() - tSyncStart;
 						// // pause progress bar
@@ -1001,98 +1258,98 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 
 					if (operationSummary.getnCopyActionsSelected() > 0) {
 						message("# " + operationSummary.getnCopyActionsSelected() + " Dateien kopieren");
-						status("2/2 - Dateien Kopieren...", true);
 					}
 
 					// reset counters to zero
+					copiedLength.set(0);
+					copiedCount.set(0);
 					copied = 0;
-					tSplit = 0;
-					ix = 0;
 					counter = 0;
+					tSplit = 0;
 					tCopyStart = System.currentTimeMillis();
+					startTimeBudget(operation, tCopyStart);
+					if (operationSummary.getnCopyActionsSelected() > 0) {
+						copyStatus(tCopyStart);
+					}
 					// start the progress bar
 					setCountDown(operation.getAverageSyncTime(operationSummary.getUpdateSizeTotal()));
+					// the selected copy actions in the order they are started
+					copyPhases = new Vector<Vector<CopyAction>>();
 					// if overwrite first
 					if (overwriteFirst) {
-						// then loop through the copy actions twice
-						while (ix < 2) {
-							// loop through copy actions
-							for (CopyAction copyAction : copyActions) {
-								/*
-								 * COPY BLOCK
-								 */
-								// skip if copy action is not selected
-								if (!copyAction.isSelected()) {
-									continue;
-								}
-								// select modified files for the first loop and new files for the second
-								if ((ix == 0 && !copyAction.isNew()) || (ix == 1 && copyAction.isNew())) {
-									try {
-										// try copying the current file
-										copied = copy(copyAction, db, copied, tCopyStart);
-										if (!changed) {
-											changed = true;
-										}
-										counter++;
-									} catch (IOException e) {}
-									// save current running time
-									tSplit = System.currentTimeMillis() - tCopyStart;
-									// abort if the cancel button was pressed
-									if (isCancelled()) {
-										if (counter > 0) {
-											// final status info of copied files
-											message("# " + counter + " Dateien Kopiert, "
-													+ FSFx.formatFileLength(copied) + " in "
-													+ UIFx.formatMillisAsHoursMinutesSeconds(tSplit) + ", "
-													+ FSFx.formatTransferSpeed(tCopyStart, copied));
-										}
-										cancelSync("# Während des Kopierens Abgebrochen!");
-										return null;
-									}
-								}
-								/*
-								 * COPY BLOCK END
-								 */
+						// then copy the modified files before the new files
+						copyPhases.add(new Vector<CopyAction>());
+						copyPhases.add(new Vector<CopyAction>());
+						for (CopyAction copyAction : copyActions) {
+							if (copyAction.isSelected()) {
+								copyPhases.get(copyAction.isNew() ? 1 : 0).add(copyAction);
 							}
-							ix++;
 						}
 					} else {
 						// normal copy mode
-						// loop through copy actions
+						copyPhases.add(new Vector<CopyAction>());
 						for (CopyAction copyAction : copyActions) {
-							/*
-							 * COPY BLOCK
-							 */
-							// skip if the copy action is not selected
-							if (!copyAction.isSelected()) {
-								continue;
+							if (copyAction.isSelected()) {
+								copyPhases.get(0).add(copyAction);
 							}
-							try {
-								// try copying the current file
-								copied = copy(copyAction, db, copied, tCopyStart);
-								if (!changed) {
-									changed = true;
-								}
-								counter++;
-							} catch (IOException | SynchronizationCancelledException e) {}
-							// save current running time
-							tSplit = System.currentTimeMillis() - tCopyStart;
-							// abort if the cancel button was pressed
-							if (isCancelled()) {
-								if (counter > 0) {
-									// final files copied info
-									message("# " + counter + " Dateien Kopiert, "
-											+ FSFx.formatFileLength(copied) + " in "
-											+ UIFx.formatMillisAsHoursMinutesSeconds(tSplit) + ", "
-											+ FSFx.formatTransferSpeed(tCopyStart, copied));
-								}
-								cancelSync("# Während des Kopierens Abgebrochen!");
-								return null;
+						}
+					}
+					// order each phase by the copy order of the operation
+					for (Vector<CopyAction> copyPhase : copyPhases) {
+						CopyOrder.sort(copyPhase, operation.getCopyOrder(), operation.getPriorityPaths());
+					}
+					// store the deletions and moves before the copy phase is journaled
+					db.flushIndex();
+					// persist the plan to resume the copy phase after an interruption
+					plannedCopyActions = new Vector<CopyAction>();
+					for (Vector<CopyAction> copyPhase : copyPhases) {
+						plannedCopyActions.addAll(copyPhase);
+					}
+					if (plannedCopyActions.size() > 0) {
+						try {
+							syncJournal = SyncJournal.create(dbEdit, db.getDbId(), operation,
+									checksumAlgorithm, plannedCopyActions);
+						} catch (IOException e) {
+							e.printStackTrace();
+							message("Fehler beim Speichern des Plans: " + e.getMessage());
+						}
+					}
+					// the copy task for the workers of the copy scheduler
+					copyTask = new SynchronizationCopyTask(db, checksumAlgorithm, versionStore, syncJournal);
+					for (Vector<CopyAction> copyPhase : copyPhases) {
+						// copy the files concurrently and wait until all copies ended
+						copyScheduler.run(copyPhase, operation.getSource(), operation.getTarget(),
+								copyTask);
+						counter = copiedCount.get();
+						copied = copiedLength.get();
+						if (counter > 0 && !changed) {
+							changed = true;
+						}
+						// save current running time
+						tSplit = System.currentTimeMillis() - tCopyStart;
+						// abort if the cancel button was pressed
+						if (isCancelled()) {
+							if (counter > 0) {
+								// final files copied info
+								message("# " + counter + " Dateien Kopiert, " + FSFx.formatFileLength(copied)
+										+ " in " + UIFx.formatMillisAsHoursMinutesSeconds(tSplit) + ", "
+										+ FSFx.formatTransferSpeed(tCopyStart, copied));
 							}
+							cancelSync("# Während des Kopierens Abgebrochen!");
+							return null;
 						}
-						/*
-						 * COPY BLOCK END
-						 */
+						// leave the next phases for the next synchronization
+						if (deadlineReached) {
+							break;
+						}
+					}
+					if (deadlineReached) {
+						// the journal keeps the remaining files
+						message("# Zeitbudget Erschöpft, die übrigen Dateien werden "
+								+ "beim nächsten Mal Kopiert");
+					} else if (syncJournal != null) {
+						// the copy phase is complete
+						syncJournal.delete();
 					}
 					// final files copied info if there were any files copied
 					abortCountDown();
@@ -1101,6 +1358,14 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 								+ UIFx.formatMillisAsHoursMinutesSeconds(tSplit) + ", "
 								+ FSFx.formatTransferSpeed(tCopyStart, copied));
 					}
+					// apply the retention policy to the versions
+					if (versionStore != null) {
+						pruned = versionStore.prune(System.currentTimeMillis());
+						if (pruned > 0) {
+							message("# " + pruned + " alte Versionen Gelöscht");
+							changed = true;
+						}
+					}
 					// message if there were no changes made
 					if (!changed) {
 						message("# Keine Änderungen Gefunden");
@@ -1128,12 +1393,36 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 				} catch (Exception e) {
 					throw e;
 				} finally {
+					// stop reading the file systems
+					if (checksumVerifier != null) {
+						checksumVerifier.shutdown();
+					}
+					// keep the journal of an interrupted copy phase
+					if (syncJournal != null) {
+						syncJournal.close();
+					}
+					if (scanPool != null) {
+						scanPool.shutdownNow();
+					}
+					// wait for pending commits and write the rest
+					if (dbWriter != null) {
+						dbWriter.close();
+					}
 					// finally synchronize the databases
 					if (changed && dbEdit != null && dbDestination != null && db != null) {
+						// write the changes recorded in the index
+						db.flushIndex();
 						// increment dbVersion after each synchronization
 						db.incrementVersion();
+					}
+					// close the session to complete the database file
+					if (db != null) {
+						db.closeSession();
+					}
+					if (changed && dbEdit != null && dbDestination != null && db != null) {
 						try {
-							FileUtils.copyFile(dbEdit, dbDestination);
+							// write the changed pages to the target database
+							DatabasePublisher.publish(dbEdit, dbDestination);
 						} catch (IOException e2) {
 							e2.printStackTrace();
 						}
@@ -1141,13 +1430,11 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 				} // end of finally of operation try
 			} // end of batch loop
 
-			flushMessages();
 			finishSync(
 					"# # # Alles Erledigt nach "
 							+ UIFx.formatMillisAsHoursMinutesSeconds(System.currentTimeMillis() - syncStart),
 					null);
 		} catch (Exception e) {
-			flushMessages();
 			finishSync("# Fehler nach "
 					+ UIFx.formatMillisAsHoursMinutesSeconds(System.currentTimeMillis() - syncStart) + " : "
 					+ e.getMessage(), e);
@@ -1156,6 +1443,136 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 		return null;
 	}
 
+	/**
+	 * Moves the target directory of a moved source directory to its new path
+	 * together with its old versions and its database records.
+	 * 
+	 * @param directoryMoveAction
+	 *            The moved directory.
+	 * @param target
+	 *            The target directory of the operation.
+	 * @param db
+	 *            The database of the operation.
+	 * 
+	 * @return <code>true</code> if the directory was moved, otherwise nothing
+	 *         was changed.
+	 */
+	private boolean moveDirectory(DirectoryMoveAction directoryMoveAction, File target, OnlineDB db) {
+		String from = directoryMoveAction.getRelativePathFrom();
+		String to = directoryMoveAction.getRelativePath();
+		try {
+			Files.createDirectories(directoryMoveAction.getTo().getParentFile().toPath());
+			// a rename within the target file system
+			Files.move(directoryMoveAction.getFrom().toPath(), directoryMoveAction.getTo().toPath());
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		// the old versions and the database records follow the directory
+		if (VersionStore.moveVersions(target, from, to)) {
+			if (db.moveDirectory(from, to)) {
+				return true;
+			}
+			VersionStore.moveVersions(target, to, from);
+		}
+		// undo the move
+		try {
+			Files.move(directoryMoveAction.getTo().toPath(), directoryMoveAction.getFrom().toPath());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	/**
+	 * Moves the target file of a moved source file to its new path together
+	 * with its old versions and its database records.
+	 * 
+	 * @param moveAction
+	 *            The moved file.
+	 * @param target
+	 *            The target directory of the operation.
+	 * @param db
+	 *            The database of the operation.
+	 * 
+	 * @return <code>true</code> if the file was moved, otherwise nothing was
+	 *         changed.
+	 */
+	private boolean moveFile(MoveAction moveAction, File target, OnlineDB db) {
+		CopyAction copyAction = moveAction.getCopyAction();
+		RelativeFile known = moveAction.getKnown();
+		String from = moveAction.getRelativePathFrom();
+		String to = moveAction.getRelativePath();
+		try {
+			Files.createDirectories(moveAction.getTo().getParentFile().toPath());
+			// a rename within the target file system
+			Files.move(moveAction.getFrom().toPath(), moveAction.getTo().toPath());
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		// the old versions and their database records follow the file
+		if (!VersionStore.moveFileVersions(target, from, to)) {
+			undoMove(moveAction);
+			return false;
+		}
+		if (!db.moveVersions(from, to)) {
+			VersionStore.moveFileVersions(target, to, from);
+			undoMove(moveAction);
+			return false;
+		}
+		// the data is unchanged but the new source file might have a new modification time
+		if (known.getModified() != copyAction.getSourceModified()) {
+			moveAction.getTo().setLastModified(copyAction.getSourceModified());
+		}
+		db.removeFileByPath(from);
+		db.add(to, copyAction.getSourceLength(), copyAction.getSourceModified(), known.getChecksum(),
+				known.getAlgorithm());
+		return true;
+	}
+
+	/**
+	 * Moves a moved target file back to its old path.
+	 * 
+	 * @param moveAction
+	 *            The moved file.
+	 */
+	private void undoMove(MoveAction moveAction) {
+		try {
+			Files.move(moveAction.getTo().toPath(), moveAction.getFrom().toPath());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Starts the time budget of the current operation, the analysis does not
+	 * count against it.
+	 * 
+	 * @param operation
+	 *            The current operation.
+	 * @param copyStart
+	 *            The time the copy phase started in milliseconds.
+	 */
+	private void startTimeBudget(Operation operation, long copyStart) {
+		if (operation.getTimeBudget() > 0) {
+			deadline = copyStart + operation.getTimeBudget() * 60000L;
+		}
+	}
+
+	/**
+	 * Checks if the time budget of the current operation is used up.
+	 * 
+	 * @return <code>true</code> if no further files must be copied.
+	 */
+	private boolean isDeadlinePassed() {
+		if (deadline != 0 && System.currentTimeMillis() >= deadline) {
+			deadlineReached = true;
+			return true;
+		}
+		return deadlineReached;
+	}
+
 	/**
 	 * Removes a list of empty directories and its parent directories as long as
 	 * they are empty.
@@ -1198,67 +1615,139 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 	}
 
 	/**
-	 * copy file and return new total files copied length
+	 * adds the file of a finished integrity check to the list of corrupted or lost
+	 * files if necessary and replaces the checksum if the check migrated it
+	 * 
+	 * @param integrityCheck
+	 *            the integrity check with all checksums created
+	 * @param db
+	 *            the database
+	 * @param corruptedFilesSource
+	 *            the corrupt source files that are intact in the destination
+	 * @param corruptedFilesDestination
+	 *            the corrupt destination files that are intact in the source
+	 * @param lostFiles
+	 *            the files that are corrupt in source and destination
+	 * @return true if the database was changed
+	 */
+	private boolean classifyIntegrity(IntegrityCheck integrityCheck, OnlineDB db,
+			Vector<File> corruptedFilesSource, Vector<File> corruptedFilesDestination,
+			Vector<File> lostFiles) {
+		switch (integrityCheck.getResult()) {
+		case IntegrityCheck.result_corrupt_destination:
+			corruptedFilesDestination.add(integrityCheck.getDestination().getFile());
+			break;
+		case IntegrityCheck.result_corrupt_source:
+			corruptedFilesSource.add(integrityCheck.getSource().getFile());
+			break;
+		case IntegrityCheck.result_lost:
+			lostFiles.add(integrityCheck.getDestination().getFile());
+			break;
+		default:
+			break;
+		}
+		// replace the checksum of an intact file
+		RelativeFile migrated = integrityCheck.getMigratedFile();
+		if (migrated != null) {
+			db.updateFile(migrated.getRelativePath(), migrated.getLength(), migrated.getModified(),
+					migrated.getChecksum(), migrated.getAlgorithm());
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * copy a file and add its length to the total files copied length. this is
+	 * called concurrently by the workers of the copy scheduler.
 	 * 
 	 * @param copyAction
 	 *            the copy action to be executed
+	 * @param fileCopier
+	 *            the file copier of the calling worker
 	 * @param db
 	 *            the database
-	 * @param copied
-	 *            the currently total bytes copied
-	 * @param tStart
-	 *            the time the file copy process started.
-	 * @return the new total bytes copied.
+	 * @param algorithm
+	 *            the algorithm to create the checksum with
+	 * @param versionStore
+	 *            the version area to keep overwritten target files in or
+	 *            <code>null</code> if the operation does not manage versions
 	 * @throws IOException
 	 *             if the checksum creation was unsuccessful or the file could not
 	 *             be copied.
 	 * @throws SynchronizationCancelledException
-	 *             when the user pressed the cancel button during checksum creation.
+	 *             when the user pressed the cancel button while copying or when
+	 *             the time budget was used up before the copy started.
 	 */
-	private long copy(CopyAction copyAction, OnlineDB db, long copied, long tStart)
+	private void copy(CopyAction copyAction, FileCopier fileCopier, OnlineDB db, ChecksumAlgorithm algorithm,
+			VersionStore versionStore, SyncJournal syncJournal)
 			throws IOException, SynchronizationCancelledException {
+		// do not start further copies after the deadline
+		if (isDeadlinePassed()) {
+			throw new SynchronizationCancelledException();
+		}
 		// message file if wanted
 		message("Kopiere ".concat(copyAction.toString()), true);
-		// first create checksum
-		String checksum = FSSync.createSHA384Hex(copyAction.getSource());
-		if (checksum == null) {
-			message("!!! Fehler beim Erstellen der Prüfsumme, Datei wurde übersprungen: "
-					.concat(copyAction.getSource().getPath()));
-			throw new IOException("Could not create checksum");
-		}
 		// abort if cancel button was pressed
 		if (isCancelled()) {
 			throw new SynchronizationCancelledException();
 		}
+		// keep the overwritten target file as a version
+		int version = -1;
+		if (versionStore != null && copyAction.getDirection() == CopyAction.DIR_BACKUP && !copyAction.isNew()
+				&& copyAction.getDestination().exists()) {
+			version = versionStore.archive(copyAction.getDestination(), copyAction.getRelativePath());
+		}
+		// the checksum is created while copying
+		byte[] checksum = null;
 		try {
-			if (!copyAction.getDestination().getParentFile().exists()) {
-				copyAction.getDestination().getParentFile().mkdirs();
-			}
-			// try copying the file
-			FileUtils.copyFile(copyAction.getSource(), copyAction.getDestination());
+			// try copying the file, update the transfer speed after each chunk
+			checksum = fileCopier.copy(copyAction.getSource(), copyAction.getDestination(), algorithm,
+					new CopyProgressListener() {
+						/**
+						 * the number of bytes of the file counted so far
+						 */
+						private long counted = 0;
+
+						@Override
+						public boolean progress(long copiedFile) {
+							// the status channel shows the transfer speed from the counter
+							transferredLength.addAndGet(copiedFile - counted);
+							counted = copiedFile;
+							// continue unless the cancel button was pressed, a running copy is
+							// completed when the time is up
+							return !isCancelled();
+						}
+					});
 		} catch (IOException e) {
 			// message on error
 			message("!!! Fehler: ".concat(e.getMessage()).concat(", Datei wurde übersprungen: ")
 					.concat(copyAction.getSource().getPath()));
 			// throw e, end function without return value
 			throw e;
+		} finally {
+			// put the old version back if the file was not replaced
+			if (checksum == null && version != -1) {
+				versionStore.restore(copyAction.getDestination(), copyAction.getRelativePath(), version);
+			}
 		}
-		// increment the total copied file length
-		copied += copyAction.getSource().length();
-		// update status data
-		// long tSplit = (System.currentTimeMillis() - tStart) / 1000;
-		status("2/2 - Dateien Kopieren... ".concat(FSFx.formatTransferSpeed(tStart, copied)), false);
+		// record the state of the source file that was actually copied, it may have
+		// changed since the scan
 		if (copyAction.isNew()) {
 			// enter new file in database
-			db.add(copyAction.getRelativePath(), copyAction.getSource().length(),
-					copyAction.getSource().lastModified(), checksum);
+			db.add(copyAction.getRelativePath(), fileCopier.getSourceLength(),
+					fileCopier.getSourceModified(), checksum, algorithm.getName());
 		} else {
 			// update the file in the database
-			db.updateFile(copyAction.getRelativePath(), copyAction.getSource().length(),
-					copyAction.getSource().lastModified(), checksum);
+			db.updateFile(copyAction.getRelativePath(), fileCopier.getSourceLength(),
+					fileCopier.getSourceModified(), checksum, algorithm.getName());
+		}
+		// the copy does not have to be repeated when resuming
+		if (syncJournal != null) {
+			syncJournal.complete(copyAction, checksum);
 		}
-		// return the currently transferred file length
-		return copied;
+		// increment the total copied file length and count
+		copiedLength.addAndGet(copyAction.getSourceLength());
+		copiedCount.incrementAndGet();
 	}
 
 	/**
@@ -1267,14 +1756,6 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 	// @Override
 	// protected void process(List<StatusMessage> chunks) {}
 
-	/**
-	 * used at the end of the synchronization process to ensure all messages are
-	 * being posted to the user interface
-	 */
-	private void flushMessages() {
-		message("");
-	}
-
 	/**
 	 * Posts a message directly to the synchronization process dialog.
 	 * 
@@ -1286,38 +1767,19 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 	}
 
 	/**
-	 * Posts a message to the current list of messages and posts messages to the
-	 * synchronization process dialog
+	 * Posts a message to the status channel of the synchronization process dialog.
+	 * The messages are delivered in order, all messages posted within one tick of
+	 * the channel are passed to the dialog at once.
 	 * 
 	 * @param message
 	 *            The message to be shown, not null
 	 * 
 	 * @param verbose
-	 *            if true the message is posted to the current list of messages. if
-	 *            the time since the last message is longer than 450 milliseconds
-	 *            then the current list of messages is posted to the synchronization
-	 *            process dialog.
-	 *            <p>
-	 *            if false then the message is not delayed and the list of current
-	 *            messages is posted.
+	 *            if true the message is only displayed in verbose mode.
 	 */
 	private void message(String message, boolean verbose) {
-		if (message != null) {
-			// add message to list
-			if (message.length() > 0) {
-				if (messages == null) {
-					messages = new Vector<>();
-				}
-				messages.add(new StatusMessage(message, verbose));
-			}
-			// send messages to the EDT
-			if (System.currentTimeMillis() - lastStatusMessageUpdate > 450 || !verbose) {
-				if (messages != null) {
-					SwingUtilities.invokeLater(new RunStatusMessageUpdate(spd, messages));
-					messages = null;
-					lastStatusMessageUpdate = System.currentTimeMillis();
-				}
-			}
+		if (message.length() > 0) {
+			statusChannel.message(message, verbose);
 		}
 	}
 
@@ -1330,7 +1792,7 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 	 *            The Exception or null
 	 */
 	private void finishSync(String message, Exception e) {
-		SwingUtilities.invokeLater(new RunFinished(message, e, spd));
+		statusChannel.finish(new RunFinished(message, e, spd));
 	}
 
 	/**
@@ -1340,23 +1802,29 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 	 *            The abort message
 	 */
 	private final void cancelSync(String message) {
-		SwingUtilities.invokeLater(new RunCancelled(message, spd));
+		statusChannel.finish(new RunCancelled(message, spd));
 	}
 
 	/**
-	 * status label update, limited to 1 update per half second
+	 * status label update, only the latest status is shown by the status channel
 	 * 
 	 * @param status
 	 *            the current status label text
-	 * @param force
-	 *            true to prevent delay. false to limit to one message per half
-	 *            second.
 	 */
-	private void status(String status, boolean force) {
-		if (force || System.currentTimeMillis() - lastStatusTextUpdate > 500) {
-			SwingUtilities.invokeLater(new RunStatusTextUpdate(status, spd));
-			lastStatusTextUpdate = System.currentTimeMillis();
-		}
+	private void status(String status) {
+		statusChannel.setStatus(status);
+	}
+
+	/**
+	 * shows the transfer speed of the copy phase as status label until the status
+	 * is set again
+	 * 
+	 * @param tStart
+	 *            the start time of the copy phase
+	 */
+	private void copyStatus(long tStart) {
+		transferredLength.set(0);
+		statusChannel.setTransfer("2/2 - Dateien Kopieren... ", tStart, transferredLength);
 	}
 
 	/**
@@ -1366,7 +1834,7 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 	 *            the time in milliseconds to count down from.
 	 */
 	private void setCountDown(long t) {
-		SwingUtilities.invokeLater(new RunStartCountDown(spd, t));
+		statusChannel.post(new RunStartCountDown(spd, t));
 	}
 
 	/**
@@ -1376,13 +1844,52 @@ public class SynchronizationProcess extends SwingWorker<Void, Void> {
 	 *            true to pause, false to resume
 	 */
 	private void setCountDownPaused(boolean paused) {
-		SwingUtilities.invokeLater(new RunPauseCountDown(spd, paused));
+		statusChannel.post(new RunPauseCountDown(spd, paused));
 	}
 
 	/**
 	 * abort the current count down
 	 */
 	private void abortCountDown() {
-		SwingUtilities.invokeLater(new RunAbortCountDown(spd));
+		statusChannel.post(new RunAbortCountDown(spd));
+	}
+
+	/**
+	 * Copies single files for the copy scheduler and records them in the
+	 * database. Files that could not be copied are skipped.
+	 */
+	private final class SynchronizationCopyTask implements CopyTask {
+		/**
+		 * the database of the current operation
+		 */
+		private final OnlineDB db;
+		/**
+		 * the algorithm to create the checksums with
+		 */
+		private final ChecksumAlgorithm algorithm;
+		/**
+		 * the version area or null
+		 */
+		private final VersionStore versionStore;
+		/**
+		 * the journal of the copy phase or null
+		 */
+		private final SyncJournal syncJournal;
+
+		private SynchronizationCopyTask(OnlineDB db, ChecksumAlgorithm algorithm, VersionStore versionStore,
+				SyncJournal syncJournal) {
+			this.db = db;
+			this.algorithm = algorithm;
+			this.versionStore = versionStore;
+			this.syncJournal = syncJournal;
+		}
+
+		@Override
+		public void copy(CopyAction copyAction, FileCopier fileCopier) throws SynchronizationCancelledException {
+			try {
+				SynchronizationProcess.this.copy(copyAction, fileCopier, db, algorithm, versionStore,
+						syncJournal);
+			} catch (IOException e) {}
+		}
 	}
 }
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Vector;
+
+import net.janbuchinger.code.fssync.Operation;
+
+/**
+ * The version area of a target directory.
+ * <p>
+ * When the <code>Operation</code> option "manage versions" is on, target files
+ * that would be overwritten or deleted are moved into the directory ".fs.versions"
+ * of the target directory instead. The old version keeps its relative path and
+ * gets its version number appended, e.g. ".fs.versions/docs/a.txt.3". Moving
+ * stays within the target file system, so no data is copied.
+ * <p>
+ * Each old version is recorded in the file system table of the
+ * <code>OnlineDB</code> with its version number, chained to the next older
+ * version through the parent id. The current versions used by the analysis stay
+ * version 0 and are not affected.
+ * <p>
+ * The retention policy of the <code>Operation</code> is applied in one batch by
+ * <code>prune()</code>.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see OnlineDB#addVersion(RelativeFile, long)
+ */
+public final class VersionStore {
+	/**
+	 * The name of the version area in the target directory.
+	 */
+	public final static String VERSIONS_DIR = ".fs.versions";
+	/**
+	 * One day in milliseconds.
+	 */
+	private final static long DAY = 24L * 60 * 60 * 1000;
+
+	/**
+	 * The version area.
+	 */
+	private final File versionsDir;
+	/**
+	 * The database of the operation.
+	 */
+	private final OnlineDB db;
+	/**
+	 * The maximum number of versions per file, 0 for no limit.
+	 */
+	private final int maxCount;
+	/**
+	 * The maximum age of a version in milliseconds, 0 for no limit.
+	 */
+	private final long maxAge;
+
+	/**
+	 * Constructs a new <code>VersionStore</code> for the target directory of an
+	 * <code>Operation</code>.
+	 * 
+	 * @param operation
+	 *            The <code>Operation</code> with the retention policy.
+	 * @param db
+	 *            The database of the <code>Operation</code>.
+	 */
+	public VersionStore(Operation operation, OnlineDB db) {
+		this.versionsDir = new File(operation.getTarget(), VERSIONS_DIR);
+		this.db = db;
+		this.maxCount = Math.max(0, operation.getVersionsMaxCount());
+		this.maxAge = Math.max(0, operation.getVersionsMaxDays()) * DAY;
+	}
+
+	/**
+	 * Gets the file of an old version.
+	 * 
+	 * @param relativePath
+	 *            The relative path of the file.
+	 * @param version
+	 *            The version number.
+	 * 
+	 * @return The file in the version area.
+	 */
+	public File getVersionFile(String relativePath, int version) {
+		return new File(versionsDir, relativePath + "." + version);
+	}
+
+	/**
+	 * Moves a target file into the version area and records it as the newest old
+	 * version.
+	 * 
+	 * @param file
+	 *            The target file that is about to be overwritten or deleted.
+	 * @param relativePath
+	 *            The relative path of the file.
+	 * 
+	 * @return The version number or -1 if the file could not be moved, in which
+	 *         case the file is unchanged.
+	 */
+	public int archive(File file, String relativePath) {
+		// the state of the file as known to the database
+		RelativeFile known = db.getFileByPath(relativePath);
+		if (known == null) {
+			known = new RelativeFile(relativePath, file.length(), file.lastModified(), new byte[0]);
+		}
+		int version = db.addVersion(known, System.currentTimeMillis());
+		if (version == -1) {
+			return -1;
+		}
+		File versionFile = getVersionFile(relativePath, version);
+		try {
+			Files.createDirectories(versionFile.getParentFile().toPath());
+			Files.move(file.toPath(), versionFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			return version;
+		} catch (IOException e) {
+			e.printStackTrace();
+			db.removeVersion(relativePath, version);
+			return -1;
+		}
+	}
+
+	/**
+	 * Moves an old version back to the target directory, used when the file that
+	 * should replace it could not be copied.
+	 * 
+	 * @param file
+	 *            The target file.
+	 * @param relativePath
+	 *            The relative path of the file.
+	 * @param version
+	 *            The version number returned by <code>archive()</code>.
+	 */
+	public void restore(File file, String relativePath, int version) {
+		File versionFile = getVersionFile(relativePath, version);
+		try {
+			Files.move(versionFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			db.removeVersion(relativePath, version);
+			removeEmptyDirs(versionsDir, versionFile.getParentFile());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Moves the old versions of a directory along with the directory, the
+	 * database records follow the directory by themselves.
+	 * 
+	 * @param target
+	 *            The target directory.
+	 * @param from
+	 *            The relative path of the moved directory.
+	 * @param to
+	 *            The new relative path of the directory.
+	 * 
+	 * @return <code>true</code> if there are no old versions or if they were
+	 *         moved.
+	 * 
+	 * @see OnlineDB#moveDirectory(String, String)
+	 */
+	public static boolean moveVersions(File target, String from, String to) {
+		File versionsDir = new File(target, VERSIONS_DIR);
+		File fromDir = new File(versionsDir, from);
+		if (!fromDir.isDirectory()) {
+			return true;
+		}
+		File toDir = new File(versionsDir, to);
+		try {
+			Files.createDirectories(toDir.getParentFile().toPath());
+			Files.move(fromDir.toPath(), toDir.toPath());
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Moves the old versions of a file along with the file, the database records
+	 * are moved by <code>OnlineDB.moveVersions()</code>.
+	 * 
+	 * @param target
+	 *            The target directory.
+	 * @param from
+	 *            The relative path of the moved file.
+	 * @param to
+	 *            The new relative path of the file.
+	 * 
+	 * @return <code>true</code> if there are no old versions or if they were
+	 *         all moved, otherwise nothing was changed.
+	 * 
+	 * @see OnlineDB#moveVersions(String, String)
+	 */
+	public static boolean moveFileVersions(File target, String from, String to) {
+		File versionsDir = new File(target, VERSIONS_DIR);
+		File fromFile = new File(versionsDir, from);
+		File[] entries = fromFile.getParentFile().listFiles();
+		if (entries == null) {
+			return true;
+		}
+		String prefix = fromFile.getName() + ".";
+		// the moved version files, old and new location
+		Vector<File[]> moved = new Vector<File[]>();
+		File toFile;
+		boolean success = true;
+		for (File entry : entries) {
+			if (!entry.getName().startsWith(prefix)
+					|| !entry.getName().substring(prefix.length()).matches("[0-9]+")) {
+				continue;
+			}
+			toFile = new File(versionsDir, to + entry.getName().substring(prefix.length() - 1));
+			try {
+				Files.createDirectories(toFile.getParentFile().toPath());
+				// never replace a version of another file
+				Files.move(entry.toPath(), toFile.toPath());
+				moved.add(new File[] { entry, toFile });
+			} catch (IOException e) {
+				e.printStackTrace();
+				success = false;
+				break;
+			}
+		}
+		if (!success) {
+			// move the versions back
+			for (File[] versionFile : moved) {
+				try {
+					Files.move(versionFile[1].toPath(), versionFile[0].toPath());
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		} else if (moved.size() > 0) {
+			removeEmptyDirs(versionsDir, fromFile.getParentFile());
+		}
+		return success;
+	}
+
+	/**
+	 * Deletes all old versions that exceed the maximum number of versions per
+	 * file or the maximum age.
+	 * 
+	 * @param now
+	 *            The current time in milliseconds.
+	 * 
+	 * @return The number of deleted versions.
+	 */
+	public int prune(long now) {
+		if (maxCount == 0 && maxAge == 0) {
+			return 0;
+		}
+		// newest first per file
+		Vector<FileVersion> versions = db.listVersions();
+		Vector<FileVersion> expired = new Vector<FileVersion>();
+		String relativePath = null;
+		int count = 0;
+		File versionFile;
+		for (FileVersion version : versions) {
+			if (!version.getRelativePath().equals(relativePath)) {
+				relativePath = version.getRelativePath();
+				count = 0;
+			}
+			count++;
+			if ((maxCount > 0 && count > maxCount) || (maxAge > 0 && now - version.getArchived() > maxAge)) {
+				versionFile = getVersionFile(relativePath, version.getVersion());
+				// keep the record if the file could not be deleted
+				if (!versionFile.exists() || versionFile.delete()) {
+					expired.add(version);
+					removeEmptyDirs(versionsDir, versionFile.getParentFile());
+				}
+			}
+		}
+		db.removeVersions(expired);
+		return expired.size();
+	}
+
+	/**
+	 * Removes a directory of the version area and its parents as long as they are
+	 * empty.
+	 * 
+	 * @param versionsDir
+	 *            The version area.
+	 * @param dir
+	 *            The directory that lost a file.
+	 */
+	private static void removeEmptyDirs(File versionsDir, File dir) {
+		String[] entries;
+		while (dir != null && !dir.equals(versionsDir)) {
+			entries = dir.list();
+			if (entries == null || entries.length > 0 || !dir.delete()) {
+				return;
+			}
+			dir = dir.getParentFile();
+		}
+	}
+}
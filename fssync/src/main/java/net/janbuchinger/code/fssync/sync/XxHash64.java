@@ -0,0 +1,172 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+/**
+ * A streaming implementation of the xxHash64 algorithm with seed 0.
+ * <p>
+ * The checksum consists of 8 bytes, most significant byte first, which equals
+ * the canonical representation of the reference implementation.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see ChecksumAlgorithm#XXHASH64
+ */
+public final class XxHash64 implements Hasher {
+	private final static long PRIME64_1 = 0x9E3779B185EBCA87L;
+	private final static long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+	private final static long PRIME64_3 = 0x165667B19E3779F9L;
+	private final static long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+	private final static long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+	/**
+	 * The four accumulators of the stripes.
+	 */
+	private long v1, v2, v3, v4;
+	/**
+	 * The bytes of an incomplete stripe.
+	 */
+	private final byte[] stripe;
+	/**
+	 * The number of bytes in <code>stripe</code>.
+	 */
+	private int stripeLength;
+	/**
+	 * The total number of bytes passed.
+	 */
+	private long totalLength;
+
+	/**
+	 * Constructs a new <code>XxHash64</code> with seed 0.
+	 */
+	public XxHash64() {
+		v1 = PRIME64_1 + PRIME64_2;
+		v2 = PRIME64_2;
+		v3 = 0;
+		v4 = -PRIME64_1;
+		stripe = new byte[32];
+		stripeLength = 0;
+		totalLength = 0;
+	}
+
+	@Override
+	public void update(byte[] data, int offset, int length) {
+		totalLength += length;
+		int end = offset + length;
+		// complete a previously started stripe
+		if (stripeLength > 0) {
+			int n = Math.min(32 - stripeLength, length);
+			System.arraycopy(data, offset, stripe, stripeLength, n);
+			stripeLength += n;
+			offset += n;
+			if (stripeLength < 32) {
+				return;
+			}
+			processStripe(stripe, 0);
+			stripeLength = 0;
+		}
+		// process whole stripes directly from the data
+		while (end - offset >= 32) {
+			processStripe(data, offset);
+			offset += 32;
+		}
+		// keep the rest for the next update
+		if (offset < end) {
+			System.arraycopy(data, offset, stripe, 0, end - offset);
+			stripeLength = end - offset;
+		}
+	}
+
+	/**
+	 * Processes 32 bytes.
+	 * 
+	 * @param data
+	 *            The data.
+	 * @param offset
+	 *            The start of the stripe.
+	 */
+	private void processStripe(byte[] data, int offset) {
+		v1 = round(v1, readLong(data, offset));
+		v2 = round(v2, readLong(data, offset + 8));
+		v3 = round(v3, readLong(data, offset + 16));
+		v4 = round(v4, readLong(data, offset + 24));
+	}
+
+	@Override
+	public byte[] getDigest() {
+		long h;
+		if (totalLength >= 32) {
+			h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12)
+					+ Long.rotateLeft(v4, 18);
+			h = mergeRound(h, v1);
+			h = mergeRound(h, v2);
+			h = mergeRound(h, v3);
+			h = mergeRound(h, v4);
+		} else {
+			h = PRIME64_5;
+		}
+		h += totalLength;
+		int i = 0;
+		for (; i + 8 <= stripeLength; i += 8) {
+			h ^= round(0, readLong(stripe, i));
+			h = Long.rotateLeft(h, 27) * PRIME64_1 + PRIME64_4;
+		}
+		if (i + 4 <= stripeLength) {
+			h ^= (readInt(stripe, i) & 0xFFFFFFFFL) * PRIME64_1;
+			h = Long.rotateLeft(h, 23) * PRIME64_2 + PRIME64_3;
+			i += 4;
+		}
+		for (; i < stripeLength; i++) {
+			h ^= (stripe[i] & 0xFF) * PRIME64_5;
+			h = Long.rotateLeft(h, 11) * PRIME64_1;
+		}
+		// avalanche
+		h ^= h >>> 33;
+		h *= PRIME64_2;
+		h ^= h >>> 29;
+		h *= PRIME64_3;
+		h ^= h >>> 32;
+		byte[] digest = new byte[8];
+		for (int j = 7; j >= 0; j--) {
+			digest[j] = (byte) h;
+			h >>>= 8;
+		}
+		return digest;
+	}
+
+	private static long round(long acc, long input) {
+		acc += input * PRIME64_2;
+		acc = Long.rotateLeft(acc, 31);
+		return acc * PRIME64_1;
+	}
+
+	private static long mergeRound(long acc, long val) {
+		acc ^= round(0, val);
+		return acc * PRIME64_1 + PRIME64_4;
+	}
+
+	private static long readLong(byte[] data, int offset) {
+		return (data[offset] & 0xFFL) | (data[offset + 1] & 0xFFL) << 8 | (data[offset + 2] & 0xFFL) << 16
+				| (data[offset + 3] & 0xFFL) << 24 | (data[offset + 4] & 0xFFL) << 32
+				| (data[offset + 5] & 0xFFL) << 40 | (data[offset + 6] & 0xFFL) << 48
+				| (data[offset + 7] & 0xFFL) << 56;
+	}
+
+	private static int readInt(byte[] data, int offset) {
+		return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8 | (data[offset + 2] & 0xFF) << 16
+				| (data[offset + 3] & 0xFF) << 24;
+	}
+}
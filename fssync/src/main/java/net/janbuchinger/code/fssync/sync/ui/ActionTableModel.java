@@ -0,0 +1,240 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync.ui;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Vector;
+
+import javax.swing.table.AbstractTableModel;
+
+import net.janbuchinger.code.fssync.sync.PathComparator;
+
+/**
+ * The <code>ActionTableModel</code> is the base of the
+ * <code>OperationSummaryDialog</code>s action tables.
+ * <p>
+ * The rows are mapped to the underlying list by an array of indices, filtering
+ * and sorting only rebuild this array and never copy or reorder the list of
+ * actions. As long as neither a filter nor a sort order is set no array is
+ * allocated at all.
+ * <p>
+ * The displayed values are taken from the lengths and modification dates
+ * captured during the analysis, <code>JTable</code> only requests the values of
+ * the rows that are painted.
+ * 
+ * @author Jan Buchinger
+ *
+ * @param <T>
+ *            The type of the actions.
+ */
+@SuppressWarnings("serial")
+public abstract class ActionTableModel<T> extends AbstractTableModel {
+	/**
+	 * Sort: the order of the analysis
+	 */
+	public final static int sort_scan = 0;
+	/**
+	 * Sort: by relative path
+	 */
+	public final static int sort_path = 1;
+	/**
+	 * Sort: by size, largest first
+	 */
+	public final static int sort_size = 2;
+	/**
+	 * Sort: by modification date, newest first
+	 */
+	public final static int sort_modified = 3;
+
+	/**
+	 * The underlying list of actions.
+	 */
+	protected final Vector<T> data;
+	/**
+	 * The indices of the displayed actions or <code>null</code> if all actions
+	 * are displayed in the order of the analysis.
+	 */
+	private int[] rows;
+	/**
+	 * The part of the relative path to filter by, empty for no filter.
+	 */
+	private String pathFilter;
+	/**
+	 * The current sort order.
+	 */
+	private int sortBy;
+
+	public ActionTableModel(Vector<T> data) {
+		this.data = data;
+		rows = null;
+		pathFilter = "";
+		sortBy = sort_scan;
+	}
+
+	/**
+	 * Gets the relative path of an action.
+	 * 
+	 * @param action
+	 *            The action.
+	 * @return The relative path.
+	 */
+	protected abstract String getRelativePath(T action);
+
+	/**
+	 * Gets the length of an action as captured during the analysis.
+	 * 
+	 * @param action
+	 *            The action.
+	 * @return The length in bytes.
+	 */
+	protected abstract long getLength(T action);
+
+	/**
+	 * Gets the modification date of an action as captured during the analysis.
+	 * 
+	 * @param action
+	 *            The action.
+	 * @return The modification date.
+	 */
+	protected abstract long getModified(T action);
+
+	/**
+	 * Gets whether an action passes the filters of the subclass.
+	 * 
+	 * @param action
+	 *            The action.
+	 * @return <code>true</code> if the action should be displayed.
+	 */
+	protected boolean accept(T action) {
+		return true;
+	}
+
+	/**
+	 * Gets whether the subclass filters any actions.
+	 * 
+	 * @return <code>true</code> if <code>accept(T)</code> can reject an action.
+	 */
+	protected boolean isFiltered() {
+		return false;
+	}
+
+	@Override
+	public final int getRowCount() {
+		return rows == null ? data.size() : rows.length;
+	}
+
+	/**
+	 * Gets the action displayed in a row.
+	 * 
+	 * @param row
+	 *            The row index.
+	 * @return The action.
+	 */
+	public final T getRow(int row) {
+		return data.get(rows == null ? row : rows[row]);
+	}
+
+	/**
+	 * Sets the part of the relative path to filter by, the case is ignored.
+	 * 
+	 * @param pathFilter
+	 *            The part of the relative path, empty for no filter.
+	 */
+	public final void setPathFilter(String pathFilter) {
+		this.pathFilter = pathFilter.trim();
+		updateRows();
+	}
+
+	/**
+	 * Sets the sort order.
+	 * 
+	 * @param sortBy
+	 *            One of <code>sort_scan</code>, <code>sort_path</code>,
+	 *            <code>sort_size</code> or <code>sort_modified</code>.
+	 */
+	public final void setSortBy(int sortBy) {
+		this.sortBy = sortBy;
+		updateRows();
+	}
+
+	/**
+	 * Rebuilds the row indices from the current filters and sort order.
+	 */
+	protected final void updateRows() {
+		if (pathFilter.length() == 0 && sortBy == sort_scan && !isFiltered()) {
+			rows = null;
+			fireTableDataChanged();
+			return;
+		}
+		int[] matching = new int[data.size()];
+		int n = 0;
+		T action;
+		for (int i = 0; i < data.size(); i++) {
+			action = data.get(i);
+			if (accept(action) && containsIgnoreCase(getRelativePath(action), pathFilter)) {
+				matching[n++] = i;
+			}
+		}
+		if (sortBy != sort_scan) {
+			// sorted as objects for a stable sort with a comparator
+			Integer[] sorted = new Integer[n];
+			for (int i = 0; i < n; i++) {
+				sorted[i] = matching[i];
+			}
+			Arrays.sort(sorted, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer index1, Integer index2) {
+					T action1 = data.get(index1);
+					T action2 = data.get(index2);
+					switch (sortBy) {
+					case sort_path:
+						return PathComparator.INSTANCE.compare(getRelativePath(action1),
+								getRelativePath(action2));
+					case sort_size:
+						return Long.compare(getLength(action2), getLength(action1));
+					default:
+						return Long.compare(getModified(action2), getModified(action1));
+					}
+				}
+			});
+			for (int i = 0; i < n; i++) {
+				matching[i] = sorted[i];
+			}
+		}
+		rows = Arrays.copyOf(matching, n);
+		fireTableDataChanged();
+	}
+
+	/**
+	 * Gets whether a path contains a part regardless of the case without
+	 * creating new strings.
+	 * 
+	 * @param path
+	 *            The path to search.
+	 * @param part
+	 *            The part to find.
+	 * @return <code>true</code> if the part is empty or contained in the path.
+	 */
+	private static boolean containsIgnoreCase(String path, String part) {
+		for (int i = 0; i <= path.length() - part.length(); i++) {
+			if (path.regionMatches(true, i, part, 0, part.length())) {
+				return true;
+			}
+		}
+		return part.length() == 0;
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync.ui;
+
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+
+/**
+ * The <code>BoundedListModel</code> holds the latest status messages for the
+ * <code>SynchronizationProcessDialog</code> in a ring buffer. When the buffer
+ * is full every new message replaces the oldest one so that long verbose runs
+ * neither grow the heap nor slow down the <code>JList</code>.
+ * <p>
+ * The complete log is written by the <code>LogWriter</code>.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see LogWriter
+ */
+@SuppressWarnings("serial")
+public class BoundedListModel extends AbstractListModel<String> {
+	/**
+	 * The messages, <code>start</code> is the index of the oldest one.
+	 */
+	private final String[] buffer;
+	/**
+	 * The index of the oldest message in the buffer.
+	 */
+	private int start;
+	/**
+	 * The number of messages in the buffer.
+	 */
+	private int size;
+
+	/**
+	 * Constructs a new empty <code>BoundedListModel</code>.
+	 * 
+	 * @param capacity
+	 *            The maximum number of messages to hold.
+	 */
+	public BoundedListModel(int capacity) {
+		buffer = new String[capacity];
+		start = 0;
+		size = 0;
+	}
+
+	@Override
+	public int getSize() {
+		return size;
+	}
+
+	@Override
+	public String getElementAt(int index) {
+		return buffer[(start + index) % buffer.length];
+	}
+
+	/**
+	 * Adds a message, the oldest message is dropped if the buffer is full.
+	 * 
+	 * @param message
+	 *            The message to add.
+	 */
+	public void addElement(String message) {
+		int removed = put(message);
+		fireChanges(removed, 1);
+	}
+
+	/**
+	 * Adds messages and notifies the listeners once.
+	 * 
+	 * @param messages
+	 *            The messages to add.
+	 */
+	public void addElements(List<String> messages) {
+		if (messages.size() == 0) {
+			return;
+		}
+		int removed = 0;
+		for (String message : messages) {
+			removed += put(message);
+		}
+		fireChanges(removed, messages.size());
+	}
+
+	/**
+	 * Puts a message into the buffer without notifying the listeners.
+	 * 
+	 * @param message
+	 *            The message to put.
+	 * @return The number of dropped messages, 0 or 1.
+	 */
+	private int put(String message) {
+		if (size < buffer.length) {
+			buffer[(start + size++) % buffer.length] = message;
+			return 0;
+		}
+		// overwrite the oldest message
+		buffer[start] = message;
+		start = (start + 1) % buffer.length;
+		return 1;
+	}
+
+	/**
+	 * Notifies the listeners of dropped and added messages.
+	 * 
+	 * @param removed
+	 *            The number of messages dropped at the beginning.
+	 * @param added
+	 *            The number of messages added at the end.
+	 */
+	private void fireChanges(int removed, int added) {
+		// the listeners only know the messages that were there before
+		int previousSize = size - added + removed;
+		removed = Math.min(removed, previousSize);
+		if (removed > 0) {
+			fireIntervalRemoved(this, 0, removed - 1);
+		}
+		added = size - (previousSize - removed);
+		fireIntervalAdded(this, size - added, size - 1);
+	}
+}
@@ -19,12 +19,9 @@ import java.text.SimpleDateFormat;
 import java.util.Iterator;
 import java.util.Vector;
 
-import javax.swing.table.AbstractTableModel;
-
 import net.janbuchinger.code.fssync.Operation;
 import net.janbuchinger.code.fssync.sync.CopyAction;
 import net.janbuchinger.code.fssync.sync.OperationSummary;
-import net.janbuchinger.code.fssync.sync.SynchronizationCancelledException;
 import net.janbuchinger.code.mishmash.FSFx;
 import net.janbuchinger.code.mishmash.ui.UIFx;
 
@@ -36,7 +33,7 @@ import net.janbuchinger.code.mishmash.ui.UIFx;
  *
  */
 @SuppressWarnings("serial")
-public class CopyActionTableModel extends AbstractTableModel {
+public class CopyActionTableModel extends ActionTableModel<CopyAction> {
 	/**
 	 * Selection: Select none
 	 */
@@ -55,9 +52,22 @@ public class CopyActionTableModel extends AbstractTableModel {
 	public final static int sel_dir_target = 7;
 
 	/**
-	 * The data of the model contains <code>CopyAction</code>s.
+	 * Show: all copy actions
+	 */
+	public final static int show_all = 0;
+	/**
+	 * Show: copy actions from source to target
+	 */
+	public final static int show_dir_source = 1;
+	/**
+	 * Show: copy actions from target to source
 	 */
-	private final Vector<CopyAction> data;
+	public final static int show_dir_target = 2;
+	/**
+	 * Show: conflicting copy actions
+	 */
+	public final static int show_conflicts = 3;
+
 	/**
 	 * The <code>OperationSummary</code> for updating values upon de/selection and
 	 * de/selection
@@ -75,17 +85,63 @@ public class CopyActionTableModel extends AbstractTableModel {
 	 * <code>SimpleDateFormat</code> for formatting the file modification date
 	 */
 	private final SimpleDateFormat df;
+	/**
+	 * The copy actions to show
+	 */
+	private int show;
 
 	public CopyActionTableModel(Vector<CopyAction> data, OperationSummary operationSummary) {
-		this.data = data;
+		super(data);
 		this.operationSummary = operationSummary;
 		df = UIFx.initDisplayDateTimeFormat();
 		selectCurrent = Operation.PRIORITY_SOURCE;
+		show = show_all;
+	}
+
+	/**
+	 * Sets the copy actions to show.
+	 * 
+	 * @param show
+	 *            One of <code>show_all</code>, <code>show_dir_source</code>,
+	 *            <code>show_dir_target</code> or <code>show_conflicts</code>.
+	 */
+	public final void setShow(int show) {
+		this.show = show;
+		updateRows();
+	}
+
+	@Override
+	protected boolean accept(CopyAction copyAction) {
+		switch (show) {
+		case show_dir_source:
+			return copyAction.getDirection() == CopyAction.DIR_BACKUP;
+		case show_dir_target:
+			return copyAction.getDirection() == CopyAction.DIR_RESTORE;
+		case show_conflicts:
+			return copyAction.getConflict() != null;
+		default:
+			return true;
+		}
 	}
 
 	@Override
-	public int getRowCount() {
-		return data.size();
+	protected boolean isFiltered() {
+		return show != show_all;
+	}
+
+	@Override
+	protected String getRelativePath(CopyAction copyAction) {
+		return copyAction.getRelativePath();
+	}
+
+	@Override
+	protected long getLength(CopyAction copyAction) {
+		return copyAction.getSourceLength();
+	}
+
+	@Override
+	protected long getModified(CopyAction copyAction) {
+		return copyAction.getSourceModified();
 	}
 
 	@Override
@@ -121,16 +177,16 @@ public class CopyActionTableModel extends AbstractTableModel {
 
 	@Override
 	public Object getValueAt(int rowIndex, int columnIndex) {
-		copyAction = data.get(rowIndex);
+		copyAction = getRow(rowIndex);
 		switch (columnIndex) {
 		case 0:
 			return copyAction.isSelected();
 		case 1:
 			return copyAction.toString();
 		case 2:
-			return FSFx.formatFileLength(copyAction.getSource().length());
+			return FSFx.formatFileLength(copyAction.getSourceLength());
 		case 3:
-			return df.format(copyAction.getSource().lastModified());
+			return df.format(copyAction.getSourceModified());
 		default:
 			break;
 		}
@@ -149,24 +205,16 @@ public class CopyActionTableModel extends AbstractTableModel {
 
 	@Override
 	public void setValueAt(Object aValue, int rowIndex, int columnIndex) {
-		copyAction = data.get(rowIndex);
+		copyAction = getRow(rowIndex);
 		switch (columnIndex) {
 		case 0:
 			boolean select = (Boolean) aValue;
-			if (select) {
-				copyAction.setSelected(true);
-				calc(true, copyAction);
-				CopyAction conflict = copyAction.getConflict();
-				if (conflict != null) {
-					if (conflict.isSelected()) {
-						conflict.setSelected(false);
-						calc(false, conflict);
-					}
-				}
-			} else {
-				copyAction.setSelected(false);
-				calc(false, copyAction);
+			setSelected(copyAction, select);
+			CopyAction conflict = copyAction.getConflict();
+			if (select && conflict != null) {
+				setSelected(conflict, false);
 			}
+			operationSummary.reCalc();
 			fireTableDataChanged();
 			break;
 		}
@@ -176,49 +224,62 @@ public class CopyActionTableModel extends AbstractTableModel {
 		if (b) {
 			if (copyAction.getDirection() == CopyAction.DIR_BACKUP) {
 				if (copyAction.isNew()) {
-					operationSummary.addDestinationNew(copyAction.getSource().length());
+					operationSummary.addDestinationNew(copyAction.getSourceLength());
 				} else {
-					operationSummary.addDestinationModified(copyAction.getSource().length(),
-							copyAction.getDestination().length());
+					operationSummary.addDestinationModified(copyAction.getSourceLength(),
+							copyAction.getDestinationLength());
 				}
 			} else {
 				if (copyAction.isNew()) {
-					operationSummary.addSourceNew(copyAction.getSource().length());
+					operationSummary.addSourceNew(copyAction.getSourceLength());
 				} else {
-					operationSummary.addSourceModified(copyAction.getSource().length(),
-							copyAction.getDestination().length());
+					operationSummary.addSourceModified(copyAction.getSourceLength(),
+							copyAction.getDestinationLength());
 				}
 			}
 		} else {
 			if (copyAction.getDirection() == CopyAction.DIR_BACKUP) {
 				if (copyAction.isNew()) {
-					operationSummary.removeDestinationNew(copyAction.getSource().length());
+					operationSummary.removeDestinationNew(copyAction.getSourceLength());
 				} else {
-					operationSummary.removeDestinationModified(copyAction.getSource().length(),
-							copyAction.getDestination().length());
+					operationSummary.removeDestinationModified(copyAction.getSourceLength(),
+							copyAction.getDestinationLength());
 				}
 			} else {
 				if (copyAction.isNew()) {
-					operationSummary.removeSourceNew(copyAction.getSource().length());
+					operationSummary.removeSourceNew(copyAction.getSourceLength());
 				} else {
-					operationSummary.removeSourceModified(copyAction.getSource().length(),
-							copyAction.getDestination().length());
+					operationSummary.removeSourceModified(copyAction.getSourceLength(),
+							copyAction.getDestinationLength());
 				}
 			}
 		}
-		operationSummary.reCalc();
 	}
 
-	public CopyAction getRow(int row) {
-		return data.get(row);
+	/**
+	 * Selects or deselects a <code>CopyAction</code> and updates the totals of the
+	 * <code>OperationSummary</code> by its cached lengths if the selection
+	 * changes. <code>OperationSummary.reCalc()</code> must be called after the
+	 * last change.
+	 * 
+	 * @param copyAction
+	 *            The <code>CopyAction</code> to de/select.
+	 * @param select
+	 *            <code>true</code> to select the <code>CopyAction</code>.
+	 */
+	private final void setSelected(CopyAction copyAction, boolean select) {
+		if (copyAction.isSelected() != select) {
+			copyAction.setSelected(select);
+			calc(select, copyAction);
+		}
 	}
 
+	/**
+	 * Updates the derived totals of the <code>OperationSummary</code> and the
+	 * table after a bulk de/selection.
+	 */
 	private final void refresh() {
-		try {
-			operationSummary.reCalcAll();
-		} catch (SynchronizationCancelledException e) {
-			e.printStackTrace();
-		}
+		operationSummary.reCalc();
 		fireTableDataChanged();
 	}
 
@@ -226,7 +287,7 @@ public class CopyActionTableModel extends AbstractTableModel {
 		if (select == sel_all) {
 			Iterator<CopyAction> iData = data.iterator();
 			while (iData.hasNext())
-				iData.next().setSelected(true);
+				setSelected(iData.next(), true);
 			select = selectCurrent;
 			if (!operationSummary.hasConflicts()) {
 				refresh();
@@ -235,7 +296,7 @@ public class CopyActionTableModel extends AbstractTableModel {
 		} else if (select == sel_none) {
 			Iterator<CopyAction> iData = data.iterator();
 			while (iData.hasNext())
-				iData.next().setSelected(false);
+				setSelected(iData.next(), false);
 			refresh();
 			return;
 		} else if (select == sel_dir_source) {
@@ -243,10 +304,7 @@ public class CopyActionTableModel extends AbstractTableModel {
 			CopyAction copyAction;
 			while (iData.hasNext()) {
 				copyAction = iData.next();
-				if (copyAction.getDirection() == CopyAction.DIR_BACKUP)
-					copyAction.setSelected(true);
-				else
-					copyAction.setSelected(false);
+				setSelected(copyAction, copyAction.getDirection() == CopyAction.DIR_BACKUP);
 			}
 			refresh();
 			return;
@@ -255,10 +313,7 @@ public class CopyActionTableModel extends AbstractTableModel {
 			CopyAction copyAction;
 			while (iData.hasNext()) {
 				copyAction = iData.next();
-				if (copyAction.getDirection() == CopyAction.DIR_RESTORE)
-					copyAction.setSelected(true);
-				else
-					copyAction.setSelected(false);
+				setSelected(copyAction, copyAction.getDirection() == CopyAction.DIR_RESTORE);
 			}
 			refresh();
 			return;
@@ -281,15 +336,15 @@ public class CopyActionTableModel extends AbstractTableModel {
 				selectA = copyActionA.getDirection() == CopyAction.DIR_RESTORE;
 				break;
 			case Operation.PRIORITY_OLD:
-				selectA = copyActionA.getSource().lastModified() < copyActionA.getDestination().lastModified();
+				selectA = copyActionA.getSourceModified() < copyActionA.getDestinationModified();
 				break;
 			case Operation.PRIORITY_NEW:
 			default:
-				selectA = copyActionA.getSource().lastModified() > copyActionA.getDestination().lastModified();
+				selectA = copyActionA.getSourceModified() > copyActionA.getDestinationModified();
 				break;
 			}
-			copyActionA.setSelected(selectA);
-			copyActionB.setSelected(!selectA);
+			setSelected(copyActionA, selectA);
+			setSelected(copyActionB, !selectA);
 		}
 		selectCurrent = select;
 		refresh();
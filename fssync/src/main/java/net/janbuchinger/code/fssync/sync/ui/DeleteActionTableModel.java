@@ -18,31 +18,38 @@ package net.janbuchinger.code.fssync.sync.ui;
 import java.text.SimpleDateFormat;
 import java.util.Vector;
 
-import javax.swing.table.AbstractTableModel;
-
 import net.janbuchinger.code.fssync.sync.DeleteAction;
 import net.janbuchinger.code.fssync.sync.OperationSummary;
 import net.janbuchinger.code.mishmash.FSFx;
 import net.janbuchinger.code.mishmash.ui.UIFx;
 
 @SuppressWarnings("serial")
-public class DeleteActionTableModel extends AbstractTableModel {
+public class DeleteActionTableModel extends ActionTableModel<DeleteAction> {
 
-	private final Vector<DeleteAction> data;
 	private final OperationSummary operationSummary;
 	private DeleteAction deleteAction;
 
 	private final SimpleDateFormat df;
 
 	public DeleteActionTableModel(Vector<DeleteAction> data, OperationSummary operationSummary) {
-		this.data = data;
+		super(data);
 		this.operationSummary = operationSummary;
 		df = UIFx.initDisplayDateTimeFormat();
 	}
 
 	@Override
-	public int getRowCount() {
-		return data.size();
+	protected String getRelativePath(DeleteAction deleteAction) {
+		return deleteAction.getRelativePath();
+	}
+
+	@Override
+	protected long getLength(DeleteAction deleteAction) {
+		return deleteAction.getLength();
+	}
+
+	@Override
+	protected long getModified(DeleteAction deleteAction) {
+		return deleteAction.getModified();
 	}
 
 	@Override
@@ -78,16 +85,16 @@ public class DeleteActionTableModel extends AbstractTableModel {
 
 	@Override
 	public Object getValueAt(int rowIndex, int columnIndex) {
-		deleteAction = data.get(rowIndex);
+		deleteAction = getRow(rowIndex);
 		switch (columnIndex) {
 		case 0:
 			return deleteAction.isSelected();
 		case 1:
 			return deleteAction.toString();
 		case 2:
-			return FSFx.formatFileLength(deleteAction.getFile().length());
+			return FSFx.formatFileLength(deleteAction.getLength());
 		case 3:
-			return df.format(deleteAction.getFile().lastModified());
+			return df.format(deleteAction.getModified());
 		default:
 			break;
 		}
@@ -106,20 +113,24 @@ public class DeleteActionTableModel extends AbstractTableModel {
 
 	@Override
 	public void setValueAt(Object aValue, int rowIndex, int columnIndex) {
-		deleteAction = data.get(rowIndex);
+		deleteAction = getRow(rowIndex);
 		switch (columnIndex) {
 		case 0:
+			// the totals are only updated if the selection changes
+			if (deleteAction.isSelected() == (Boolean) aValue) {
+				break;
+			}
 			if ((Boolean) aValue) {
 				if (deleteAction.getLocation() == DeleteAction.del_destination) {
-					operationSummary.addRmDestination(deleteAction.getFile().length());
+					operationSummary.addRmDestination(deleteAction.getLength());
 				} else {
-					operationSummary.addRmSource(deleteAction.getFile().length());
+					operationSummary.addRmSource(deleteAction.getLength());
 				}
 			} else {
 				if (deleteAction.getLocation() == DeleteAction.del_destination) {
-					operationSummary.removeRmDestination(deleteAction.getFile().length());
+					operationSummary.removeRmDestination(deleteAction.getLength());
 				} else {
-					operationSummary.removeRmSource(deleteAction.getFile().length());
+					operationSummary.removeRmSource(deleteAction.getLength());
 				}
 			}
 			operationSummary.reCalc();
@@ -128,8 +139,4 @@ public class DeleteActionTableModel extends AbstractTableModel {
 			break;
 		}
 	}
-
-	public DeleteAction getRow(int row) {
-		return data.get(row);
-	}
 }
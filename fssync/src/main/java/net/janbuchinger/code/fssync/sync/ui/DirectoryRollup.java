@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync.ui;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Vector;
+
+import javax.swing.SwingWorker;
+import javax.swing.tree.DefaultMutableTreeNode;
+
+import net.janbuchinger.code.fssync.sync.CopyAction;
+import net.janbuchinger.code.fssync.sync.DeleteAction;
+import net.janbuchinger.code.mishmash.FSFx;
+
+/**
+ * The <code>DirectoryRollup</code> sums up the selected actions of an
+ * <code>OperationSummary</code> per directory. Every directory includes the
+ * actions of its subdirectories.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see DirectoryRollupPanel
+ */
+public final class DirectoryRollup {
+	/**
+	 * The name of the directory.
+	 */
+	private final String name;
+	/**
+	 * The subdirectories by name.
+	 */
+	private final HashMap<String, DirectoryRollup> children;
+	/**
+	 * The number of files to copy.
+	 */
+	private int copyCount;
+	/**
+	 * The number of bytes to copy.
+	 */
+	private long copyLength;
+	/**
+	 * The number of files to delete.
+	 */
+	private int deleteCount;
+	/**
+	 * The number of bytes to delete.
+	 */
+	private long deleteLength;
+
+	private DirectoryRollup(String name) {
+		this.name = name;
+		children = new HashMap<String, DirectoryRollup>();
+	}
+
+	/**
+	 * Sums up actions per directory. The actions are taken as they are, the
+	 * caller passes a snapshot of the selected actions because the selection may
+	 * change while the sums are calculated.
+	 * 
+	 * @param rootName
+	 *            The name to display for the root directory.
+	 * @param copyActions
+	 *            The selected copy actions.
+	 * @param deleteActions
+	 *            The selected delete actions.
+	 * @param sw
+	 *            The <code>SwingWorker</code> to check for cancellation.
+	 * @return The root directory or <code>null</code> if the worker was cancelled.
+	 */
+	public static DirectoryRollup build(String rootName, Vector<CopyAction> copyActions,
+			Vector<DeleteAction> deleteActions, SwingWorker<?, ?> sw) {
+		DirectoryRollup root = new DirectoryRollup(rootName);
+		CopyAction copyAction;
+		for (int i = 0; i < copyActions.size(); i++) {
+			copyAction = copyActions.get(i);
+			for (DirectoryRollup directory : root.getPath(copyAction.getRelativePath())) {
+				directory.copyCount++;
+				directory.copyLength += copyAction.getSourceLength();
+			}
+			if (sw.isCancelled()) {
+				return null;
+			}
+		}
+		DeleteAction deleteAction;
+		for (int i = 0; i < deleteActions.size(); i++) {
+			deleteAction = deleteActions.get(i);
+			for (DirectoryRollup directory : root.getPath(deleteAction.getRelativePath())) {
+				directory.deleteCount++;
+				directory.deleteLength += deleteAction.getLength();
+			}
+			if (sw.isCancelled()) {
+				return null;
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Gets the directories from this directory down to the parent directory of a
+	 * file, missing directories are created.
+	 * 
+	 * @param relativePath
+	 *            The relative path of the file.
+	 * @return The directories containing the file.
+	 */
+	private Vector<DirectoryRollup> getPath(String relativePath) {
+		Vector<DirectoryRollup> path = new Vector<DirectoryRollup>();
+		path.add(this);
+		DirectoryRollup directory = this;
+		DirectoryRollup child;
+		String childName;
+		int start = 0;
+		int end;
+		// the last path component is the file name
+		while ((end = relativePath.indexOf(File.separatorChar, start)) != -1) {
+			childName = relativePath.substring(start, end);
+			child = directory.children.get(childName);
+			if (child == null) {
+				child = new DirectoryRollup(childName);
+				directory.children.put(childName, child);
+			}
+			path.add(child);
+			directory = child;
+			start = end + 1;
+		}
+		return path;
+	}
+
+	/**
+	 * Creates the tree nodes of this directory and its subdirectories, the
+	 * subdirectories are sorted by the number of bytes to copy and delete, the
+	 * largest first.
+	 * 
+	 * @return The tree node of this directory.
+	 */
+	public DefaultMutableTreeNode toTreeNode() {
+		DefaultMutableTreeNode node = new DefaultMutableTreeNode(this);
+		Vector<DirectoryRollup> sorted = new Vector<DirectoryRollup>(children.values());
+		Collections.sort(sorted, new Comparator<DirectoryRollup>() {
+			@Override
+			public int compare(DirectoryRollup directory1, DirectoryRollup directory2) {
+				return Long.compare(directory2.copyLength + directory2.deleteLength,
+						directory1.copyLength + directory1.deleteLength);
+			}
+		});
+		for (DirectoryRollup child : sorted) {
+			node.add(child.toTreeNode());
+		}
+		return node;
+	}
+
+	public final String getName() {
+		return name;
+	}
+
+	public final int getCopyCount() {
+		return copyCount;
+	}
+
+	public final long getCopyLength() {
+		return copyLength;
+	}
+
+	public final int getDeleteCount() {
+		return deleteCount;
+	}
+
+	public final long getDeleteLength() {
+		return deleteLength;
+	}
+
+	@Override
+	public String toString() {
+		String s = name + " (kopieren: " + copyCount + " Dateien, " + FSFx.formatFileLength(copyLength);
+		if (deleteCount > 0) {
+			s += "; löschen: " + deleteCount + " Dateien, " + FSFx.formatFileLength(deleteLength);
+		}
+		return s + ")";
+	}
+}
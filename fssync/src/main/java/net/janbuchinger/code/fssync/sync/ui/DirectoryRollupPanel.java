@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync.ui;
+
+import java.awt.BorderLayout;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTree;
+import javax.swing.SwingWorker;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+
+import net.janbuchinger.code.fssync.sync.CopyAction;
+import net.janbuchinger.code.fssync.sync.DeleteAction;
+import net.janbuchinger.code.fssync.sync.OperationSummary;
+import net.janbuchinger.code.mishmash.ui.UIFx;
+
+/**
+ * The <code>DirectoryRollupPanel</code> shows the selected actions of an
+ * <code>OperationSummary</code> summed up per directory as a tree.
+ * <p>
+ * The sums are calculated by a <code>SwingWorker</code> so that large summaries
+ * do not block the user interface.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see DirectoryRollup
+ */
+@SuppressWarnings("serial")
+public class DirectoryRollupPanel extends JPanel {
+
+	private final OperationSummary operationSummary;
+
+	private final DefaultTreeModel treeModel;
+	private final JTree tree;
+	private final JLabel lbStatus;
+
+	/**
+	 * The currently running calculation or <code>null</code>.
+	 */
+	private SwingWorker<DirectoryRollup, Void> worker;
+
+	public DirectoryRollupPanel(OperationSummary operationSummary) {
+		super(new BorderLayout());
+		this.operationSummary = operationSummary;
+
+		treeModel = new DefaultTreeModel(new DefaultMutableTreeNode());
+		tree = new JTree(treeModel);
+		lbStatus = new JLabel(" ");
+
+		add(lbStatus, BorderLayout.NORTH);
+		add(UIFx.initScrollPane(tree, 15), BorderLayout.CENTER);
+
+		worker = null;
+	}
+
+	/**
+	 * Recalculates the directory sums from the current selection. A calculation
+	 * that is still running is cancelled.
+	 * <p>
+	 * Must be called on the event dispatch thread, the selection is taken here
+	 * before the calculation starts.
+	 */
+	public void refresh() {
+		if (worker != null) {
+			worker.cancel(false);
+		}
+		lbStatus.setText("Berechne...");
+		// the selection can change in the table while the worker runs
+		final Vector<CopyAction> copyActions = new Vector<CopyAction>();
+		for (CopyAction copyAction : operationSummary.getCopyActions()) {
+			if (copyAction.isSelected()) {
+				copyActions.add(copyAction);
+			}
+		}
+		final Vector<DeleteAction> deleteActions = new Vector<DeleteAction>();
+		for (DeleteAction deleteAction : operationSummary.getDeleteActions()) {
+			if (deleteAction.isSelected()) {
+				deleteActions.add(deleteAction);
+			}
+		}
+		worker = new SwingWorker<DirectoryRollup, Void>() {
+			@Override
+			protected DirectoryRollup doInBackground() throws Exception {
+				return DirectoryRollup.build("/", copyActions, deleteActions, this);
+			}
+
+			@Override
+			protected void done() {
+				if (isCancelled()) {
+					return;
+				}
+				try {
+					treeModel.setRoot(get().toTreeNode());
+					tree.expandRow(0);
+					lbStatus.setText(" ");
+				} catch (InterruptedException | ExecutionException e) {
+					e.printStackTrace();
+					// do not leave the status at "Berechne..."
+					lbStatus.setText("Fehler beim Berechnen: " + e.getMessage());
+				}
+				worker = null;
+			}
+		};
+		worker.execute();
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync.ui;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Vector;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The <code>LogWriter</code> streams the complete log of a synchronization
+ * process to temporary files on a background thread.
+ * <p>
+ * A new file is started whenever the current file exceeds the maximum length.
+ * Saving the log moves the files into the log files directory instead of
+ * writing the whole log again, files that are not saved are deleted by
+ * <code>discard()</code>.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see BoundedListModel
+ */
+public final class LogWriter implements Runnable {
+	/**
+	 * Marks the end of the log in the queue, compared by identity.
+	 */
+	private final static String END = new String("end");
+
+	/**
+	 * The lines waiting to be written.
+	 */
+	private final LinkedBlockingQueue<String> queue;
+	/**
+	 * The maximum length of a file in bytes before the next file is started.
+	 */
+	private final long maxLength;
+	/**
+	 * The files written so far.
+	 */
+	private final Vector<File> files;
+	/**
+	 * The writing thread.
+	 */
+	private final Thread thread;
+
+	/**
+	 * Set when no more lines are accepted.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Constructs and starts a new <code>LogWriter</code>.
+	 * 
+	 * @param maxLength
+	 *            The maximum length of a file in bytes.
+	 */
+	public LogWriter(long maxLength) {
+		this.maxLength = maxLength;
+		queue = new LinkedBlockingQueue<String>();
+		files = new Vector<File>();
+		closed = false;
+		thread = new Thread(this, "FSSync Log");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queues a line for writing, the line is ignored after <code>close()</code>.
+	 * 
+	 * @param line
+	 *            The line to write.
+	 */
+	public void write(String line) {
+		if (!closed) {
+			queue.offer(line);
+		}
+	}
+
+	@Override
+	public void run() {
+		BufferedWriter out = null;
+		long length = 0;
+		String line;
+		try {
+			while ((line = queue.take()) != END) {
+				try {
+					if (out == null || length > maxLength) {
+						if (out != null) {
+							out.close();
+						}
+						File file = File.createTempFile("FSSync-Log-", ".txt");
+						file.deleteOnExit();
+						files.add(file);
+						out = new BufferedWriter(
+								new OutputStreamWriter(new FileOutputStream(file), Charset.defaultCharset()));
+						length = 0;
+					}
+					out.write(line);
+					out.write("\r\n");
+					length += line.length() + 2;
+					// keep the file current while the process is idle
+					if (queue.isEmpty()) {
+						out.flush();
+					}
+				} catch (IOException e) {
+					e.printStackTrace();
+					// the lines are dropped rather than blocking the process
+					out = null;
+				}
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the remaining lines and waits until the files are closed.
+	 */
+	public void close() {
+		if (!closed) {
+			closed = true;
+			queue.offer(END);
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Moves the files into a directory, the second and following files get a
+	 * consecutive number. The log must be closed.
+	 * 
+	 * @param dir
+	 *            The log files directory.
+	 * @param name
+	 *            The file name without the extension.
+	 * @return The first file or <code>null</code> if nothing was written.
+	 * @throws IOException
+	 *             If a file could not be moved.
+	 */
+	public File save(File dir, String name) throws IOException {
+		File first = null;
+		File target;
+		dir.mkdirs();
+		for (int i = 0; i < files.size(); i++) {
+			target = new File(dir, name + (i == 0 ? "" : "-" + (i + 1)) + ".txt");
+			// moved across file stores by copying
+			Files.move(files.get(i).toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			if (first == null) {
+				first = target;
+			}
+		}
+		files.clear();
+		return first;
+	}
+
+	/**
+	 * Deletes the files that were not saved.
+	 */
+	public void discard() {
+		close();
+		for (File file : files) {
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+		files.clear();
+	}
+}
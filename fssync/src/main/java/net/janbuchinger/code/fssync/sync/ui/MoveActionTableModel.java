@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync.ui;
+
+import java.util.Vector;
+
+import javax.swing.table.AbstractTableModel;
+
+import net.janbuchinger.code.fssync.sync.DirectoryMoveAction;
+import net.janbuchinger.code.fssync.sync.MoveAction;
+import net.janbuchinger.code.fssync.sync.OperationSummary;
+import net.janbuchinger.code.mishmash.FSFx;
+
+/**
+ * The <code>MoveActionTableModel</code> shows the detected moves of an
+ * <code>OperationSummary</code>, the moved directories first and then the moved
+ * files.
+ * <p>
+ * A move that is not selected is carried out as a copy of the new file and a
+ * deletion of the old file, the totals of the summary are updated accordingly.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see OperationSummary#addMoveFallback(long, int)
+ */
+@SuppressWarnings("serial")
+public class MoveActionTableModel extends AbstractTableModel {
+
+	private final Vector<DirectoryMoveAction> directoryMoveActions;
+	private final Vector<MoveAction> moveActions;
+	private final OperationSummary operationSummary;
+
+	public MoveActionTableModel(OperationSummary operationSummary) {
+		this.operationSummary = operationSummary;
+		directoryMoveActions = operationSummary.getDirectoryMoveActions();
+		moveActions = operationSummary.getMoveActions();
+	}
+
+	@Override
+	public int getRowCount() {
+		return directoryMoveActions.size() + moveActions.size();
+	}
+
+	@Override
+	public int getColumnCount() {
+		return 4;
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		switch (column) {
+		case 0:
+			return "";
+		case 1:
+			return "Aktion";
+		case 2:
+			return "Dateien";
+		case 3:
+			return "Grösse";
+		default:
+			return "";
+		}
+	}
+
+	@Override
+	public Class<?> getColumnClass(int columnIndex) {
+		switch (columnIndex) {
+		case 0:
+			return Boolean.class;
+		default:
+			return String.class;
+		}
+	}
+
+	@Override
+	public Object getValueAt(int rowIndex, int columnIndex) {
+		if (rowIndex < directoryMoveActions.size()) {
+			DirectoryMoveAction directoryMoveAction = directoryMoveActions.get(rowIndex);
+			switch (columnIndex) {
+			case 0:
+				return directoryMoveAction.isSelected();
+			case 1:
+				return directoryMoveAction.toString();
+			case 2:
+				return String.valueOf(directoryMoveAction.getMoveActions().size());
+			case 3:
+				return FSFx.formatFileLength(directoryMoveAction.getLength());
+			default:
+				return null;
+			}
+		}
+		MoveAction moveAction = moveActions.get(rowIndex - directoryMoveActions.size());
+		switch (columnIndex) {
+		case 0:
+			return moveAction.isSelected();
+		case 1:
+			return moveAction.toString();
+		case 2:
+			return "1";
+		case 3:
+			return FSFx.formatFileLength(moveAction.getLength());
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public boolean isCellEditable(int rowIndex, int columnIndex) {
+		return columnIndex == 0;
+	}
+
+	@Override
+	public void setValueAt(Object aValue, int rowIndex, int columnIndex) {
+		if (columnIndex != 0) {
+			return;
+		}
+		boolean selected = (Boolean) aValue;
+		// the totals are only updated if the selection changes
+		if (rowIndex < directoryMoveActions.size()) {
+			DirectoryMoveAction directoryMoveAction = directoryMoveActions.get(rowIndex);
+			if (directoryMoveAction.isSelected() == selected) {
+				return;
+			}
+			if (selected) {
+				operationSummary.removeMoveFallback(directoryMoveAction.getLength(),
+						directoryMoveAction.getMoveActions().size());
+			} else {
+				operationSummary.addMoveFallback(directoryMoveAction.getLength(),
+						directoryMoveAction.getMoveActions().size());
+			}
+			directoryMoveAction.setSelected(selected);
+		} else {
+			MoveAction moveAction = moveActions.get(rowIndex - directoryMoveActions.size());
+			if (moveAction.isSelected() == selected) {
+				return;
+			}
+			if (selected) {
+				operationSummary.removeMoveFallback(moveAction.getLength(), 1);
+			} else {
+				operationSummary.addMoveFallback(moveAction.getLength(), 1);
+			}
+			moveAction.setSelected(selected);
+		}
+		operationSummary.reCalc();
+		fireTableRowsUpdated(rowIndex, rowIndex);
+	}
+}
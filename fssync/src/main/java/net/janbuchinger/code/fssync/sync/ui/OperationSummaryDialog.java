@@ -21,11 +21,13 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTabbedPane;
 import javax.swing.JTable;
+import javax.swing.JTextField;
 import javax.swing.JToolBar;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
@@ -40,12 +42,18 @@ public final class OperationSummaryDialog extends JDialog implements ActionListe
 
 	private final JButton btOk, btCancel, btPrioSource, btPrioDestination, btPrioNew, btPrioOld, btSelectAll,
 			btSelectNone, btSelectSource, btSelectDestination;
-	private final JTable tbCopy, tbDelete;
+	private final JTable tbCopy, tbDelete, tbMove;
 	private final CopyActionTableModel tmCopy;
 	private final DeleteActionTableModel tmDelete;
+	private final MoveActionTableModel tmMove;
 	private final JTable tbCorruptSource, tbCorruptDestination, tbLost;
 	private final FileTableModel tmCorruptSource, tmCorruptDestination, tmLost;
 
+	private final JTextField tfCopyFilter, tfDeleteFilter;
+	private final JComboBox<String> cbCopyShow, cbCopySort, cbDeleteSort;
+
+	private final DirectoryRollupPanel directoryRollupPanel;
+
 	private final JTabbedPane tpActions;
 
 	private boolean approved;
@@ -82,7 +90,7 @@ public final class OperationSummaryDialog extends JDialog implements ActionListe
 
 		JToolBar toolBarCopy = new JToolBar();
 		toolBarCopy.setFloatable(false);
-		toolBarCopy.add(new JLabel("Priorität" + " "));
+		toolBarCopy.add(new JLabel("Priorität "));
 		toolBarCopy.add(btPrioSource);
 		toolBarCopy.add(btPrioDestination);
 		toolBarCopy.add(btPrioNew);
@@ -102,7 +110,7 @@ public final class OperationSummaryDialog extends JDialog implements ActionListe
 
 		JToolBar toolBarSelect = new JToolBar();
 		toolBarSelect.setFloatable(false);
-		toolBarSelect.add(new JLabel("Auswählen" + " "));
+		toolBarSelect.add(new JLabel("Auswählen "));
 		toolBarSelect.add(btSelectAll);
 		toolBarSelect.add(btSelectNone);
 		if (isBiDirectional && !operationSummary.isRestore()) {
@@ -110,8 +118,31 @@ public final class OperationSummaryDialog extends JDialog implements ActionListe
 			toolBarSelect.add(btSelectDestination);
 		}
 
+		// filters and sort orders only change the rows shown, not the actions
+		tfCopyFilter = new JTextField(20);
+		tfCopyFilter.addActionListener(this);
+
+		cbCopyShow = new JComboBox<String>(new String[] { "Alle", ">>", "<<", "Konflikte" });
+		cbCopyShow.addActionListener(this);
+
+		cbCopySort = initSortComboBox();
+
+		JToolBar toolBarCopyView = new JToolBar();
+		toolBarCopyView.setFloatable(false);
+		toolBarCopyView.add(new JLabel("Filter "));
+		toolBarCopyView.add(tfCopyFilter);
+		if (isBiDirectional && !operationSummary.isRestore()) {
+			toolBarCopyView.add(cbCopyShow);
+		}
+		toolBarCopyView.add(new JLabel(" Sortieren "));
+		toolBarCopyView.add(cbCopySort);
+
+		JPanel pnToolBarsCopy = new JPanel(new BorderLayout());
+		pnToolBarsCopy.add(toolBarSelect, BorderLayout.NORTH);
+		pnToolBarsCopy.add(toolBarCopyView, BorderLayout.SOUTH);
+
 		JPanel pnTbCopyA = new JPanel(new BorderLayout());
-		pnTbCopyA.add(toolBarSelect, BorderLayout.NORTH);
+		pnTbCopyA.add(pnToolBarsCopy, BorderLayout.NORTH);
 
 		JPanel pnTbCopyB = new JPanel(new BorderLayout());
 		if (operationSummary.getCopyActionsDuplicates().size() > 0)
@@ -125,6 +156,28 @@ public final class OperationSummaryDialog extends JDialog implements ActionListe
 		tbDelete.setDefaultRenderer(String.class,
 				new DeleteActionTableCellRenderer(operationSummary.isRestore()));
 
+		tfDeleteFilter = new JTextField(20);
+		tfDeleteFilter.addActionListener(this);
+
+		cbDeleteSort = initSortComboBox();
+
+		JToolBar toolBarDeleteView = new JToolBar();
+		toolBarDeleteView.setFloatable(false);
+		toolBarDeleteView.add(new JLabel("Filter "));
+		toolBarDeleteView.add(tfDeleteFilter);
+		toolBarDeleteView.add(new JLabel(" Sortieren "));
+		toolBarDeleteView.add(cbDeleteSort);
+
+		JPanel pnTbDelete = new JPanel(new BorderLayout());
+		pnTbDelete.add(toolBarDeleteView, BorderLayout.NORTH);
+		pnTbDelete.add(UIFx.initScrollPane(tbDelete, 15), BorderLayout.CENTER);
+
+		// unselected moves are copied and deleted instead
+		tmMove = new MoveActionTableModel(operationSummary);
+		tbMove = new JTable(tmMove);
+
+		directoryRollupPanel = new DirectoryRollupPanel(operationSummary);
+
 		tmCorruptSource = new FileTableModel(operationSummary.getCorruptFilesSource());
 		tbCorruptSource = new JTable(tmCorruptSource);
 
@@ -149,7 +202,11 @@ public final class OperationSummaryDialog extends JDialog implements ActionListe
 		if (operationSummary.getCopyActions().size() > 0)
 			tpActions.add("Kopieren", pnTbCopyA);
 		if (operationSummary.getDeleteActions().size() > 0)
-			tpActions.add("Löschen", UIFx.initScrollPane(tbDelete, 15));
+			tpActions.add("Löschen", pnTbDelete);
+		if (tmMove.getRowCount() > 0)
+			tpActions.add("Verschieben", UIFx.initScrollPane(tbMove, 15));
+		if (operationSummary.getCopyActions().size() + operationSummary.getDeleteActions().size() > 0)
+			tpActions.add("Verzeichnisse", directoryRollupPanel);
 
 		btOk = new JButton("Ok");
 		btOk.addActionListener(this);
@@ -180,6 +237,12 @@ public final class OperationSummaryDialog extends JDialog implements ActionListe
 		tbDelete.getColumnModel().getColumn(2).setPreferredWidth(100);
 		tbDelete.getColumnModel().getColumn(3).setPreferredWidth(150);
 
+		tbMove.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+		tbMove.getColumnModel().getColumn(0).setPreferredWidth(1);
+		tbMove.getColumnModel().getColumn(1).setPreferredWidth((int) (getWidth() * 0.7));
+		tbMove.getColumnModel().getColumn(2).setPreferredWidth(100);
+		tbMove.getColumnModel().getColumn(3).setPreferredWidth(150);
+
 		tbCorruptSource.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
 		tbCorruptSource.getColumnModel().getColumn(0).setPreferredWidth(250);
 		tbCorruptSource.getColumnModel().getColumn(1).setPreferredWidth((int) (getWidth() * 0.5));
@@ -234,9 +297,34 @@ public final class OperationSummaryDialog extends JDialog implements ActionListe
 			tmCopy.select(Operation.PRIORITY_NEW);
 		} else if (e.getSource() == btPrioOld) {
 			tmCopy.select(Operation.PRIORITY_OLD);
+		} else if (e.getSource() == tfCopyFilter) {
+			tmCopy.setPathFilter(tfCopyFilter.getText());
+		} else if (e.getSource() == cbCopyShow) {
+			tmCopy.setShow(cbCopyShow.getSelectedIndex());
+		} else if (e.getSource() == cbCopySort) {
+			tmCopy.setSortBy(cbCopySort.getSelectedIndex());
+		} else if (e.getSource() == tfDeleteFilter) {
+			tmDelete.setPathFilter(tfDeleteFilter.getText());
+		} else if (e.getSource() == cbDeleteSort) {
+			tmDelete.setSortBy(cbDeleteSort.getSelectedIndex());
 		}
 	}
 
+	/**
+	 * Creates a combo box for choosing the sort order of an action table, the
+	 * index of the item is the sort order.
+	 * 
+	 * @return The new combo box.
+	 * 
+	 * @see ActionTableModel#setSortBy(int)
+	 */
+	private JComboBox<String> initSortComboBox() {
+		JComboBox<String> cbSort = new JComboBox<String>(
+				new String[] { "Analyse", "Pfad", "Grösse", "Geändert" });
+		cbSort.addActionListener(this);
+		return cbSort;
+	}
+
 	public boolean isApproved() {
 		return approved;
 	}
@@ -245,6 +333,8 @@ public final class OperationSummaryDialog extends JDialog implements ActionListe
 	public void stateChanged(ChangeEvent e) {
 		if (tpActions.getSelectedIndex() == 0) {
 			overviewPanel.refresh();
+		} else if (tpActions.getSelectedComponent() == directoryRollupPanel) {
+			directoryRollupPanel.refresh();
 		}
 	}
 
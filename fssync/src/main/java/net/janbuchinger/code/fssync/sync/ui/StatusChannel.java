@@ -0,0 +1,256 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync.ui;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import net.janbuchinger.code.mishmash.FSFx;
+
+/**
+ * The <code>StatusChannel</code> passes status messages, the status text and
+ * control events from a process to the
+ * <code>SynchronizationProcessDialog</code> without locking.
+ * <p>
+ * The process only appends to a concurrent queue or replaces the current status.
+ * A <code>Timer</code> on the EDT delivers everything that arrived since the
+ * last tick at once:
+ * <ul>
+ * <li>Status messages and control events are delivered in the order they were
+ * posted, consecutive messages are passed to the dialog as one batch.
+ * <li>Only the latest status text is shown.
+ * <li>A transfer status is formatted from its byte counter on each tick, so
+ * copying files only increments the counter.
+ * </ul>
+ * The channel is closed by the first terminal event. Events that are posted
+ * afterwards are delivered by <code>SwingUtilities.invokeLater()</code>.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see SynchronizationProcessDialog#getStatusChannel()
+ */
+public final class StatusChannel implements ActionListener {
+	/**
+	 * The time between two deliveries in milliseconds.
+	 */
+	private final static int tick = 100;
+
+	/**
+	 * The dialog to deliver to.
+	 */
+	private final SynchronizationProcessDialog spd;
+	/**
+	 * The status messages and control events in the order they were posted.
+	 */
+	private final ConcurrentLinkedQueue<Object> events;
+	/**
+	 * The latest status, a <code>String</code> or a <code>Transfer</code>.
+	 */
+	private final AtomicReference<Object> status;
+	/**
+	 * The status text currently shown, only accessed on the EDT.
+	 */
+	private String statusShown;
+	/**
+	 * The timer delivering the events.
+	 */
+	private final Timer timer;
+
+	/**
+	 * Set when a terminal event was delivered.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Constructs and starts a new <code>StatusChannel</code>, must be called on
+	 * the EDT.
+	 * 
+	 * @param spd
+	 *            The dialog to deliver to.
+	 */
+	StatusChannel(SynchronizationProcessDialog spd) {
+		this.spd = spd;
+		events = new ConcurrentLinkedQueue<Object>();
+		status = new AtomicReference<Object>();
+		statusShown = null;
+		closed = false;
+		timer = new Timer(tick, this);
+		timer.start();
+	}
+
+	/**
+	 * Posts a status message.
+	 * 
+	 * @param message
+	 *            The message to show.
+	 * @param verbose
+	 *            <code>true</code> if the message is only shown in verbose mode.
+	 */
+	public void message(String message, boolean verbose) {
+		offer(new StatusMessage(message, verbose));
+	}
+
+	/**
+	 * Replaces the status text, statuses set before the next tick are never
+	 * shown.
+	 * 
+	 * @param text
+	 *            The status text.
+	 */
+	public void setStatus(String text) {
+		status.set(text);
+	}
+
+	/**
+	 * Shows the transfer speed of a counter as status until the status is set
+	 * again.
+	 * 
+	 * @param label
+	 *            The text in front of the transfer speed.
+	 * @param start
+	 *            The start time of the transfer.
+	 * @param transferred
+	 *            The number of bytes transferred since the start.
+	 */
+	public void setTransfer(String label, long start, AtomicLong transferred) {
+		status.set(new Transfer(label, start, transferred));
+	}
+
+	/**
+	 * Posts a control event.
+	 * 
+	 * @param event
+	 *            The event to run on the EDT after the messages posted before.
+	 */
+	public void post(Runnable event) {
+		offer(event);
+	}
+
+	/**
+	 * Posts the terminal event that finishes or cancels the process. The channel
+	 * is closed after it was delivered.
+	 * 
+	 * @param event
+	 *            The terminal event.
+	 */
+	public void finish(Runnable event) {
+		offer(new Terminal(event));
+	}
+
+	/**
+	 * Queues an event. If the channel is closed the delivery is requested from
+	 * the EDT, the event is queued first so that it can not be missed by the
+	 * delivery of a closing channel.
+	 * 
+	 * @param event
+	 *            The status message or control event.
+	 */
+	private void offer(Object event) {
+		events.offer(event);
+		if (closed) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					deliver();
+				}
+			});
+		}
+	}
+
+	@Override
+	public void actionPerformed(ActionEvent e) {
+		// the status first, a terminal event sets the final status text
+		Object current = status.get();
+		String text = null;
+		if (current instanceof Transfer) {
+			Transfer transfer = (Transfer) current;
+			text = transfer.label
+					.concat(FSFx.formatTransferSpeed(transfer.start, transfer.transferred.get()));
+		} else if (current != null) {
+			text = (String) current;
+		}
+		if (text != null && !text.equals(statusShown)) {
+			spd.setProcessStatusText(text);
+			statusShown = text;
+		}
+		deliver();
+	}
+
+	/**
+	 * Delivers the queued status messages and control events on the EDT.
+	 */
+	private void deliver() {
+		Vector<StatusMessage> messages = new Vector<StatusMessage>();
+		Object event;
+		while ((event = events.poll()) != null) {
+			if (event instanceof StatusMessage) {
+				messages.add((StatusMessage) event);
+			} else {
+				if (messages.size() > 0) {
+					spd.passMessages(messages);
+					messages = new Vector<StatusMessage>();
+				}
+				((Runnable) event).run();
+				if (event instanceof Terminal && !closed) {
+					// no more status updates after the final status
+					closed = true;
+					timer.stop();
+				}
+			}
+		}
+		if (messages.size() > 0) {
+			spd.passMessages(messages);
+		}
+	}
+
+	/**
+	 * A transfer status.
+	 */
+	private final static class Transfer {
+		private final String label;
+		private final long start;
+		private final AtomicLong transferred;
+
+		private Transfer(String label, long start, AtomicLong transferred) {
+			this.label = label;
+			this.start = start;
+			this.transferred = transferred;
+		}
+	}
+
+	/**
+	 * A terminal event.
+	 */
+	private final static class Terminal implements Runnable {
+		private final Runnable event;
+
+		private Terminal(Runnable event) {
+			this.event = event;
+		}
+
+		@Override
+		public void run() {
+			event.run();
+		}
+	}
+}
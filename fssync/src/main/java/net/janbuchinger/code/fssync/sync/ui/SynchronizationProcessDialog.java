@@ -24,10 +24,12 @@ import java.awt.GridBagLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Vector;
 
 import javax.swing.ButtonGroup;
@@ -47,14 +49,11 @@ import javax.swing.JScrollPane;
 import javax.swing.JSeparator;
 import javax.swing.SwingWorker;
 
-import org.apache.commons.io.FileUtils;
-
 import net.janbuchinger.code.fssync.FSSync;
 import net.janbuchinger.code.fssync.Operation;
 import net.janbuchinger.code.fssync.Settings;
 import net.janbuchinger.code.fssync.sync.OperationSummary;
 import net.janbuchinger.code.mishmash.ui.UIFx;
-import net.janbuchinger.code.mishmash.ui.models.StringListModel;
 
 @SuppressWarnings("serial")
 public final class SynchronizationProcessDialog extends JDialog implements ActionListener {
@@ -62,14 +61,24 @@ public final class SynchronizationProcessDialog extends JDialog implements Actio
 	private final JLabel processStatus;
 	private final JProgressBar progressBar;
 	private final JList<String> statusUpdate;
-	private final StringListModel lmStatusUpdate;
+	private final BoundedListModel lmStatusUpdate;
 	private final JButton btCancel;
 	private final JMenuItem miSaveLog;
 	private boolean finished;
 	private final Settings settings;
 	private Exception exception;
 
-	private final Vector<String> log;
+	/**
+	 * The number of status messages to display
+	 */
+	private final static int status_lines = 10000;
+	/**
+	 * The maximum length of a log file in bytes before the next file is started
+	 */
+	private final static long log_file_length = 16 * 1024 * 1024;
+
+	private final LogWriter logWriter;
+	private final StatusChannel statusChannel;
 	private final boolean verbose;
 
 	private final SwingWorker<Void, Void> sp;
@@ -86,7 +95,7 @@ public final class SynchronizationProcessDialog extends JDialog implements Actio
 
 		this.verbose = settings.isVerbose();
 
-		log = new Vector<String>();
+		logWriter = new LogWriter(log_file_length);
 
 		saveLog = settings.isAlwaysSaveLog();
 
@@ -118,7 +127,7 @@ public final class SynchronizationProcessDialog extends JDialog implements Actio
 		pnProgressStatus.add(processStatus);
 		pnProgressStatus.add(progressBar);
 
-		lmStatusUpdate = new StringListModel();
+		lmStatusUpdate = new BoundedListModel(status_lines);
 		statusUpdate = new JList<String>(lmStatusUpdate);
 
 		btCancel = new JButton("Abbrechen");
@@ -137,12 +146,33 @@ public final class SynchronizationProcessDialog extends JDialog implements Actio
 		setContentPane(pnContent);
 
 		setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+		addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing(WindowEvent e) {
+				if (finished) {
+					logWriter.discard();
+				}
+			}
+		});
 
 		UIFx.sizeAndCenter(this, 0.8, 0.8);
+
+		// all methods of this dialog run on the EDT, the process posts to the channel
+		statusChannel = new StatusChannel(this);
+	}
+
+	/**
+	 * Gets the channel for passing status messages, the status text and control
+	 * events from the process to this dialog.
+	 * 
+	 * @return The <code>StatusChannel</code> of this dialog.
+	 */
+	public final StatusChannel getStatusChannel() {
+		return statusChannel;
 	}
 
 	@Override
-	public synchronized final void actionPerformed(ActionEvent e) {
+	public final void actionPerformed(ActionEvent e) {
 		if (e.getSource() == btCancel) {
 			if (!finished) {
 				sp.cancel(false);
@@ -150,6 +180,8 @@ public final class SynchronizationProcessDialog extends JDialog implements Actio
 				setProcessStatusText("Prozess wird Abgebrochen...");
 				addStatus("Prozess wird so bald wie möglich Beendet, bitte um einen Moment Geduld...");
 			} else {
+				// the log can not be saved any more
+				logWriter.discard();
 				setVisible(false);
 			}
 		} else if (e.getSource() == miSaveLog) {
@@ -157,17 +189,15 @@ public final class SynchronizationProcessDialog extends JDialog implements Actio
 		}
 	}
 
-	public synchronized final void saveLog() {
+	public final void saveLog() {
 		if (finished) {
-			File file = new File(settings.getLogFilesDir(),
-					"FSSync-Log-" + sdfLog.format(System.currentTimeMillis()) + ".txt");
-			StringBuilder data = new StringBuilder();
-			for (String status : log) {
-				data.append(status.concat("\r\n"));
-			}
 			try {
-				FileUtils.writeStringToFile(file, data.toString(), Charset.defaultCharset());
-				addStatus("Logdatei Gespeichert: " + file.getPath());
+				// the log was streamed to temporary files during the process
+				File file = logWriter.save(new File(settings.getLogFilesDir()),
+						"FSSync-Log-" + sdfLog.format(System.currentTimeMillis()));
+				if (file != null) {
+					addStatus("Logdatei Gespeichert: " + file.getPath());
+				}
 			} catch (IOException e1) {
 				e1.printStackTrace();
 			}
@@ -187,20 +217,21 @@ public final class SynchronizationProcessDialog extends JDialog implements Actio
 		}
 	}
 
-	public synchronized final void setProcessStatusText(String text) {
+	public final void setProcessStatusText(String text) {
 		processStatus.setText(text);
 	}
 
-	public synchronized final void setProgress(int progress) {
+	public final void setProgress(int progress) {
 		if (!finished) {
 			progressBar.setValue(progress);
 		}
 	}
 
-	public synchronized final void setFinished(String finalStatus) {
+	public final void setFinished(String finalStatus) {
 		setDeterminate(true);
 		progressBar.setValue(100);
 		addStatus(finalStatus);
+		logWriter.close();
 		finished = true;
 		if (saveLog) {
 			saveLog();
@@ -215,9 +246,10 @@ public final class SynchronizationProcessDialog extends JDialog implements Actio
 		setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
 	}
 
-	public synchronized final void setCancelled(String finalStatus) {
+	public final void setCancelled(String finalStatus) {
 		setDeterminate(true);
 		addStatus(finalStatus);
+		logWriter.close();
 		finished = true;
 		if (saveLog) {
 			saveLog();
@@ -232,7 +264,7 @@ public final class SynchronizationProcessDialog extends JDialog implements Actio
 		setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
 	}
 
-	public synchronized final void setDeterminate(boolean flag) {
+	public final void setDeterminate(boolean flag) {
 		if (!finished) {
 			progressBar.setIndeterminate(!flag);
 		}
@@ -243,7 +275,7 @@ public final class SynchronizationProcessDialog extends JDialog implements Actio
 	public static final int foreign_ignore = 2;
 	public static final int foreign_cancelled = 3;
 
-	public synchronized final int requestForeignFileHandling() {
+	public final int requestForeignFileHandling() {
 		Color green = Color.GREEN.darker();
 		Color red = Color.RED.darker();
 		JRadioButton btIntegrate = new JRadioButton("Änderungen Holen (Bidirektional Synchronisieren)");
@@ -298,7 +330,7 @@ public final class SynchronizationProcessDialog extends JDialog implements Actio
 		}
 	}
 
-	public synchronized final boolean requestContinueRestore() {
+	public final boolean requestContinueRestore() {
 		JRadioButton btRestore = new JRadioButton("Wiedeherstellung Fortsetzen");
 		JRadioButton btAbort = new JRadioButton("Operation Abbrechen");
 		JLabel lbInfo = new JLabel("Es wurden fehlerhafte Dateien gefunden!");
@@ -314,7 +346,7 @@ public final class SynchronizationProcessDialog extends JDialog implements Actio
 		return btRestore.isSelected();
 	}
 
-	public synchronized final int requestSourceForRestore(Vector<Operation> sources) {
+	public final int requestSourceForRestore(Vector<Operation> sources) {
 		Vector<JRadioButton> rbx = new Vector<JRadioButton>();
 		JLabel lbInfo = new JLabel("Es gibt mehrere Quellen zum Wiederherstellen, bitte eine wählen:");
 		ButtonGroup bg = new ButtonGroup();
@@ -356,7 +388,7 @@ public final class SynchronizationProcessDialog extends JDialog implements Actio
 		return selected;
 	}
 
-	public synchronized final boolean retryOnOutOfMemoryWarning(String storage, long updateSize) {
+	public final boolean retryOnOutOfMemoryWarning(String storage, long updateSize) {
 		JLabel lbInfo = new JLabel("Kein Speicherplatz mehr auf dem " + storage + "! Es werden "
 				+ (updateSize / 1024 / 1024) + " MB benötigt.");
 		JRadioButton btRetry = new JRadioButton("Erneut Versuchen");
@@ -374,17 +406,17 @@ public final class SynchronizationProcessDialog extends JDialog implements Actio
 		return btRetry.isSelected();
 	}
 
-	public synchronized final void setException(Exception exception) {
+	public final void setException(Exception exception) {
 		this.exception = exception;
 	}
 
-	public synchronized final void addStatus(String status) {
+	public final void addStatus(String status) {
 		lmStatusUpdate.addElement(status);
-		log.add(status);
+		logWriter.write(status);
 		statusUpdate.ensureIndexIsVisible(lmStatusUpdate.getSize() - 1);
 	}
 
-	public synchronized boolean approveSummary(OperationSummary operationSummary, boolean isBiDirectional,
+	public boolean approveSummary(OperationSummary operationSummary, boolean isBiDirectional,
 			int priorityOnConflict) {
 		OperationSummaryDialog osd = new OperationSummaryDialog(this, operationSummary, isBiDirectional);
 		osd.getModel().select(priorityOnConflict);
@@ -419,12 +451,15 @@ public final class SynchronizationProcessDialog extends JDialog implements Actio
 	}
 
 	public void passMessages(Vector<StatusMessage> messages) {
+		ArrayList<String> display = new ArrayList<String>(messages.size());
 		for (StatusMessage message : messages) {
 			if (!message.isVerbose() || (verbose && message.isVerbose())) {
-				lmStatusUpdate.addElement(message.getMessage());
+				display.add(message.getMessage());
 			}
-			log.add(message.getMessage());
+			logWriter.write(message.getMessage());
 		}
+		// the listeners are notified once per batch
+		lmStatusUpdate.addElements(display);
 		statusUpdate.ensureIndexIsVisible(lmStatusUpdate.getSize() - 1);
 	}
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+/**
+ * Tests the detection of rotational disks in <code>BlockDevices</code>.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see BlockDevices
+ */
+public class BlockDevicesTest {
+
+	@Test
+	public void networkShareIsNotRotational() {
+		assertFalse(BlockDevices.readRotational("host:/export"));
+		assertFalse(BlockDevices.readRotational("//host/share"));
+	}
+
+	@Test
+	public void otherNamesAreNotRotational() {
+		assertFalse(BlockDevices.readRotational(null));
+		assertFalse(BlockDevices.readRotational("tmpfs"));
+		assertFalse(BlockDevices.readRotational("C:"));
+	}
+
+	@Test
+	public void unreadableDeviceIsNotRotational() {
+		assertFalse(BlockDevices.readRotational("/dev/fssync-no-such-device"));
+	}
+
+	@Test
+	public void unescapeMountPoint() {
+		assertEquals("/mnt/my disk", BlockDevices.unescapeMountPoint("/mnt/my\\040disk"));
+		assertEquals("/mnt/a\\b", BlockDevices.unescapeMountPoint("/mnt/a\\134b"));
+		// not an escape
+		assertEquals("/mnt/x\\09", BlockDevices.unescapeMountPoint("/mnt/x\\09"));
+	}
+
+	@Test
+	public void unknownFileStoreIsNotRotational() {
+		assertFalse(BlockDevices.isRotational(null));
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Vector;
+
+import org.junit.Test;
+
+import net.janbuchinger.code.fssync.Operation;
+
+/**
+ * Tests the copy orders of <code>CopyOrder</code>.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see CopyOrder
+ */
+public class CopyOrderTest {
+	private static final String S = File.separator;
+
+	private static CopyAction copyAction(String relativePath, long length, long modified) {
+		return new CopyAction(new File(relativePath), length, modified, new File(relativePath), 0, 0,
+				relativePath, true, CopyAction.DIR_BACKUP);
+	}
+
+	private static String paths(Vector<CopyAction> copyActions) {
+		StringBuilder sb = new StringBuilder();
+		for (CopyAction copyAction : copyActions) {
+			if (sb.length() > 0) {
+				sb.append(",");
+			}
+			sb.append(copyAction.getRelativePath());
+		}
+		return sb.toString();
+	}
+
+	private static Vector<CopyAction> copyActions() {
+		Vector<CopyAction> copyActions = new Vector<CopyAction>();
+		copyActions.add(copyAction("a", 30, 1000));
+		copyActions.add(copyAction("b" + S + "x", 10, 3000));
+		copyActions.add(copyAction("c", 20, 2000));
+		copyActions.add(copyAction("bb", 10, 1000));
+		return copyActions;
+	}
+
+	@Test
+	public void scanOrder() {
+		Vector<CopyAction> copyActions = copyActions();
+		CopyOrder.sort(copyActions, Operation.COPY_ORDER_SCAN, new Vector<String>());
+		assertEquals("a,b" + S + "x,c,bb", paths(copyActions));
+	}
+
+	@Test
+	public void smallestFirstIsStable() {
+		Vector<CopyAction> copyActions = copyActions();
+		CopyOrder.sort(copyActions, Operation.COPY_ORDER_SMALLEST, new Vector<String>());
+		assertEquals("b" + S + "x,bb,c,a", paths(copyActions));
+	}
+
+	@Test
+	public void newestFirst() {
+		Vector<CopyAction> copyActions = copyActions();
+		CopyOrder.sort(copyActions, Operation.COPY_ORDER_NEWEST, new Vector<String>());
+		assertEquals("b" + S + "x,c,a,bb", paths(copyActions));
+	}
+
+	@Test
+	public void priorityPaths() {
+		Vector<CopyAction> copyActions = copyActions();
+		Vector<String> priorityPaths = new Vector<String>();
+		// "b" must not match the file "bb"
+		priorityPaths.add(" c ");
+		priorityPaths.add("/b/");
+		CopyOrder.sort(copyActions, Operation.COPY_ORDER_PRIORITY, priorityPaths);
+		assertEquals("c,b" + S + "x,a,bb", paths(copyActions));
+	}
+
+	@Test
+	public void emptyPriorityPathsKeepOrder() {
+		Vector<CopyAction> copyActions = copyActions();
+		Vector<String> priorityPaths = new Vector<String>();
+		priorityPaths.add(" / ");
+		CopyOrder.sort(copyActions, Operation.COPY_ORDER_PRIORITY, priorityPaths);
+		assertEquals("a,b" + S + "x,c,bb", paths(copyActions));
+	}
+}
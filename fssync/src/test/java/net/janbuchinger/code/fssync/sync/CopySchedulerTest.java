@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+/**
+ * Tests the path checks of <code>CopyScheduler</code>.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see CopyScheduler
+ */
+public class CopySchedulerTest {
+	private static final String S = File.separator;
+
+	@Test
+	public void isWithin() {
+		assertTrue(CopyScheduler.isWithin(S + "a" + S + "b", S + "a"));
+		assertTrue(CopyScheduler.isWithin(S + "a", S));
+		assertFalse(CopyScheduler.isWithin(S + "a", S + "a"));
+		assertFalse(CopyScheduler.isWithin(S + "ab", S + "a"));
+		assertFalse(CopyScheduler.isWithin(S + "a", S + "a" + S + "b"));
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.NoSuchElementException;
+import java.util.Vector;
+
+import org.junit.Test;
+
+/**
+ * Tests the merge of source, target and database in <code>DiffEngine</code>.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see DiffEngine
+ */
+public class DiffEngineTest {
+	private static final String S = File.separator;
+
+	private static ScannedFile scanned(String relativePath) {
+		return new ScannedFile(relativePath, new File(relativePath), 10, 1000, null);
+	}
+
+	private static RelativeFile known(String relativePath) {
+		return new RelativeFile(relativePath, 10, 1000, new byte[] { 1 });
+	}
+
+	@Test
+	public void emptyInputs() {
+		DiffEngine diffEngine = new DiffEngine(new Vector<ScannedFile>().iterator(),
+				new Vector<ScannedFile>().iterator(), new Vector<RelativeFile>().iterator());
+		assertFalse(diffEngine.hasNext());
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void nextAfterEnd() {
+		new DiffEngine(new Vector<ScannedFile>().iterator(), new Vector<ScannedFile>().iterator(),
+				new Vector<RelativeFile>().iterator()).next();
+	}
+
+	@Test
+	public void mergesByPath() {
+		Vector<ScannedFile> source = new Vector<ScannedFile>();
+		ScannedFile sourceA = scanned("a");
+		ScannedFile sourceAB = scanned("a" + S + "b");
+		source.add(sourceA);
+		source.add(sourceAB);
+		Vector<ScannedFile> target = new Vector<ScannedFile>();
+		ScannedFile targetAB = scanned("a" + S + "b");
+		ScannedFile targetAC = scanned("a-c");
+		target.add(targetAB);
+		target.add(targetAC);
+		Vector<RelativeFile> known = new Vector<RelativeFile>();
+		RelativeFile knownAC = known("a-c");
+		RelativeFile knownA = known("a");
+		known.add(knownAC);
+		known.add(knownA);
+		DiffEngine.sort(known);
+		DiffEngine diffEngine = new DiffEngine(source.iterator(), target.iterator(), known.iterator());
+
+		DiffEntry entry = diffEngine.next();
+		assertEquals("a", entry.getRelativePath());
+		assertSame(sourceA, entry.getSource());
+		assertNull(entry.getTarget());
+		assertSame(knownA, entry.getKnown());
+
+		entry = diffEngine.next();
+		assertEquals("a" + S + "b", entry.getRelativePath());
+		assertSame(sourceAB, entry.getSource());
+		assertSame(targetAB, entry.getTarget());
+		assertNull(entry.getKnown());
+
+		entry = diffEngine.next();
+		assertEquals("a-c", entry.getRelativePath());
+		assertNull(entry.getSource());
+		assertSame(targetAC, entry.getTarget());
+		assertSame(knownAC, entry.getKnown());
+
+		assertFalse(diffEngine.hasNext());
+	}
+}
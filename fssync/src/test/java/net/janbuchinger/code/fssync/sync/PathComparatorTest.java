@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the path order of <code>PathComparator</code>.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see PathComparator
+ */
+public class PathComparatorTest {
+	private static final String S = File.separator;
+
+	@Test
+	public void equalPaths() {
+		assertEquals(0, PathComparator.INSTANCE.compare("a" + S + "b", "a" + S + "b"));
+	}
+
+	@Test
+	public void separatorSortsFirst() {
+		// '-' and '.' sort lower than the separator in plain string order
+		assertTrue(PathComparator.INSTANCE.compare("a" + S + "b", "a-b") < 0);
+		assertTrue(PathComparator.INSTANCE.compare("a.txt", "a" + S + "b") > 0);
+	}
+
+	@Test
+	public void directoryBeforeContent() {
+		assertTrue(PathComparator.INSTANCE.compare("a", "a" + S + "b") < 0);
+	}
+
+	@Test
+	public void directoryContentIsContiguous() {
+		List<String> paths = Arrays.asList("a.txt", "a" + S + "z", "a-b", "a", "a" + S + "b" + S + "c",
+				"a" + S + "b");
+		Collections.sort(paths, PathComparator.INSTANCE);
+		assertEquals(Arrays.asList("a", "a" + S + "b", "a" + S + "b" + S + "c", "a" + S + "z", "a-b",
+				"a.txt"), paths);
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the coalescing of pending changes in <code>PathIndex</code>.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see PathIndex
+ */
+public class PathIndexTest {
+	private PathIndex index;
+
+	@Before
+	public void setUp() {
+		index = new PathIndex(0);
+	}
+
+	private static RelativeFile file(String relativePath, long length) {
+		return new RelativeFile(relativePath, length, 1000, new byte[] { 1, 2, 3, 4 });
+	}
+
+	@Test
+	public void loadRecordsNoChange() {
+		index.load(file("a", 10));
+		assertFalse(index.hasChanges());
+		assertEquals(1, index.size());
+		assertEquals(10, index.getTotalLength());
+	}
+
+	@Test
+	public void addNewPath() {
+		index.add(file("a", 10));
+		assertEquals(Integer.valueOf(PathIndex.change_add), index.takeChanges().get("a"));
+		assertFalse(index.hasChanges());
+	}
+
+	@Test
+	public void addIndexedPathBecomesUpdate() {
+		index.load(file("a", 10));
+		index.add(file("a", 20));
+		assertEquals(Integer.valueOf(PathIndex.change_update), index.takeChanges().get("a"));
+		assertEquals(20, index.getTotalLength());
+	}
+
+	@Test
+	public void addAfterFlushBecomesUpdate() {
+		index.add(file("a", 10));
+		index.takeChanges();
+		// the record was written by the flush
+		index.add(file("a", 10));
+		assertEquals(Integer.valueOf(PathIndex.change_update), index.takeChanges().get("a"));
+	}
+
+	@Test
+	public void addAfterRemoveBecomesUpdate() {
+		index.load(file("a", 10));
+		index.remove("a");
+		index.add(file("a", 30));
+		assertEquals(Integer.valueOf(PathIndex.change_update), index.takeChanges().get("a"));
+		assertEquals(30, index.getTotalLength());
+	}
+
+	@Test
+	public void updateAfterAddStaysAdd() {
+		index.add(file("a", 10));
+		index.update(file("a", 15));
+		assertEquals(Integer.valueOf(PathIndex.change_add), index.takeChanges().get("a"));
+		assertEquals(15, index.getTotalLength());
+	}
+
+	@Test
+	public void removeAfterAddCancels() {
+		index.add(file("a", 10));
+		index.remove("a");
+		assertFalse(index.hasChanges());
+		assertNull(index.get("a"));
+		assertEquals(0, index.getTotalLength());
+	}
+
+	@Test
+	public void removeIndexedPath() {
+		index.load(file("a", 10));
+		index.remove("a");
+		assertEquals(Integer.valueOf(PathIndex.change_remove), index.takeChanges().get("a"));
+		assertEquals(0, index.size());
+	}
+
+	@Test
+	public void restoreChangesCoalescesWithRecentChanges() {
+		index.load(file("r", 10));
+		index.add(file("a", 10));
+		index.remove("r");
+		LinkedHashMap<String, Integer> failed = index.takeChanges();
+		// changes recorded while the flush was running
+		index.remove("a");
+		index.add(file("r", 10));
+		index.add(file("n", 10));
+		index.restoreChanges(failed);
+		LinkedHashMap<String, Integer> changes = index.takeChanges();
+		assertEquals(2, changes.size());
+		assertFalse(changes.containsKey("a"));
+		assertEquals(Integer.valueOf(PathIndex.change_update), changes.get("r"));
+		assertEquals(Integer.valueOf(PathIndex.change_add), changes.get("n"));
+	}
+
+	@Test
+	public void moveDirectoryMovesFilesAndChanges() {
+		String from = "d" + File.separator + "x";
+		String to = "e";
+		index.load(file(from, 10));
+		index.load(file("d" + File.separator + "y", 5));
+		index.update(file(from, 10));
+		index.moveDirectory("d", to);
+		assertNull(index.get(from));
+		assertTrue(index.get(to + File.separator + "x") != null);
+		assertTrue(index.get(to + File.separator + "y") != null);
+		assertEquals(15, index.getTotalLength());
+		LinkedHashMap<String, Integer> changes = index.takeChanges();
+		assertEquals(Integer.valueOf(PathIndex.change_update), changes.get(to + File.separator + "x"));
+	}
+}
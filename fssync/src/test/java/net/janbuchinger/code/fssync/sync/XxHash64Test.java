@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Tests <code>XxHash64</code> against the reference values of xxHash64 with
+ * seed 0.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see XxHash64
+ */
+public class XxHash64Test {
+
+	private static String hash(byte[] data) {
+		XxHash64 hasher = new XxHash64();
+		hasher.update(data, 0, data.length);
+		return hex(hasher.getDigest());
+	}
+
+	private static String hex(byte[] digest) {
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest) {
+			sb.append(String.format("%02x", b & 0xff));
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void referenceValues() {
+		assertEquals("ef46db3751d8e999", hash(new byte[0]));
+		assertEquals("d24ec4f1a98c6e5b", hash("a".getBytes(StandardCharsets.US_ASCII)));
+		assertEquals("44bc2cf5ad770999", hash("abc".getBytes(StandardCharsets.US_ASCII)));
+		// longer than one stripe of 32 bytes
+		assertEquals("fbcea83c8a378bf1",
+				hash("Nobody inspects the spammish repetition".getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	@Test
+	public void partsEqualWhole() {
+		byte[] data = new byte[1000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i * 31 + 7);
+		}
+		XxHash64 whole = new XxHash64();
+		whole.update(data, 0, data.length);
+		byte[] expected = whole.getDigest();
+		// split at every length around the stripe size
+		for (int split = 1; split < 70; split++) {
+			XxHash64 parts = new XxHash64();
+			for (int offset = 0; offset < data.length; offset += split) {
+				parts.update(data, offset, Math.min(split, data.length - offset));
+			}
+			assertArrayEquals("split " + split, expected, parts.getDigest());
+		}
+	}
+}
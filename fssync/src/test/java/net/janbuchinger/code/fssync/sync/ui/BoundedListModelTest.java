@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017-2018 Jan Buchinger
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.janbuchinger.code.fssync.sync.ui;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Vector;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.junit.Test;
+
+/**
+ * Tests the ring buffer of <code>BoundedListModel</code>.
+ * 
+ * @author Jan Buchinger
+ *
+ * @see BoundedListModel
+ */
+public class BoundedListModelTest {
+
+	/**
+	 * Records the events of a list model as text.
+	 */
+	private static class EventRecorder implements ListDataListener {
+		private final Vector<String> events = new Vector<String>();
+
+		@Override
+		public void intervalAdded(ListDataEvent e) {
+			events.add("added " + e.getIndex0() + "-" + e.getIndex1());
+		}
+
+		@Override
+		public void intervalRemoved(ListDataEvent e) {
+			events.add("removed " + e.getIndex0() + "-" + e.getIndex1());
+		}
+
+		@Override
+		public void contentsChanged(ListDataEvent e) {
+			events.add("changed " + e.getIndex0() + "-" + e.getIndex1());
+		}
+	}
+
+	private static String content(BoundedListModel model) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < model.getSize(); i++) {
+			sb.append(model.getElementAt(i));
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void addBelowCapacity() {
+		BoundedListModel model = new BoundedListModel(3);
+		EventRecorder recorder = new EventRecorder();
+		model.addListDataListener(recorder);
+		model.addElement("a");
+		model.addElement("b");
+		assertEquals(2, model.getSize());
+		assertEquals("ab", content(model));
+		assertEquals(Arrays.asList("added 0-0", "added 1-1"), recorder.events);
+	}
+
+	@Test
+	public void dropsOldest() {
+		BoundedListModel model = new BoundedListModel(3);
+		model.addElements(Arrays.asList("a", "b", "c"));
+		EventRecorder recorder = new EventRecorder();
+		model.addListDataListener(recorder);
+		model.addElement("d");
+		assertEquals(3, model.getSize());
+		assertEquals("bcd", content(model));
+		assertEquals(Arrays.asList("removed 0-0", "added 2-2"), recorder.events);
+	}
+
+	@Test
+	public void addMoreThanCapacity() {
+		BoundedListModel model = new BoundedListModel(3);
+		model.addElement("a");
+		EventRecorder recorder = new EventRecorder();
+		model.addListDataListener(recorder);
+		model.addElements(Arrays.asList("b", "c", "d", "e", "f"));
+		assertEquals("def", content(model));
+		assertEquals(Arrays.asList("removed 0-0", "added 0-2"), recorder.events);
+	}
+
+	@Test
+	public void addNothing() {
+		BoundedListModel model = new BoundedListModel(3);
+		EventRecorder recorder = new EventRecorder();
+		model.addListDataListener(recorder);
+		model.addElements(new Vector<String>());
+		assertEquals(0, model.getSize());
+		assertEquals(0, recorder.events.size());
+	}
+}